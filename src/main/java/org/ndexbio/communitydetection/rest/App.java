@@ -3,6 +3,7 @@ package org.ndexbio.communitydetection.rest;
 
 import ch.qos.logback.classic.Level;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import java.util.Properties;
 import java.io.File;
 import java.io.FileInputStream;
@@ -25,6 +26,8 @@ import org.eclipse.jetty.servlet.DefaultServlet;
 import org.eclipse.jetty.servlet.ServletContextHandler;
 import org.eclipse.jetty.servlet.ServletHolder;
 import org.jboss.resteasy.plugins.server.servlet.FilterDispatcher;
+import org.ndexbio.communitydetection.rest.engine.AlgorithmExecutionSettings;
+import org.ndexbio.communitydetection.rest.engine.util.DockerEngineClient;
 import org.ndexbio.communitydetection.rest.model.CommunityDetectionAlgorithm;
 import org.ndexbio.communitydetection.rest.model.CommunityDetectionAlgorithms;
 import org.ndexbio.communitydetection.rest.model.CustomParameter;
@@ -179,12 +182,14 @@ public class App {
                      new CommunityDetectionHttpServletDispatcher());
                 
                 restEasyServlet.setInitOrder(1);
+                // needed so legacy diffusion can release request threads
+                restEasyServlet.setAsyncSupported(true);
                 restEasyServlet.setInitParameters(initMap);
                 webappContext.addServlet(restEasyServlet,
                                           applicationPath + "/*");
                 webappContext.addFilter(CorsFilter.class,
-                                        applicationPath + "/*", null);
-                webappContext.addFilter(FilterDispatcher.class, "/*", null);
+                                        applicationPath + "/*", null).setAsyncSupported(true);
+                webappContext.addFilter(FilterDispatcher.class, "/*", null).setAsyncSupported(true);
                 
                 
                 final ServletHolder openApiServlet = new ServletHolder(new OpenApiHttpServletDispatcher());
@@ -412,7 +417,14 @@ public class App {
         CommunityDetectionAlgorithms algos = new CommunityDetectionAlgorithms();
         algos.setAlgorithms(algoSet);
         ObjectMapper mappy = new ObjectMapper();
-        return mappy.writerWithDefaultPrettyPrinter().writeValueAsString(algos);
+        ObjectNode algosNode = mappy.valueToTree(algos);
+        
+        // run louvain in process, larger or unsupported requests still use docker
+        AlgorithmExecutionSettings louvainExec = new AlgorithmExecutionSettings();
+        louvainExec.setExecutor(AlgorithmExecutionSettings.JAVA_LOUVAIN_EXECUTOR);
+        ((ObjectNode)algosNode.get("algorithms").get(cdb.getName())).set(AlgorithmExecutionSettings.EXECUTION_FIELD,
+                mappy.valueToTree(louvainExec));
+        return mappy.writerWithDefaultPrettyPrinter().writeValueAsString(algosNode);
     }
    
     /**
@@ -443,15 +455,125 @@ public class App {
         sb.append("# NOTE: Should be set to name of algorithm\n");
         sb.append("#       in algorithms json file.\n");
         sb.append("# (Only set this to set up a diffusion service, can be commented out)\n");
+        sb.append("# To run diffusion in process instead of via docker add\n");
+        sb.append("#   \"" + AlgorithmExecutionSettings.EXECUTION_FIELD + "\": {\"executor\": \""
+                + AlgorithmExecutionSettings.JAVA_DIFFUSION_EXECUTOR + "\"}\n");
+        sb.append("# to the algorithm in algorithms json file\n");
         sb.append("# " + Configuration.DIFFUSION_ALGO + " = networkheatdiffusion\n\n");
         
-        sb.append("# Delay in milliseconds to wait while checking for completion of Diffusion\n");
-        sb.append("# (Only relevant if setting up diffusion service, can be commented out)\n");
-        sb.append("# " + Configuration.DIFFUSION_POLLDELAY + " = 100\n\n");
-        
         sb.append("# Mount options, if unset :ro is used (podman may require :ro,z)\n");
         sb.append(Configuration.MOUNT_OPTIONS + " = :ro\n\n");
         
+        sb.append("# Maximum number of completed results to cache so identical requests\n");
+        sb.append("# are answered without rerunning the algorithm. 0 disables the cache\n");
+        sb.append("# " + Configuration.RESULT_CACHE_MAX_ENTRIES + " = 0\n\n");
+        
+        sb.append("# Time in seconds a cached result remains valid\n");
+        sb.append("# " + Configuration.RESULT_CACHE_TTL + " = 86400\n\n");
+        
+        sb.append("# Number of warm containers to keep per algorithm. Tasks are run in these\n");
+        sb.append("# containers via docker exec instead of docker run. 0 disables the pool\n");
+        sb.append("# " + Configuration.POOL_SIZE + " = 0\n\n");
+        
+        sb.append("# Number of tasks a warm container runs before it is replaced\n");
+        sb.append("# " + Configuration.POOL_RECYCLE_TASKS + " = 100\n\n");
+        
+        sb.append("# Comma delimited list of algorithms to run in warm containers.\n");
+        sb.append("# If unset, all algorithms are run in warm containers\n");
+        sb.append("# " + Configuration.POOL_ALGORITHMS + " = louvain,infomap\n\n");
+        
+        sb.append("# If true, tasks are recorded in a journal under the task directory\n");
+        sb.append("# so queued tasks are run again after a restart. The journal keeps the\n");
+        sb.append("# input of each task in the task directory, so algorithms with\n");
+        sb.append("# \"inputDelivery\": \"" + AlgorithmExecutionSettings.STDIN_INPUT_DELIVERY
+                + "\" only avoid writing their input to disk\n");
+        sb.append("# when the journal is disabled\n");
+        sb.append("# " + Configuration.JOURNAL_ENABLED + " = true\n\n");
+        
+        sb.append("# If true, tasks that were running when the server stopped are run\n");
+        sb.append("# again after a restart, otherwise they are marked failed\n");
+        sb.append("# " + Configuration.JOURNAL_RETRY_RUNNING + " = false\n\n");
+        
+        sb.append("# If true, tasks are put in a queue under the task directory and run by\n");
+        sb.append("# any server sharing that directory. Any server can answer for any task.\n");
+        sb.append("# The task directory must be on a filesystem with atomic rename. When\n");
+        sb.append("# enabled the queue replaces the journal\n");
+        sb.append("# " + Configuration.CLUSTER_ENABLED + " = false\n\n");
+        
+        sb.append("# Time in seconds a server can go without renewing its claim on a task\n");
+        sb.append("# before another server takes over the task\n");
+        sb.append("# " + Configuration.CLUSTER_LEASE_TTL + " = 60\n\n");
+        
+        sb.append("# Share of workers given to each client, as identified by the X-Client-Id header,\n");
+        sb.append("# when tasks are waiting. Comma delimited list of client=weight, clients not\n");
+        sb.append("# listed have a weight of 1. The X-Client-Id and X-Forwarded-For headers are\n");
+        sb.append("# trusted as is, so a client can claim the weight of another unless a proxy\n");
+        sb.append("# in front of this service sets or checks them\n");
+        sb.append("# " + Configuration.CLIENT_WEIGHTS + " = cytoscape=4,batch=1\n\n");
+        
+        sb.append("# Highest priority a client can set in the payload of a request, higher\n");
+        sb.append("# values are lowered to this. Priority is not authenticated, the default of 0\n");
+        sb.append("# keeps clients from jumping ahead of each other. Set to 10 to allow all\n");
+        sb.append("# " + Configuration.CLIENT_MAX_PRIORITY + " = 0\n\n");
+        
+        sb.append("# Limits past which new tasks are rejected with a Retry-After header\n");
+        sb.append("# computed from the rate tasks are completing. 0 means no limit.\n");
+        sb.append("# Number of tasks queued or running, rejected with 429\n");
+        sb.append("# " + Configuration.ADMISSION_MAX_QUEUED_TASKS + " = 0\n");
+        sb.append("# Bytes of input of tasks queued or running, rejected with 429\n");
+        sb.append("# " + Configuration.ADMISSION_MAX_PENDING_BYTES + " = 0\n");
+        sb.append("# Percent of task directory disk used, rejected with 503\n");
+        sb.append("# " + Configuration.ADMISSION_MAX_DISK_FULL + " = 0\n\n");
+        
+        sb.append("# Completed tasks are deleted once their result has not been read for this\n");
+        sb.append("# many seconds or, when completed tasks take up more than max.bytes, those\n");
+        sb.append("# read least recently are deleted. 0 disables. Not supported in cluster mode\n");
+        sb.append("# " + Configuration.REAPER_TTL + " = 0\n");
+        sb.append("# " + Configuration.REAPER_MAX_BYTES + " = 0\n");
+        sb.append("# Seconds between checks for completed tasks to delete\n");
+        sb.append("# " + Configuration.REAPER_INTERVAL + " = 60\n\n");
+        
+        sb.append("# Number of finished tasks whose status is kept in memory so polling\n");
+        sb.append("# does not read the result file, and seconds each is kept. 0 disables\n");
+        sb.append("# " + Configuration.STATUS_CACHE_MAX_ENTRIES + " = 10000\n");
+        sb.append("# " + Configuration.STATUS_CACHE_TTL + " = 3600\n\n");
+        
+        sb.append("# Maximum number of status event streams open at once, further requests\n");
+        sb.append("# get a 429. Each open stream holds a thread until its task finishes.\n");
+        sb.append("# 0 means no limit\n");
+        sb.append("# " + Configuration.EVENTS_MAX_STREAMS + " = 256\n\n");
+        
+        sb.append("# Bytes of result files of finished tasks kept parsed in memory so\n");
+        sb.append("# results read more than once are not parsed again. 0 disables\n");
+        sb.append("# " + Configuration.PARSED_RESULT_CACHE_MAX_BYTES + " = 67108864\n\n");
+        
+        sb.append("# Where results of finished tasks are kept. " + Configuration.TASK_STORE_LOG + " appends them\n");
+        sb.append("# to a single file and removes the directory of each finished task.\n");
+        sb.append("# " + Configuration.TASK_STORE_DIRECTORY + " keeps them in the directory of each task, which\n");
+        sb.append("# is the layout of older versions and is always used in cluster mode\n");
+        sb.append("# or when the task reaper is enabled\n");
+        sb.append("# " + Configuration.TASK_STORE + " = " + Configuration.TASK_STORE_LOG + "\n\n");
+        
+        sb.append("# Unix domain socket of Docker daemon. If set and reachable, algorithms are\n");
+        sb.append("# run via the Docker Engine API instead of forking " + Configuration.DOCKER_CMD + ",\n");
+        sb.append("# which requires Java 16 or later. Unset always uses " + Configuration.DOCKER_CMD + "\n");
+        sb.append("# " + Configuration.DOCKER_SOCKET + " = " + DockerEngineClient.DEFAULT_SOCKET + "\n\n");
+        
+        sb.append("# Cpus containers are pinned to. Each container of an algorithm that sets\n");
+        sb.append("#   \"" + AlgorithmExecutionSettings.EXECUTION_FIELD + "\": {\"cpus\": 2, \"memory\": \"4g\", \"pidsLimit\": 256}\n");
+        sb.append("# in algorithms json file gets its own cpus from this list while it runs.\n");
+        sb.append("# If none are free it runs unpinned. Unset disables pinning\n");
+        sb.append("# " + Configuration.CPUSET_CPUS + " = 0-7\n\n");
+        
+        sb.append("# If set, number of workers starts at " + Configuration.NUM_WORKERS + " and\n");
+        sb.append("# is adjusted between min and max every interval seconds. A worker is\n");
+        sb.append("# added while tasks are waiting and workers are cut by a quarter when load\n");
+        sb.append("# per core exceeds 1, available memory is below 10%, or task latency doubles.\n");
+        sb.append("# A max of 0 keeps number of workers fixed\n");
+        sb.append("# " + Configuration.MIN_WORKERS + " = 1\n");
+        sb.append("# " + Configuration.MAX_WORKERS + " = 0\n");
+        sb.append("# " + Configuration.WORKERS_ADJUST_INTERVAL + " = 30\n\n");
+        
         sb.append("# Sets HOST URL prefix (value is prefixed to Location header when query is invoked. Can be commented out)\n");
         sb.append("# " + Configuration.HOST_URL + " = http://ndexbio.org\n\n");
         
@@ -0,0 +1,383 @@
+package org.ndexbio.communitydetection.rest.engine;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import org.apache.commons.io.FileUtils;
+import org.ndexbio.communitydetection.rest.engine.util.ThreadPerTaskExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Grows or shrinks the number of workers of a pool between a minimum
+ * and maximum using additive increase, multiplicative decrease. On each
+ * {@link #adjust(int)} one worker is added if tasks are waiting and the
+ * host is healthy, and the number of workers is cut by
+ * {@link #DECREASE_FACTOR} if the host is overloaded, that is if the
+ * load average per core exceeds {@link #MAX_LOAD_PER_CORE}, the
+ * fraction of available physical memory falls below {@link #MIN_MEMORY_HEADROOM},
+ * or the recent latency of tasks has grown beyond {@link #MAX_LATENCY_GRADIENT}
+ * times its long term average. Measurements that cannot be obtained
+ * are ignored.
+ *
+ * @author churas
+ */
+public class AdaptiveConcurrencyController {
+
+    static Logger _logger = LoggerFactory.getLogger(AdaptiveConcurrencyController.class);
+
+    /**
+     * Decision when a worker was added
+     */
+    public static final String INCREASE_DECISION = "increase";
+
+    /**
+     * Decision when workers were removed
+     */
+    public static final String DECREASE_DECISION = "decrease";
+
+    /**
+     * Decision when number of workers was left alone
+     */
+    public static final String HOLD_DECISION = "hold";
+
+    /**
+     * Load average per core above which host is overloaded
+     */
+    public static final double MAX_LOAD_PER_CORE = 1.0;
+
+    /**
+     * Fraction of available physical memory below which host is overloaded
+     */
+    public static final double MIN_MEMORY_HEADROOM = 0.1;
+
+    /**
+     * Ratio of recent to long term task latency above which host is
+     * overloaded
+     */
+    public static final double MAX_LATENCY_GRADIENT = 2.0;
+
+    /**
+     * Factor number of workers is multiplied by when host is overloaded
+     */
+    public static final double DECREASE_FACTOR = 0.75;
+
+    /**
+     * File memory available on Linux is read from
+     */
+    public static final String MEMINFO = "/proc/meminfo";
+
+    /**
+     * Weight of newest latency in the recent average
+     */
+    private static final double SHORT_LATENCY_WEIGHT = 0.3;
+
+    /**
+     * Weight of newest latency in the long term average
+     */
+    private static final double LONG_LATENCY_WEIGHT = 0.05;
+
+    private final ExecutorService _executor;
+    private final int _minWorkers;
+    private final int _maxWorkers;
+    private double _shortLatency = -1;
+    private double _longLatency = -1;
+    private double _loadPerCore = -1;
+    private double _memoryHeadroom = -1;
+    private String _lastDecision = HOLD_DECISION;
+    private String _lastReason = "no adjustment made";
+    private long _lastAdjustment = 0;
+    private long _increases = 0;
+    private long _decreases = 0;
+
+    /**
+     * Constructor
+     * @param executor pool whose number of workers is adjusted, either a
+     *                 {@link ThreadPoolExecutor} with an unbounded queue so
+     *                 its core size is the number of workers or a
+     *                 {@link ThreadPerTaskExecutor} with a limit on tasks
+     *                 running at once
+     * @param minWorkers fewest workers, at least 1
+     * @param maxWorkers most workers, raised to {@code minWorkers} if lower
+     * @throws IllegalArgumentException if number of workers of {@code executor}
+     *         cannot be adjusted
+     */
+    public AdaptiveConcurrencyController(ExecutorService executor, int minWorkers,
+            int maxWorkers){
+        if (executor instanceof ThreadPoolExecutor == false
+                && (executor instanceof ThreadPerTaskExecutor == false
+                || ((ThreadPerTaskExecutor)executor).getMaxConcurrency() <= 0)){
+            throw new IllegalArgumentException("Number of workers of executor cannot be adjusted");
+        }
+        _executor = executor;
+        _minWorkers = Math.max(1, minWorkers);
+        _maxWorkers = Math.max(_minWorkers, maxWorkers);
+        int workers = Math.max(_minWorkers, Math.min(_maxWorkers, getWorkers()));
+        setWorkers(workers);
+    }
+
+    /**
+     * Records wall time of a completed task
+     * @param wallTimeMillis time task ran in milliseconds, ignored if negative
+     */
+    public synchronized void taskCompleted(long wallTimeMillis){
+        if (wallTimeMillis < 0){
+            return;
+        }
+        if (_longLatency < 0){
+            _shortLatency = wallTimeMillis;
+            _longLatency = wallTimeMillis;
+            return;
+        }
+        _shortLatency += SHORT_LATENCY_WEIGHT * (wallTimeMillis - _shortLatency);
+        _longLatency += LONG_LATENCY_WEIGHT * (wallTimeMillis - _longLatency);
+    }
+
+    /**
+     * Measures load, memory headroom, and latency and adds or removes
+     * workers accordingly
+     * @param waitingTasks number of tasks waiting for a worker of pool
+     * @return decision made, one of {@link #INCREASE_DECISION},
+     *         {@link #DECREASE_DECISION}, or {@link #HOLD_DECISION}
+     */
+    public synchronized String adjust(int waitingTasks){
+        _lastAdjustment = System.currentTimeMillis();
+        int processors = Math.max(1, getAvailableProcessors());
+        double load = getLoadAverage();
+        _loadPerCore = load < 0 ? -1 : load / (double)processors;
+        _memoryHeadroom = getMemoryHeadroom();
+        int workers = getWorkers();
+
+        String overload = getOverloadReason();
+        if (overload != null){
+            int target = Math.max(_minWorkers,
+                    Math.min(workers - 1, (int)Math.floor(workers * DECREASE_FACTOR)));
+            if (target < workers){
+                setWorkers(target);
+                _decreases++;
+                return decide(DECREASE_DECISION, overload + ", workers "
+                        + Integer.toString(workers) + " -> " + Integer.toString(target));
+            }
+            return decide(HOLD_DECISION, overload + ", already at minimum workers");
+        }
+        if (waitingTasks <= 0){
+            return decide(HOLD_DECISION, "no tasks waiting");
+        }
+        if (workers >= _maxWorkers){
+            return decide(HOLD_DECISION, "tasks waiting, already at maximum workers");
+        }
+        setWorkers(workers + 1);
+        _increases++;
+        return decide(INCREASE_DECISION, "tasks waiting, workers "
+                + Integer.toString(workers) + " -> " + Integer.toString(workers + 1));
+    }
+
+    private String getOverloadReason(){
+        if (_loadPerCore > MAX_LOAD_PER_CORE){
+            return "load per core " + String.format("%.2f", _loadPerCore)
+                    + " exceeds " + Double.toString(MAX_LOAD_PER_CORE);
+        }
+        if (_memoryHeadroom >= 0 && _memoryHeadroom < MIN_MEMORY_HEADROOM){
+            return "available memory " + String.format("%.2f", _memoryHeadroom)
+                    + " below " + Double.toString(MIN_MEMORY_HEADROOM);
+        }
+        double gradient = getLatencyGradient();
+        if (gradient > MAX_LATENCY_GRADIENT){
+            return "task latency grew " + String.format("%.2f", gradient) + "x";
+        }
+        return null;
+    }
+
+    private String decide(final String decision, final String reason){
+        if (decision.equals(HOLD_DECISION) == false){
+            _logger.info("Adjusting workers: " + reason);
+        }
+        _lastDecision = decision;
+        _lastReason = reason;
+        return decision;
+    }
+
+    /**
+     * Resizes pool, for a {@link ThreadPoolExecutor} order of calls keeps
+     * core size at or below maximum size
+     * @param workers new number of workers
+     */
+    private void setWorkers(int workers){
+        if (_executor instanceof ThreadPerTaskExecutor){
+            ((ThreadPerTaskExecutor)_executor).setMaxConcurrency(workers);
+            return;
+        }
+        ThreadPoolExecutor tpe = (ThreadPoolExecutor)_executor;
+        if (workers > tpe.getMaximumPoolSize()){
+            tpe.setMaximumPoolSize(workers);
+            tpe.setCorePoolSize(workers);
+        } else {
+            tpe.setCorePoolSize(workers);
+            tpe.setMaximumPoolSize(workers);
+        }
+    }
+
+    /**
+     * Gets system load average over the last minute
+     * @return load or a negative value if unavailable
+     */
+    protected double getLoadAverage(){
+        return ManagementFactory.getOperatingSystemMXBean().getSystemLoadAverage();
+    }
+
+    /**
+     * Gets number of cores
+     * @return number of cores
+     */
+    protected int getAvailableProcessors(){
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Gets fraction of physical memory that is available. On Linux this
+     * is {@code MemAvailable} from {@link #MEMINFO} which, unlike free
+     * memory, counts page cache that can be reclaimed
+     * @return value between 0 and 1 or a negative value if unavailable
+     */
+    protected double getMemoryHeadroom(){
+        File meminfo = new File(MEMINFO);
+        if (meminfo.canRead()){
+            try {
+                long total = -1;
+                long available = -1;
+                for (String line : FileUtils.readLines(meminfo, StandardCharsets.UTF_8)){
+                    if (line.startsWith("MemTotal:")){
+                        total = parseMeminfoKb(line);
+                    } else if (line.startsWith("MemAvailable:")){
+                        available = parseMeminfoKb(line);
+                    }
+                }
+                if (total > 0 && available >= 0){
+                    return (double)available / (double)total;
+                }
+            } catch(IOException | NumberFormatException ex){
+                _logger.debug("Unable to read " + MEMINFO, ex);
+            }
+        }
+        OperatingSystemMXBean omb = ManagementFactory.getOperatingSystemMXBean();
+        if (omb instanceof com.sun.management.OperatingSystemMXBean){
+            com.sun.management.OperatingSystemMXBean sunOmb = (com.sun.management.OperatingSystemMXBean)omb;
+            long total = sunOmb.getTotalPhysicalMemorySize();
+            if (total > 0){
+                return (double)sunOmb.getFreePhysicalMemorySize() / (double)total;
+            }
+        }
+        return -1;
+    }
+
+    private static long parseMeminfoKb(final String line){
+        String[] fields = line.trim().split("\\s+");
+        return Long.parseLong(fields[1]);
+    }
+
+    /**
+     * Gets ratio of recent to long term average latency of tasks
+     * @return ratio or 0 if no tasks have completed
+     */
+    public synchronized double getLatencyGradient(){
+        if (_longLatency <= 0){
+            return 0;
+        }
+        return _shortLatency / _longLatency;
+    }
+
+    /**
+     * Gets current number of workers
+     * @return number of workers
+     */
+    public int getWorkers(){
+        if (_executor instanceof ThreadPerTaskExecutor){
+            return ((ThreadPerTaskExecutor)_executor).getMaxConcurrency();
+        }
+        return ((ThreadPoolExecutor)_executor).getCorePoolSize();
+    }
+
+    /**
+     * Gets fewest workers
+     * @return number of workers
+     */
+    public int getMinWorkers(){
+        return _minWorkers;
+    }
+
+    /**
+     * Gets most workers
+     * @return number of workers
+     */
+    public int getMaxWorkers(){
+        return _maxWorkers;
+    }
+
+    /**
+     * Gets load average per core measured by last {@link #adjust(int)}
+     * @return load or a negative value if unavailable
+     */
+    public synchronized double getLoadPerCore(){
+        return _loadPerCore;
+    }
+
+    /**
+     * Gets fraction of available physical memory measured by last {@link #adjust(int)}
+     * @return value between 0 and 1 or a negative value if unavailable
+     */
+    public synchronized double getLastMemoryHeadroom(){
+        return _memoryHeadroom;
+    }
+
+    /**
+     * Gets recent average wall time of tasks
+     * @return time in milliseconds or a negative value if no tasks completed
+     */
+    public synchronized long getTaskLatency(){
+        return Math.round(_shortLatency);
+    }
+
+    /**
+     * Gets decision made by last {@link #adjust(int)}
+     * @return decision
+     */
+    public synchronized String getLastDecision(){
+        return _lastDecision;
+    }
+
+    /**
+     * Gets reason for decision made by last {@link #adjust(int)}
+     * @return reason
+     */
+    public synchronized String getLastReason(){
+        return _lastReason;
+    }
+
+    /**
+     * Gets time of last {@link #adjust(int)}
+     * @return time in milliseconds since epoch, 0 if never run
+     */
+    public synchronized long getLastAdjustment(){
+        return _lastAdjustment;
+    }
+
+    /**
+     * Gets number of times workers were added
+     * @return count
+     */
+    public synchronized long getIncreases(){
+        return _increases;
+    }
+
+    /**
+     * Gets number of times workers were removed
+     * @return count
+     */
+    public synchronized long getDecreases(){
+        return _decreases;
+    }
+}
@@ -0,0 +1,142 @@
+package org.ndexbio.communitydetection.rest.engine;
+
+/**
+ * Decides if a new task can be accepted given how many tasks are
+ * waiting, how many bytes of input they hold on disk, and how full the
+ * task disk is. A limit of 0 or less disables that check.
+ *
+ * Rejections carry a Retry-After estimated from the rate at which tasks
+ * have completed over the last {@link #DRAIN_WINDOW_MILLIS}, that is the
+ * time needed for enough tasks to finish to get back under the limit.
+ *
+ * @author churas
+ */
+public class AdmissionController {
+
+    /**
+     * Time over which the completion rate of tasks is measured
+     */
+    public static final long DRAIN_WINDOW_MILLIS = 300000;
+
+    /**
+     * Retry-After in seconds when no task has completed recently
+     */
+    public static final long DEFAULT_RETRY_AFTER = 60;
+
+    /**
+     * Smallest Retry-After in seconds
+     */
+    public static final long MIN_RETRY_AFTER = 1;
+
+    /**
+     * Largest Retry-After in seconds
+     */
+    public static final long MAX_RETRY_AFTER = 3600;
+
+    private static final int BUCKETS = 10;
+    private static final long BUCKET_MILLIS = DRAIN_WINDOW_MILLIS / BUCKETS;
+
+    private final int _maxQueuedTasks;
+    private final long _maxPendingBytes;
+    private final int _maxPcDiskFull;
+
+    /**
+     * Completions counted per {@link #BUCKET_MILLIS} slice of the window
+     * and the slice each count belongs to
+     */
+    private final int[] _completions = new int[BUCKETS];
+    private final long[] _bucketSlices = new long[BUCKETS];
+
+    /**
+     * Constructor
+     * @param maxQueuedTasks maximum number of tasks queued or running
+     * @param maxPendingBytes maximum bytes of input of tasks queued or running
+     * @param maxPcDiskFull maximum percent of task disk that can be used
+     */
+    public AdmissionController(int maxQueuedTasks, long maxPendingBytes, int maxPcDiskFull){
+        _maxQueuedTasks = maxQueuedTasks;
+        _maxPendingBytes = maxPendingBytes;
+        _maxPcDiskFull = maxPcDiskFull;
+    }
+
+    /**
+     * Checks if a task with {@code inputBytes} of input can be accepted
+     * @param queuedTasks number of tasks queued or running
+     * @param pendingBytes bytes of input of tasks queued or running
+     * @param inputBytes bytes of input of new task
+     * @param pcDiskFull percent of task disk used
+     * @throws CommunityDetectionOverloadedException with a 429 status if
+     *         the queue or pending bytes limit is reached or with a 503 status
+     *         if the disk limit is reached
+     */
+    public void admit(int queuedTasks, long pendingBytes, long inputBytes,
+            int pcDiskFull) throws CommunityDetectionOverloadedException {
+        if (_maxPcDiskFull > 0 && pcDiskFull >= _maxPcDiskFull){
+            throw new CommunityDetectionOverloadedException("Task disk is "
+                    + Integer.toString(pcDiskFull) + "% full",
+                    CommunityDetectionOverloadedException.SERVICE_UNAVAILABLE_STATUS,
+                    getRetryAfter(queuedTasks));
+        }
+        if (_maxQueuedTasks > 0 && queuedTasks >= _maxQueuedTasks){
+            throw new CommunityDetectionOverloadedException("Queue is full with "
+                    + Integer.toString(queuedTasks) + " tasks",
+                    CommunityDetectionOverloadedException.TOO_MANY_REQUESTS_STATUS,
+                    getRetryAfter(queuedTasks - _maxQueuedTasks + 1));
+        }
+        if (_maxPendingBytes > 0 && pendingBytes > 0
+                && pendingBytes + inputBytes > _maxPendingBytes){
+            // convert bytes over the limit into tasks using the average
+            // input size of the tasks waiting
+            double bytesPerTask = (double)pendingBytes / (double)Math.max(1, queuedTasks);
+            long excessTasks = (long)Math.ceil((double)(pendingBytes + inputBytes - _maxPendingBytes)
+                    / Math.max(1.0, bytesPerTask));
+            throw new CommunityDetectionOverloadedException("Tasks waiting hold "
+                    + Long.toString(pendingBytes) + " bytes of input",
+                    CommunityDetectionOverloadedException.TOO_MANY_REQUESTS_STATUS,
+                    getRetryAfter(excessTasks));
+        }
+    }
+
+    /**
+     * Records completion of a task, used to measure drain rate
+     */
+    public synchronized void taskCompleted(){
+        long slice = System.currentTimeMillis() / BUCKET_MILLIS;
+        int index = (int)(slice % BUCKETS);
+        if (_bucketSlices[index] != slice){
+            _bucketSlices[index] = slice;
+            _completions[index] = 0;
+        }
+        _completions[index]++;
+    }
+
+    /**
+     * Gets rate tasks completed over the last {@link #DRAIN_WINDOW_MILLIS}
+     * @return tasks per second
+     */
+    public synchronized double getDrainRate(){
+        long slice = System.currentTimeMillis() / BUCKET_MILLIS;
+        int total = 0;
+        for (int i = 0; i < BUCKETS; i++){
+            if (slice - _bucketSlices[i] < BUCKETS){
+                total += _completions[i];
+            }
+        }
+        return (double)total / ((double)DRAIN_WINDOW_MILLIS / 1000.0);
+    }
+
+    /**
+     * Gets time for {@code tasks} tasks to complete at the current drain rate
+     * @param tasks number of tasks
+     * @return seconds between {@link #MIN_RETRY_AFTER} and {@link #MAX_RETRY_AFTER}
+     *         or {@link #DEFAULT_RETRY_AFTER} if no tasks completed recently
+     */
+    public long getRetryAfter(long tasks){
+        double rate = getDrainRate();
+        if (rate <= 0){
+            return DEFAULT_RETRY_AFTER;
+        }
+        long seconds = (long)Math.ceil((double)Math.max(1, tasks) / rate);
+        return Math.max(MIN_RETRY_AFTER, Math.min(MAX_RETRY_AFTER, seconds));
+    }
+}
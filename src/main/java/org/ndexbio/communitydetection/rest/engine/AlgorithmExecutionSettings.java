@@ -0,0 +1,225 @@
+package org.ndexbio.communitydetection.rest.engine;
+
+import org.ndexbio.communitydetection.rest.engine.util.ContainerLimits;
+
+/**
+ * Settings that control how the engine runs a given algorithm. These
+ * are read from the optional {@code execution} object of an algorithm
+ * in the algorithms json file. For example:
+ * <pre>
+ * "louvain": {
+ *     "name": "louvain",
+ *     "dockerImage": "ecdymore/slouvaintest",
+ *     ...
+ *     "execution": {
+ *         "executor": "javalouvain",
+ *         "maxNativeEdges": 5000000,
+ *         "maxConcurrency": 4,
+ *         "queueCapacity": 100,
+ *         "inputDelivery": "file",
+ *         "cpus": 2,
+ *         "memory": "4g",
+ *         "pidsLimit": 256
+ *     }
+ * }
+ * </pre>
+ * @author churas
+ */
+public class AlgorithmExecutionSettings {
+
+    /**
+     * Runs algorithm via docker, this is the default
+     */
+    public static final String DOCKER_EXECUTOR = "docker";
+
+    /**
+     * Runs louvain in process via
+     * {@link org.ndexbio.communitydetection.rest.engine.algorithms.LouvainCommunityDetectionRunner}
+     */
+    public static final String JAVA_LOUVAIN_EXECUTOR = "javalouvain";
+
+    /**
+     * Runs heat diffusion in process via
+     * {@link org.ndexbio.communitydetection.rest.engine.algorithms.HeatDiffusionCommunityDetectionRunner}
+     */
+    public static final String JAVA_DIFFUSION_EXECUTOR = "javadiffusion";
+
+    /**
+     * Writes input to a file in the task directory which is bind mounted
+     * into the container and passed to the algorithm as a path, this is
+     * the default
+     */
+    public static final String FILE_INPUT_DELIVERY = "file";
+
+    /**
+     * Pipes input to standard input of the container and passes
+     * {@code -} to the algorithm instead of a path. Nothing is mounted
+     * into the container and no input file is written unless the task
+     * journal is enabled, which needs the input on disk to run the task
+     * again after a restart, in which case that file is piped instead
+     */
+    public static final String STDIN_INPUT_DELIVERY = "stdin";
+
+    /**
+     * Name of object in algorithm json containing these settings
+     */
+    public static final String EXECUTION_FIELD = "execution";
+
+    private String _executor = DOCKER_EXECUTOR;
+    private long _maxNativeEdges = 5000000;
+    private int _maxConcurrency = 0;
+    private int _queueCapacity = 0;
+    private String _inputDelivery = FILE_INPUT_DELIVERY;
+    private double _cpus = 0;
+    private String _memory = null;
+    private long _pidsLimit = 0;
+
+    /**
+     * Gets executor used to run algorithm
+     * @return executor, default is {@link #DOCKER_EXECUTOR}
+     */
+    public String getExecutor() {
+        return _executor;
+    }
+
+    /**
+     * Sets executor used to run algorithm
+     * @param executor executor
+     */
+    public void setExecutor(String executor) {
+        _executor = executor;
+    }
+
+    /**
+     * Gets maximum number of edges an in process executor will handle.
+     * Larger inputs are run via docker
+     * @return number of edges
+     */
+    public long getMaxNativeEdges() {
+        return _maxNativeEdges;
+    }
+
+    /**
+     * Sets maximum number of edges an in process executor will handle
+     * @param maxNativeEdges number of edges
+     */
+    public void setMaxNativeEdges(long maxNativeEdges) {
+        _maxNativeEdges = maxNativeEdges;
+    }
+
+    /**
+     * Gets number of tasks of algorithm that can run at once in its own
+     * pool of workers
+     * @return number of workers, 0 or less means tasks share the default pool
+     */
+    public int getMaxConcurrency() {
+        return _maxConcurrency;
+    }
+
+    /**
+     * Sets number of tasks of algorithm that can run at once in its own
+     * pool of workers
+     * @param maxConcurrency number of workers
+     */
+    public void setMaxConcurrency(int maxConcurrency) {
+        _maxConcurrency = maxConcurrency;
+    }
+
+    /**
+     * Gets number of tasks of algorithm that can wait for a worker
+     * before new requests are rejected. Only used if
+     * {@link #getMaxConcurrency()} is greater than 0
+     * @return capacity, 0 or less means unbounded
+     */
+    public int getQueueCapacity() {
+        return _queueCapacity;
+    }
+
+    /**
+     * Sets number of tasks of algorithm that can wait for a worker
+     * @param queueCapacity capacity
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        _queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Gets how input is passed to algorithm run via docker. Algorithms
+     * run in a pool of warm containers always get a file
+     * @return {@link #FILE_INPUT_DELIVERY}, the default, or {@link #STDIN_INPUT_DELIVERY}
+     */
+    public String getInputDelivery() {
+        return _inputDelivery;
+    }
+
+    /**
+     * Sets how input is passed to algorithm run via docker
+     * @param inputDelivery {@link #FILE_INPUT_DELIVERY} or {@link #STDIN_INPUT_DELIVERY}
+     */
+    public void setInputDelivery(String inputDelivery) {
+        _inputDelivery = inputDelivery;
+    }
+
+    /**
+     * Gets number of cpus a container running algorithm can use, passed
+     * to docker as {@code --cpus}. If cpu pinning is enabled, this many
+     * cpus rounded up are also reserved for the container
+     * @return cpus, may be fractional, 0 or less means unlimited
+     */
+    public double getCpus() {
+        return _cpus;
+    }
+
+    /**
+     * Sets number of cpus a container running algorithm can use
+     * @param cpus cpus
+     */
+    public void setCpus(double cpus) {
+        _cpus = cpus;
+    }
+
+    /**
+     * Gets memory a container running algorithm can use, passed to
+     * docker as {@code --memory}
+     * @return size such as {@code 512m} or {@code 2g}, {@code null} means unlimited
+     */
+    public String getMemory() {
+        return _memory;
+    }
+
+    /**
+     * Sets memory a container running algorithm can use
+     * @param memory size in bytes optionally followed by {@code b}, {@code k},
+     *               {@code m}, or {@code g}
+     * @throws IllegalArgumentException if {@code memory} is not a valid size
+     */
+    public void setMemory(String memory) {
+        ContainerLimits.parseMemory(memory);
+        _memory = memory;
+    }
+
+    /**
+     * Gets number of processes a container running algorithm can run,
+     * passed to docker as {@code --pids-limit}
+     * @return processes, 0 or less means unlimited
+     */
+    public long getPidsLimit() {
+        return _pidsLimit;
+    }
+
+    /**
+     * Sets number of processes a container running algorithm can run
+     * @param pidsLimit processes
+     */
+    public void setPidsLimit(long pidsLimit) {
+        _pidsLimit = pidsLimit;
+    }
+
+    /**
+     * Creates limits for containers running algorithm from these settings
+     * @return limits
+     */
+    public ContainerLimits toContainerLimits() {
+        return new ContainerLimits(_cpus, ContainerLimits.parseMemory(_memory), _pidsLimit);
+    }
+}
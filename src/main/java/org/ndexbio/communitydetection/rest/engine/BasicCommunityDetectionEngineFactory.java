@@ -1,9 +1,26 @@
 package org.ndexbio.communitydetection.rest.engine;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.ndexbio.communitydetection.rest.engine.util.CommandLineRunnerImpl;
 import org.ndexbio.communitydetection.rest.engine.util.CommunityDetectionRequestValidator;
 import org.ndexbio.communitydetection.rest.engine.util.CommunityDetectionRequestValidatorImpl;
+import org.ndexbio.communitydetection.rest.engine.util.CpusetAllocator;
+import org.ndexbio.communitydetection.rest.engine.util.DockerContainerPool;
+import org.ndexbio.communitydetection.rest.engine.util.DockerEngineClient;
+import org.ndexbio.communitydetection.rest.engine.util.TaskThreads;
+import org.ndexbio.communitydetection.rest.engine.util.ThreadPerTaskExecutor;
+import org.ndexbio.communitydetection.rest.model.CommunityDetectionAlgorithm;
 import org.ndexbio.communitydetection.rest.model.CommunityDetectionAlgorithms;
 import org.ndexbio.communitydetection.rest.model.exceptions.CommunityDetectionException;
 import org.ndexbio.communitydetection.rest.services.Configuration;
@@ -19,11 +36,43 @@ public class BasicCommunityDetectionEngineFactory {
     
     static Logger _logger = LoggerFactory.getLogger(BasicCommunityDetectionEngineFactory.class);
 
+    /**
+     * Name of directory under task directory where cached results are stored
+     */
+    public static final String RESULT_CACHE_DIR = "cdresultcache";
+
     private int _numWorkers;
     private String _taskDir;
     private String _dockerCmd;
     private CommunityDetectionAlgorithms _algorithms;
     private CommunityDetectionRequestValidator _validator;
+    private Map<String, AlgorithmExecutionSettings> _executionSettings;
+    private int _resultCacheMaxEntries;
+    private long _resultCacheTTL;
+    private int _poolSize;
+    private int _poolRecycleTasks;
+    private Set<String> _poolAlgorithms;
+    private String _mountOptions;
+    private boolean _journalEnabled;
+    private boolean _journalRetryRunning;
+    private boolean _clusterEnabled;
+    private long _clusterLeaseTTL;
+    private Map<String, Integer> _clientWeights;
+    private int _admissionMaxQueuedTasks;
+    private long _admissionMaxPendingBytes;
+    private int _admissionMaxDiskFull;
+    private long _reaperTTL;
+    private long _reaperMaxBytes;
+    private long _reaperInterval;
+    private int _statusCacheMaxEntries;
+    private long _statusCacheTTL;
+    private long _parsedResultCacheMaxBytes;
+    private String _taskStore;
+    private String _dockerSocket;
+    private String _cpusetCpus;
+    private int _minWorkers;
+    private int _maxWorkers;
+    private long _workersAdjustInterval;
     
     /**
      * Temp directory where query results will temporarily be stored.
@@ -37,20 +86,254 @@ public class BasicCommunityDetectionEngineFactory {
         _dockerCmd = config.getDockerCommand();
         _algorithms = config.getAlgorithms();
         _validator = new CommunityDetectionRequestValidatorImpl();
+        _executionSettings = config.getAlgorithmExecutionSettings();
+        _resultCacheMaxEntries = config.getResultCacheMaxEntries();
+        _resultCacheTTL = config.getResultCacheTTL();
+        _journalEnabled = config.isJournalEnabled();
+        _journalRetryRunning = config.isJournalRetryRunning();
+        _clusterEnabled = config.isClusterEnabled();
+        _clusterLeaseTTL = config.getClusterLeaseTTL();
+        _clientWeights = config.getClientWeights();
+        _admissionMaxQueuedTasks = config.getAdmissionMaxQueuedTasks();
+        _admissionMaxPendingBytes = config.getAdmissionMaxPendingBytes();
+        _admissionMaxDiskFull = config.getAdmissionMaxDiskFull();
+        _reaperTTL = config.getReaperTTL();
+        _reaperMaxBytes = config.getReaperMaxBytes();
+        _reaperInterval = config.getReaperInterval();
+        _statusCacheMaxEntries = config.getStatusCacheMaxEntries();
+        _statusCacheTTL = config.getStatusCacheTTL();
+        _parsedResultCacheMaxBytes = config.getParsedResultCacheMaxBytes();
+        _taskStore = config.getTaskStore();
+        _dockerSocket = config.getDockerSocket();
+        _cpusetCpus = config.getCpusetCpus();
+        _minWorkers = config.getMinWorkers();
+        _maxWorkers = config.getMaxWorkers();
+        _workersAdjustInterval = config.getWorkersAdjustInterval();
+        _poolSize = config.getPoolSize();
+        if (_poolSize > 0){
+            _poolRecycleTasks = config.getPoolRecycleTasks();
+            _poolAlgorithms = config.getPoolAlgorithms();
+            _mountOptions = config.getMountOptions();
+        }
        
     }
 
     /**
-     * Creates CommunityDetectionEngine with a fixed threadpool to process requests
+     * Creates store for results of finished tasks. A {@link DirectoryTaskStore}
+     * is used in cluster mode, since the log cannot be appended to by
+     * several servers, and when the task reaper is enabled, since the
+     * reaper works on task directories
+     * @return store
+     * @throws CommunityDetectionException if the store could not be opened
+     *         or its type is unknown
+     */
+    protected TaskStore getTaskStore() throws CommunityDetectionException {
+        if (Configuration.TASK_STORE_DIRECTORY.equals(_taskStore)){
+            return new DirectoryTaskStore(_taskDir);
+        }
+        if (Configuration.TASK_STORE_LOG.equals(_taskStore) == false){
+            throw new CommunityDetectionException("Unknown value for "
+                    + Configuration.TASK_STORE + ": " + _taskStore);
+        }
+        if (_clusterEnabled || _reaperTTL > 0 || _reaperMaxBytes > 0){
+            _logger.warn("Task store " + _taskStore + " is not supported in cluster mode"
+                    + " or with task reaper, using " + Configuration.TASK_STORE_DIRECTORY);
+            return new DirectoryTaskStore(_taskDir);
+        }
+        LogTaskStore taskStore = new LogTaskStore(_taskDir);
+        try {
+            taskStore.open();
+        } catch(IOException io){
+            throw new CommunityDetectionException("Unable to open task store: " + io.getMessage());
+        }
+        return taskStore;
+    }
+    
+    /**
+     * Creates client to run containers via the Docker Engine API
+     * @return client or {@code null} if no socket is configured, the socket
+     *         does not exist, or this runtime lacks unix domain sockets in
+     *         which case the docker command line tool is used
+     */
+    protected DockerEngineClient getDockerEngineClient(){
+        if (_dockerSocket == null || _dockerSocket.isEmpty()){
+            return null;
+        }
+        if (DockerEngineClient.isSupported() == false){
+            _logger.info("Unix domain sockets require Java 16 or later, running"
+                    + " containers via " + _dockerCmd);
+            return null;
+        }
+        if (new File(_dockerSocket).exists() == false){
+            _logger.info(_dockerSocket + " does not exist, running containers via "
+                    + _dockerCmd);
+            return null;
+        }
+        return new DockerEngineClient(_dockerSocket);
+    }
+    
+    /**
+     * Creates allocator that pins containers to cpus
+     * @return allocator or {@code null} if no cpus are configured
+     * @throws CommunityDetectionException if the list of cpus is invalid
+     */
+    protected CpusetAllocator getCpusetAllocator() throws CommunityDetectionException {
+        List<Integer> cpus = CpusetAllocator.parse(_cpusetCpus);
+        if (cpus.isEmpty()){
+            return null;
+        }
+        _logger.debug("Pinning containers to cpus " + CpusetAllocator.format(cpus));
+        return new CpusetAllocator(cpus);
+    }
+    
+    /**
+     * Creates pool of workers shared by algorithms without a dedicated pool.
+     * If {@link TaskThreads#isVirtual()} each task gets its own virtual
+     * thread and a semaphore bounds tasks running at once, otherwise
+     * a fixed pool of platform threads is used
+     * @return pool with {@link Configuration#getNumberWorkers()} workers
+     */
+    protected ExecutorService getExecutorService(){
+        if (TaskThreads.isVirtual()){
+            _logger.debug("Creating virtual thread executor service with: "
+                    + Integer.toString(_numWorkers) + " workers");
+            return new ThreadPerTaskExecutor(TaskThreads.newThreadFactory("cd-task"), _numWorkers);
+        }
+        _logger.debug("Creating executor service with: " + Integer.toString(_numWorkers) + " workers");
+        return new ThreadPoolExecutor(_numWorkers, _numWorkers, 0L,
+                TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+    }
+    
+    /**
+     * Creates CommunityDetectionEngine with a threadpool to process requests
+     * whose number of workers is adjusted by an {@link AdaptiveConcurrencyController}
+     * if {@link Configuration#getMaxWorkers()} is set
      * @throws CommunityDetectionException if there is an error
      * @return {@link org.ndexbio.communitydetection.rest.engine.CommunityDetectionEngine} object 
      *         ready to service requests
      */
     public CommunityDetectionEngine getCommunityDetectionEngine() throws CommunityDetectionException {
-        _logger.debug("Creating executor service with: " + Integer.toString(_numWorkers) + " workers");
-        ExecutorService es = Executors.newFixedThreadPool(_numWorkers);
+        ExecutorService es = getExecutorService();
         CommunityDetectionEngineImpl engine = new CommunityDetectionEngineImpl(es, _taskDir,
                 _dockerCmd, _algorithms, _validator);
+        engine.setAlgorithmExecutionSettings(_executionSettings);
+        engine.setAlgorithmExecutorServices(getAlgorithmExecutorServices());
+        engine.setClientWeights(_clientWeights);
+        engine.setTaskStatusStore(new TaskStatusStore(_statusCacheMaxEntries,
+                TimeUnit.SECONDS.toMillis(_statusCacheTTL)));
+        if (_parsedResultCacheMaxBytes > 0){
+            engine.setParsedResultCache(new ParsedResultCache(_parsedResultCacheMaxBytes));
+        }
+        engine.setTaskStore(getTaskStore());
+        if (_admissionMaxQueuedTasks > 0 || _admissionMaxPendingBytes > 0
+                || _admissionMaxDiskFull > 0){
+            engine.setAdmissionController(new AdmissionController(_admissionMaxQueuedTasks,
+                    _admissionMaxPendingBytes, _admissionMaxDiskFull));
+        }
+        if (_resultCacheMaxEntries > 0){
+            _logger.debug("Enabling result cache with up to "
+                    + Integer.toString(_resultCacheMaxEntries) + " entries");
+            engine.setResultCache(new CommunityDetectionResultCache(new File(_taskDir,
+                    RESULT_CACHE_DIR), _resultCacheMaxEntries,
+                    TimeUnit.SECONDS.toMillis(_resultCacheTTL)));
+        }
+        if (_poolSize > 0){
+            engine.setContainerPools(getContainerPools());
+        }
+        engine.setDockerEngineClient(getDockerEngineClient());
+        engine.setCpusetAllocator(getCpusetAllocator());
+        if (_maxWorkers > 0){
+            _logger.debug("Adjusting number of workers between " + Integer.toString(_minWorkers)
+                    + " and " + Integer.toString(_maxWorkers));
+            engine.setConcurrencyController(new AdaptiveConcurrencyController(es,
+                    _minWorkers, _maxWorkers), TimeUnit.SECONDS.toMillis(_workersAdjustInterval));
+        }
+        if (_clusterEnabled){
+            _logger.debug("Enabling cluster mode with lease time of "
+                    + Long.toString(_clusterLeaseTTL) + " seconds");
+            engine.setClusterTaskQueue(new ClusterTaskQueue(_taskDir,
+                    TimeUnit.SECONDS.toMillis(_clusterLeaseTTL)), _numWorkers);
+        } else if (_journalEnabled){
+            engine.setTaskJournal(new TaskJournal(_taskDir));
+            engine.recoverTasks(_journalRetryRunning);
+        }
+        if (_reaperTTL > 0 || _reaperMaxBytes > 0){
+            if (_clusterEnabled){
+                // every server would keep its own index of the shared directory
+                _logger.warn("Task reaper is not supported in cluster mode, completed tasks will not be removed");
+            } else {
+                TaskReaper reaper = new TaskReaper(_taskDir, TimeUnit.SECONDS.toMillis(_reaperTTL),
+                        _reaperMaxBytes);
+                reaper.load();
+                engine.setTaskReaper(reaper, TimeUnit.SECONDS.toMillis(_reaperInterval));
+            }
+        }
         return engine;
     }
+    
+    /**
+     * Creates a dedicated pool of workers for each algorithm whose
+     * execution settings set a max concurrency. If a queue capacity
+     * is also set, requests beyond it are rejected
+     * @return map of algorithm name to pool
+     */
+    protected Map<String, ThreadPoolExecutor> getAlgorithmExecutorServices(){
+        HashMap<String, ThreadPoolExecutor> pools = new HashMap<>();
+        if (_executionSettings == null){
+            return pools;
+        }
+        for (Map.Entry<String, AlgorithmExecutionSettings> entry : _executionSettings.entrySet()){
+            AlgorithmExecutionSettings settings = entry.getValue();
+            if (settings == null || settings.getMaxConcurrency() <= 0){
+                continue;
+            }
+            _logger.debug("Creating pool of " + Integer.toString(settings.getMaxConcurrency())
+                    + " workers for " + entry.getKey());
+            BlockingQueue<Runnable> queue;
+            if (settings.getQueueCapacity() > 0){
+                queue = new ArrayBlockingQueue<>(settings.getQueueCapacity());
+            } else {
+                queue = new LinkedBlockingQueue<>();
+            }
+            pools.put(entry.getKey(), new ThreadPoolExecutor(settings.getMaxConcurrency(),
+                    settings.getMaxConcurrency(), 0L, TimeUnit.MILLISECONDS, queue));
+        }
+        return pools;
+    }
+    
+    /**
+     * Creates and starts a pool of warm containers for each algorithm that
+     * should be pooled. Any pool that fails to start is logged and skipped
+     * so that algorithm is run via docker run
+     * @return map of algorithm name to container pool
+     */
+    protected Map<String, DockerContainerPool> getContainerPools(){
+        HashMap<String, DockerContainerPool> pools = new HashMap<>();
+        if (_algorithms == null || _algorithms.getAlgorithms() == null){
+            return pools;
+        }
+        for (CommunityDetectionAlgorithm cda : _algorithms.getAlgorithms().values()){
+            if (_poolAlgorithms != null && _poolAlgorithms.isEmpty() == false
+                    && _poolAlgorithms.contains(cda.getName()) == false){
+                continue;
+            }
+            DockerContainerPool pool = new DockerContainerPool(_dockerCmd,
+                    cda.getDockerImage(), _taskDir, _mountOptions, _poolSize,
+                    _poolRecycleTasks, CommandLineRunnerImpl::new);
+            AlgorithmExecutionSettings settings = _executionSettings == null ? null
+                    : _executionSettings.get(cda.getName());
+            if (settings != null){
+                pool.setContainerLimits(settings.toContainerLimits());
+            }
+            try {
+                pool.start();
+                pools.put(cda.getName(), pool);
+            } catch(CommunityDetectionException cde){
+                _logger.error("Unable to start container pool for " + cda.getName()
+                        + ", it will be run via docker run", cde);
+                pool.shutdown();
+            }
+        }
+        return pools;
+    }
 }
@@ -0,0 +1,260 @@
+package org.ndexbio.communitydetection.rest.engine;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Predicate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Queue of tasks shared by every server using the same task directory.
+ *
+ * A submitted task is written as a {@link TaskJournal.Entry} to
+ * {@link #QUEUE_DIR}. A server claims a task by renaming its file into
+ * {@link #LEASE_DIR}. Rename is atomic so only one server can win a
+ * task. The owner renews its leases by updating the modification time
+ * of the lease files. A lease that is not renewed within the lease time
+ * is renamed back into the queue by another server, so tasks of a dead
+ * server are picked up by the survivors.
+ *
+ * @author churas
+ */
+public class ClusterTaskQueue {
+
+    static Logger _logger = LoggerFactory.getLogger(ClusterTaskQueue.class);
+
+    /**
+     * Name of directory under task directory holding queued tasks
+     */
+    public static final String QUEUE_DIR = "cdqueue";
+
+    /**
+     * Name of directory under task directory holding claimed tasks
+     */
+    public static final String LEASE_DIR = "cdleases";
+
+    /**
+     * Suffix of queue and lease files
+     */
+    public static final String TASK_SUFFIX = ".json";
+
+    private final File _queueDir;
+    private final File _leaseDir;
+    private final long _leaseMillis;
+    private final ObjectMapper _mapper;
+
+    /**
+     * Constructor
+     * @param taskDir task directory shared by all servers
+     * @param leaseMillis time in milliseconds a lease remains valid
+     *                    without being renewed
+     */
+    public ClusterTaskQueue(final String taskDir, long leaseMillis){
+        _queueDir = new File(taskDir, QUEUE_DIR);
+        _leaseDir = new File(taskDir, LEASE_DIR);
+        _leaseMillis = leaseMillis;
+        _mapper = new ObjectMapper();
+    }
+
+    /**
+     * Gets time a lease remains valid without being renewed
+     * @return time in milliseconds
+     */
+    public long getLeaseMillis(){
+        return _leaseMillis;
+    }
+
+    /**
+     * Adds task to queue. The entry is written to a temp file and renamed
+     * into the queue so other servers never see a partial entry
+     * @param entry submitted entry for task
+     * @throws IOException if there was an error writing the entry
+     */
+    public void enqueue(final TaskJournal.Entry entry) throws IOException {
+        createDirectory(_queueDir);
+        createDirectory(_leaseDir);
+        File tmpFile = new File(_queueDir, "." + entry.getId() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmpFile)){
+            _mapper.writeValue(out, entry);
+        }
+        Files.move(tmpFile.toPath(), getQueueFile(entry.getId()).toPath(),
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Claims up to {@code max} tasks, oldest first
+     * @param max maximum number of tasks to claim
+     * @return entries of claimed tasks
+     */
+    public List<TaskJournal.Entry> claim(int max){
+        List<TaskJournal.Entry> claimed = new ArrayList<>();
+        if (max <= 0){
+            return claimed;
+        }
+        File[] queued = _queueDir.listFiles((dir, name) -> name.endsWith(TASK_SUFFIX));
+        if (queued == null){
+            return claimed;
+        }
+        Arrays.sort(queued, Comparator.comparingLong(File::lastModified));
+        for (File queueFile : queued){
+            if (claimed.size() >= max){
+                break;
+            }
+            String id = getId(queueFile);
+            File leaseFile = getLeaseFile(id);
+            try {
+                // set time before rename so the new lease is never seen
+                // as expired by other servers
+                queueFile.setLastModified(System.currentTimeMillis());
+                Files.move(queueFile.toPath(), leaseFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch(NoSuchFileException nsfe){
+                // another server claimed it first
+                continue;
+            } catch(IOException io){
+                _logger.error("Unable to claim task " + id, io);
+                continue;
+            }
+            try {
+                claimed.add(_mapper.readValue(leaseFile, TaskJournal.Entry.class));
+            } catch(IOException io){
+                _logger.error("Unable to read claimed task " + id + " removing it", io);
+                leaseFile.delete();
+            }
+        }
+        return claimed;
+    }
+
+    /**
+     * Renews leases of {@code ids}
+     * @param ids ids of tasks claimed by this server
+     * @return ids whose lease no longer exists because the task was
+     *         deleted or claimed by another server after the lease expired
+     */
+    public List<String> renew(final Collection<String> ids){
+        List<String> lost = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (String id : ids){
+            if (getLeaseFile(id).setLastModified(now) == false){
+                lost.add(id);
+            }
+        }
+        return lost;
+    }
+
+    /**
+     * Moves leases that have not been renewed within the lease time
+     * back to the queue. Leases of tasks that have a result are removed
+     * @param owned ids of tasks claimed by this server which are skipped
+     * @param resultExists checks if task with given id has a result
+     * @return number of tasks put back in queue
+     */
+    public int requeueExpired(final Collection<String> owned,
+            final Predicate<String> resultExists){
+        File[] leases = _leaseDir.listFiles((dir, name) -> name.endsWith(TASK_SUFFIX));
+        if (leases == null){
+            return 0;
+        }
+        long expired = System.currentTimeMillis() - _leaseMillis;
+        int count = 0;
+        for (File leaseFile : leases){
+            String id = getId(leaseFile);
+            if (owned.contains(id) || leaseFile.lastModified() > expired){
+                continue;
+            }
+            if (resultExists.test(id)){
+                leaseFile.delete();
+                continue;
+            }
+            try {
+                Files.move(leaseFile.toPath(), getQueueFile(id).toPath(),
+                        StandardCopyOption.ATOMIC_MOVE);
+                _logger.info("Lease on task " + id + " expired, returning it to queue");
+                count++;
+            } catch(NoSuchFileException nsfe){
+                // renewed under a new claim, deleted, or requeued by another server
+            } catch(IOException io){
+                _logger.error("Unable to requeue task " + id, io);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Removes lease of task {@code id}
+     * @param id id of task
+     */
+    public void release(final String id){
+        getLeaseFile(id).delete();
+    }
+
+    /**
+     * Removes task {@code id} from queue and leases
+     * @param id id of task
+     * @return {@code true} if task was queued or leased
+     */
+    public boolean remove(final String id){
+        boolean queued = getQueueFile(id).delete();
+        boolean leased = getLeaseFile(id).delete();
+        return queued || leased;
+    }
+
+    /**
+     * Gets entry of task {@code id} if it is queued
+     * @param id id of task
+     * @return entry or {@code null} if not queued
+     */
+    public TaskJournal.Entry getQueued(final String id){
+        return readEntry(getQueueFile(id));
+    }
+
+    /**
+     * Gets entry of task {@code id} if it is claimed by any server
+     * @param id id of task
+     * @return entry or {@code null} if not claimed
+     */
+    public TaskJournal.Entry getLeased(final String id){
+        return readEntry(getLeaseFile(id));
+    }
+
+    private TaskJournal.Entry readEntry(final File taskFile){
+        if (taskFile.isFile() == false){
+            return null;
+        }
+        try {
+            return _mapper.readValue(taskFile, TaskJournal.Entry.class);
+        } catch(IOException io){
+            // file was moved while reading
+            _logger.debug("Unable to read " + taskFile.getAbsolutePath(), io);
+            return null;
+        }
+    }
+
+    private File getQueueFile(final String id){
+        return new File(_queueDir, id + TASK_SUFFIX);
+    }
+
+    private File getLeaseFile(final String id){
+        return new File(_leaseDir, id + TASK_SUFFIX);
+    }
+
+    private static String getId(final File taskFile){
+        String name = taskFile.getName();
+        return name.substring(0, name.length() - TASK_SUFFIX.length());
+    }
+
+    private static void createDirectory(final File dir) throws IOException {
+        if (dir.isDirectory() == false && dir.mkdirs() == false && dir.isDirectory() == false){
+            throw new IOException("Unable to create directory: " + dir.getAbsolutePath());
+        }
+    }
+}
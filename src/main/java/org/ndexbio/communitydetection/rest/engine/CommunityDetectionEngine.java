@@ -20,6 +20,19 @@ public interface CommunityDetectionEngine extends Runnable {
      * @return UUID as a string that is an identifier for query
      */
     public String request(CommunityDetectionRequest request) throws CommunityDetectionException;
+
+    /**
+     * Submits request for processing on behalf of {@code clientId}. Tasks
+     * with a higher {@code priority} run first and tasks of equal priority
+     * share workers fairly across clients
+     * @param request to process
+     * @param clientId id of client submitting request, can be {@code null}
+     * @param priority priority of task, 0 is normal
+     * @throws CommunityDetectionException if there is an error
+     * @return UUID as a string that is an identifier for query
+     */
+    public String request(CommunityDetectionRequest request, final String clientId,
+            int priority) throws CommunityDetectionException;
      
     /**
      * Gets query results
@@ -30,6 +43,18 @@ public interface CommunityDetectionEngine extends Runnable {
      */
     public CommunityDetectionResult getResult(final String id) throws CommunityDetectionException;
     
+    /**
+     * Opens the persisted result of a finished task as JSON so it can be
+     * sent to the caller without being parsed, whichever way results
+     * are stored
+     * @param id id of task
+     * @return result, which the caller must close, or {@code null} if the
+     *         task is still running or has no persisted result, in which
+     *         case {@link #getResult(java.lang.String)} should be used
+     * @throws CommunityDetectionException if there is an error
+     */
+    public StoredResult openResult(final String id) throws CommunityDetectionException;
+    
     
     /**
      * Gets query status
@@ -46,6 +71,27 @@ public interface CommunityDetectionEngine extends Runnable {
      */
     public void delete(final String id) throws CommunityDetectionException;
  
+    /**
+     * Registers {@code listener} to be notified once task with {@code id}
+     * completes, fails, or is deleted. If the task has already finished
+     * {@code listener} is notified before this method returns
+     * @param id id of task
+     * @param listener listener to notify
+     * @throws CommunityDetectionException if {@code id} or {@code listener}
+     *         is {@code null} or no task is found
+     */
+    public void addTaskListener(final String id,
+            final CommunityDetectionTaskListener listener) throws CommunityDetectionException;
+    
+    /**
+     * Removes {@code listener} so it is no longer notified about task
+     * {@code id}. Does nothing if {@code listener} is not registered
+     * @param id id of task
+     * @param listener listener to remove
+     */
+    public void removeTaskListener(final String id,
+            final CommunityDetectionTaskListener listener);
+ 
     
     /**
      * Gets community detection algorithms supported by this service
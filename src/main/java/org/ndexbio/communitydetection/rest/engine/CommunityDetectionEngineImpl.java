@@ -1,25 +1,44 @@
 package org.ndexbio.communitydetection.rest.engine;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.TextNode;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.lang.management.OperatingSystemMXBean;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import org.apache.commons.io.FileUtils;
+import org.ndexbio.communitydetection.rest.engine.algorithms.HeatDiffusionCommunityDetectionRunner;
+import org.ndexbio.communitydetection.rest.engine.algorithms.LouvainCommunityDetectionRunner;
 import org.ndexbio.communitydetection.rest.engine.util.CommunityDetectionRequestValidator;
 import org.ndexbio.communitydetection.rest.engine.util.DockerCommunityDetectionRunner;
+import org.ndexbio.communitydetection.rest.engine.util.CpusetAllocator;
+import org.ndexbio.communitydetection.rest.engine.util.DockerContainerPool;
+import org.ndexbio.communitydetection.rest.engine.util.DockerEngineClient;
+import org.ndexbio.communitydetection.rest.engine.util.InputFileCommunityDetectionRequest;
+import org.ndexbio.communitydetection.rest.engine.util.ThreadPerTaskExecutor;
 import org.ndexbio.communitydetection.rest.model.CommunityDetectionAlgorithm;
 import org.ndexbio.communitydetection.rest.model.CommunityDetectionAlgorithms;
 import org.ndexbio.communitydetection.rest.model.CommunityDetectionRequest;
@@ -46,25 +65,90 @@ public class CommunityDetectionEngineImpl implements CommunityDetectionEngine {
     
     public static final String CDRESULT_JSON_FILE = "cdresult.json";
     
+    /**
+     * Status of finished task without its result, written before
+     * {@link #CDRESULT_JSON_FILE}
+     */
+    public static final String CDSTATUS_JSON_FILE = "cdstatus.json";
+    
     static Logger _logger = LoggerFactory.getLogger(CommunityDetectionEngineImpl.class);
 
     private String _taskDir;
     private boolean _shutdown;
     private ExecutorService _executorService;
-    private ConcurrentHashMap<String, Future> _futureTaskMap;
+    private ConcurrentHashMap<String, CommunityDetectionFutureTask> _futureTaskMap;
+    private LinkedBlockingQueue<CommunityDetectionFutureTask> _completedTaskQueue;
     private AtomicInteger _completedTasks;
     private AtomicInteger _queuedTasks;
     private AtomicInteger _canceledTasks;
     private CommunityDetectionAlgorithms _algorithms;
     private CommunityDetectionRequestValidator _validator;
     private String _dockerCmd;
+    private CommunityDetectionResultCache _resultCache;
+    private Map<String, DockerContainerPool> _containerPools;
+    private DockerEngineClient _dockerClient;
+    private CpusetAllocator _cpusetAllocator;
+    private Map<String, AlgorithmExecutionSettings> _executionSettings;
+    private Map<String, ThreadPoolExecutor> _algorithmExecutors;
+    private Map<String, Integer> _clientWeights;
+    
+    /**
+     * Schedulers feeding tasks to the executor services keyed by
+     * algorithm name, or empty string for the shared executor service
+     */
+    private ConcurrentHashMap<String, FairTaskScheduler> _taskSchedulers = new ConcurrentHashMap<>();
+    
+    /**
+     * Counts of tasks keyed by algorithm name
+     */
+    private ConcurrentHashMap<String, AlgorithmTaskCounter> _algorithmTaskCounters = new ConcurrentHashMap<>();
+    
+    /**
+     * Number of tasks of an algorithm that are queued or running and the
+     * number of those running
+     */
+    private static class AlgorithmTaskCounter {
+        private final AtomicInteger _outstanding = new AtomicInteger(0);
+        private final AtomicInteger _running = new AtomicInteger(0);
+    }
+    private TaskJournal _taskJournal;
+    private AdmissionController _admissionController;
+    
+    /**
+     * Bytes of input of tasks queued or running and the size of each
+     * keyed by task id
+     */
+    private AtomicLong _pendingInputBytes = new AtomicLong(0);
+    private ConcurrentHashMap<String, Long> _pendingInputSizes = new ConcurrentHashMap<>();
+    private ClusterTaskQueue _clusterQueue;
+    private TaskReaper _taskReaper;
+    private long _reapIntervalMillis;
+    private long _lastReap = 0;
+    private AdaptiveConcurrencyController _concurrencyController;
+    private long _concurrencyIntervalMillis;
+    private long _lastConcurrencyAdjustment = 0;
+    private int _maxLocalTasks;
+    private long _lastLeaseRenewal = 0;
+    
+    /**
+     * Ids of tasks claimed from cluster queue that this server is running
+     */
+    private Set<String> _claimedTasks = ConcurrentHashMap.newKeySet();
         
     /**
-     * This should be a map of <query UUID> => EnrichmentQueryResults object
+     * Results of tasks queued or running and status of tasks
+     * recently finished
+     */
+    private TaskStatusStore _taskStatusStore;
+    private TaskStore _taskStore;
+    private ParsedResultCache _parsedResultCache;
+    
+    /**
+     * Listeners waiting on tasks keyed by task id
      */
-    private ConcurrentHashMap<String, CommunityDetectionResult> _results;
+    private ConcurrentHashMap<String, List<CommunityDetectionTaskListener>> _taskListeners;
 
-    private long _threadSleep = 10;
+    private long _threadSleep = 1000;
     
     /**
      * Constructor 
@@ -82,79 +166,387 @@ public class CommunityDetectionEngineImpl implements CommunityDetectionEngine {
         _executorService = es;
         _shutdown = false;
         _futureTaskMap = new ConcurrentHashMap<>();
+        _completedTaskQueue = new LinkedBlockingQueue<>();
         _taskDir = taskDir;
         _dockerCmd = dockerCmd;
         _algorithms = algorithms;
         _validator = validator;
-        _results = new ConcurrentHashMap<>();
+        _taskStatusStore = new TaskStatusStore();
+        _taskStore = new DirectoryTaskStore(taskDir);
+        _taskListeners = new ConcurrentHashMap<>();
         _completedTasks = new AtomicInteger(0);
         _queuedTasks = new AtomicInteger(0);
         _canceledTasks = new AtomicInteger(0);
     }
     
     /**
-     * Sets milliseconds thread should sleep if no work needs to be done.
+     * Sets maximum milliseconds {@link #run()} will wait for a task to
+     * complete before checking if {@link #shutdown()} has been invoked.
+     * Completed tasks are processed as soon as they finish regardless
+     * of this value.
      * @param sleepTime time in milliseconds
      */
     public void updateThreadSleepTime(long sleepTime){
         _threadSleep = sleepTime;
     }
-
-    protected void threadSleep(){
-        try {
-            Thread.sleep(_threadSleep);
-        }
-        catch(InterruptedException ie){
-
-        }
+    
+    /**
+     * Sets cache used to return results for identical requests without
+     * running the algorithm again. If {@code null}, caching is disabled
+     * @param resultCache cache of results
+     */
+    public void setResultCache(CommunityDetectionResultCache resultCache){
+        _resultCache = resultCache;
+    }
+    
+    /**
+     * Sets store holding results of tasks queued or running and status
+     * of tasks recently finished. Must be set before any task is started
+     * @param taskStatusStore store of task state
+     */
+    public void setTaskStatusStore(TaskStatusStore taskStatusStore){
+        _taskStatusStore = taskStatusStore;
+    }
+    
+    /**
+     * Sets store results of finished tasks are saved to. Defaults to
+     * {@link DirectoryTaskStore}. Must be set before any task is started
+     * @param taskStore store of results
+     */
+    public void setTaskStore(TaskStore taskStore){
+        _taskStore = taskStore;
+    }
+    
+    /**
+     * Sets cache of parsed results of finished tasks so reading a result
+     * more than once does not parse its file again. If {@code null},
+     * the result file is parsed on every read
+     * @param parsedResultCache cache of parsed results
+     */
+    public void setParsedResultCache(ParsedResultCache parsedResultCache){
+        _parsedResultCache = parsedResultCache;
+    }
+    
+    /**
+     * Sets pools of warm containers keyed by algorithm name. Algorithms
+     * without a pool are run via {@code docker run}
+     * @param containerPools map of algorithm name to container pool
+     */
+    public void setContainerPools(Map<String, DockerContainerPool> containerPools){
+        _containerPools = containerPools;
+    }
+    
+    /**
+     * Sets client used to run algorithms via the Docker Engine API instead
+     * of forking {@code docker run}. If {@code null}, the docker command
+     * line tool is used
+     * @param dockerClient client
+     */
+    public void setDockerEngineClient(DockerEngineClient dockerClient){
+        _dockerClient = dockerClient;
+    }
+    
+    /**
+     * Sets allocator used to pin containers of algorithms that set
+     * {@link AlgorithmExecutionSettings#getCpus()} to disjoint sets of
+     * cpus. If {@code null}, containers are not pinned
+     * @param cpusetAllocator allocator
+     */
+    public void setCpusetAllocator(CpusetAllocator cpusetAllocator){
+        _cpusetAllocator = cpusetAllocator;
+    }
+    
+    /**
+     * Sets journal tasks are recorded in so they can be recovered
+     * via {@link #recoverTasks(boolean)} after a restart. If {@code null},
+     * tasks are only kept in memory
+     * @param taskJournal journal
+     */
+    public void setTaskJournal(TaskJournal taskJournal){
+        _taskJournal = taskJournal;
+    }
+    
+    /**
+     * Sets limits checked before a request is accepted. If {@code null},
+     * every valid request is accepted
+     * @param admissionController limits on queue depth, pending input
+     *                            and disk usage
+     */
+    public void setAdmissionController(AdmissionController admissionController){
+        _admissionController = admissionController;
     }
     
     /**
-     * Processes any query tasks, looping until {@link #shutdown()} is invoked
+     * Sets reaper that deletes completed tasks once they expire or
+     * exceed the disk budget. If {@code null}, completed tasks are
+     * kept until deleted by the caller
+     * @param taskReaper reaper, should already be loaded
+     * @param reapIntervalMillis time in milliseconds between runs of reaper
+     */
+    public void setTaskReaper(TaskReaper taskReaper, long reapIntervalMillis){
+        _taskReaper = taskReaper;
+        _reapIntervalMillis = reapIntervalMillis;
+    }
+    
+    /**
+     * Sets controller that adjusts number of workers of the executor
+     * service passed to the constructor from measured load, memory,
+     * and task latency. If {@code null}, the number of workers is fixed
+     * @param concurrencyController controller, must adjust executor
+     *                              service passed to constructor
+     * @param intervalMillis time in milliseconds between adjustments
+     */
+    public void setConcurrencyController(AdaptiveConcurrencyController concurrencyController,
+            long intervalMillis){
+        _concurrencyController = concurrencyController;
+        _concurrencyIntervalMillis = intervalMillis;
+    }
+    
+    /**
+     * Puts engine in cluster mode where requests are added to
+     * {@code clusterQueue} and every server sharing the task directory
+     * claims tasks from it. If {@code null}, tasks are run by the server
+     * that received them
+     * @param clusterQueue queue shared by all servers
+     * @param maxLocalTasks maximum number of tasks this server claims
+     *                      at once, usually the number of workers
+     */
+    public void setClusterTaskQueue(ClusterTaskQueue clusterQueue, int maxLocalTasks){
+        _clusterQueue = clusterQueue;
+        _maxLocalTasks = maxLocalTasks;
+    }
+    
+    /**
+     * Sets dedicated pools of workers keyed by algorithm name so a burst
+     * of tasks for one algorithm cannot starve the others. Algorithms
+     * without a pool use the executor service passed to the constructor
+     * @param algorithmExecutors map of algorithm name to pool
+     */
+    public void setAlgorithmExecutorServices(Map<String, ThreadPoolExecutor> algorithmExecutors){
+        _algorithmExecutors = algorithmExecutors;
+    }
+    
+    /**
+     * Sets share of workers given to each client relative to other
+     * clients when tasks are waiting. Clients not in the map have a
+     * weight of 1. Must be called before any requests are made
+     * @param clientWeights map of client id to weight
+     */
+    public void setClientWeights(Map<String, Integer> clientWeights){
+        _clientWeights = clientWeights;
+    }
+    
+    /**
+     * Sets execution settings keyed by algorithm name. Algorithms
+     * without settings are run via docker
+     * @param executionSettings map of algorithm name to settings
+     */
+    public void setAlgorithmExecutionSettings(Map<String, AlgorithmExecutionSettings> executionSettings){
+        _executionSettings = executionSettings;
+    }
+    
+    /**
+     * Processes completed tasks as they finish, looping until
+     * {@link #shutdown()} is invoked. The task store is compacted on a
+     * separate thread since copying a large log would otherwise hold up
+     * completed tasks
      */
     @Override
     public void run() {
+        ScheduledExecutorService compactor = Executors.newSingleThreadScheduledExecutor((r) -> {
+            Thread t = new Thread(r, "cd-task-store-compact");
+            t.setDaemon(true);
+            return t;
+        });
+        compactor.scheduleWithFixedDelay(this::compactTaskStore, _threadSleep,
+                _threadSleep, TimeUnit.MILLISECONDS);
         while(_shutdown == false){
-            Future f;
-            String taskId;
-            int queuedCount = 0;
-            Iterator<String> idItr = _futureTaskMap.keySet().iterator();
-            while(idItr.hasNext()){
-                taskId = idItr.next();
-                
-                f = _futureTaskMap.get(taskId);
-                if (f == null){
-                    continue;
-                }
-                if (f.isCancelled()){
-                    _futureTaskMap.remove(taskId);
-                    _canceledTasks.incrementAndGet();
-                } else if (f.isDone()){
-                    _logger.debug("Found a completed or failed task");
-                    try {
-                        CommunityDetectionResult cdr = (CommunityDetectionResult) f.get();
-                        saveCommunityDetectionResultToFilesystem(cdr);
-                        _completedTasks.incrementAndGet();
-                    } catch (InterruptedException ex) {
-                        _logger.error("Got interrupted exception", ex);
-                    } catch (ExecutionException ex) {
-                        _logger.error("Got execution exception", ex);
-                    } catch (CancellationException ex){
-                        _logger.error("Got cancellation exception", ex);
-                    }
-                    _futureTaskMap.remove(taskId);
-                } else {
-                    queuedCount++;
-                }
+            CommunityDetectionFutureTask task;
+            try {
+                task = _completedTaskQueue.poll(_threadSleep, TimeUnit.MILLISECONDS);
+            } catch(InterruptedException ie){
+                continue;
+            }
+            if (task != null){
+                processCompletedTask(task);
+            }
+            if (_clusterQueue != null){
+                processClusterQueue();
             }
-            if (_queuedTasks.get() != queuedCount){
-                _queuedTasks.set(queuedCount);
+            if (_taskReaper != null){
+                reapTasks();
+            }
+            if (_concurrencyController != null){
+                adjustConcurrency();
+            }
+            if (_taskJournal != null){
+                compactJournal();
             }
-            threadSleep();
         }
         _logger.debug("Shutdown was invoked");
+        // not interrupted since that would close channel of store, a
+        // compaction still copying stops once store is closed below
+        compactor.shutdown();
+        if (_containerPools != null){
+            for (DockerContainerPool pool : _containerPools.values()){
+                pool.shutdown();
+            }
+        }
+        if (_dockerClient != null){
+            _dockerClient.close();
+        }
+        if (_taskJournal != null){
+            _taskJournal.close();
+        }
+        if (_taskReaper != null){
+            _taskReaper.save();
+        }
+        _taskStore.close();
         logServerStatus(null);
     }
+    
+    /**
+     * Updates counters for completed or canceled {@code task} and if a 
+     * result was generated saves it to the filesystem
+     * @param task Task that is done
+     */
+    protected void processCompletedTask(final CommunityDetectionFutureTask task){
+        _futureTaskMap.remove(task.getId());
+        _claimedTasks.remove(task.getId());
+        if (task.getAlgorithm() != null){
+            getAlgorithmTaskCounter(task.getAlgorithm())._outstanding.decrementAndGet();
+        }
+        _queuedTasks.decrementAndGet();
+        removePendingInput(task.getId());
+        if (_admissionController != null){
+            _admissionController.taskCompleted();
+        }
+        CommunityDetectionResultCache.InFlightTask inFlight = null;
+        if (_resultCache != null){
+            inFlight = _resultCache.completeInFlight(task.getId());
+        }
+        if (task.isCancelled()){
+            _canceledTasks.incrementAndGet();
+            if (inFlight != null){
+                // followers were detached above and would otherwise wait forever
+                failFollowers(inFlight, new CommunityDetectionException("Task "
+                        + task.getId() + " whose result this task was waiting on was canceled"));
+            }
+            return;
+        }
+        _logger.debug("Found a completed or failed task");
+        try {
+            CommunityDetectionResult cdr = task.get();
+            if (_concurrencyController != null && cdr != null){
+                _concurrencyController.taskCompleted(cdr.getWallTime());
+            }
+            if (inFlight != null){
+                processInFlightResult(inFlight, cdr);
+            }
+            if (inFlight != null && inFlight.isPrimaryDeleted()){
+                _taskStatusStore.remove(task.getId());
+                deleteTaskDirectory(task.getId());
+            } else {
+                saveCommunityDetectionResultToFilesystem(cdr);
+            }
+            _completedTasks.incrementAndGet();
+        } catch (InterruptedException ex) {
+            _logger.error("Got interrupted exception", ex);
+        } catch (ExecutionException ex) {
+            _logger.error("Got execution exception", ex);
+            if (inFlight != null){
+                failFollowers(inFlight, ex);
+            }
+            saveFailedResult(task.getId(), ex);
+        } catch (CancellationException ex){
+            _logger.error("Got cancellation exception", ex);
+        }
+        if (_taskStatusStore.isActive(task.getId())){
+            // interrupted or returned no result so nothing was saved
+            CommunityDetectionException noResult = new CommunityDetectionException("Task ended without a result");
+            if (inFlight != null){
+                failFollowers(inFlight, noResult);
+            }
+            saveFailedResult(task.getId(), noResult);
+        }
+    }
+
+    /**
+     * Adds {@code cdr} to result cache and saves a copy of it
+     * for every follower of {@code inFlight}
+     * @param inFlight in-flight task that completed
+     * @param cdr result of task
+     */
+    protected void processInFlightResult(final CommunityDetectionResultCache.InFlightTask inFlight,
+            final CommunityDetectionResult cdr){
+        if (cdr == null){
+            return;
+        }
+        _resultCache.put(inFlight.getKey(), cdr);
+        for (String followerId : inFlight.getFollowerIds()){
+            CommunityDetectionResult followerResult = _taskStatusStore.getActive(followerId);
+            long startTime = followerResult == null ? cdr.getStartTime() : followerResult.getStartTime();
+            saveCopyOfResult(followerId, startTime, cdr);
+            _completedTasks.incrementAndGet();
+        }
+    }
+    
+    /**
+     * Saves a failed result for every follower of {@code inFlight}
+     * @param inFlight in-flight task that failed
+     * @param ex exception raised by task
+     */
+    protected void failFollowers(final CommunityDetectionResultCache.InFlightTask inFlight,
+            final Exception ex){
+        for (String followerId : inFlight.getFollowerIds()){
+            if (saveFailedResult(followerId, ex) == true){
+                _completedTasks.incrementAndGet();
+            }
+        }
+    }
+    
+    /**
+     * Marks in memory result of task {@code id} as failed and saves it
+     * to the filesystem
+     * @param id id of task
+     * @param ex exception raised by task
+     * @return {@code true} if result was saved or {@code false} if no
+     *         in memory result was found for task
+     */
+    protected boolean saveFailedResult(final String id, final Exception ex){
+        CommunityDetectionResult cdr = _taskStatusStore.getActive(id);
+        if (cdr == null){
+            return false;
+        }
+        cdr.setStatus(CommunityDetectionResult.FAILED_STATUS);
+        cdr.setMessage("Received error running task: " + ex.getMessage());
+        cdr.setProgress(100);
+        saveCopyOfResult(id, cdr.getStartTime(), cdr);
+        return true;
+    }
+    
+    /**
+     * Saves a copy of {@code cdr} to the filesystem under task {@code id}
+     * creating the task directory if needed
+     * @param id id of task
+     * @param startTime start time of task
+     * @param cdr result to copy
+     */
+    protected void saveCopyOfResult(final String id, long startTime,
+            final CommunityDetectionResult cdr){
+        CommunityDetectionResult copy = new CommunityDetectionResult(startTime);
+        copy.setId(id);
+        copy.setStatus(cdr.getStatus());
+        copy.setMessage(cdr.getMessage());
+        copy.setProgress(cdr.getProgress());
+        copy.setWallTime(cdr.getWallTime());
+        copy.setResult(cdr.getResult());
+        File thisTaskDir = new File(this._taskDir + File.separator + id);
+        if (thisTaskDir.isDirectory() == false && thisTaskDir.mkdirs() == false){
+            _logger.error("Unable to create directory: " + thisTaskDir.getAbsolutePath());
+        }
+        saveCommunityDetectionResultToFilesystem(copy);
+    }
 
     @Override
     public void shutdown() {
@@ -185,21 +577,156 @@ public class CommunityDetectionEngineImpl implements CommunityDetectionEngine {
     protected String getCommunityDetectionResultFilePath(final String id){
         return this._taskDir + File.separator + id + File.separator + CommunityDetectionEngineImpl.CDRESULT_JSON_FILE;
     }
-
+    
     protected void saveCommunityDetectionResultToFilesystem(final CommunityDetectionResult cdr){
         if (cdr == null){
             _logger.error("Received a null result, unable to save");
             return;
         }
         logResult(cdr);
-        File destFile = new File(getCommunityDetectionResultFilePath(cdr.getId()));
-        ObjectMapper mappy = new ObjectMapper();
-        try (FileOutputStream out = new FileOutputStream(destFile)){
-            mappy.writeValue(out, cdr);
+        boolean saved = false;
+        try {
+            _taskStore.putResult(cdr);
+            saved = true;
         } catch(IOException io){
-            _logger.error("Caught exception writing " + destFile.getAbsolutePath(), io);
+            _logger.error("Caught exception saving result of task " + cdr.getId(), io);
+        }
+        if (saved){
+            if (_parsedResultCache != null){
+                _parsedResultCache.put(cdr.getId(), cdr, _taskStore.getResultSize(cdr.getId()),
+                        _taskStore.getVersion(cdr.getId()));
+            }
+            if (_taskReaper != null){
+                _taskReaper.add(cdr.getId());
+            }
+            _taskStatusStore.finish(cdr);
+            if (_taskStore.usesTaskDirectory() == false){
+                // result is in store so working files are no longer needed
+                deleteTaskDirectory(cdr.getId());
+            }
+        } else {
+            _taskStatusStore.remove(cdr.getId());
+        }
+        appendToJournal(new TaskJournal.Entry(TaskJournal.FINISHED_OP, cdr.getId()));
+        if (_clusterQueue != null){
+            _claimedTasks.remove(cdr.getId());
+            _clusterQueue.release(cdr.getId());
+        }
+        notifyTaskListeners(cdr.getId(), cdr);
+    }
+    
+    /**
+     * Removes listeners waiting on task {@code id} and notifies them
+     * with {@code result}
+     * @param id id of task
+     * @param result final result of task
+     */
+    protected void notifyTaskListeners(final String id, final CommunityDetectionResult result){
+        if (id == null){
+            return;
+        }
+        List<CommunityDetectionTaskListener> listeners = _taskListeners.remove(id);
+        if (listeners == null){
+            return;
+        }
+        for (CommunityDetectionTaskListener listener : listeners){
+            try {
+                listener.taskCompleted(result);
+            } catch(RuntimeException re){
+                _logger.error("Caught exception notifying listener of task " + id, re);
+            }
+        }
+    }
+    
+    /**
+     * Sets status and progress of task {@code id} if it is queued or
+     * running and notifies its listeners via
+     * {@link CommunityDetectionTaskListener#statusChanged(org.ndexbio.communitydetection.rest.model.CommunityDetectionResultStatus)}
+     * if either changed
+     * @param id id of task
+     * @param status new status
+     * @param progress new progress
+     */
+    protected void updateTaskStatus(final String id, final String status, int progress){
+        CommunityDetectionResult cdr = _taskStatusStore.getActive(id);
+        if (cdr == null){
+            return;
+        }
+        CommunityDetectionResultStatus changed;
+        synchronized(cdr){
+            if (status.equals(cdr.getStatus()) && progress == cdr.getProgress()){
+                return;
+            }
+            cdr.setStatus(status);
+            cdr.setProgress(progress);
+            changed = new CommunityDetectionResultStatus(cdr);
+        }
+        List<CommunityDetectionTaskListener> listeners = _taskListeners.get(id);
+        if (listeners == null){
+            return;
+        }
+        for (CommunityDetectionTaskListener listener : listeners){
+            try {
+                listener.statusChanged(changed);
+            } catch(RuntimeException re){
+                _logger.error("Caught exception notifying listener of task " + id, re);
+            }
+        }
+    }
+    
+    /**
+     * Removes {@code listener} from listeners of task {@code id}
+     * @param id id of task
+     * @param listener listener to remove
+     */
+    @Override
+    public void removeTaskListener(final String id, final CommunityDetectionTaskListener listener){
+        if (id == null || listener == null){
+            return;
+        }
+        _taskListeners.computeIfPresent(id, (key, listeners) -> {
+            listeners.remove(listener);
+            return listeners.isEmpty() ? null : listeners;
+        });
+    }
+    
+    /**
+     * Registers {@code listener} to be notified once task with {@code id}
+     * completes, fails, or is deleted. The listener is registered before the
+     * current result is checked so a task finishing at the same time is
+     * never missed, and since listeners are removed before notification
+     * each listener is notified only once
+     * @param id id of task
+     * @param listener listener to notify
+     * @throws CommunityDetectionException if {@code id} or {@code listener}
+     *         is {@code null} or no task is found
+     */
+    @Override
+    public void addTaskListener(final String id,
+            final CommunityDetectionTaskListener listener) throws CommunityDetectionException {
+        if (id == null){
+            throw new CommunityDetectionException("Id is null");
+        }
+        if (listener == null){
+            throw new CommunityDetectionException("Listener is null");
+        }
+        _taskListeners.compute(id, (key, listeners) -> {
+            List<CommunityDetectionTaskListener> updated = listeners == null ? new CopyOnWriteArrayList<>() : listeners;
+            updated.add(listener);
+            return updated;
+        });
+        CommunityDetectionResult cdr = getCommunityDetectionResultFromDbOrFilesystem(id);
+        if (cdr == null){
+            _taskListeners.computeIfPresent(id, (key, listeners) -> {
+                listeners.remove(listener);
+                return listeners.isEmpty() ? null : listeners;
+            });
+            throw new CommunityDetectionException("No task with id of " + id + " found");
+        }
+        if (CommunityDetectionResult.COMPLETE_STATUS.equals(cdr.getStatus())
+                || CommunityDetectionResult.FAILED_STATUS.equals(cdr.getStatus())){
+            notifyTaskListeners(id, cdr);
         }
-        _results.remove(cdr.getId());
     }
     
     protected void logResult(final CommunityDetectionResult result){
@@ -222,24 +749,45 @@ public class CommunityDetectionEngineImpl implements CommunityDetectionEngine {
     }
 
     protected CommunityDetectionResult getCommunityDetectionResultFromDbOrFilesystem(final String id){
-        ObjectMapper mappy = new ObjectMapper();
-        File cdrFile = new File(getCommunityDetectionResultFilePath(id));
-        if (cdrFile.isFile() == false){
-            _logger.debug(cdrFile.getAbsolutePath() + " is not a file. "
-		    + "Will attempt to retreive from in memory store");
-            return _results.get(id);
+        long version = _taskStore.getVersion(id);
+        if (version <= 0){
+            _logger.debug("No result stored for " + id
+		    + " Will attempt to retreive from in memory store");
+            CommunityDetectionResult cdr = _taskStatusStore.getActive(id);
+            if (cdr == null && _clusterQueue != null){
+                cdr = getClusterTaskResult(id);
+                if (cdr == null && _taskStore.getVersion(id) > 0){
+                    // finished while checking queue
+                    return getCommunityDetectionResultFromDbOrFilesystem(id);
+                }
+            }
+            return cdr;
+        }
+        if (_parsedResultCache != null){
+            CommunityDetectionResult cached = _parsedResultCache.get(id, version);
+            if (cached != null){
+                return cached;
+            }
         }
         try {
-            return mappy.readValue(cdrFile, CommunityDetectionResult.class);
+            CommunityDetectionResult cdr = _taskStore.getResult(id);
+            if (cdr != null && _parsedResultCache != null){
+                _parsedResultCache.put(id, cdr, _taskStore.getResultSize(id), version);
+            }
+            if (cdr != null){
+                return cdr;
+            }
         }catch(IOException io){
-            _logger.error("Caught exception trying to load " + cdrFile.getAbsolutePath(), io);
+            _logger.error("Caught exception trying to load result of task " + id, io);
         }
-        return _results.get(id);
+        return _taskStatusStore.getActive(id);
     }
     
     /**
      * Request a Community Detection algorithm be run. This is the call that
-     * should be coming from the rest POST endpoint
+     * should be coming from the rest POST endpoint. If {@code request} is an
+     * {@link InputFileCommunityDetectionRequest} its input file is moved
+     * into the directory of the task or deleted if the request fails
      * @param request The request
      * @return UUID as string
      * @throws CommunityDetectionBadRequestException if request is invalid
@@ -248,6 +796,40 @@ public class CommunityDetectionEngineImpl implements CommunityDetectionEngine {
     @Override
     public String request(CommunityDetectionRequest request) throws CommunityDetectionException,
             CommunityDetectionBadRequestException {
+        return request(request, null, 0);
+    }
+    
+    /**
+     * Request a Community Detection algorithm be run on behalf of
+     * {@code clientId}. Works the same as
+     * {@link #request(org.ndexbio.communitydetection.rest.model.CommunityDetectionRequest)}
+     * but the task is ordered by {@code priority} and then fairly among
+     * clients by {@link FairTaskScheduler}
+     * @param request The request
+     * @param clientId id of client, if {@code null} {@link FairTaskScheduler#DEFAULT_CLIENT}
+     *                 is used
+     * @param priority priority of task, higher runs first
+     * @return UUID as string
+     * @throws CommunityDetectionBadRequestException if request is invalid
+     * @throws CommunityDetectionException If there is a server side error
+     */
+    @Override
+    public String request(CommunityDetectionRequest request, final String clientId,
+            int priority) throws CommunityDetectionException,
+            CommunityDetectionBadRequestException {
+        try {
+            return submitRequest(request, clientId, priority);
+        } finally {
+            // no-op if the file was already moved into the task directory
+            if (request instanceof InputFileCommunityDetectionRequest){
+                FileUtils.deleteQuietly(((InputFileCommunityDetectionRequest)request).getInputFile());
+            }
+        }
+    }
+
+    private String submitRequest(CommunityDetectionRequest request, final String clientId,
+            int priority) throws CommunityDetectionException,
+            CommunityDetectionBadRequestException {
 
         if (request == null){ 
             throw new CommunityDetectionBadRequestException("Request is null");
@@ -270,28 +852,744 @@ public class CommunityDetectionEngineImpl implements CommunityDetectionEngine {
         if (er != null){
             throw new CommunityDetectionBadRequestException("Validation failed", er);
         }
+        if (_admissionController != null){
+            // checked before input is moved or written to the task directory
+            _admissionController.admit(_queuedTasks.get(), _pendingInputBytes.get(),
+                    getInputSize(request), getPcDiskFull());
+        }
         
         String id = UUID.randomUUID().toString();
-
-        CommunityDetectionResult cdr = new CommunityDetectionResult(System.currentTimeMillis());
+        File inputFile = moveInputFile(id, request);
+        if (_clusterQueue != null){
+            return enqueueClusterTask(id, request, System.currentTimeMillis(), inputFile,
+                    clientId, priority);
+        }
+        return startTask(id, request, cda, System.currentTimeMillis(), inputFile, true,
+                clientId, priority);
+    }
+    
+    /**
+     * Queues task {@code id} to run {@code request} unless the result
+     * cache already has the result or an identical task is running
+     * @param id id of task
+     * @param request request to run
+     * @param cda algorithm to run
+     * @param startTime time task was submitted
+     * @param inputFile input file of task or {@code null} if not written yet
+     * @param journalSubmit if {@code true} and a journal is set, the
+     *                      input is persisted and the task is added to
+     *                      the journal
+     * @param clientId id of client that submitted task
+     * @param priority priority of task
+     * @return id of task
+     * @throws CommunityDetectionException if the task could not be queued
+     */
+    private String startTask(final String id, final CommunityDetectionRequest request,
+            final CommunityDetectionAlgorithm cda, long startTime, final File inputFile,
+            boolean journalSubmit, final String clientId, int priority) throws CommunityDetectionException {
+        CommunityDetectionResult cdr = new CommunityDetectionResult(startTime);
         cdr.setStatus(CommunityDetectionResult.SUBMITTED_STATUS);
         cdr.setId(id);
-        _results.put(id, cdr);
+        _taskStatusStore.putActive(id, cdr);
         logRequest(request, id);
         String dockerImage = cda.getDockerImage();
+        File taskInputFile = inputFile;
         try {
-            DockerCommunityDetectionRunner task = new DockerCommunityDetectionRunner(id, request, cdr.getStartTime(),
-            _taskDir, _dockerCmd, dockerImage, request.getCustomParameters(),
-                    Configuration.getInstance().getAlgorithmTimeOut(),
-            TimeUnit.SECONDS,
-            Configuration.getInstance().getMountOptions());
-            _futureTaskMap.put(id, _executorService.submit(task));
+            String executor = getExecutor(request);
+            if (_taskJournal != null && journalSubmit){
+                taskInputFile = journalSubmittedTask(id, request, startTime, inputFile,
+                        clientId, priority);
+            }
+            if (_resultCache != null){
+                String key = CommunityDetectionResultCache.getKey(request,
+                        executor.equals(AlgorithmExecutionSettings.DOCKER_EXECUTOR) ? dockerImage : executor,
+                        taskInputFile);
+                CommunityDetectionResult cachedResult = _resultCache.get(key);
+                if (cachedResult != null){
+                    _logger.info("Request id: " + id + " found in result cache");
+                    saveCopyOfResult(id, cdr.getStartTime(), cachedResult);
+                    _completedTasks.incrementAndGet();
+                    return id;
+                }
+                String primaryId = _resultCache.joinInFlight(key, id);
+                if (primaryId != null){
+                    _logger.info("Request id: " + id + " will use result of running task "
+                            + primaryId);
+                    return id;
+                }
+            }
+            CommunityDetectionRequest taskRequest = request;
+            if (taskInputFile != null && executor.equals(AlgorithmExecutionSettings.DOCKER_EXECUTOR)
+                    && !(request instanceof InputFileCommunityDetectionRequest)){
+                // input was already persisted for the journal, no need for
+                // docker runner to write it again
+                taskRequest = new InputFileCommunityDetectionRequest(taskInputFile,
+                        request.getData() instanceof TextNode);
+                taskRequest.setAlgorithm(request.getAlgorithm());
+                taskRequest.setCustomParameters(request.getCustomParameters());
+            }
+            Callable<CommunityDetectionResult> task = createTask(id, taskRequest,
+                    cdr.getStartTime(), dockerImage, executor);
+            if (_taskJournal != null){
+                final Callable<CommunityDetectionResult> journaledTask = task;
+                task = () -> {
+                    appendToJournal(new TaskJournal.Entry(TaskJournal.STARTED_OP, id));
+                    return journaledTask.call();
+                };
+            }
+            final AlgorithmTaskCounter counter = getAlgorithmTaskCounter(request.getAlgorithm());
+            final Callable<CommunityDetectionResult> countedTask = task;
+            task = () -> {
+                counter._running.incrementAndGet();
+                updateTaskStatus(id, CommunityDetectionResult.PROCESSING_STATUS, 0);
+                try {
+                    return countedTask.call();
+                } finally {
+                    counter._running.decrementAndGet();
+                }
+            };
+            CommunityDetectionFutureTask futureTask = new CommunityDetectionFutureTask(id,
+                    request.getAlgorithm(), task, _completedTaskQueue);
+            _futureTaskMap.put(id, futureTask);
+            _queuedTasks.incrementAndGet();
+            counter._outstanding.incrementAndGet();
+            long inputBytes = taskInputFile != null ? taskInputFile.length() : getInputSize(request);
+            _pendingInputSizes.put(id, inputBytes);
+            _pendingInputBytes.addAndGet(inputBytes);
+            try {
+                getTaskScheduler(request.getAlgorithm()).submit(clientId, priority, futureTask);
+            } catch(RuntimeException re){
+                _futureTaskMap.remove(id);
+                _queuedTasks.decrementAndGet();
+                counter._outstanding.decrementAndGet();
+                removePendingInput(id);
+                if (_resultCache != null){
+                    _resultCache.completeInFlight(id);
+                }
+                if (re instanceof RejectedExecutionException){
+                    // queue of algorithm is full
+                    throw new CommunityDetectionOverloadedException(re.getMessage(),
+                            CommunityDetectionOverloadedException.TOO_MANY_REQUESTS_STATUS,
+                            _admissionController == null ? AdmissionController.DEFAULT_RETRY_AFTER
+                                    : _admissionController.getRetryAfter(1));
+                }
+                throw re;
+            }
             return id;
+        } catch(CommunityDetectionOverloadedException coe){
+            abandonTask(id);
+            throw coe;
         } catch(Exception ex){
+            abandonTask(id);
             throw new CommunityDetectionException(ex.getMessage());
         }
     }
     
+    /**
+     * Undoes {@link #startTask(java.lang.String, org.ndexbio.communitydetection.rest.model.CommunityDetectionRequest, org.ndexbio.communitydetection.rest.model.CommunityDetectionAlgorithm, long, java.io.File, boolean, java.lang.String, int)}
+     * for task {@code id} that could not be queued so nothing of it is
+     * left in memory, in the journal, or on disk
+     * @param id id of task
+     */
+    private void abandonTask(final String id){
+        appendToJournal(new TaskJournal.Entry(TaskJournal.FINISHED_OP, id));
+        _taskStatusStore.remove(id);
+        deleteTaskDirectory(id);
+    }
+    
+    /**
+     * Gets executor service that runs tasks of {@code algorithm}
+     * @param algorithm name of algorithm
+     * @return dedicated pool of algorithm if one was set via
+     *         {@link #setAlgorithmExecutorServices(java.util.Map)} otherwise
+     *         the executor service passed to the constructor
+     */
+    protected ExecutorService getExecutorService(final String algorithm){
+        if (_algorithmExecutors != null && algorithm != null){
+            ExecutorService es = _algorithmExecutors.get(algorithm);
+            if (es != null){
+                return es;
+            }
+        }
+        return _executorService;
+    }
+    
+    /**
+     * Gets size of input of {@code request}
+     * @param request request
+     * @return size in bytes of input file for requests whose data is in a
+     *         file otherwise the number of characters of data
+     */
+    private long getInputSize(final CommunityDetectionRequest request){
+        if (request instanceof InputFileCommunityDetectionRequest){
+            return ((InputFileCommunityDetectionRequest)request).getInputFile().length();
+        }
+        if (request.getData() == null){
+            return 0;
+        }
+        if (request.getData() instanceof TextNode){
+            return request.getData().asText().length();
+        }
+        return request.getData().toString().length();
+    }
+    
+    /**
+     * Removes task {@code id} from count of pending input bytes
+     * @param id id of task
+     */
+    private void removePendingInput(final String id){
+        Long inputBytes = _pendingInputSizes.remove(id);
+        if (inputBytes != null){
+            _pendingInputBytes.addAndGet(-inputBytes);
+        }
+    }
+    
+    /**
+     * Gets percent of task directory disk that is used
+     * @return percent used
+     */
+    protected int getPcDiskFull(){
+        File taskDir = new File(this._taskDir);
+        return 100-(int)Math.round(((double)taskDir.getFreeSpace()/(double)taskDir.getTotalSpace())*100);
+    }
+    
+    /**
+     * Gets scheduler that queues tasks of {@code algorithm} for the
+     * executor service returned by {@link #getExecutorService(java.lang.String)}
+     * creating it if needed. Algorithms without a dedicated pool share
+     * one scheduler
+     * @param algorithm name of algorithm
+     * @return scheduler
+     */
+    protected FairTaskScheduler getTaskScheduler(final String algorithm){
+        String key = "";
+        if (_algorithmExecutors != null && algorithm != null
+                && _algorithmExecutors.containsKey(algorithm)){
+            key = algorithm;
+        }
+        return _taskSchedulers.computeIfAbsent(key,
+                (k) -> FairTaskScheduler.create(getExecutorService(algorithm), _clientWeights));
+    }
+    
+    /**
+     * Gets counter of tasks for {@code algorithm} creating it if needed
+     * @param algorithm name of algorithm
+     * @return counter
+     */
+    private AlgorithmTaskCounter getAlgorithmTaskCounter(final String algorithm){
+        return _algorithmTaskCounters.computeIfAbsent(algorithm == null ? "" : algorithm,
+                (key) -> new AlgorithmTaskCounter());
+    }
+    
+    /**
+     * Writes input of {@code request} to the input file of task {@code id}
+     * if it is not there already and appends a submitted entry for the
+     * task to the journal
+     * @param id id of task
+     * @param request request
+     * @param startTime time task was submitted
+     * @param inputFile input file of task or {@code null} if not written yet
+     * @param clientId id of client that submitted task
+     * @param priority priority of task
+     * @return input file of task
+     * @throws IOException if there was an error writing input or journal
+     */
+    private File journalSubmittedTask(final String id, final CommunityDetectionRequest request,
+            long startTime, final File inputFile, final String clientId, int priority) throws IOException {
+        File taskInputFile = writeTaskInput(id, request, inputFile);
+        _taskJournal.append(createSubmittedEntry(id, request, startTime, clientId, priority));
+        return taskInputFile;
+    }
+    
+    /**
+     * Writes data of {@code request} to input file of task {@code id}
+     * unless {@code inputFile} is already set
+     * @param id id of task
+     * @param request request
+     * @param inputFile input file of task or {@code null} if not written yet
+     * @return input file of task
+     * @throws IOException if there was an error writing input
+     */
+    private File writeTaskInput(final String id, final CommunityDetectionRequest request,
+            final File inputFile) throws IOException {
+        if (inputFile != null){
+            return inputFile;
+        }
+        File thisTaskDir = new File(this._taskDir + File.separator + id);
+        if (thisTaskDir.isDirectory() == false && thisTaskDir.mkdirs() == false){
+            throw new IOException("Unable to create directory: " + thisTaskDir.getAbsolutePath());
+        }
+        File taskInputFile = new File(thisTaskDir, DockerCommunityDetectionRunner.INPUT_FILE);
+        DockerCommunityDetectionRunner.writeData(request.getData(), taskInputFile);
+        return taskInputFile;
+    }
+    
+    /**
+     * Creates submitted entry for task {@code id} holding everything
+     * but the data needed to run {@code request}
+     * @param id id of task
+     * @param request request
+     * @param startTime time task was submitted
+     * @param clientId id of client that submitted task
+     * @param priority priority of task
+     * @return entry
+     */
+    private TaskJournal.Entry createSubmittedEntry(final String id,
+            final CommunityDetectionRequest request, long startTime, final String clientId,
+            int priority){
+        TaskJournal.Entry entry = new TaskJournal.Entry(TaskJournal.SUBMITTED_OP, id);
+        entry.setStartTime(startTime);
+        entry.setClientId(clientId);
+        entry.setPriority(priority);
+        entry.setAlgorithm(request.getAlgorithm());
+        entry.setCustomParameters(request.getCustomParameters());
+        if (request instanceof InputFileCommunityDetectionRequest){
+            entry.setTextData(((InputFileCommunityDetectionRequest)request).isTextData());
+        } else {
+            entry.setTextData(request.getData() instanceof TextNode);
+        }
+        return entry;
+    }
+    
+    /**
+     * Adds task {@code id} to the queue shared by all servers in the
+     * cluster instead of running it here
+     * @param id id of task
+     * @param request request
+     * @param startTime time task was submitted
+     * @param inputFile input file of task or {@code null} if not written yet
+     * @param clientId id of client that submitted task
+     * @param priority priority of task
+     * @return id of task
+     * @throws CommunityDetectionException if the task could not be queued
+     */
+    private String enqueueClusterTask(final String id, final CommunityDetectionRequest request,
+            long startTime, final File inputFile, final String clientId, int priority) throws CommunityDetectionException {
+        logRequest(request, id);
+        try {
+            writeTaskInput(id, request, inputFile);
+            _clusterQueue.enqueue(createSubmittedEntry(id, request, startTime, clientId, priority));
+        } catch(IOException io){
+            deleteTaskDirectory(id);
+            throw new CommunityDetectionException("Unable to queue task " + id
+                    + " : " + io.getMessage());
+        }
+        return id;
+    }
+    
+    /**
+     * Appends {@code entry} to journal logging any error
+     * @param entry entry to append
+     */
+    private void appendToJournal(final TaskJournal.Entry entry){
+        if (_taskJournal == null){
+            return;
+        }
+        try {
+            _taskJournal.append(entry);
+        } catch(IOException io){
+            _logger.error("Unable to append " + entry.getOp() + " for task "
+                    + entry.getId() + " to journal", io);
+        }
+    }
+    
+    /**
+     * Replays journal set via {@link #setTaskJournal(org.ndexbio.communitydetection.rest.engine.TaskJournal)}
+     * queueing again every task that was submitted but never started. Tasks
+     * that were running when the server stopped are queued again if
+     * {@code retryRunning} is {@code true}, otherwise they are marked failed.
+     * Tasks whose algorithm is no longer available or whose input is gone
+     * are marked failed. Recovered tasks are run via docker since their
+     * input is read from the task directory.
+     * This should be called once before the engine accepts requests.
+     * @param retryRunning if {@code true} queue interrupted tasks again
+     * @return number of tasks queued again
+     * @throws CommunityDetectionException if the journal could not be read
+     */
+    public int recoverTasks(boolean retryRunning) throws CommunityDetectionException {
+        if (_taskJournal == null){
+            return 0;
+        }
+        Map<String, TaskJournal.PendingTask> pending;
+        try {
+            pending = _taskJournal.replay();
+        } catch(IOException io){
+            throw new CommunityDetectionException("Unable to read task journal: " + io.getMessage());
+        }
+        List<TaskJournal.PendingTask> toRequeue = new ArrayList<>();
+        for (TaskJournal.PendingTask task : pending.values()){
+            TaskJournal.Entry entry = task.getSubmitted();
+            String id = entry.getId();
+            if (_taskStore.getVersion(id) > 0){
+                // finished before the journal entry could be written
+                continue;
+            }
+            String failure = null;
+            if (task.isStarted() && retryRunning == false){
+                failure = "Task was interrupted by server restart";
+            } else {
+                failure = checkSubmittedEntry(entry);
+            }
+            if (failure != null){
+                failTask(entry, failure);
+                continue;
+            }
+            toRequeue.add(task);
+        }
+        try {
+            _taskJournal.compact(toRequeue);
+        } catch(IOException io){
+            throw new CommunityDetectionException("Unable to compact task journal: " + io.getMessage());
+        }
+        int requeued = 0;
+        for (TaskJournal.PendingTask task : toRequeue){
+            if (startSubmittedEntry(task.getSubmitted()) == true){
+                requeued++;
+            }
+        }
+        _logger.info("Recovered " + Integer.toString(requeued) + " task(s) from journal");
+        return requeued;
+    }
+    
+    /**
+     * Checks that task of {@code entry} can still be run
+     * @param entry submitted entry of task
+     * @return {@code null} if task can be run otherwise reason it cannot
+     */
+    private String checkSubmittedEntry(final TaskJournal.Entry entry){
+        if (_algorithms == null || _algorithms.getAlgorithms() == null
+                || entry.getAlgorithm() == null
+                || _algorithms.getAlgorithms().containsKey(entry.getAlgorithm()) == false){
+            return "Algorithm " + entry.getAlgorithm() + " is no longer available";
+        }
+        if (getTaskInputFile(entry.getId()).isFile() == false){
+            return "Input for task was lost";
+        }
+        return null;
+    }
+    
+    /**
+     * Saves failed result for task of {@code entry}
+     * @param entry submitted entry of task
+     * @param message reason task failed
+     */
+    private void failTask(final TaskJournal.Entry entry, final String message){
+        _logger.info("Marking task " + entry.getId() + " failed: " + message);
+        CommunityDetectionResult cdr = new CommunityDetectionResult(entry.getStartTime());
+        cdr.setId(entry.getId());
+        cdr.setStatus(CommunityDetectionResult.FAILED_STATUS);
+        cdr.setMessage(message);
+        cdr.setProgress(100);
+        saveCopyOfResult(entry.getId(), entry.getStartTime(), cdr);
+    }
+    
+    /**
+     * Queues task of {@code entry} to run here reading its input from
+     * the task directory. If the task cannot be run it is marked failed
+     * @param entry submitted entry of task
+     * @return {@code true} if task was queued
+     */
+    private boolean startSubmittedEntry(final TaskJournal.Entry entry){
+        String failure = checkSubmittedEntry(entry);
+        if (failure != null){
+            failTask(entry, failure);
+            return false;
+        }
+        File inputFile = getTaskInputFile(entry.getId());
+        InputFileCommunityDetectionRequest request = new InputFileCommunityDetectionRequest(inputFile,
+                entry.isTextData());
+        request.setAlgorithm(entry.getAlgorithm());
+        request.setCustomParameters(entry.getCustomParameters());
+        try {
+            startTask(entry.getId(), request, _algorithms.getAlgorithms().get(entry.getAlgorithm()),
+                    entry.getStartTime(), inputFile, false, entry.getClientId(),
+                    entry.getPriority());
+            return true;
+        } catch(CommunityDetectionException cde){
+            _logger.error("Unable to queue task " + entry.getId(), cde);
+            failTask(entry, "Received error running task: " + cde.getMessage());
+        }
+        return false;
+    }
+    
+    /**
+     * Rewrites journal without finished tasks once enough have finished.
+     * Invoked by {@link #run()} when a journal is set
+     */
+    protected void compactJournal(){
+        try {
+            if (_taskJournal.compactIfNeeded()){
+                _logger.debug("Compacted task journal");
+            }
+        } catch(IOException io){
+            _logger.error("Unable to compact task journal", io);
+        }
+    }
+    
+    /**
+     * Lets task store reclaim space of deleted results. Invoked
+     * periodically on its own thread while {@link #run()} is running
+     */
+    protected void compactTaskStore(){
+        try {
+            _taskStore.compact();
+        } catch(IOException io){
+            if (_shutdown == true){
+                _logger.debug("Compaction of task store stopped by shutdown", io);
+                return;
+            }
+            _logger.error("Unable to compact task store", io);
+        }
+    }
+    
+    /**
+     * Runs reaper if {@link #setTaskReaper(org.ndexbio.communitydetection.rest.engine.TaskReaper, long)}
+     * interval has passed since it last ran and saves its index.
+     * Invoked by {@link #run()} when a reaper is set
+     */
+    protected void reapTasks(){
+        long now = System.currentTimeMillis();
+        if (now - _lastReap < _reapIntervalMillis){
+            return;
+        }
+        _lastReap = now;
+        for (String id : _taskReaper.reap(now)){
+            try {
+                _taskStore.delete(id);
+            } catch(IOException io){
+                _logger.error("Unable to delete result of task " + id, io);
+            }
+            _taskStatusStore.remove(id);
+            if (_parsedResultCache != null){
+                _parsedResultCache.remove(id);
+            }
+        }
+        _taskReaper.save();
+    }
+    
+    /**
+     * Runs concurrency controller if {@link #setConcurrencyController(org.ndexbio.communitydetection.rest.engine.AdaptiveConcurrencyController, long)}
+     * interval has passed since it last ran and hands the new number of
+     * workers to the schedulers feeding the executor service passed to
+     * the constructor. Invoked by {@link #run()} when a controller is set
+     */
+    protected void adjustConcurrency(){
+        long now = System.currentTimeMillis();
+        if (now - _lastConcurrencyAdjustment < _concurrencyIntervalMillis){
+            return;
+        }
+        _lastConcurrencyAdjustment = now;
+        int waiting = 0;
+        if (_executorService instanceof ThreadPoolExecutor){
+            waiting = ((ThreadPoolExecutor)_executorService).getQueue().size();
+        } else if (_executorService instanceof ThreadPerTaskExecutor){
+            waiting = ((ThreadPerTaskExecutor)_executorService).getWaitingCount();
+        }
+        for (Map.Entry<String, FairTaskScheduler> entry : _taskSchedulers.entrySet()){
+            if (getExecutorService(entry.getKey()) == _executorService){
+                waiting += entry.getValue().getQueuedTasks();
+            }
+        }
+        String decision = _concurrencyController.adjust(waiting);
+        if (AdaptiveConcurrencyController.HOLD_DECISION.equals(decision)){
+            return;
+        }
+        int workers = _concurrencyController.getWorkers();
+        for (Map.Entry<String, FairTaskScheduler> entry : _taskSchedulers.entrySet()){
+            if (getExecutorService(entry.getKey()) == _executorService){
+                entry.getValue().setMaxRunning(workers);
+            }
+        }
+        if (_clusterQueue != null){
+            _maxLocalTasks = workers;
+        }
+    }
+    
+    /**
+     * Renews leases of tasks claimed by this server, cancels tasks whose
+     * lease was lost, returns expired leases of other servers to the
+     * queue, and claims as many tasks as there are free workers. Also
+     * notifies listeners of tasks that finished on other servers.
+     * Invoked by {@link #run()} when a cluster queue is set
+     */
+    protected void processClusterQueue(){
+        long now = System.currentTimeMillis();
+        if (now - _lastLeaseRenewal >= _clusterQueue.getLeaseMillis() / 3){
+            _lastLeaseRenewal = now;
+            for (String lostId : _clusterQueue.renew(_claimedTasks)){
+                _logger.warn("Lease on task " + lostId + " was lost, canceling it");
+                _claimedTasks.remove(lostId);
+                _taskStatusStore.remove(lostId);
+                CommunityDetectionFutureTask f = _futureTaskMap.get(lostId);
+                if (f != null){
+                    f.cancel(true);
+                }
+            }
+            _clusterQueue.requeueExpired(_claimedTasks,
+                    (id) -> _taskStore.getVersion(id) > 0);
+        }
+        for (TaskJournal.Entry entry : _clusterQueue.claim(_maxLocalTasks - _claimedTasks.size())){
+            _logger.info("Claimed task " + entry.getId());
+            _claimedTasks.add(entry.getId());
+            startSubmittedEntry(entry);
+        }
+        for (String id : _taskListeners.keySet()){
+            if (_claimedTasks.contains(id) || _taskStatusStore.isActive(id)){
+                continue;
+            }
+            if (_taskStore.getVersion(id) > 0){
+                notifyTaskListeners(id, getCommunityDetectionResultFromDbOrFilesystem(id));
+            }
+        }
+    }
+    
+    /**
+     * Gets result denoting state of task {@code id} in the cluster queue
+     * @param id id of task
+     * @return result with submitted status if task is queued, processing
+     *         status if a server claimed it, or {@code null} if task is
+     *         in neither
+     */
+    private CommunityDetectionResult getClusterTaskResult(final String id){
+        TaskJournal.Entry entry = _clusterQueue.getQueued(id);
+        String status = CommunityDetectionResult.SUBMITTED_STATUS;
+        if (entry == null){
+            entry = _clusterQueue.getLeased(id);
+            status = CommunityDetectionResult.PROCESSING_STATUS;
+        }
+        if (entry == null){
+            return null;
+        }
+        CommunityDetectionResult cdr = new CommunityDetectionResult(entry.getStartTime());
+        cdr.setId(id);
+        cdr.setStatus(status);
+        return cdr;
+    }
+    
+    /**
+     * Gets input file of task {@code id}
+     * @param id id of task
+     * @return input file which may not exist
+     */
+    private File getTaskInputFile(final String id){
+        return new File(this._taskDir + File.separator + id + File.separator
+                + DockerCommunityDetectionRunner.INPUT_FILE);
+    }
+    
+    /**
+     * If {@code request} is an {@link InputFileCommunityDetectionRequest}
+     * its input file is moved to the input file of task {@code id} so
+     * the data does not need to be written again
+     * @param id id of task
+     * @param request request
+     * @return input file of task or {@code null} if {@code request} has
+     *         no input file
+     * @throws CommunityDetectionException if the file could not be moved
+     */
+    private File moveInputFile(final String id, final CommunityDetectionRequest request) throws CommunityDetectionException {
+        if (!(request instanceof InputFileCommunityDetectionRequest)){
+            return null;
+        }
+        File srcFile = ((InputFileCommunityDetectionRequest)request).getInputFile();
+        File thisTaskDir = new File(this._taskDir + File.separator + id);
+        File destFile = new File(thisTaskDir, DockerCommunityDetectionRunner.INPUT_FILE);
+        try {
+            if (thisTaskDir.isDirectory() == false && thisTaskDir.mkdirs() == false){
+                throw new IOException("Unable to create directory: " + thisTaskDir.getAbsolutePath());
+            }
+            Files.move(srcFile.toPath(), destFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch(IOException io){
+            FileUtils.deleteQuietly(thisTaskDir);
+            throw new CommunityDetectionException("Unable to move input file for task "
+                    + id + " : " + io.getMessage());
+        }
+        return destFile;
+    }
+
+    /**
+     * Gets executor that will run {@code request}. If the algorithm is
+     * set to run in process, but the request is not supported by the in
+     * process implementation, {@link AlgorithmExecutionSettings#DOCKER_EXECUTOR}
+     * is returned
+     * @param request request to run
+     * @return executor
+     */
+    protected String getExecutor(final CommunityDetectionRequest request){
+        AlgorithmExecutionSettings settings = _executionSettings == null ? null :
+                _executionSettings.get(request.getAlgorithm());
+        if (settings == null || settings.getExecutor() == null){
+            return AlgorithmExecutionSettings.DOCKER_EXECUTOR;
+        }
+        if (settings.getExecutor().equals(AlgorithmExecutionSettings.JAVA_LOUVAIN_EXECUTOR)){
+            if (LouvainCommunityDetectionRunner.isSupported(request, settings.getMaxNativeEdges())){
+                return AlgorithmExecutionSettings.JAVA_LOUVAIN_EXECUTOR;
+            }
+            _logger.info("Request for " + request.getAlgorithm()
+                    + " is not supported in process, running via docker");
+        }
+        if (settings.getExecutor().equals(AlgorithmExecutionSettings.JAVA_DIFFUSION_EXECUTOR)){
+            if (HeatDiffusionCommunityDetectionRunner.isSupported(request, settings.getMaxNativeEdges())){
+                return AlgorithmExecutionSettings.JAVA_DIFFUSION_EXECUTOR;
+            }
+            _logger.info("Request for " + request.getAlgorithm()
+                    + " is not supported in process, running via docker");
+        }
+        return AlgorithmExecutionSettings.DOCKER_EXECUTOR;
+    }
+    
+    /**
+     * Denotes if input of {@code algorithm} is piped to standard input of
+     * its container as set via {@link AlgorithmExecutionSettings#getInputDelivery()}
+     * @param algorithm name of algorithm
+     * @return {@code true} if input is piped to standard input
+     */
+    protected boolean isStreamInput(final String algorithm){
+        AlgorithmExecutionSettings settings = _executionSettings == null || algorithm == null
+                ? null : _executionSettings.get(algorithm);
+        return settings != null
+                && AlgorithmExecutionSettings.STDIN_INPUT_DELIVERY.equals(settings.getInputDelivery());
+    }
+    
+    /**
+     * Creates task to run {@code request} via {@code executor}
+     * @param id id of task
+     * @param request request to run
+     * @param startTime start time of task
+     * @param dockerImage docker image for algorithm
+     * @param executor executor returned by {@link #getExecutor(org.ndexbio.communitydetection.rest.model.CommunityDetectionRequest)}
+     * @return task
+     * @throws Exception if there was an error creating the task
+     */
+    protected Callable<CommunityDetectionResult> createTask(final String id,
+            final CommunityDetectionRequest request, long startTime,
+            final String dockerImage, final String executor) throws Exception {
+        if (executor.equals(AlgorithmExecutionSettings.JAVA_LOUVAIN_EXECUTOR)){
+            return new LouvainCommunityDetectionRunner(id, request, startTime, _taskDir);
+        }
+        if (executor.equals(AlgorithmExecutionSettings.JAVA_DIFFUSION_EXECUTOR)){
+            return new HeatDiffusionCommunityDetectionRunner(id, request, startTime, _taskDir);
+        }
+        DockerContainerPool containerPool = _containerPools == null ? null
+                : _containerPools.get(request.getAlgorithm());
+        DockerCommunityDetectionRunner task = new DockerCommunityDetectionRunner(id, request, startTime,
+                _taskDir, _dockerCmd, dockerImage, request.getCustomParameters(),
+                Configuration.getInstance().getAlgorithmTimeOut(),
+                TimeUnit.SECONDS,
+                Configuration.getInstance().getMountOptions(),
+                containerPool == null && isStreamInput(request.getAlgorithm()));
+        task.setContainerPool(containerPool);
+        AlgorithmExecutionSettings settings = _executionSettings == null ? null
+                : _executionSettings.get(request.getAlgorithm());
+        if (settings != null){
+            task.setContainerLimits(settings.toContainerLimits());
+        }
+        task.setCpusetAllocator(_cpusetAllocator);
+        task.setDockerEngineClient(_dockerClient);
+        task.setProgressListener((progress) -> updateTaskStatus(id,
+                CommunityDetectionResult.PROCESSING_STATUS, progress));
+        return task;
+    }
+    
     private void logRequest(final CommunityDetectionRequest request,
 	    final String id){
 	if (request == null){
@@ -305,7 +1603,11 @@ public class CommunityDetectionEngineImpl implements CommunityDetectionEngine {
 	
         sb.append(" ) ");
 	
-	if (request.getData() == null){
+	if (request instanceof InputFileCommunityDetectionRequest){
+	    sb.append(((InputFileCommunityDetectionRequest)request).isTextData() ?
+	            " with text data in file" : " with json data in file");
+	}
+	else if (request.getData() == null){
 	    sb.append(" with NO data");
 	}
 	else {
@@ -343,11 +1645,51 @@ public class CommunityDetectionEngineImpl implements CommunityDetectionEngine {
         if (cdr == null){
             throw new CommunityDetectionException("No task with id of " + id + " found");
         }
+        if (_taskReaper != null){
+            _taskReaper.touch(id);
+        }
         return cdr;
     }
 
     /**
-     * Gets status of task with given {@code id}
+     * Opens persisted result of task with given {@code id} in the
+     * {@link TaskStore}. Results are only persisted once a task is
+     * finished so a task still in memory never has its result opened
+     * @param id Id of task
+     * @return result or {@code null} if task is not finished or not found
+     * @throws CommunityDetectionException If id is {@code null} or there
+     *         was an error opening the result
+     */
+    @Override
+    public StoredResult openResult(String id) throws CommunityDetectionException {
+        if (id == null){
+            throw new CommunityDetectionException("Id is null");
+        }
+        if (_taskStatusStore.isActive(id)){
+            return null;
+        }
+        StoredResult stored;
+        try {
+            stored = _taskStore.openResult(id);
+        } catch(IOException io){
+            throw new CommunityDetectionException("Unable to open result of task "
+                    + id + " : " + io.getMessage());
+        }
+        if (stored == null){
+            return null;
+        }
+        if (_taskReaper != null){
+            _taskReaper.touch(id);
+        }
+        return stored;
+    }
+
+    /**
+     * Gets status of task with given {@code id}. Status of a recently
+     * finished task is served from memory as long as its result is
+     * still stored, otherwise the status stored alongside the result is
+     * read and kept for the next call. The full result is only parsed
+     * for tasks that finished without a separate status
      * @param id Id of task
      * @return The result
      * @throws CommunityDetectionException If id is {@code null} or no task is found
@@ -357,12 +1699,44 @@ public class CommunityDetectionEngineImpl implements CommunityDetectionEngine {
         if (id == null){
             throw new CommunityDetectionException("Id is null");
         }
+        CommunityDetectionResult active = _taskStatusStore.getActive(id);
+        if (active != null){
+            return new CommunityDetectionResultStatus(active);
+        }
+        CommunityDetectionResultStatus status = _taskStatusStore.getFinishedStatus(id);
+        if (status != null && _taskStore.getVersion(id) > 0){
+            if (_taskReaper != null){
+                _taskReaper.touch(id);
+            }
+            return status;
+        }
+        try {
+            status = _taskStore.getStatus(id);
+        } catch(IOException io){
+            _logger.error("Caught exception trying to load status of task " + id, io);
+        }
+        if (status != null){
+            if (_taskReaper != null){
+                _taskReaper.touch(id);
+            }
+            _taskStatusStore.putFinished(status);
+            return status;
+        }
         
         CommunityDetectionResult cdr = getCommunityDetectionResultFromDbOrFilesystem(id);
         if (cdr == null){
+            _taskStatusStore.remove(id);
             throw new CommunityDetectionException("No task with id of " + id + " found");
         }
-        return new CommunityDetectionResultStatus(cdr);
+        if (_taskReaper != null){
+            _taskReaper.touch(id);
+        }
+        status = new CommunityDetectionResultStatus(cdr);
+        if (CommunityDetectionResult.COMPLETE_STATUS.equals(cdr.getStatus())
+                || CommunityDetectionResult.FAILED_STATUS.equals(cdr.getStatus())){
+            _taskStatusStore.putFinished(status);
+        }
+        return status;
     }
 
     /**
@@ -378,15 +1752,52 @@ public class CommunityDetectionEngineImpl implements CommunityDetectionEngine {
             throw new CommunityDetectionException("id is null");
         }
         _logger.debug("Deleting task " + id);
-        if (_results.containsKey(id) == true){
-            _results.remove(id);
+        CommunityDetectionResult deletedResult = new CommunityDetectionResult();
+        deletedResult.setId(id);
+        deletedResult.setStatus(CommunityDetectionResult.FAILED_STATUS);
+        deletedResult.setMessage("Task " + id + " was deleted");
+        deletedResult.setProgress(100);
+        appendToJournal(new TaskJournal.Entry(TaskJournal.FINISHED_OP, id));
+        if (_taskReaper != null){
+            _taskReaper.remove(id);
         }
-        Future f = _futureTaskMap.get(id);
+        if (_clusterQueue != null){
+            // server running task cancels it once it sees lease is gone
+            _clusterQueue.remove(id);
+        }
+        notifyTaskListeners(id, deletedResult);
+        _taskStatusStore.remove(id);
+        if (_parsedResultCache != null){
+            _parsedResultCache.remove(id);
+        }
+        if (_resultCache != null){
+            if (_resultCache.removeFollower(id) == true){
+                _logger.debug("Removed " + id + " from tasks waiting on a running task");
+            } else if (_resultCache.detachPrimary(id) == true){
+                _logger.info("Delete invoked, but other tasks are waiting on " + id
+                        + " so it will be deleted once it completes");
+                return;
+            }
+        }
+        CommunityDetectionFutureTask f = _futureTaskMap.get(id);
         if (f != null){
             _logger.info("Delete invoked, canceling task: " + id +
 		    " result of cancel(): " +
                     Boolean.toString(f.cancel(true)));
         }
+        try {
+            _taskStore.delete(id);
+        } catch(IOException io){
+            _logger.error("Unable to delete result of task " + id, io);
+        }
+        deleteTaskDirectory(id);
+    }
+    
+    /**
+     * Deletes directory for task {@code id} from filesystem if it exists
+     * @param id id of task
+     */
+    protected void deleteTaskDirectory(final String id){
         File thisTaskDir = new File(this._taskDir + File.separator + id);
         if (thisTaskDir.exists() == false){
             return;
@@ -417,20 +1828,62 @@ public class CommunityDetectionEngineImpl implements CommunityDetectionEngine {
      */
     @Override
     public ServerStatus getServerStatus() throws CommunityDetectionException {
+        return getExtendedServerStatus();
+    }
+    
+    /**
+     * Gets status of server including queue of each algorithm
+     * @return status
+     * @throws CommunityDetectionException if there was an error
+     */
+    public ExtendedServerStatus getExtendedServerStatus() throws CommunityDetectionException {
         try {
             String version = "unknown";
-            ServerStatus sObj = new ServerStatus();
+            ExtendedServerStatus sObj = new ExtendedServerStatus();
             sObj.setStatus(ServerStatus.OK_STATUS);
             sObj.setRestVersion(CommunityDetectionHttpServletDispatcher.getVersion());
             OperatingSystemMXBean omb = ManagementFactory.getOperatingSystemMXBean();
             float unknown = (float)-1;
             float load = (float)omb.getSystemLoadAverage();
             sObj.setLoad(Arrays.asList(load, unknown, unknown));
-            File taskDir = new File(this._taskDir);
-            sObj.setPcDiskFull(100-(int)Math.round(((double)taskDir.getFreeSpace()/(double)taskDir.getTotalSpace())*100));
+            sObj.setPcDiskFull(getPcDiskFull());
             sObj.setQueuedTasks(_queuedTasks.get());
             sObj.setCompletedTasks(_completedTasks.get());
             sObj.setCanceledTasks(_canceledTasks.get());
+            sObj.setAlgorithmQueues(getAlgorithmQueues());
+            sObj.setClientQueues(getClientQueues());
+            if (_taskReaper != null){
+                ExtendedServerStatus.TaskReaperStatus trs = new ExtendedServerStatus.TaskReaperStatus();
+                trs.setRetainedTasks(_taskReaper.getRetainedTasks());
+                trs.setRetainedBytes(_taskReaper.getRetainedBytes());
+                trs.setEvictedTasks(_taskReaper.getEvictedTasks());
+                trs.setReclaimedBytes(_taskReaper.getReclaimedBytes());
+                sObj.setTaskReaper(trs);
+            }
+            if (_parsedResultCache != null){
+                ExtendedServerStatus.ParsedResultCacheStatus prcs = new ExtendedServerStatus.ParsedResultCacheStatus();
+                prcs.setEntries(_parsedResultCache.getEntries());
+                prcs.setBytes(_parsedResultCache.getBytes());
+                prcs.setHits(_parsedResultCache.getHits());
+                prcs.setMisses(_parsedResultCache.getMisses());
+                sObj.setParsedResultCache(prcs);
+            }
+            if (_concurrencyController != null){
+                ExtendedServerStatus.ConcurrencyControllerStatus ccs = new ExtendedServerStatus.ConcurrencyControllerStatus();
+                ccs.setWorkers(_concurrencyController.getWorkers());
+                ccs.setMinWorkers(_concurrencyController.getMinWorkers());
+                ccs.setMaxWorkers(_concurrencyController.getMaxWorkers());
+                ccs.setLoadPerCore(_concurrencyController.getLoadPerCore());
+                ccs.setMemoryHeadroom(_concurrencyController.getLastMemoryHeadroom());
+                ccs.setTaskLatency(_concurrencyController.getTaskLatency());
+                ccs.setLatencyGradient(_concurrencyController.getLatencyGradient());
+                ccs.setLastDecision(_concurrencyController.getLastDecision());
+                ccs.setLastReason(_concurrencyController.getLastReason());
+                ccs.setLastAdjustment(_concurrencyController.getLastAdjustment());
+                ccs.setIncreases(_concurrencyController.getIncreases());
+                ccs.setDecreases(_concurrencyController.getDecreases());
+                sObj.setConcurrencyController(ccs);
+            }
             logServerStatus(sObj);
             return sObj;
         } catch(Exception ex){
@@ -438,4 +1891,55 @@ public class CommunityDetectionEngineImpl implements CommunityDetectionEngine {
             throw new CommunityDetectionException("Exception raised when getting ServerStatus: " + ex.getMessage());
         }
     }
+    
+    /**
+     * Gets status of queue for every algorithm that has a dedicated
+     * pool or has had tasks submitted
+     * @return map of algorithm name to queue status
+     */
+    protected Map<String, ExtendedServerStatus.AlgorithmQueueStatus> getAlgorithmQueues(){
+        TreeMap<String, ExtendedServerStatus.AlgorithmQueueStatus> queues = new TreeMap<>();
+        if (_algorithmExecutors != null){
+            for (Map.Entry<String, ThreadPoolExecutor> entry : _algorithmExecutors.entrySet()){
+                ExtendedServerStatus.AlgorithmQueueStatus aqs = new ExtendedServerStatus.AlgorithmQueueStatus();
+                ThreadPoolExecutor tpe = entry.getValue();
+                aqs.setMaxConcurrency(tpe.getMaximumPoolSize());
+                int remaining = tpe.getQueue().remainingCapacity();
+                aqs.setQueueCapacity(remaining == Integer.MAX_VALUE ? 0 : remaining + tpe.getQueue().size());
+                queues.put(entry.getKey(), aqs);
+            }
+        }
+        for (Map.Entry<String, AlgorithmTaskCounter> entry : _algorithmTaskCounters.entrySet()){
+            ExtendedServerStatus.AlgorithmQueueStatus aqs = queues.get(entry.getKey());
+            if (aqs == null){
+                aqs = new ExtendedServerStatus.AlgorithmQueueStatus();
+                queues.put(entry.getKey(), aqs);
+            }
+            int running = entry.getValue()._running.get();
+            aqs.setRunningTasks(running);
+            aqs.setQueuedTasks(Math.max(0, entry.getValue()._outstanding.get() - running));
+        }
+        return queues;
+    }
+    
+    /**
+     * Gets queued and running tasks of every client that has any, summed
+     * across all schedulers
+     * @return map of client id to queue status
+     */
+    protected Map<String, ExtendedServerStatus.ClientQueueStatus> getClientQueues(){
+        TreeMap<String, ExtendedServerStatus.ClientQueueStatus> queues = new TreeMap<>();
+        for (FairTaskScheduler scheduler : _taskSchedulers.values()){
+            for (Map.Entry<String, FairTaskScheduler.ClientCount> entry : scheduler.getClientCounts().entrySet()){
+                ExtendedServerStatus.ClientQueueStatus cqs = queues.get(entry.getKey());
+                if (cqs == null){
+                    cqs = new ExtendedServerStatus.ClientQueueStatus();
+                    queues.put(entry.getKey(), cqs);
+                }
+                cqs.setQueuedTasks(cqs.getQueuedTasks() + entry.getValue().getQueued());
+                cqs.setRunningTasks(cqs.getRunningTasks() + entry.getValue().getRunning());
+            }
+        }
+        return queues;
+    }
 }
@@ -0,0 +1,81 @@
+package org.ndexbio.communitydetection.rest.engine;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import org.ndexbio.communitydetection.rest.model.CommunityDetectionResult;
+
+/**
+ * {@link java.util.concurrent.FutureTask} that remembers the id of the
+ * task it is running and places itself on a completion queue as soon as
+ * it finishes, fails, or is canceled. This lets
+ * {@link org.ndexbio.communitydetection.rest.engine.CommunityDetectionEngineImpl}
+ * block on the completion queue instead of repeatedly scanning every
+ * outstanding task.
+ *
+ * @author churas
+ */
+public class CommunityDetectionFutureTask extends FutureTask<CommunityDetectionResult> {
+
+    private final String _id;
+    private final String _algorithm;
+    private final BlockingQueue<CommunityDetectionFutureTask> _completionQueue;
+
+    /**
+     * Constructor
+     * @param id id of task
+     * @param callable task to run
+     * @param completionQueue queue this object is added to upon completion
+     *                        (can be {@code null})
+     */
+    public CommunityDetectionFutureTask(final String id,
+            Callable<CommunityDetectionResult> callable,
+            BlockingQueue<CommunityDetectionFutureTask> completionQueue) {
+        this(id, null, callable, completionQueue);
+    }
+
+    /**
+     * Constructor
+     * @param id id of task
+     * @param algorithm name of algorithm task runs (can be {@code null})
+     * @param callable task to run
+     * @param completionQueue queue this object is added to upon completion
+     *                        (can be {@code null})
+     */
+    public CommunityDetectionFutureTask(final String id, final String algorithm,
+            Callable<CommunityDetectionResult> callable,
+            BlockingQueue<CommunityDetectionFutureTask> completionQueue) {
+        super(callable);
+        _id = id;
+        _algorithm = algorithm;
+        _completionQueue = completionQueue;
+    }
+
+    /**
+     * Gets id of task
+     * @return id of task
+     */
+    public String getId() {
+        return _id;
+    }
+
+    /**
+     * Gets name of algorithm task runs
+     * @return name of algorithm or {@code null} if not set
+     */
+    public String getAlgorithm() {
+        return _algorithm;
+    }
+
+    /**
+     * Invoked by {@link java.util.concurrent.FutureTask} when this task
+     * transitions to done (including cancellation). Adds this object
+     * to the completion queue passed in via the constructor
+     */
+    @Override
+    protected void done() {
+        if (_completionQueue != null){
+            _completionQueue.add(this);
+        }
+    }
+}
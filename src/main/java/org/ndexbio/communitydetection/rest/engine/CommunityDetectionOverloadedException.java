@@ -0,0 +1,55 @@
+package org.ndexbio.communitydetection.rest.engine;
+
+import org.ndexbio.communitydetection.rest.model.exceptions.CommunityDetectionException;
+
+/**
+ * Thrown when a request is rejected because the server is overloaded.
+ * Holds the HTTP status code to return and how long the caller should
+ * wait before trying again
+ *
+ * @author churas
+ */
+public class CommunityDetectionOverloadedException extends CommunityDetectionException {
+
+    /**
+     * Status code when the caller should slow down, the queue is full
+     */
+    public static final int TOO_MANY_REQUESTS_STATUS = 429;
+
+    /**
+     * Status code when the server cannot take work, the disk is full
+     */
+    public static final int SERVICE_UNAVAILABLE_STATUS = 503;
+
+    private final int _statusCode;
+    private final long _retryAfter;
+
+    /**
+     * Constructor
+     * @param message reason request was rejected
+     * @param statusCode HTTP status code to return
+     * @param retryAfter seconds caller should wait before trying again
+     */
+    public CommunityDetectionOverloadedException(final String message, int statusCode,
+            long retryAfter){
+        super(message);
+        _statusCode = statusCode;
+        _retryAfter = retryAfter;
+    }
+
+    /**
+     * Gets HTTP status code to return
+     * @return {@link #TOO_MANY_REQUESTS_STATUS} or {@link #SERVICE_UNAVAILABLE_STATUS}
+     */
+    public int getStatusCode() {
+        return _statusCode;
+    }
+
+    /**
+     * Gets time caller should wait before trying again
+     * @return seconds
+     */
+    public long getRetryAfter() {
+        return _retryAfter;
+    }
+}
@@ -0,0 +1,477 @@
+package org.ndexbio.communitydetection.rest.engine;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.TextNode;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import org.apache.commons.io.output.NullOutputStream;
+import org.ndexbio.communitydetection.rest.model.CommunityDetectionRequest;
+import org.ndexbio.communitydetection.rest.model.CommunityDetectionResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Content addressed cache of completed
+ * {@link org.ndexbio.communitydetection.rest.model.CommunityDetectionResult}
+ * objects. Entries are keyed by a SHA-256 hash of the algorithm, docker
+ * image, sorted custom parameters, and the data of the request.
+ *
+ * Each entry is stored as {@code <key>.json} in the cache directory passed
+ * into the constructor. That directory serves as the on-disk index and is
+ * reloaded on construction, using the last modified time of each file as
+ * the time the entry was added. Entries are evicted least recently used
+ * first once there are more than {@code maxEntries} and are ignored and
+ * removed once older than {@code ttlMillis}.
+ *
+ * This object also tracks in-flight tasks by key so identical requests
+ * submitted while a task is still running can wait on that task instead
+ * of running the algorithm again.
+ *
+ * @author churas
+ */
+public class CommunityDetectionResultCache {
+
+    static Logger _logger = LoggerFactory.getLogger(CommunityDetectionResultCache.class);
+
+    /**
+     * Suffix of files in cache directory
+     */
+    public static final String CACHE_FILE_SUFFIX = ".json";
+
+    private File _cacheDir;
+    private int _maxEntries;
+    private long _ttlMillis;
+
+    /**
+     * Map of key => time entry was added, in access order
+     */
+    private LinkedHashMap<String, Long> _index;
+
+    /**
+     * Map of key => in-flight task for that key
+     */
+    private HashMap<String, InFlightTask> _inFlightByKey;
+
+    /**
+     * Map of primary task id => in-flight task
+     */
+    private HashMap<String, InFlightTask> _inFlightById;
+
+    /**
+     * Map of follower task id => in-flight task it is waiting on
+     */
+    private HashMap<String, InFlightTask> _inFlightByFollower;
+
+    /**
+     * A task that is actually running along with ids of any
+     * identical requests waiting on its result
+     */
+    public static class InFlightTask {
+        private final String _key;
+        private final String _primaryId;
+        private final Set<String> _followerIds;
+        private boolean _primaryDeleted;
+
+        InFlightTask(final String key, final String primaryId){
+            _key = key;
+            _primaryId = primaryId;
+            _followerIds = new LinkedHashSet<>();
+            _primaryDeleted = false;
+        }
+
+        /**
+         * Gets cache key for this task
+         * @return key
+         */
+        public String getKey() {
+            return _key;
+        }
+
+        /**
+         * Gets id of task actually running
+         * @return id
+         */
+        public String getPrimaryId() {
+            return _primaryId;
+        }
+
+        /**
+         * Gets ids of tasks waiting on result of primary task
+         * @return ids of tasks
+         */
+        public Set<String> getFollowerIds() {
+            return _followerIds;
+        }
+
+        /**
+         * Denotes whether primary task was deleted by caller while
+         * followers were still waiting on its result
+         * @return {@code true} if deleted
+         */
+        public boolean isPrimaryDeleted() {
+            return _primaryDeleted;
+        }
+    }
+
+    /**
+     * Constructor
+     * @param cacheDir directory to store cached results in, created if needed
+     * @param maxEntries maximum number of results to keep
+     * @param ttlMillis time in milliseconds a result remains valid
+     */
+    public CommunityDetectionResultCache(final File cacheDir, int maxEntries,
+            long ttlMillis){
+        _cacheDir = cacheDir;
+        _maxEntries = maxEntries;
+        _ttlMillis = ttlMillis;
+        _index = new LinkedHashMap<>(16, 0.75f, true);
+        _inFlightByKey = new HashMap<>();
+        _inFlightById = new HashMap<>();
+        _inFlightByFollower = new HashMap<>();
+        loadIndex();
+    }
+
+    /**
+     * Loads index from files in cache directory creating the
+     * directory if needed. Entries are loaded oldest first so
+     * the oldest entries are evicted first
+     */
+    private void loadIndex(){
+        if (_cacheDir.isDirectory() == false){
+            if (_cacheDir.mkdirs() == false){
+                _logger.error("Unable to create cache directory: " + _cacheDir.getAbsolutePath());
+            }
+            return;
+        }
+        File[] entries = _cacheDir.listFiles();
+        if (entries == null){
+            return;
+        }
+        List<File> entryList = new ArrayList<>();
+        for (File f : entries){
+            if (f.isFile() && f.getName().endsWith(CACHE_FILE_SUFFIX)){
+                entryList.add(f);
+            }
+        }
+        Collections.sort(entryList, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        synchronized(this){
+            for (File f : entryList){
+                String key = f.getName().substring(0, f.getName().length() - CACHE_FILE_SUFFIX.length());
+                _index.put(key, f.lastModified());
+            }
+            evictIfNeeded();
+        }
+        _logger.info("Loaded " + Integer.toString(_index.size()) + " entries from result cache "
+                + _cacheDir.getAbsolutePath());
+    }
+
+    /**
+     * Generates cache key for {@code request} to be run with {@code dockerImage}
+     * by computing SHA-256 hash of the algorithm, docker image, custom parameters
+     * sorted by name, and the data. Data that is a
+     * {@link com.fasterxml.jackson.databind.node.TextNode} is hashed as text
+     * otherwise the JSON representation is hashed, matching what is
+     * written to the input file of the task.
+     * @param request request to generate key for
+     * @param dockerImage docker image that will run request
+     * @return hex encoded SHA-256 hash
+     * @throws IOException if there was an error serializing the data
+     */
+    public static String getKey(final CommunityDetectionRequest request,
+            final String dockerImage) throws IOException {
+        return getKey(request, dockerImage, null);
+    }
+
+    /**
+     * Generates cache key for {@code request} to be run with {@code dockerImage}
+     * same as {@link #getKey(org.ndexbio.communitydetection.rest.model.CommunityDetectionRequest, java.lang.String)}
+     * except if the request has no data the contents of {@code inputFile} are
+     * hashed instead. Data that was text hashes the same either way, data
+     * that was JSON only matches other requests written to a file since
+     * the whitespace of the original request is kept.
+     * @param request request to generate key for
+     * @param dockerImage docker image that will run request
+     * @param inputFile file containing data of request, ignored if
+     *                  {@code null} or if the request has data
+     * @return hex encoded SHA-256 hash
+     * @throws IOException if there was an error serializing or reading the data
+     */
+    public static String getKey(final CommunityDetectionRequest request,
+            final String dockerImage, final File inputFile) throws IOException {
+        MessageDigest md = getMessageDigest();
+        updateDigest(md, request.getAlgorithm());
+        updateDigest(md, dockerImage);
+        if (request.getCustomParameters() != null){
+            TreeMap<String, String> sortedParams = new TreeMap<>(request.getCustomParameters());
+            for (Map.Entry<String, String> entry : sortedParams.entrySet()){
+                updateDigest(md, entry.getKey());
+                updateDigest(md, entry.getValue());
+            }
+        }
+        updateDigest(md, "data");
+        JsonNode data = request.getData();
+        if (data instanceof TextNode){
+            md.update(data.asText().getBytes(StandardCharsets.UTF_8));
+        } else if (data != null){
+            ObjectMapper mapper = new ObjectMapper();
+            try (DigestOutputStream dos = new DigestOutputStream(NullOutputStream.NULL_OUTPUT_STREAM, md)){
+                mapper.writeValue(dos, data);
+            }
+        } else if (inputFile != null){
+            try (InputStream in = new FileInputStream(inputFile)){
+                byte[] buf = new byte[65536];
+                int len;
+                while ((len = in.read(buf)) != -1){
+                    md.update(buf, 0, len);
+                }
+            }
+        }
+        return toHex(md.digest());
+    }
+
+    private static MessageDigest getMessageDigest() throws IOException {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch(NoSuchAlgorithmException nsae){
+            throw new IOException("SHA-256 not available", nsae);
+        }
+    }
+
+    /**
+     * Adds {@code val} to digest followed by a 0 byte separator so
+     * adjacent fields cannot run together. A {@code null} is
+     * added as a single 1 byte
+     */
+    private static void updateDigest(MessageDigest md, final String val){
+        if (val == null){
+            md.update((byte)1);
+        } else {
+            md.update(val.getBytes(StandardCharsets.UTF_8));
+        }
+        md.update((byte)0);
+    }
+
+    private static String toHex(byte[] bytes){
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes){
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Gets file for cache entry
+     * @param key cache key
+     * @return file
+     */
+    protected File getCacheFile(final String key){
+        return new File(_cacheDir, key + CACHE_FILE_SUFFIX);
+    }
+
+    /**
+     * Gets cached result for {@code key}
+     * @param key cache key
+     * @return cached result or {@code null} if not found or expired
+     */
+    public CommunityDetectionResult get(final String key){
+        if (key == null){
+            return null;
+        }
+        synchronized(this){
+            Long added = _index.get(key);
+            if (added == null){
+                return null;
+            }
+            if (System.currentTimeMillis() - added > _ttlMillis){
+                _logger.debug("Result cache entry " + key + " expired");
+                removeEntry(key);
+                return null;
+            }
+        }
+        File cacheFile = getCacheFile(key);
+        try {
+            ObjectMapper mapper = new ObjectMapper();
+            return mapper.readValue(cacheFile, CommunityDetectionResult.class);
+        } catch(IOException io){
+            _logger.error("Unable to read cached result " + cacheFile.getAbsolutePath()
+                    + " removing entry", io);
+            synchronized(this){
+                removeEntry(key);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Adds {@code result} to cache. Only results with status set to
+     * {@link org.ndexbio.communitydetection.rest.model.CommunityDetectionResult#COMPLETE_STATUS}
+     * are cached.
+     * @param key cache key
+     * @param result result to cache
+     */
+    public void put(final String key, final CommunityDetectionResult result){
+        if (key == null || result == null ||
+                !CommunityDetectionResult.COMPLETE_STATUS.equals(result.getStatus())){
+            return;
+        }
+        File cacheFile = getCacheFile(key);
+        File tmpFile = new File(_cacheDir, key + ".tmp");
+        ObjectMapper mapper = new ObjectMapper();
+        try (FileOutputStream out = new FileOutputStream(tmpFile)){
+            mapper.writeValue(out, result);
+        } catch(IOException io){
+            _logger.error("Unable to write cached result " + tmpFile.getAbsolutePath(), io);
+            tmpFile.delete();
+            return;
+        }
+        if (tmpFile.renameTo(cacheFile) == false){
+            _logger.error("Unable to rename " + tmpFile.getAbsolutePath()
+                    + " to " + cacheFile.getAbsolutePath());
+            tmpFile.delete();
+            return;
+        }
+        synchronized(this){
+            _index.put(key, System.currentTimeMillis());
+            evictIfNeeded();
+        }
+    }
+
+    /**
+     * Gets number of entries in cache
+     * @return number of entries
+     */
+    public synchronized int size(){
+        return _index.size();
+    }
+
+    /**
+     * Removes expired entries and then least recently used entries
+     * until there are no more than {@code maxEntries}.
+     * Caller must hold lock on this object
+     */
+    private void evictIfNeeded(){
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<String, Long>> itr = _index.entrySet().iterator();
+        List<String> toRemove = new ArrayList<>();
+        int remaining = _index.size();
+        while(itr.hasNext()){
+            Map.Entry<String, Long> entry = itr.next();
+            if (remaining > _maxEntries || now - entry.getValue() > _ttlMillis){
+                toRemove.add(entry.getKey());
+                remaining--;
+            }
+        }
+        for (String key : toRemove){
+            removeEntry(key);
+        }
+    }
+
+    /**
+     * Removes entry from index and filesystem.
+     * Caller must hold lock on this object
+     */
+    private void removeEntry(final String key){
+        _index.remove(key);
+        File cacheFile = getCacheFile(key);
+        if (cacheFile.exists() && cacheFile.delete() == false){
+            _logger.error("Unable to delete " + cacheFile.getAbsolutePath());
+        }
+    }
+
+    /**
+     * If a task with same {@code key} is already running, {@code id} is
+     * added as a follower of that task and the id of the running task is
+     * returned. Otherwise {@code id} is registered as the running task
+     * for {@code key} and {@code null} is returned.
+     * @param key cache key
+     * @param id id of task
+     * @return id of task already running or {@code null} if {@code id} should
+     *         be run
+     */
+    public synchronized String joinInFlight(final String key, final String id){
+        InFlightTask ift = _inFlightByKey.get(key);
+        if (ift != null){
+            ift.getFollowerIds().add(id);
+            _inFlightByFollower.put(id, ift);
+            return ift.getPrimaryId();
+        }
+        ift = new InFlightTask(key, id);
+        _inFlightByKey.put(key, ift);
+        _inFlightById.put(id, ift);
+        return null;
+    }
+
+    /**
+     * Removes in-flight task whose primary id is {@code id}. This should
+     * be called when task {@code id} finishes, fails, or is canceled
+     * @param id id of primary task
+     * @return removed in-flight task or {@code null} if {@code id} is not
+     *         an in-flight task
+     */
+    public synchronized InFlightTask completeInFlight(final String id){
+        InFlightTask ift = _inFlightById.remove(id);
+        if (ift == null){
+            return null;
+        }
+        _inFlightByKey.remove(ift.getKey());
+        for (String followerId : ift.getFollowerIds()){
+            _inFlightByFollower.remove(followerId);
+        }
+        return ift;
+    }
+
+    /**
+     * Removes follower {@code id} from any in-flight task it is waiting on
+     * @param id id of follower task
+     * @return {@code true} if {@code id} was a follower otherwise {@code false}
+     */
+    public synchronized boolean removeFollower(final String id){
+        InFlightTask ift = _inFlightByFollower.remove(id);
+        if (ift == null){
+            return false;
+        }
+        ift.getFollowerIds().remove(id);
+        return true;
+    }
+
+    /**
+     * Called when primary task {@code id} is being deleted. If there are
+     * followers waiting on the task, the task is marked as deleted and
+     * {@code true} is returned denoting the task should continue to run.
+     * Otherwise the in-flight task is removed so no new requests wait on
+     * it and {@code false} is returned.
+     * @param id id of primary task
+     * @return {@code true} if task should keep running for its followers
+     */
+    public synchronized boolean detachPrimary(final String id){
+        InFlightTask ift = _inFlightById.get(id);
+        if (ift == null){
+            return false;
+        }
+        if (ift.getFollowerIds().isEmpty()){
+            _inFlightById.remove(id);
+            _inFlightByKey.remove(ift.getKey());
+            return false;
+        }
+        ift._primaryDeleted = true;
+        return true;
+    }
+}
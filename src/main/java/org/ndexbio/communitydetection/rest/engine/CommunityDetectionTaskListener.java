@@ -0,0 +1,29 @@
+package org.ndexbio.communitydetection.rest.engine;
+
+import org.ndexbio.communitydetection.rest.model.CommunityDetectionResult;
+import org.ndexbio.communitydetection.rest.model.CommunityDetectionResultStatus;
+
+/**
+ * Receives notification when a task finishes and, optionally, when its
+ * status or progress changes
+ * @author churas
+ */
+public interface CommunityDetectionTaskListener {
+
+    /**
+     * Invoked once when a task completes, fails, or is deleted. This is
+     * called from a thread of the engine so implementations should return
+     * quickly
+     * @param result final result of task
+     */
+    public void taskCompleted(final CommunityDetectionResult result);
+    
+    /**
+     * Invoked each time status or progress of a task changes before it
+     * finishes. This is called from the thread running the task so
+     * implementations should return quickly. The default does nothing
+     * @param status new status of task
+     */
+    public default void statusChanged(final CommunityDetectionResultStatus status){
+    }
+}
@@ -0,0 +1,148 @@
+package org.ndexbio.communitydetection.rest.engine;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import org.ndexbio.communitydetection.rest.model.CommunityDetectionResult;
+import org.ndexbio.communitydetection.rest.model.CommunityDetectionResultStatus;
+
+/**
+ * {@link TaskStore} that keeps the result of each task in
+ * {@link CommunityDetectionEngineImpl#CDRESULT_JSON_FILE} and its status
+ * in {@link CommunityDetectionEngineImpl#CDSTATUS_JSON_FILE} under the
+ * directory of the task. This is the original layout and is required
+ * when the task directory is shared by several servers.
+ *
+ * Both files are written to a temp file and renamed into place, status
+ * first, so the result file marks the task finished and is never seen
+ * partially written.
+ *
+ * @author churas
+ */
+public class DirectoryTaskStore implements TaskStore {
+
+    private final String _taskDir;
+    private final ObjectMapper _mapper;
+
+    /**
+     * Constructor
+     * @param taskDir task directory
+     */
+    public DirectoryTaskStore(final String taskDir){
+        _taskDir = taskDir;
+        _mapper = new ObjectMapper();
+    }
+
+    protected File getTaskFile(final String id, final String name){
+        return new File(_taskDir + File.separator + id + File.separator + name);
+    }
+
+    @Override
+    public void putResult(final CommunityDetectionResult cdr) throws IOException {
+        writeFile(getTaskFile(cdr.getId(), CommunityDetectionEngineImpl.CDSTATUS_JSON_FILE),
+                new CommunityDetectionResultStatus(cdr));
+        writeFile(getTaskFile(cdr.getId(), CommunityDetectionEngineImpl.CDRESULT_JSON_FILE), cdr);
+    }
+
+    private void writeFile(final File destFile, final Object value) throws IOException {
+        File tmpFile = new File(destFile.getAbsolutePath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmpFile)){
+            _mapper.writeValue(out, value);
+        }
+        Files.move(tmpFile.toPath(), destFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public CommunityDetectionResult getResult(final String id) throws IOException {
+        File cdrFile = getTaskFile(id, CommunityDetectionEngineImpl.CDRESULT_JSON_FILE);
+        if (cdrFile.isFile() == false){
+            return null;
+        }
+        return _mapper.readValue(cdrFile, CommunityDetectionResult.class);
+    }
+
+    /**
+     * Reads status from {@link CommunityDetectionEngineImpl#CDSTATUS_JSON_FILE}
+     * @param id id of task
+     * @return status or {@code null} if task is not finished or finished
+     *         before status files were written
+     * @throws IOException if there was an error reading
+     */
+    @Override
+    public CommunityDetectionResultStatus getStatus(final String id) throws IOException {
+        File statusFile = getTaskFile(id, CommunityDetectionEngineImpl.CDSTATUS_JSON_FILE);
+        if (statusFile.isFile() == false
+                || getTaskFile(id, CommunityDetectionEngineImpl.CDRESULT_JSON_FILE).isFile() == false){
+            return null;
+        }
+        return _mapper.readValue(statusFile, CommunityDetectionResultStatus.class);
+    }
+
+    /**
+     * Uses last modified time of result file as version
+     * @param id id of task
+     * @return last modified time or 0 if there is no result file
+     */
+    @Override
+    public long getVersion(final String id) {
+        return getTaskFile(id, CommunityDetectionEngineImpl.CDRESULT_JSON_FILE).lastModified();
+    }
+
+    @Override
+    public long getResultSize(final String id) {
+        return getTaskFile(id, CommunityDetectionEngineImpl.CDRESULT_JSON_FILE).length();
+    }
+
+    @Override
+    public StoredResult openResult(final String id) throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(getTaskFile(id,
+                    CommunityDetectionEngineImpl.CDRESULT_JSON_FILE).toPath(),
+                    StandardOpenOption.READ);
+        } catch(NoSuchFileException nsfe){
+            return null;
+        }
+        try {
+            return new StoredResult(channel, 0, channel.size());
+        } catch(IOException io){
+            channel.close();
+            throw io;
+        }
+    }
+
+    @Override
+    public boolean usesTaskDirectory() {
+        return true;
+    }
+
+    /**
+     * Removes result and status files, the engine removes the rest of
+     * the task directory
+     * @param id id of task
+     * @throws IOException never
+     */
+    @Override
+    public void delete(final String id) throws IOException {
+        getTaskFile(id, CommunityDetectionEngineImpl.CDRESULT_JSON_FILE).delete();
+        getTaskFile(id, CommunityDetectionEngineImpl.CDSTATUS_JSON_FILE).delete();
+    }
+
+    /**
+     * Does nothing since deleted results free their space right away
+     */
+    @Override
+    public void compact() {
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,449 @@
+package org.ndexbio.communitydetection.rest.engine;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.ndexbio.communitydetection.rest.model.ServerStatus;
+
+/**
+ * {@link org.ndexbio.communitydetection.rest.model.ServerStatus} that also
+ * reports the queue of each algorithm and each client
+ *
+ * @author churas
+ */
+public class ExtendedServerStatus extends ServerStatus {
+
+    /**
+     * Tasks of a single algorithm
+     */
+    public static class AlgorithmQueueStatus {
+        private int _maxConcurrency;
+        private int _queueCapacity;
+        private int _runningTasks;
+        private int _queuedTasks;
+
+        /**
+         * Gets number of workers dedicated to algorithm
+         * @return number of workers, 0 if algorithm uses the default pool
+         */
+        public int getMaxConcurrency() {
+            return _maxConcurrency;
+        }
+
+        public void setMaxConcurrency(int maxConcurrency) {
+            _maxConcurrency = maxConcurrency;
+        }
+
+        /**
+         * Gets number of tasks that can wait for a worker
+         * @return capacity, 0 if unbounded
+         */
+        public int getQueueCapacity() {
+            return _queueCapacity;
+        }
+
+        public void setQueueCapacity(int queueCapacity) {
+            _queueCapacity = queueCapacity;
+        }
+
+        /**
+         * Gets number of tasks running
+         * @return number of tasks
+         */
+        public int getRunningTasks() {
+            return _runningTasks;
+        }
+
+        public void setRunningTasks(int runningTasks) {
+            _runningTasks = runningTasks;
+        }
+
+        /**
+         * Gets number of tasks waiting for a worker
+         * @return number of tasks
+         */
+        public int getQueuedTasks() {
+            return _queuedTasks;
+        }
+
+        public void setQueuedTasks(int queuedTasks) {
+            _queuedTasks = queuedTasks;
+        }
+    }
+
+    /**
+     * Tasks of a single client
+     */
+    public static class ClientQueueStatus {
+        private int _runningTasks;
+        private int _queuedTasks;
+
+        /**
+         * Gets number of tasks running
+         * @return number of tasks
+         */
+        public int getRunningTasks() {
+            return _runningTasks;
+        }
+
+        public void setRunningTasks(int runningTasks) {
+            _runningTasks = runningTasks;
+        }
+
+        /**
+         * Gets number of tasks waiting for a worker
+         * @return number of tasks
+         */
+        public int getQueuedTasks() {
+            return _queuedTasks;
+        }
+
+        public void setQueuedTasks(int queuedTasks) {
+            _queuedTasks = queuedTasks;
+        }
+    }
+
+    /**
+     * Completed tasks kept on disk and those removed by the reaper
+     */
+    public static class TaskReaperStatus {
+        private int _retainedTasks;
+        private long _retainedBytes;
+        private long _evictedTasks;
+        private long _reclaimedBytes;
+
+        /**
+         * Gets number of completed tasks on disk
+         * @return number of tasks
+         */
+        public int getRetainedTasks() {
+            return _retainedTasks;
+        }
+
+        public void setRetainedTasks(int retainedTasks) {
+            _retainedTasks = retainedTasks;
+        }
+
+        /**
+         * Gets size of completed tasks on disk
+         * @return size in bytes
+         */
+        public long getRetainedBytes() {
+            return _retainedBytes;
+        }
+
+        public void setRetainedBytes(long retainedBytes) {
+            _retainedBytes = retainedBytes;
+        }
+
+        /**
+         * Gets number of tasks removed since server started
+         * @return number of tasks
+         */
+        public long getEvictedTasks() {
+            return _evictedTasks;
+        }
+
+        public void setEvictedTasks(long evictedTasks) {
+            _evictedTasks = evictedTasks;
+        }
+
+        /**
+         * Gets bytes freed since server started
+         * @return size in bytes
+         */
+        public long getReclaimedBytes() {
+            return _reclaimedBytes;
+        }
+
+        public void setReclaimedBytes(long reclaimedBytes) {
+            _reclaimedBytes = reclaimedBytes;
+        }
+    }
+
+    /**
+     * Parsed results of finished tasks held in memory
+     */
+    public static class ParsedResultCacheStatus {
+        private int _entries;
+        private long _bytes;
+        private long _hits;
+        private long _misses;
+
+        /**
+         * Gets number of results in cache
+         * @return number of results
+         */
+        public int getEntries() {
+            return _entries;
+        }
+
+        public void setEntries(int entries) {
+            _entries = entries;
+        }
+
+        /**
+         * Gets size of result files of results in cache
+         * @return size in bytes
+         */
+        public long getBytes() {
+            return _bytes;
+        }
+
+        public void setBytes(long bytes) {
+            _bytes = bytes;
+        }
+
+        /**
+         * Gets number of reads served from cache since server started
+         * @return number of reads
+         */
+        public long getHits() {
+            return _hits;
+        }
+
+        public void setHits(long hits) {
+            _hits = hits;
+        }
+
+        /**
+         * Gets number of reads that parsed result file since server started
+         * @return number of reads
+         */
+        public long getMisses() {
+            return _misses;
+        }
+
+        public void setMisses(long misses) {
+            _misses = misses;
+        }
+    }
+
+    /**
+     * Number of workers chosen by the adaptive concurrency controller
+     * and the measurements its last decision was based on
+     */
+    public static class ConcurrencyControllerStatus {
+        private int _workers;
+        private int _minWorkers;
+        private int _maxWorkers;
+        private double _loadPerCore;
+        private double _memoryHeadroom;
+        private long _taskLatency;
+        private double _latencyGradient;
+        private String _lastDecision;
+        private String _lastReason;
+        private long _lastAdjustment;
+        private long _increases;
+        private long _decreases;
+
+        /**
+         * Gets current number of workers
+         * @return number of workers
+         */
+        public int getWorkers() {
+            return _workers;
+        }
+
+        public void setWorkers(int workers) {
+            _workers = workers;
+        }
+
+        /**
+         * Gets fewest workers controller can set
+         * @return number of workers
+         */
+        public int getMinWorkers() {
+            return _minWorkers;
+        }
+
+        public void setMinWorkers(int minWorkers) {
+            _minWorkers = minWorkers;
+        }
+
+        /**
+         * Gets most workers controller can set
+         * @return number of workers
+         */
+        public int getMaxWorkers() {
+            return _maxWorkers;
+        }
+
+        public void setMaxWorkers(int maxWorkers) {
+            _maxWorkers = maxWorkers;
+        }
+
+        /**
+         * Gets load average per core at last adjustment
+         * @return load or a negative value if unavailable
+         */
+        public double getLoadPerCore() {
+            return _loadPerCore;
+        }
+
+        public void setLoadPerCore(double loadPerCore) {
+            _loadPerCore = loadPerCore;
+        }
+
+        /**
+         * Gets fraction of physical memory available at last adjustment
+         * @return value between 0 and 1 or a negative value if unavailable
+         */
+        public double getMemoryHeadroom() {
+            return _memoryHeadroom;
+        }
+
+        public void setMemoryHeadroom(double memoryHeadroom) {
+            _memoryHeadroom = memoryHeadroom;
+        }
+
+        /**
+         * Gets recent average wall time of tasks
+         * @return time in milliseconds or a negative value if no tasks completed
+         */
+        public long getTaskLatency() {
+            return _taskLatency;
+        }
+
+        public void setTaskLatency(long taskLatency) {
+            _taskLatency = taskLatency;
+        }
+
+        /**
+         * Gets ratio of recent to long term average wall time of tasks
+         * @return ratio or 0 if no tasks completed
+         */
+        public double getLatencyGradient() {
+            return _latencyGradient;
+        }
+
+        public void setLatencyGradient(double latencyGradient) {
+            _latencyGradient = latencyGradient;
+        }
+
+        /**
+         * Gets decision of last adjustment
+         * @return one of increase, decrease, or hold
+         */
+        public String getLastDecision() {
+            return _lastDecision;
+        }
+
+        public void setLastDecision(String lastDecision) {
+            _lastDecision = lastDecision;
+        }
+
+        /**
+         * Gets reason for decision of last adjustment
+         * @return reason
+         */
+        public String getLastReason() {
+            return _lastReason;
+        }
+
+        public void setLastReason(String lastReason) {
+            _lastReason = lastReason;
+        }
+
+        /**
+         * Gets time of last adjustment
+         * @return time in milliseconds since epoch, 0 if never run
+         */
+        public long getLastAdjustment() {
+            return _lastAdjustment;
+        }
+
+        public void setLastAdjustment(long lastAdjustment) {
+            _lastAdjustment = lastAdjustment;
+        }
+
+        /**
+         * Gets number of times workers were added since server started
+         * @return count
+         */
+        public long getIncreases() {
+            return _increases;
+        }
+
+        public void setIncreases(long increases) {
+            _increases = increases;
+        }
+
+        /**
+         * Gets number of times workers were removed since server started
+         * @return count
+         */
+        public long getDecreases() {
+            return _decreases;
+        }
+
+        public void setDecreases(long decreases) {
+            _decreases = decreases;
+        }
+    }
+
+    private Map<String, AlgorithmQueueStatus> _algorithmQueues = new LinkedHashMap<>();
+    private Map<String, ClientQueueStatus> _clientQueues = new LinkedHashMap<>();
+    private TaskReaperStatus _taskReaper;
+    private ParsedResultCacheStatus _parsedResultCache;
+    private ConcurrencyControllerStatus _concurrencyController;
+
+    /**
+     * Gets queue status keyed by algorithm name
+     * @return map of algorithm name to queue status
+     */
+    public Map<String, AlgorithmQueueStatus> getAlgorithmQueues() {
+        return _algorithmQueues;
+    }
+
+    public void setAlgorithmQueues(Map<String, AlgorithmQueueStatus> algorithmQueues) {
+        _algorithmQueues = algorithmQueues;
+    }
+
+    /**
+     * Gets queue status keyed by client id
+     * @return map of client id to queue status
+     */
+    public Map<String, ClientQueueStatus> getClientQueues() {
+        return _clientQueues;
+    }
+
+    public void setClientQueues(Map<String, ClientQueueStatus> clientQueues) {
+        _clientQueues = clientQueues;
+    }
+
+    /**
+     * Gets status of task reaper
+     * @return status or {@code null} if reaper is not enabled
+     */
+    public TaskReaperStatus getTaskReaper() {
+        return _taskReaper;
+    }
+
+    public void setTaskReaper(TaskReaperStatus taskReaper) {
+        _taskReaper = taskReaper;
+    }
+
+    /**
+     * Gets status of cache of parsed results
+     * @return status or {@code null} if cache is not enabled
+     */
+    public ParsedResultCacheStatus getParsedResultCache() {
+        return _parsedResultCache;
+    }
+
+    public void setParsedResultCache(ParsedResultCacheStatus parsedResultCache) {
+        _parsedResultCache = parsedResultCache;
+    }
+
+    /**
+     * Gets status of adaptive concurrency controller
+     * @return status or {@code null} if number of workers is fixed
+     */
+    public ConcurrencyControllerStatus getConcurrencyController() {
+        return _concurrencyController;
+    }
+
+    public void setConcurrencyController(ConcurrencyControllerStatus concurrencyController) {
+        _concurrencyController = concurrencyController;
+    }
+}
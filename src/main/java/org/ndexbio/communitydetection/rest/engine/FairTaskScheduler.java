@@ -0,0 +1,334 @@
+package org.ndexbio.communitydetection.rest.engine;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import org.ndexbio.communitydetection.rest.engine.util.ThreadPerTaskExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Holds tasks waiting for a worker and hands them to an {@link Executor}
+ * no faster than it has workers so the order tasks run in is decided
+ * here instead of by the FIFO queue of the executor.
+ *
+ * Tasks with a higher priority always run first. Tasks of equal priority
+ * are ordered by weighted fair queuing on the client that submitted them:
+ * each task is stamped with a virtual finish time of
+ * {@code max(virtual time, last finish time of client) + 1/weight} and
+ * the task with the smallest stamp runs next. A client that submits
+ * thousands of tasks therefore only gets its weighted share of workers
+ * and a client submitting a single task waits for at most one task of
+ * every other client.
+ *
+ * Client ids and priorities are taken as given. Callers are expected to
+ * have capped priorities from untrusted requests, and weights are only
+ * as fair as the client ids are honest.
+ *
+ * @author churas
+ */
+public class FairTaskScheduler {
+
+    static Logger _logger = LoggerFactory.getLogger(FairTaskScheduler.class);
+
+    /**
+     * Client id used for tasks submitted without one
+     */
+    public static final String DEFAULT_CLIENT = "default";
+
+    /**
+     * Lowest priority a task can have, lower values are raised to this
+     */
+    public static final int MIN_PRIORITY = -10;
+
+    /**
+     * Highest priority a task can have, higher values are lowered to this
+     */
+    public static final int MAX_PRIORITY = 10;
+
+    /**
+     * Queued and running tasks of a single client
+     */
+    public static class ClientCount {
+        private int _queued;
+        private int _running;
+
+        public int getQueued() {
+            return _queued;
+        }
+
+        public int getRunning() {
+            return _running;
+        }
+    }
+
+    private static class ScheduledTask implements Comparable<ScheduledTask> {
+        private final Runnable _task;
+        private final String _clientId;
+        private final int _priority;
+        private final double _finishTag;
+        private final long _sequence;
+
+        ScheduledTask(final Runnable task, final String clientId, int priority,
+                double finishTag, long sequence){
+            _task = task;
+            _clientId = clientId;
+            _priority = priority;
+            _finishTag = finishTag;
+            _sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(final ScheduledTask o) {
+            if (_priority != o._priority){
+                return _priority > o._priority ? -1 : 1;
+            }
+            int res = Double.compare(_finishTag, o._finishTag);
+            if (res != 0){
+                return res;
+            }
+            return Long.compare(_sequence, o._sequence);
+        }
+    }
+
+    private final Executor _executor;
+    private volatile int _maxRunning;
+    private final int _queueCapacity;
+    private final Map<String, Integer> _clientWeights;
+    private final PriorityQueue<ScheduledTask> _queue = new PriorityQueue<>();
+    private final Map<String, ClientCount> _clientCounts = new HashMap<>();
+
+    /**
+     * Last finish tag handed out to each client keyed by priority
+     * then client id
+     */
+    private final Map<Integer, Map<String, Double>> _lastFinishTags = new HashMap<>();
+
+    /**
+     * Finish tag of the last task dispatched keyed by priority
+     */
+    private final Map<Integer, Double> _virtualTimes = new HashMap<>();
+    private long _sequence = 0;
+    private int _running = 0;
+
+    /**
+     * Constructor
+     * @param executor runs the tasks
+     * @param maxRunning maximum number of tasks handed to {@code executor}
+     *                   at once, should be number of workers of executor
+     * @param queueCapacity maximum number of tasks waiting, 0 or less
+     *                      for no limit
+     * @param clientWeights share of workers of each client relative to
+     *                      other clients, clients not in map have a weight
+     *                      of 1. Can be {@code null}
+     */
+    public FairTaskScheduler(final Executor executor, int maxRunning, int queueCapacity,
+            final Map<String, Integer> clientWeights){
+        _executor = executor;
+        _maxRunning = maxRunning;
+        _queueCapacity = queueCapacity;
+        _clientWeights = clientWeights;
+    }
+
+    /**
+     * Creates scheduler for {@code executor}. If {@code executor} is a
+     * {@link ThreadPoolExecutor} the scheduler runs as many tasks as it has
+     * workers and queues as many tasks as its queue can hold. If it is a
+     * {@link ThreadPerTaskExecutor} with a limit, the scheduler runs as
+     * many tasks as the limit and queues without limit. Otherwise
+     * the number of workers is unknown so tasks are handed to the
+     * {@code executor} as soon as they arrive and are not counted
+     * @param executor runs the tasks
+     * @param clientWeights weights of clients, can be {@code null}
+     * @return scheduler
+     */
+    public static FairTaskScheduler create(final Executor executor,
+            final Map<String, Integer> clientWeights){
+        if (executor instanceof ThreadPoolExecutor){
+            ThreadPoolExecutor tpe = (ThreadPoolExecutor)executor;
+            int remaining = tpe.getQueue().remainingCapacity();
+            return new FairTaskScheduler(executor, tpe.getMaximumPoolSize(),
+                    remaining == Integer.MAX_VALUE ? 0 : remaining + tpe.getQueue().size(),
+                    clientWeights);
+        }
+        if (executor instanceof ThreadPerTaskExecutor
+                && ((ThreadPerTaskExecutor)executor).getMaxConcurrency() > 0){
+            return new FairTaskScheduler(executor,
+                    ((ThreadPerTaskExecutor)executor).getMaxConcurrency(), 0, clientWeights);
+        }
+        return new FairTaskScheduler(executor, Integer.MAX_VALUE, 0, clientWeights);
+    }
+
+    /**
+     * Adds {@code task} to the queue, it is run as soon as a worker is
+     * free and no task ahead of it is waiting
+     * @param clientId id of client submitting task, if {@code null}
+     *                 {@link #DEFAULT_CLIENT} is used
+     * @param priority priority of task, higher runs first
+     * @param task task to run
+     * @throws RejectedExecutionException if queue is full or, when there
+     *         is no limit on running tasks, the executor rejected the task
+     */
+    public void submit(final String clientId, int priority, final Runnable task){
+        if (_maxRunning == Integer.MAX_VALUE){
+            _executor.execute(task);
+            return;
+        }
+        String client = clientId == null ? DEFAULT_CLIENT : clientId;
+        int clampedPriority = Math.max(MIN_PRIORITY, Math.min(MAX_PRIORITY, priority));
+        synchronized(this){
+            if (_queueCapacity > 0 && _queue.size() >= _queueCapacity){
+                throw new RejectedExecutionException("Queue is full with "
+                        + Integer.toString(_queue.size()) + " tasks");
+            }
+            Map<String, Double> lastFinish = _lastFinishTags.computeIfAbsent(clampedPriority,
+                    (key) -> new HashMap<>());
+            double start = Math.max(_virtualTimes.getOrDefault(clampedPriority, 0.0),
+                    lastFinish.getOrDefault(client, 0.0));
+            double finishTag = start + 1.0 / getWeight(client);
+            lastFinish.put(client, finishTag);
+            _queue.add(new ScheduledTask(task, client, clampedPriority, finishTag, _sequence++));
+            getClientCount(client)._queued++;
+        }
+        dispatch();
+    }
+
+    /**
+     * Sets maximum number of tasks handed to the executor at once, used
+     * when the number of workers of the executor changes. Tasks already
+     * running are not affected
+     * @param maxRunning maximum number of tasks, should be number of
+     *                   workers of executor
+     */
+    public void setMaxRunning(int maxRunning){
+        synchronized(this){
+            _maxRunning = maxRunning;
+        }
+        dispatch();
+    }
+
+    /**
+     * Gets maximum number of tasks handed to the executor at once
+     * @return maximum number of tasks
+     */
+    public int getMaxRunning(){
+        return _maxRunning;
+    }
+
+    /**
+     * Gets number of tasks waiting for a worker
+     * @return number of tasks
+     */
+    public synchronized int getQueuedTasks(){
+        return _queue.size();
+    }
+
+    /**
+     * Gets queued and running tasks of each client that has any
+     * @return map of client id to counts, a copy
+     */
+    public synchronized Map<String, ClientCount> getClientCounts(){
+        TreeMap<String, ClientCount> counts = new TreeMap<>();
+        for (Map.Entry<String, ClientCount> entry : _clientCounts.entrySet()){
+            ClientCount cc = new ClientCount();
+            cc._queued = entry.getValue()._queued;
+            cc._running = entry.getValue()._running;
+            counts.put(entry.getKey(), cc);
+        }
+        return counts;
+    }
+
+    /**
+     * Hands tasks to the executor while there are free workers. A task
+     * rejected by the executor, which happens once it is shut down, is
+     * canceled if it is a {@link Future}
+     */
+    private void dispatch(){
+        while (true){
+            ScheduledTask next;
+            synchronized(this){
+                if (_running >= _maxRunning || _queue.isEmpty()){
+                    return;
+                }
+                next = _queue.poll();
+                _virtualTimes.put(next._priority, next._finishTag);
+                if (_queue.isEmpty()){
+                    // tags are handed out in increasing order so every
+                    // tag is now behind virtual time and can be dropped
+                    _lastFinishTags.clear();
+                }
+                ClientCount cc = getClientCount(next._clientId);
+                cc._queued--;
+                if (next._task instanceof Future && ((Future)next._task).isDone()){
+                    // canceled while waiting, no need to use a worker
+                    removeIfIdle(next._clientId, cc);
+                    continue;
+                }
+                cc._running++;
+                _running++;
+            }
+            final ScheduledTask task = next;
+            try {
+                _executor.execute(() -> {
+                    try {
+                        task._task.run();
+                    } finally {
+                        taskDone(task._clientId);
+                    }
+                });
+            } catch(RejectedExecutionException ree){
+                synchronized(this){
+                    _running--;
+                    ClientCount cc = getClientCount(task._clientId);
+                    cc._running--;
+                    removeIfIdle(task._clientId, cc);
+                }
+                _logger.error("Executor rejected task of client " + task._clientId, ree);
+                if (task._task instanceof Future){
+                    ((Future)task._task).cancel(false);
+                }
+            }
+        }
+    }
+
+    private void taskDone(final String clientId){
+        synchronized(this){
+            _running--;
+            ClientCount cc = getClientCount(clientId);
+            cc._running--;
+            removeIfIdle(clientId, cc);
+        }
+        dispatch();
+    }
+
+    private double getWeight(final String clientId){
+        if (_clientWeights == null){
+            return 1.0;
+        }
+        Integer weight = _clientWeights.get(clientId);
+        if (weight == null || weight <= 0){
+            return 1.0;
+        }
+        return weight.doubleValue();
+    }
+
+    private ClientCount getClientCount(final String clientId){
+        return _clientCounts.computeIfAbsent(clientId, (key) -> new ClientCount());
+    }
+
+    /**
+     * Drops counts of {@code clientId} once it has no tasks so memory does
+     * not grow with the number of clients ever seen
+     */
+    private void removeIfIdle(final String clientId, final ClientCount cc){
+        if (cc._queued > 0 || cc._running > 0){
+            return;
+        }
+        _clientCounts.remove(clientId);
+    }
+}
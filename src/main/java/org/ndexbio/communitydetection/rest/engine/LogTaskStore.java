@@ -0,0 +1,658 @@
+package org.ndexbio.communitydetection.rest.engine;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+import org.ndexbio.communitydetection.rest.model.CommunityDetectionResult;
+import org.ndexbio.communitydetection.rest.model.CommunityDetectionResultStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link TaskStore} that appends results of all tasks to a single log
+ * file, {@link #LOG_FILE} under the task directory, so finished tasks
+ * take up no directory entries or inodes of their own.
+ *
+ * Each record is a 4 byte payload length, a 4 byte CRC32 of the payload,
+ * and the payload: a 1 byte operation, the task id, the status as JSON,
+ * and for {@link #PUT_OP} the result as JSON. An in memory index maps
+ * each task id to the offsets of its latest status and result. The index
+ * is rebuilt by scanning the log when the store is opened and the log is
+ * truncated at the first incomplete or corrupt record, as left by a crash.
+ * The result is serialized straight into the log and the header is
+ * written last, once the length and CRC of the payload are known, so a
+ * result is never held in memory a second time. Each append is forced to
+ * disk before returning. Appends are made one at a time under their own
+ * lock and only take the write lock to update the index, so readers are
+ * not held up while a large result is written.
+ *
+ * Results are served with {@link #openResult(java.lang.String)} straight
+ * from the log.
+ *
+ * Deleted and replaced records stay in the log until {@link #compact()}
+ * finds they make up more than {@link #COMPACT_RATIO} of it, at which
+ * point live records are copied to a new log that is renamed over the
+ * old one. The copy is made from a snapshot of the index without holding
+ * any lock, records appended in the meantime are copied after it while
+ * appends wait, and the write lock is only taken to swap logs.
+ *
+ * @author churas
+ */
+public class LogTaskStore implements TaskStore {
+
+    static Logger _logger = LoggerFactory.getLogger(LogTaskStore.class);
+
+    /**
+     * Name of log file under task directory
+     */
+    public static final String LOG_FILE = "cdtasks.log";
+
+    /**
+     * Fraction of log that must be dead records before it is compacted
+     */
+    public static final double COMPACT_RATIO = 0.5;
+
+    /**
+     * Logs smaller than this many bytes are never compacted
+     */
+    public static final long MIN_COMPACT_BYTES = 1048576;
+
+    /**
+     * Record holding status and result of a task
+     */
+    public static final byte PUT_OP = 1;
+
+    /**
+     * Record marking task deleted
+     */
+    public static final byte DELETE_OP = 2;
+
+    private static final int HEADER_BYTES = 8;
+
+    private static final int WRITE_BUFFER_BYTES = 65536;
+
+    /**
+     * Location of latest status and result of a task in log
+     */
+    private static class IndexEntry {
+        private final long _recordOffset;
+        private final int _recordLength;
+        private final long _statusOffset;
+        private final int _statusLength;
+        private final long _resultOffset;
+        private final int _resultLength;
+        private final long _version;
+
+        IndexEntry(long recordOffset, int recordLength, long statusOffset, int statusLength,
+                long resultOffset, int resultLength, long version){
+            _recordOffset = recordOffset;
+            _recordLength = recordLength;
+            _statusOffset = statusOffset;
+            _statusLength = statusLength;
+            _resultOffset = resultOffset;
+            _resultLength = resultLength;
+            _version = version;
+        }
+
+        /**
+         * Gets entry for same record copied to {@code recordOffset}
+         */
+        IndexEntry moveTo(long recordOffset, long version){
+            long delta = recordOffset - _recordOffset;
+            return new IndexEntry(recordOffset, _recordLength, _statusOffset + delta,
+                    _statusLength, _resultOffset + delta, _resultLength, version);
+        }
+    }
+
+    private final File _logFile;
+    private final ObjectMapper _mapper;
+    private final ReentrantLock _appendLock = new ReentrantLock();
+    private final ReentrantLock _compactLock = new ReentrantLock();
+    private final ReentrantReadWriteLock _lock = new ReentrantReadWriteLock();
+    private final Map<String, IndexEntry> _index = new HashMap<>();
+    private FileChannel _channel;
+    private long _size = 0;
+    private long _liveBytes = 0;
+    private long _nextVersion = 1;
+
+    /**
+     * Constructor, call {@link #open()} before using the store
+     * @param taskDir task directory
+     */
+    public LogTaskStore(final String taskDir){
+        _logFile = new File(taskDir, LOG_FILE);
+        _mapper = new ObjectMapper();
+    }
+
+    /**
+     * Opens log, creating it if needed, and builds index from it
+     * @throws IOException if there was an error reading the log
+     */
+    public void open() throws IOException {
+        _appendLock.lock();
+        _lock.writeLock().lock();
+        try {
+            _channel = FileChannel.open(_logFile.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            scan();
+        } finally {
+            _lock.writeLock().unlock();
+            _appendLock.unlock();
+        }
+    }
+
+    /**
+     * Reads every record in log to build index
+     */
+    private void scan() throws IOException {
+        _index.clear();
+        _liveBytes = 0;
+        long fileSize = _channel.size();
+        long offset = 0;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        while (offset + HEADER_BYTES <= fileSize){
+            header.clear();
+            readFully(header, offset);
+            header.flip();
+            int length = header.getInt();
+            int crc = header.getInt();
+            if (length <= 0 || offset + HEADER_BYTES + length > fileSize){
+                break;
+            }
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            readFully(payload, offset + HEADER_BYTES);
+            if (getCrc(payload.array()) != crc){
+                break;
+            }
+            payload.flip();
+            indexRecord(offset, payload);
+            offset += HEADER_BYTES + length;
+        }
+        if (offset < fileSize){
+            _logger.warn("Truncating " + _logFile.getAbsolutePath() + " at "
+                    + Long.toString(offset) + " of " + Long.toString(fileSize)
+                    + " bytes, remainder is incomplete or corrupt");
+            _channel.truncate(offset);
+            _channel.force(true);
+        }
+        _size = offset;
+    }
+
+    /**
+     * Updates index with record at {@code offset}
+     * @param offset offset of record in log
+     * @param payload payload of record positioned at its start
+     */
+    private void indexRecord(long offset, final ByteBuffer payload){
+        int recordLength = HEADER_BYTES + payload.remaining();
+        byte op = payload.get();
+        byte[] idBytes = new byte[payload.getShort()];
+        payload.get(idBytes);
+        String id = new String(idBytes, StandardCharsets.UTF_8);
+        if (op != PUT_OP){
+            putEntry(id, null);
+            return;
+        }
+        int statusLength = payload.getInt();
+        long statusOffset = offset + HEADER_BYTES + payload.position();
+        int resultLength = payload.limit() - payload.position() - statusLength;
+        putEntry(id, new IndexEntry(offset, recordLength, statusOffset, statusLength,
+                statusOffset + statusLength, resultLength, _nextVersion++));
+    }
+
+    /**
+     * Replaces index entry of task {@code id}. Caller must hold write lock
+     * @param entry new entry or {@code null} to remove task
+     */
+    private void putEntry(final String id, final IndexEntry entry){
+        IndexEntry old = entry == null ? _index.remove(id) : _index.put(id, entry);
+        if (old != null){
+            _liveBytes -= old._recordLength;
+        }
+        if (entry != null){
+            _liveBytes += entry._recordLength;
+        }
+    }
+
+    private void readFully(final ByteBuffer buf, long position) throws IOException {
+        long pos = position;
+        while (buf.hasRemaining()){
+            int read = _channel.read(buf, pos);
+            if (read < 0){
+                throw new IOException("Unexpected end of " + _logFile.getAbsolutePath());
+            }
+            pos += read;
+        }
+    }
+
+    private static int getCrc(final byte[] payload){
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int)crc.getValue();
+    }
+
+    /**
+     * Writes payload of a record to log at a given position computing its
+     * CRC and length along the way. Closing flushes, but does not close
+     * the log, since the {@link ObjectMapper} closes the stream it writes
+     * to
+     */
+    private class PayloadOutputStream extends OutputStream {
+        private final ByteBuffer _buf = ByteBuffer.allocate(WRITE_BUFFER_BYTES);
+        private final CRC32 _crc = new CRC32();
+        private long _position;
+        private long _length = 0;
+
+        PayloadOutputStream(long position){
+            _position = position;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (_buf.hasRemaining() == false){
+                flush();
+            }
+            _buf.put((byte)b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            int pos = off;
+            int remaining = len;
+            while (remaining > 0){
+                if (_buf.hasRemaining() == false){
+                    flush();
+                }
+                int count = Math.min(remaining, _buf.remaining());
+                _buf.put(b, pos, count);
+                pos += count;
+                remaining -= count;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            _buf.flip();
+            if (_length + _buf.remaining() > Integer.MAX_VALUE - HEADER_BYTES){
+                throw new IOException("Record is too large for log");
+            }
+            _crc.update(_buf.array(), 0, _buf.limit());
+            _length += _buf.remaining();
+            while (_buf.hasRemaining()){
+                _position += _channel.write(_buf, _position);
+            }
+            _buf.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+
+        int getLength(){
+            return (int)_length;
+        }
+
+        int getCrc(){
+            return (int)_crc.getValue();
+        }
+    }
+
+    /**
+     * Appends record to end of log, forces it to disk, and updates index.
+     * Caller must hold append lock
+     * @param op {@link #PUT_OP} or {@link #DELETE_OP}
+     * @param id id of task
+     * @param cdr result to store, ignored for {@link #DELETE_OP}
+     */
+    private void append(byte op, final String id, final CommunityDetectionResult cdr) throws IOException {
+        byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+        if (idBytes.length > Short.MAX_VALUE){
+            throw new IOException("Id of task is too long");
+        }
+        byte[] status = null;
+        ByteBuffer prefix = ByteBuffer.allocate(1 + 2 + idBytes.length + (op == PUT_OP ? 4 : 0));
+        prefix.put(op);
+        prefix.putShort((short)idBytes.length);
+        prefix.put(idBytes);
+        if (op == PUT_OP){
+            status = _mapper.writeValueAsBytes(new CommunityDetectionResultStatus(cdr));
+            prefix.putInt(status.length);
+        }
+        long offset = _size;
+        PayloadOutputStream out = new PayloadOutputStream(offset + HEADER_BYTES);
+        try {
+            out.write(prefix.array());
+            if (op == PUT_OP){
+                out.write(status);
+                _mapper.writeValue(out, cdr);
+            }
+            out.flush();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(out.getLength());
+            header.putInt(out.getCrc());
+            header.flip();
+            long pos = offset;
+            while (header.hasRemaining()){
+                pos += _channel.write(header, pos);
+            }
+            _channel.force(false);
+        } catch(IOException io){
+            // drop partial record so next append does not leave it mid log
+            _channel.truncate(offset);
+            throw io;
+        }
+        int recordLength = HEADER_BYTES + out.getLength();
+        _lock.writeLock().lock();
+        try {
+            if (op == PUT_OP){
+                long statusOffset = offset + HEADER_BYTES + prefix.capacity();
+                putEntry(id, new IndexEntry(offset, recordLength, statusOffset, status.length,
+                        statusOffset + status.length,
+                        out.getLength() - prefix.capacity() - status.length, _nextVersion++));
+            } else {
+                putEntry(id, null);
+            }
+            _size = offset + recordLength;
+        } finally {
+            _lock.writeLock().unlock();
+        }
+    }
+
+    private IndexEntry getEntry(final String id){
+        _lock.readLock().lock();
+        try {
+            return _index.get(id);
+        } finally {
+            _lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Reads {@code length} bytes at {@code offset} under read lock so
+     * compaction cannot swap the log mid read
+     * @return bytes or {@code null} if index entry of task changed
+     */
+    private byte[] read(final String id, final IndexEntry entry, boolean result) throws IOException {
+        _lock.readLock().lock();
+        try {
+            if (_index.get(id) != entry){
+                return null;
+            }
+            ByteBuffer buf = ByteBuffer.allocate(result ? entry._resultLength : entry._statusLength);
+            readFully(buf, result ? entry._resultOffset : entry._statusOffset);
+            return buf.array();
+        } finally {
+            _lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void putResult(final CommunityDetectionResult cdr) throws IOException {
+        _appendLock.lock();
+        try {
+            append(PUT_OP, cdr.getId(), cdr);
+        } finally {
+            _appendLock.unlock();
+        }
+    }
+
+    @Override
+    public CommunityDetectionResult getResult(final String id) throws IOException {
+        IndexEntry entry = getEntry(id);
+        while (entry != null){
+            byte[] data = read(id, entry, true);
+            if (data != null){
+                return _mapper.readValue(data, CommunityDetectionResult.class);
+            }
+            // compacted or replaced while reading
+            entry = getEntry(id);
+        }
+        return null;
+    }
+
+    @Override
+    public CommunityDetectionResultStatus getStatus(final String id) throws IOException {
+        IndexEntry entry = getEntry(id);
+        while (entry != null){
+            byte[] data = read(id, entry, false);
+            if (data != null){
+                return _mapper.readValue(data, CommunityDetectionResultStatus.class);
+            }
+            entry = getEntry(id);
+        }
+        return null;
+    }
+
+    @Override
+    public long getVersion(final String id) {
+        IndexEntry entry = getEntry(id);
+        return entry == null ? 0 : entry._version;
+    }
+
+    @Override
+    public long getResultSize(final String id) {
+        IndexEntry entry = getEntry(id);
+        return entry == null ? 0 : entry._resultLength;
+    }
+
+    /**
+     * Opens log on its own so result of task {@code id} can be read
+     * while other tasks are stored. If the log is compacted while the
+     * result is read the old log stays readable until the returned value
+     * is closed, since compaction renames a new log over it
+     * @param id id of task
+     * @return result or {@code null} if task is not finished
+     * @throws IOException if there was an error opening the log
+     */
+    @Override
+    public StoredResult openResult(final String id) throws IOException {
+        _lock.readLock().lock();
+        try {
+            IndexEntry entry = _index.get(id);
+            if (entry == null){
+                return null;
+            }
+            return new StoredResult(FileChannel.open(_logFile.toPath(), StandardOpenOption.READ),
+                    entry._resultOffset, entry._resultLength);
+        } finally {
+            _lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean usesTaskDirectory() {
+        return false;
+    }
+
+    @Override
+    public void delete(final String id) throws IOException {
+        _appendLock.lock();
+        try {
+            if (getEntry(id) == null){
+                return;
+            }
+            append(DELETE_OP, id, null);
+        } finally {
+            _appendLock.unlock();
+        }
+    }
+
+    /**
+     * Copies live records to a new log and renames it over the old one
+     * if more than {@link #COMPACT_RATIO} of a log of at least
+     * {@link #MIN_COMPACT_BYTES} is dead records. Readers and writers
+     * carry on while live records are copied, writers only wait while
+     * records they appended during the copy are copied as well and
+     * readers only wait for the rename
+     * @throws IOException if there was an error, the old log is kept
+     */
+    @Override
+    public void compact() throws IOException {
+        _compactLock.lock();
+        try {
+            IndexEntry[] entries;
+            long snapshotSize;
+            FileChannel channel;
+            _lock.readLock().lock();
+            try {
+                if (_channel == null || _size < MIN_COMPACT_BYTES
+                        || (double)(_size - _liveBytes) < (double)_size * COMPACT_RATIO){
+                    return;
+                }
+                entries = _index.values().toArray(new IndexEntry[0]);
+                snapshotSize = _size;
+                channel = _channel;
+            } finally {
+                _lock.readLock().unlock();
+            }
+            File tmpFile = new File(_logFile.getAbsolutePath() + ".tmp");
+            try {
+                compact(entries, snapshotSize, channel, tmpFile);
+            } finally {
+                Files.deleteIfExists(tmpFile.toPath());
+            }
+        } finally {
+            _compactLock.unlock();
+        }
+    }
+
+    private void compact(final IndexEntry[] entries, long snapshotSize,
+            final FileChannel channel, final File tmpFile) throws IOException {
+        try (FileChannel out = FileChannel.open(tmpFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)){
+            // copy in log order so old log is read sequentially
+            Arrays.sort(entries, (a, b) -> Long.compare(a._recordOffset, b._recordOffset));
+            Map<Long, Long> newOffsets = new HashMap<>();
+            for (IndexEntry entry : entries){
+                newOffsets.put(entry._recordOffset, out.position());
+                copyRecords(channel, entry._recordOffset, entry._recordLength, out);
+            }
+            _appendLock.lock();
+            try {
+                if (_channel != channel){
+                    // closed while copying
+                    return;
+                }
+                long oldSize = _size;
+                long tailOffset = out.position();
+                copyRecords(_channel, snapshotSize, oldSize - snapshotSize, out);
+                out.force(true);
+                _lock.writeLock().lock();
+                try {
+                    _channel.close();
+                    Files.move(tmpFile.toPath(), _logFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.ATOMIC_MOVE);
+                    _channel = FileChannel.open(_logFile.toPath(), StandardOpenOption.READ,
+                            StandardOpenOption.WRITE);
+                    for (Map.Entry<String, IndexEntry> e : _index.entrySet()){
+                        IndexEntry entry = e.getValue();
+                        long newOffset = entry._recordOffset >= snapshotSize
+                                ? tailOffset + entry._recordOffset - snapshotSize
+                                : newOffsets.get(entry._recordOffset);
+                        e.setValue(entry.moveTo(newOffset, _nextVersion++));
+                    }
+                    _size = tailOffset + oldSize - snapshotSize;
+                    _logger.info("Compacted " + _logFile.getAbsolutePath() + " from "
+                            + Long.toString(oldSize) + " to " + Long.toString(_size) + " bytes");
+                } finally {
+                    _lock.writeLock().unlock();
+                }
+            } finally {
+                _appendLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Copies {@code count} bytes of whole records at {@code position} of
+     * {@code from} to the end of {@code to}
+     * @param from log to copy from
+     * @param position offset of first record
+     * @param count number of bytes
+     * @param to log being compacted into
+     * @throws IOException if there was an error
+     */
+    protected void copyRecords(final FileChannel from, long position, long count,
+            final FileChannel to) throws IOException {
+        long pos = position;
+        long end = position + count;
+        while (pos < end){
+            long copied = from.transferTo(pos, end - pos, to);
+            if (copied <= 0){
+                throw new IOException("Unexpected end of " + _logFile.getAbsolutePath());
+            }
+            pos += copied;
+        }
+    }
+
+    /**
+     * Gets number of tasks with a result in store
+     * @return number of tasks
+     */
+    public int getTaskCount(){
+        _lock.readLock().lock();
+        try {
+            return _index.size();
+        } finally {
+            _lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets size of log
+     * @return size in bytes
+     */
+    public long getLogBytes(){
+        _lock.readLock().lock();
+        try {
+            return _size;
+        } finally {
+            _lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets bytes of log taken up by latest record of each task
+     * @return size in bytes
+     */
+    public long getLiveBytes(){
+        _lock.readLock().lock();
+        try {
+            return _liveBytes;
+        } finally {
+            _lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        _appendLock.lock();
+        _lock.writeLock().lock();
+        try {
+            if (_channel == null){
+                return;
+            }
+            _channel.close();
+            _channel = null;
+        } catch(IOException io){
+            _logger.error("Error closing " + _logFile.getAbsolutePath(), io);
+        } finally {
+            _lock.writeLock().unlock();
+            _appendLock.unlock();
+        }
+    }
+}
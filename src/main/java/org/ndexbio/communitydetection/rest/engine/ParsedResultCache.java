@@ -0,0 +1,143 @@
+package org.ndexbio.communitydetection.rest.engine;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import org.ndexbio.communitydetection.rest.model.CommunityDetectionResult;
+
+/**
+ * Cache of parsed results of finished tasks keyed by task id so repeated
+ * reads of a result do not parse its cdresult.json file again.
+ *
+ * The size of an entry is taken to be the size of its result file and
+ * entries are evicted least recently used first once their total size
+ * exceeds the budget passed into the constructor. Each entry records the
+ * last modified time of the result file it came from and is only
+ * returned if the caller passes in the same time, so a result file that
+ * was rewritten or deleted is never served from the cache.
+ *
+ * @author churas
+ */
+public class ParsedResultCache {
+
+    private static class Entry {
+        private final CommunityDetectionResult _result;
+        private final long _bytes;
+        private final long _lastModified;
+
+        Entry(final CommunityDetectionResult result, long bytes, long lastModified){
+            _result = result;
+            _bytes = bytes;
+            _lastModified = lastModified;
+        }
+    }
+
+    private final long _maxBytes;
+
+    /**
+     * Map of task id => entry, in access order
+     */
+    private final LinkedHashMap<String, Entry> _entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long _bytes = 0;
+    private long _hits = 0;
+    private long _misses = 0;
+
+    /**
+     * Constructor
+     * @param maxBytes maximum total size of results kept
+     */
+    public ParsedResultCache(long maxBytes){
+        _maxBytes = maxBytes;
+    }
+
+    /**
+     * Adds {@code result} for task {@code id}. Results larger than the
+     * budget are not kept
+     * @param id id of task
+     * @param result parsed result
+     * @param bytes size of result file
+     * @param lastModified last modified time of result file
+     */
+    public synchronized void put(final String id, final CommunityDetectionResult result,
+            long bytes, long lastModified){
+        if (id == null || result == null){
+            return;
+        }
+        remove(id);
+        if (bytes > _maxBytes){
+            return;
+        }
+        _entries.put(id, new Entry(result, bytes, lastModified));
+        _bytes += bytes;
+        Iterator<Entry> itr = _entries.values().iterator();
+        while (_bytes > _maxBytes && itr.hasNext()){
+            _bytes -= itr.next()._bytes;
+            itr.remove();
+        }
+    }
+
+    /**
+     * Gets result of task {@code id}
+     * @param id id of task
+     * @param lastModified current last modified time of result file,
+     *                     0 if file does not exist
+     * @return result or {@code null} if not in cache or result file
+     *         changed since the result was added
+     */
+    public synchronized CommunityDetectionResult get(final String id, long lastModified){
+        Entry entry = _entries.get(id);
+        if (entry == null){
+            _misses++;
+            return null;
+        }
+        if (entry._lastModified != lastModified){
+            remove(id);
+            _misses++;
+            return null;
+        }
+        _hits++;
+        return entry._result;
+    }
+
+    /**
+     * Removes result of task {@code id}, call when task is deleted
+     * @param id id of task
+     */
+    public synchronized void remove(final String id){
+        Entry entry = _entries.remove(id);
+        if (entry != null){
+            _bytes -= entry._bytes;
+        }
+    }
+
+    /**
+     * Gets number of results in cache
+     * @return number of results
+     */
+    public synchronized int getEntries(){
+        return _entries.size();
+    }
+
+    /**
+     * Gets total size of results in cache
+     * @return size in bytes
+     */
+    public synchronized long getBytes(){
+        return _bytes;
+    }
+
+    /**
+     * Gets number of reads served from cache
+     * @return number of reads
+     */
+    public synchronized long getHits(){
+        return _hits;
+    }
+
+    /**
+     * Gets number of reads not served from cache
+     * @return number of reads
+     */
+    public synchronized long getMisses(){
+        return _misses;
+    }
+}
@@ -0,0 +1,72 @@
+package org.ndexbio.communitydetection.rest.engine;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Serialized result of a finished task as it is kept by a {@link TaskStore},
+ * {@code length} bytes of an open file starting at {@code offset}, so it
+ * can be sent to the caller as is without being parsed. Closing it
+ * closes the file
+ * @author churas
+ */
+public class StoredResult implements Closeable {
+
+    private final FileChannel _channel;
+    private final long _offset;
+    private final long _length;
+
+    /**
+     * Constructor
+     * @param channel open file holding result, closed by {@link #close()}
+     * @param offset offset of result in file
+     * @param length length of result in bytes
+     */
+    public StoredResult(final FileChannel channel, long offset, long length){
+        _channel = channel;
+        _offset = offset;
+        _length = length;
+    }
+
+    /**
+     * Gets offset of result in file
+     * @return offset in bytes
+     */
+    public long getOffset() {
+        return _offset;
+    }
+
+    /**
+     * Gets length of result
+     * @return length in bytes
+     */
+    public long getLength() {
+        return _length;
+    }
+
+    /**
+     * Copies result to {@code target}, letting the operating system move
+     * the bytes when it can
+     * @param target where to write result
+     * @throws IOException if there was an error reading or writing
+     */
+    public void transferTo(final WritableByteChannel target) throws IOException {
+        long pos = _offset;
+        long end = _offset + _length;
+        while (pos < end){
+            long sent = _channel.transferTo(pos, end - pos, target);
+            if (sent <= 0 && pos >= _channel.size()){
+                throw new IOException("Result is truncated at " + Long.toString(pos - _offset)
+                        + " of " + Long.toString(_length) + " bytes");
+            }
+            pos += sent;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        _channel.close();
+    }
+}
@@ -0,0 +1,388 @@
+package org.ndexbio.communitydetection.rest.engine;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Write-ahead journal of task state changes stored as one JSON
+ * {@link Entry} per line in {@link #JOURNAL_FILE} under the task
+ * directory. The engine appends an entry when a task is submitted,
+ * starts running, and finishes so that on restart
+ * {@link #replay()} can find tasks that never finished.
+ *
+ * Each append is forced to disk before returning. A partially written
+ * last line, as left by a crash, is ignored during replay.
+ *
+ * Once the journal has been read by {@link #replay()} the tasks still
+ * pending are tracked in memory as entries are appended, which lets
+ * {@link #compactIfNeeded()} rewrite the journal while the server runs
+ * so it does not grow with every task ever run.
+ *
+ * @author churas
+ */
+public class TaskJournal {
+
+    static Logger _logger = LoggerFactory.getLogger(TaskJournal.class);
+
+    /**
+     * Name of journal file under task directory
+     */
+    public static final String JOURNAL_FILE = "cdjournal.log";
+
+    /**
+     * Task was accepted and queued
+     */
+    public static final String SUBMITTED_OP = "submitted";
+
+    /**
+     * Task started running
+     */
+    public static final String STARTED_OP = "started";
+
+    /**
+     * Task completed, failed, or was deleted
+     */
+    public static final String FINISHED_OP = "finished";
+
+    /**
+     * Default number of finished entries appended after which
+     * {@link #compactIfNeeded()} rewrites the journal
+     */
+    public static final int DEFAULT_COMPACT_THRESHOLD = 1000;
+
+    /**
+     * Single line of journal
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class Entry {
+        private String _op;
+        private String _id;
+        private long _startTime;
+        private String _algorithm;
+        private Map<String, String> _customParameters;
+        private boolean _textData;
+        private String _clientId;
+        private int _priority;
+
+        public Entry(){
+        }
+
+        public Entry(final String op, final String id){
+            _op = op;
+            _id = id;
+        }
+
+        public String getOp() {
+            return _op;
+        }
+
+        public void setOp(String op) {
+            _op = op;
+        }
+
+        public String getId() {
+            return _id;
+        }
+
+        public void setId(String id) {
+            _id = id;
+        }
+
+        public long getStartTime() {
+            return _startTime;
+        }
+
+        public void setStartTime(long startTime) {
+            _startTime = startTime;
+        }
+
+        public String getAlgorithm() {
+            return _algorithm;
+        }
+
+        public void setAlgorithm(String algorithm) {
+            _algorithm = algorithm;
+        }
+
+        public Map<String, String> getCustomParameters() {
+            return _customParameters;
+        }
+
+        public void setCustomParameters(Map<String, String> customParameters) {
+            _customParameters = customParameters;
+        }
+
+        /**
+         * Denotes if input file of task holds text instead of JSON
+         * @return {@code true} if input is text
+         */
+        public boolean isTextData() {
+            return _textData;
+        }
+
+        public void setTextData(boolean textData) {
+            _textData = textData;
+        }
+
+        /**
+         * Gets id of client that submitted task
+         * @return id or {@code null} if not known
+         */
+        public String getClientId() {
+            return _clientId;
+        }
+
+        public void setClientId(String clientId) {
+            _clientId = clientId;
+        }
+
+        /**
+         * Gets priority of task
+         * @return priority, 0 is normal
+         */
+        public int getPriority() {
+            return _priority;
+        }
+
+        public void setPriority(int priority) {
+            _priority = priority;
+        }
+    }
+
+    /**
+     * Task that was submitted but never finished
+     */
+    public static class PendingTask {
+        private final Entry _submitted;
+        private boolean _started;
+
+        PendingTask(final Entry submitted){
+            _submitted = submitted;
+        }
+
+        /**
+         * Gets entry written when task was submitted
+         * @return entry
+         */
+        public Entry getSubmitted() {
+            return _submitted;
+        }
+
+        /**
+         * Denotes if task had started running
+         * @return {@code true} if task was running
+         */
+        public boolean isStarted() {
+            return _started;
+        }
+
+        PendingTask copy(){
+            PendingTask task = new PendingTask(_submitted);
+            task._started = _started;
+            return task;
+        }
+    }
+
+    private final File _journalFile;
+    private final ObjectMapper _mapper;
+    private FileOutputStream _out;
+    private LinkedHashMap<String, PendingTask> _pending;
+    private int _finishedSinceCompact = 0;
+    private int _compactThreshold = DEFAULT_COMPACT_THRESHOLD;
+
+    /**
+     * Constructor
+     * @param taskDir task directory journal is stored in
+     */
+    public TaskJournal(final String taskDir){
+        _journalFile = new File(taskDir, JOURNAL_FILE);
+        _mapper = new ObjectMapper();
+    }
+
+    /**
+     * Gets journal file
+     * @return file
+     */
+    public File getJournalFile(){
+        return _journalFile;
+    }
+
+    /**
+     * Sets number of finished entries appended after which
+     * {@link #compactIfNeeded()} rewrites the journal
+     * @param compactThreshold number of entries
+     */
+    public synchronized void setCompactThreshold(int compactThreshold){
+        _compactThreshold = compactThreshold;
+    }
+
+    /**
+     * Appends {@code entry} to journal and forces it to disk
+     * @param entry entry to append
+     * @throws IOException if there was an error writing
+     */
+    public synchronized void append(final Entry entry) throws IOException {
+        if (_out == null){
+            _out = new FileOutputStream(_journalFile, true);
+        }
+        byte[] line = (_mapper.writeValueAsString(entry) + "\n").getBytes(StandardCharsets.UTF_8);
+        _out.write(line);
+        _out.getChannel().force(false);
+        if (_pending != null){
+            apply(_pending, entry);
+        }
+        if (FINISHED_OP.equals(entry.getOp())){
+            _finishedSinceCompact++;
+        }
+    }
+
+    /**
+     * Updates {@code pending} with {@code entry}
+     */
+    private static void apply(final Map<String, PendingTask> pending, final Entry entry){
+        if (entry.getId() == null || entry.getOp() == null){
+            return;
+        }
+        if (entry.getOp().equals(SUBMITTED_OP)){
+            pending.put(entry.getId(), new PendingTask(entry));
+        } else if (entry.getOp().equals(STARTED_OP)){
+            PendingTask task = pending.get(entry.getId());
+            if (task != null){
+                task._started = true;
+            }
+        } else if (entry.getOp().equals(FINISHED_OP)){
+            pending.remove(entry.getId());
+        }
+    }
+
+    /**
+     * Reads journal returning tasks that were submitted but never finished
+     * in the order they were submitted
+     * @return map of task id to pending task
+     * @throws IOException if there was an error reading the journal
+     */
+    public synchronized Map<String, PendingTask> replay() throws IOException {
+        LinkedHashMap<String, PendingTask> pending = new LinkedHashMap<>();
+        _pending = new LinkedHashMap<>();
+        _finishedSinceCompact = 0;
+        if (_journalFile.isFile() == false){
+            return pending;
+        }
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(
+                new FileInputStream(_journalFile), StandardCharsets.UTF_8))){
+            String line;
+            int lineNumber = 0;
+            while ((line = br.readLine()) != null){
+                lineNumber++;
+                if (line.trim().isEmpty()){
+                    continue;
+                }
+                Entry entry;
+                try {
+                    entry = _mapper.readValue(line, Entry.class);
+                } catch(IOException io){
+                    _logger.warn("Skipping unreadable line " + Integer.toString(lineNumber)
+                            + " of " + _journalFile.getAbsolutePath());
+                    continue;
+                }
+                apply(pending, entry);
+                if (FINISHED_OP.equals(entry.getOp())){
+                    _finishedSinceCompact++;
+                }
+            }
+        }
+        for (PendingTask task : pending.values()){
+            _pending.put(task.getSubmitted().getId(), task.copy());
+        }
+        return pending;
+    }
+
+    /**
+     * Replaces journal with submitted entries of {@code pending} so
+     * finished tasks no longer take up space. The new journal is written
+     * to a temp file and renamed over the old one
+     * @param pending tasks still pending
+     * @throws IOException if there was an error writing
+     */
+    public synchronized void compact(final Collection<PendingTask> pending) throws IOException {
+        LinkedHashMap<String, PendingTask> newPending = new LinkedHashMap<>();
+        for (PendingTask task : pending){
+            newPending.put(task.getSubmitted().getId(), new PendingTask(task.getSubmitted()));
+        }
+        rewrite(newPending.values());
+        _pending = newPending;
+    }
+
+    /**
+     * Rewrites journal with tasks still pending, keeping whether they
+     * started, if more than {@link #setCompactThreshold(int)} finished
+     * entries were appended since the journal was last compacted. Does
+     * nothing until {@link #replay()} or
+     * {@link #compact(java.util.Collection)} has been invoked since until
+     * then pending tasks are not known
+     * @return {@code true} if journal was rewritten
+     * @throws IOException if there was an error writing
+     */
+    public synchronized boolean compactIfNeeded() throws IOException {
+        if (_pending == null || _finishedSinceCompact < _compactThreshold){
+            return false;
+        }
+        rewrite(_pending.values());
+        return true;
+    }
+
+    /**
+     * Writes submitted entry, and started entry if task started, of each
+     * of {@code pending} to a temp file and renames it over the journal
+     */
+    private void rewrite(final Collection<PendingTask> pending) throws IOException {
+        close();
+        _finishedSinceCompact = 0;
+        if (pending.isEmpty() && _journalFile.exists() == false){
+            return;
+        }
+        File tmpFile = new File(_journalFile.getAbsolutePath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmpFile)){
+            for (PendingTask task : pending){
+                out.write((_mapper.writeValueAsString(task.getSubmitted()) + "\n").getBytes(StandardCharsets.UTF_8));
+                if (task.isStarted()){
+                    out.write((_mapper.writeValueAsString(new Entry(STARTED_OP,
+                            task.getSubmitted().getId())) + "\n").getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            out.getChannel().force(false);
+        }
+        Files.move(tmpFile.toPath(), _journalFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Closes journal, next {@link #append(org.ndexbio.communitydetection.rest.engine.TaskJournal.Entry)}
+     * reopens it
+     */
+    public synchronized void close(){
+        if (_out == null){
+            return;
+        }
+        try {
+            _out.close();
+        } catch(IOException io){
+            _logger.error("Error closing " + _journalFile.getAbsolutePath(), io);
+        }
+        _out = null;
+    }
+}
@@ -0,0 +1,306 @@
+package org.ndexbio.communitydetection.rest.engine;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Deletes directories of completed tasks that have not been accessed
+ * within the retention time or, when the directories of completed tasks
+ * take up more than the byte budget, those accessed least recently.
+ *
+ * Completed tasks are tracked in an index kept in memory in order of
+ * last access and saved to {@link #INDEX_FILE} under the task directory
+ * so the task directory only needs to be listed when the index is first
+ * loaded, to pick up tasks completed since the index was last saved.
+ * The directory of a task is only walked once to get its size, when the
+ * task completes.
+ *
+ * @author churas
+ */
+public class TaskReaper {
+
+    static Logger _logger = LoggerFactory.getLogger(TaskReaper.class);
+
+    /**
+     * Name of index file under task directory
+     */
+    public static final String INDEX_FILE = "cdtaskindex.json";
+
+    /**
+     * Completed task in index
+     */
+    public static class Entry {
+        private String _id;
+        private long _bytes;
+        private long _lastAccess;
+
+        public Entry(){
+        }
+
+        public Entry(final String id, long bytes, long lastAccess){
+            _id = id;
+            _bytes = bytes;
+            _lastAccess = lastAccess;
+        }
+
+        public String getId() {
+            return _id;
+        }
+
+        public void setId(String id) {
+            _id = id;
+        }
+
+        /**
+         * Gets size of task directory
+         * @return size in bytes
+         */
+        public long getBytes() {
+            return _bytes;
+        }
+
+        public void setBytes(long bytes) {
+            _bytes = bytes;
+        }
+
+        /**
+         * Gets time task was completed or its result last read
+         * @return time in milliseconds since epoch
+         */
+        public long getLastAccess() {
+            return _lastAccess;
+        }
+
+        public void setLastAccess(long lastAccess) {
+            _lastAccess = lastAccess;
+        }
+    }
+
+    private final File _taskDir;
+    private final File _indexFile;
+    private final long _ttlMillis;
+    private final long _maxBytes;
+    private final ObjectMapper _mapper;
+
+    /**
+     * Completed tasks, least recently accessed first
+     */
+    private final LinkedHashMap<String, Entry> _index = new LinkedHashMap<>(16, 0.75f, true);
+    private long _retainedBytes = 0;
+    private long _evictedTasks = 0;
+    private long _reclaimedBytes = 0;
+    private boolean _dirty = false;
+
+    /**
+     * Constructor
+     * @param taskDir task directory
+     * @param ttlMillis time in milliseconds a completed task is kept after
+     *                  it was last accessed, 0 or less to keep forever
+     * @param maxBytes maximum bytes completed tasks can take up, 0 or less
+     *                 for no limit
+     */
+    public TaskReaper(final String taskDir, long ttlMillis, long maxBytes){
+        _taskDir = new File(taskDir);
+        _indexFile = new File(taskDir, INDEX_FILE);
+        _ttlMillis = ttlMillis;
+        _maxBytes = maxBytes;
+        _mapper = new ObjectMapper();
+    }
+
+    /**
+     * Loads index from {@link #INDEX_FILE} and adds completed tasks found
+     * in task directory that are not in the index. Tasks in the index
+     * whose directory no longer exists are dropped
+     */
+    public synchronized void load(){
+        Map<String, Entry> found = new LinkedHashMap<>();
+        if (_indexFile.isFile()){
+            try {
+                List<Entry> entries = _mapper.readValue(_indexFile, new TypeReference<List<Entry>>(){});
+                for (Entry entry : entries){
+                    found.put(entry.getId(), entry);
+                }
+            } catch(IOException io){
+                _logger.error("Unable to read " + _indexFile.getAbsolutePath()
+                        + " rebuilding index from task directory", io);
+            }
+        }
+        List<Entry> entries = new ArrayList<>();
+        File[] taskDirs = _taskDir.listFiles(File::isDirectory);
+        if (taskDirs != null){
+            for (File dir : taskDirs){
+                Entry entry = found.get(dir.getName());
+                if (entry == null){
+                    File resultFile = new File(dir, CommunityDetectionEngineImpl.CDRESULT_JSON_FILE);
+                    if (resultFile.isFile() == false){
+                        // not a task or task has not completed
+                        continue;
+                    }
+                    entry = new Entry(dir.getName(), FileUtils.sizeOfDirectory(dir),
+                            resultFile.lastModified());
+                }
+                entries.add(entry);
+            }
+        }
+        entries.sort(Comparator.comparingLong(Entry::getLastAccess));
+        _index.clear();
+        _retainedBytes = 0;
+        for (Entry entry : entries){
+            _index.put(entry.getId(), entry);
+            _retainedBytes += entry.getBytes();
+        }
+        _dirty = true;
+    }
+
+    /**
+     * Adds completed task {@code id} to index getting size of its directory
+     * @param id id of task
+     */
+    public void add(final String id){
+        long bytes = FileUtils.sizeOfDirectory(new File(_taskDir, id));
+        synchronized(this){
+            Entry old = _index.put(id, new Entry(id, bytes, System.currentTimeMillis()));
+            if (old != null){
+                _retainedBytes -= old.getBytes();
+            }
+            _retainedBytes += bytes;
+            _dirty = true;
+        }
+    }
+
+    /**
+     * Marks task {@code id} as accessed now if it is in index
+     * @param id id of task
+     */
+    public synchronized void touch(final String id){
+        Entry entry = _index.get(id);
+        if (entry != null){
+            entry.setLastAccess(System.currentTimeMillis());
+            _dirty = true;
+        }
+    }
+
+    /**
+     * Removes task {@code id} from index, call when task is deleted
+     * @param id id of task
+     */
+    public synchronized void remove(final String id){
+        Entry entry = _index.remove(id);
+        if (entry != null){
+            _retainedBytes -= entry.getBytes();
+            _dirty = true;
+        }
+    }
+
+    /**
+     * Deletes directories of tasks not accessed since {@code now} minus
+     * the retention time and then of least recently accessed tasks until
+     * the total size is within the byte budget
+     * @param now current time in milliseconds
+     * @return ids of tasks that were deleted
+     */
+    public List<String> reap(long now){
+        List<Entry> evicted = new ArrayList<>();
+        synchronized(this){
+            Iterator<Entry> itr = _index.values().iterator();
+            while (itr.hasNext()){
+                Entry entry = itr.next();
+                boolean expired = _ttlMillis > 0 && entry.getLastAccess() + _ttlMillis <= now;
+                boolean overBudget = _maxBytes > 0 && _retainedBytes > _maxBytes;
+                if (expired == false && overBudget == false){
+                    break;
+                }
+                itr.remove();
+                _retainedBytes -= entry.getBytes();
+                evicted.add(entry);
+            }
+            if (evicted.isEmpty() == false){
+                _dirty = true;
+            }
+        }
+        List<String> ids = new ArrayList<>();
+        for (Entry entry : evicted){
+            File dir = new File(_taskDir, entry.getId());
+            if (FileUtils.deleteQuietly(dir) == false && dir.exists()){
+                _logger.error("Unable to delete " + dir.getAbsolutePath());
+                continue;
+            }
+            ids.add(entry.getId());
+            synchronized(this){
+                _evictedTasks++;
+                _reclaimedBytes += entry.getBytes();
+            }
+        }
+        if (ids.isEmpty() == false){
+            _logger.info("Removed " + Integer.toString(ids.size()) + " completed tasks");
+        }
+        return ids;
+    }
+
+    /**
+     * Writes index to {@link #INDEX_FILE} if it changed since last written.
+     * The index is written to a temp file and renamed over the old one
+     */
+    public synchronized void save(){
+        if (_dirty == false){
+            return;
+        }
+        File tmpFile = new File(_indexFile.getAbsolutePath() + ".tmp");
+        try {
+            try (FileOutputStream out = new FileOutputStream(tmpFile)){
+                _mapper.writeValue(out, new ArrayList<>(_index.values()));
+            }
+            Files.move(tmpFile.toPath(), _indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            _dirty = false;
+        } catch(IOException io){
+            _logger.error("Unable to write " + _indexFile.getAbsolutePath(), io);
+        }
+    }
+
+    /**
+     * Gets number of completed tasks in index
+     * @return number of tasks
+     */
+    public synchronized int getRetainedTasks(){
+        return _index.size();
+    }
+
+    /**
+     * Gets size of directories of completed tasks in index
+     * @return size in bytes
+     */
+    public synchronized long getRetainedBytes(){
+        return _retainedBytes;
+    }
+
+    /**
+     * Gets number of tasks deleted since this object was created
+     * @return number of tasks
+     */
+    public synchronized long getEvictedTasks(){
+        return _evictedTasks;
+    }
+
+    /**
+     * Gets bytes freed by deleting tasks since this object was created
+     * @return size in bytes
+     */
+    public synchronized long getReclaimedBytes(){
+        return _reclaimedBytes;
+    }
+}
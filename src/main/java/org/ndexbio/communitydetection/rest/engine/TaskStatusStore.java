@@ -0,0 +1,219 @@
+package org.ndexbio.communitydetection.rest.engine;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.ndexbio.communitydetection.rest.model.CommunityDetectionResult;
+import org.ndexbio.communitydetection.rest.model.CommunityDetectionResultStatus;
+
+/**
+ * In memory store of task state.
+ *
+ * A task is {@link State#ACTIVE} from when it is submitted until its
+ * result is written to disk. Active tasks hold the live
+ * {@link CommunityDetectionResult} updated by the runner and are never
+ * evicted, the engine must call {@link #finish(org.ndexbio.communitydetection.rest.model.CommunityDetectionResult)}
+ * or {@link #remove(java.lang.String)} for each of them.
+ *
+ * A task is {@link State#FINISHED} once its result is on disk. Only the
+ * status of finished tasks, without the result data, is kept so polling
+ * clients do not cause cdresult.json to be read again. Finished entries
+ * are evicted least recently used first once there are more than the
+ * maximum, and are dropped once older than the time to live.
+ *
+ * @author churas
+ */
+public class TaskStatusStore {
+
+    /**
+     * Default maximum number of finished tasks whose status is kept
+     */
+    public static final int DEFAULT_MAX_FINISHED = 10000;
+
+    /**
+     * Default time in milliseconds status of a finished task is kept
+     */
+    public static final long DEFAULT_TTL_MILLIS = 3600000;
+
+    /**
+     * State of a task in store
+     */
+    public enum State {
+        /**
+         * Task is not in store
+         */
+        UNKNOWN,
+
+        /**
+         * Task is queued or running
+         */
+        ACTIVE,
+
+        /**
+         * Result of task is on disk
+         */
+        FINISHED
+    }
+
+    private static class FinishedEntry {
+        private final CommunityDetectionResultStatus _status;
+        private final long _finishedTime;
+
+        FinishedEntry(final CommunityDetectionResultStatus status, long finishedTime){
+            _status = status;
+            _finishedTime = finishedTime;
+        }
+    }
+
+    private final ConcurrentHashMap<String, CommunityDetectionResult> _active = new ConcurrentHashMap<>();
+    private final LinkedHashMap<String, FinishedEntry> _finished;
+    private final int _maxFinished;
+    private final long _ttlMillis;
+
+    /**
+     * Constructor using {@link #DEFAULT_MAX_FINISHED} and {@link #DEFAULT_TTL_MILLIS}
+     */
+    public TaskStatusStore(){
+        this(DEFAULT_MAX_FINISHED, DEFAULT_TTL_MILLIS);
+    }
+
+    /**
+     * Constructor
+     * @param maxFinished maximum number of finished tasks whose status
+     *                    is kept, 0 or less to keep none
+     * @param ttlMillis time in milliseconds status of finished task is kept
+     */
+    public TaskStatusStore(int maxFinished, long ttlMillis){
+        _maxFinished = maxFinished;
+        _ttlMillis = ttlMillis;
+        _finished = new LinkedHashMap<String, FinishedEntry>(16, 0.75f, true){
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, FinishedEntry> eldest) {
+                return size() > _maxFinished;
+            }
+        };
+    }
+
+    /**
+     * Adds task as {@link State#ACTIVE}
+     * @param id id of task
+     * @param cdr result updated as task runs
+     */
+    public void putActive(final String id, final CommunityDetectionResult cdr){
+        _active.put(id, cdr);
+        synchronized(_finished){
+            _finished.remove(id);
+        }
+    }
+
+    /**
+     * Gets result of {@link State#ACTIVE} task
+     * @param id id of task
+     * @return result or {@code null} if task is not active
+     */
+    public CommunityDetectionResult getActive(final String id){
+        return _active.get(id);
+    }
+
+    /**
+     * Denotes if task is {@link State#ACTIVE}
+     * @param id id of task
+     * @return {@code true} if active
+     */
+    public boolean isActive(final String id){
+        return _active.containsKey(id);
+    }
+
+    /**
+     * Marks task of {@code cdr} {@link State#FINISHED} keeping a copy of
+     * its status
+     * @param cdr final result of task, already written to disk
+     */
+    public void finish(final CommunityDetectionResult cdr){
+        addFinished(new CommunityDetectionResultStatus(cdr));
+        _active.remove(cdr.getId());
+    }
+
+    /**
+     * Keeps {@code status} of a finished task read from disk so the next
+     * read is served from memory. Ignored if task is active
+     * @param status status of finished task
+     */
+    public void putFinished(final CommunityDetectionResultStatus status){
+        if (status == null || status.getId() == null
+                || _active.containsKey(status.getId())){
+            return;
+        }
+        addFinished(status);
+    }
+
+    private void addFinished(final CommunityDetectionResultStatus status){
+        if (_maxFinished <= 0){
+            return;
+        }
+        synchronized(_finished){
+            _finished.put(status.getId(), new FinishedEntry(status, System.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * Gets status of {@link State#FINISHED} task
+     * @param id id of task
+     * @return status or {@code null} if not in store or older than time to live
+     */
+    public CommunityDetectionResultStatus getFinishedStatus(final String id){
+        synchronized(_finished){
+            FinishedEntry entry = _finished.get(id);
+            if (entry == null){
+                return null;
+            }
+            if (System.currentTimeMillis() - entry._finishedTime > _ttlMillis){
+                _finished.remove(id);
+                return null;
+            }
+            return entry._status;
+        }
+    }
+
+    /**
+     * Gets state of task
+     * @param id id of task
+     * @return state
+     */
+    public State getState(final String id){
+        if (_active.containsKey(id)){
+            return State.ACTIVE;
+        }
+        return getFinishedStatus(id) == null ? State.UNKNOWN : State.FINISHED;
+    }
+
+    /**
+     * Removes task from store whatever its state
+     * @param id id of task
+     * @return result of task if it was {@link State#ACTIVE} otherwise {@code null}
+     */
+    public CommunityDetectionResult remove(final String id){
+        synchronized(_finished){
+            _finished.remove(id);
+        }
+        return _active.remove(id);
+    }
+
+    /**
+     * Gets number of {@link State#ACTIVE} tasks
+     * @return number of tasks
+     */
+    public int getActiveCount(){
+        return _active.size();
+    }
+
+    /**
+     * Gets number of {@link State#FINISHED} tasks whose status is kept
+     * @return number of tasks
+     */
+    public int getFinishedCount(){
+        synchronized(_finished){
+            return _finished.size();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package org.ndexbio.communitydetection.rest.engine;
+
+import java.io.IOException;
+import org.ndexbio.communitydetection.rest.model.CommunityDetectionResult;
+import org.ndexbio.communitydetection.rest.model.CommunityDetectionResultStatus;
+
+/**
+ * Persistent store of results of finished tasks. A task is finished once
+ * its result is in the store
+ * @author churas
+ */
+public interface TaskStore {
+
+    /**
+     * Stores {@code cdr} along with its status, replacing any result
+     * already stored for the task
+     * @param cdr result of task
+     * @throws IOException if there was an error writing
+     */
+    public void putResult(final CommunityDetectionResult cdr) throws IOException;
+
+    /**
+     * Gets result of task {@code id}
+     * @param id id of task
+     * @return result or {@code null} if task is not finished
+     * @throws IOException if there was an error reading
+     */
+    public CommunityDetectionResult getResult(final String id) throws IOException;
+
+    /**
+     * Gets status of task {@code id} without reading its result
+     * @param id id of task
+     * @return status or {@code null} if task is not finished or its status
+     *         was not stored separately, in which case the caller should
+     *         fall back to {@link #getResult(java.lang.String)}
+     * @throws IOException if there was an error reading
+     */
+    public CommunityDetectionResultStatus getStatus(final String id) throws IOException;
+
+    /**
+     * Gets version of result of task {@code id}, which changes each time
+     * the result is stored
+     * @param id id of task
+     * @return version greater than 0 or 0 if task is not finished
+     */
+    public long getVersion(final String id);
+
+    /**
+     * Gets size of serialized result of task {@code id}
+     * @param id id of task
+     * @return size in bytes or 0 if task is not finished
+     */
+    public long getResultSize(final String id);
+
+    /**
+     * Opens serialized result of task {@code id} so it can be sent as is.
+     * The result stays readable until the returned value is closed even
+     * if it is deleted or moved in the meantime
+     * @param id id of task
+     * @return result, which the caller must close, or {@code null} if
+     *         task is not finished
+     * @throws IOException if there was an error opening the result
+     */
+    public StoredResult openResult(final String id) throws IOException;
+
+    /**
+     * Denotes if results are kept in the directory of each task. If
+     * {@code false} the directory of a task can be removed once its result
+     * is stored
+     * @return {@code true} if results are kept in the task directory
+     */
+    public boolean usesTaskDirectory();
+
+    /**
+     * Removes result of task {@code id}
+     * @param id id of task
+     * @throws IOException if there was an error writing
+     */
+    public void delete(final String id) throws IOException;
+
+    /**
+     * Reclaims space held by deleted or replaced results if enough has
+     * built up. Invoked periodically by the engine
+     * @throws IOException if there was an error
+     */
+    public void compact() throws IOException;
+
+    /**
+     * Releases resources held by store
+     */
+    public void close();
+}
@@ -0,0 +1,225 @@
+package org.ndexbio.communitydetection.rest.engine.algorithms;
+
+import java.util.Arrays;
+
+/**
+ * Undirected weighted graph stored in compressed sparse row form using
+ * primitive arrays. Neighbors of node {@code i} are
+ * {@code targets[offsets[i]]} through {@code targets[offsets[i+1]-1]}
+ * with matching {@code weights}.
+ *
+ * Every edge between two distinct nodes is stored in both directions.
+ * A self loop of weight {@code w} is stored once with weight {@code 2w}
+ * so the sum of a row equals the weighted degree of the node, and
+ * duplicate edges are merged by summing their weights.
+ *
+ * @author churas
+ */
+public class CompressedSparseRowGraph {
+
+    private final int _numNodes;
+    private final int[] _offsets;
+    private final int[] _targets;
+    private final double[] _weights;
+    private final double[] _degrees;
+    private final double _totalWeight;
+
+    private CompressedSparseRowGraph(int numNodes, int[] offsets, int[] targets,
+            double[] weights){
+        _numNodes = numNodes;
+        _offsets = offsets;
+        _targets = targets;
+        _weights = weights;
+        _degrees = new double[numNodes];
+        double total = 0;
+        for (int i = 0; i < numNodes; i++){
+            double deg = 0;
+            for (int e = offsets[i]; e < offsets[i+1]; e++){
+                deg += weights[e];
+            }
+            _degrees[i] = deg;
+            total += deg;
+        }
+        _totalWeight = total;
+    }
+
+    /**
+     * Builds graph from edge arrays. Entries {@code sources[i]},
+     * {@code targets[i]}, {@code weights[i]} for {@code i < numEdges}
+     * denote an undirected edge
+     * @param numNodes number of nodes, all node ids must be less than this
+     * @param numEdges number of edges in arrays
+     * @param sources source node of each edge
+     * @param targets target node of each edge
+     * @param weights weight of each edge
+     * @return graph
+     */
+    public static CompressedSparseRowGraph fromEdges(int numNodes, int numEdges,
+            int[] sources, int[] targets, double[] weights){
+        int[] counts = new int[numNodes + 1];
+        for (int i = 0; i < numEdges; i++){
+            counts[sources[i]]++;
+            if (sources[i] != targets[i]){
+                counts[targets[i]]++;
+            }
+        }
+        int[] offsets = new int[numNodes + 1];
+        for (int i = 0; i < numNodes; i++){
+            offsets[i+1] = offsets[i] + counts[i];
+        }
+        int[] pos = Arrays.copyOf(offsets, numNodes);
+        int[] adj = new int[offsets[numNodes]];
+        double[] adjWeights = new double[offsets[numNodes]];
+        for (int i = 0; i < numEdges; i++){
+            int s = sources[i];
+            int t = targets[i];
+            if (s == t){
+                adj[pos[s]] = s;
+                adjWeights[pos[s]++] = 2.0 * weights[i];
+                continue;
+            }
+            adj[pos[s]] = t;
+            adjWeights[pos[s]++] = weights[i];
+            adj[pos[t]] = s;
+            adjWeights[pos[t]++] = weights[i];
+        }
+        return mergeDuplicates(numNodes, offsets, adj, adjWeights);
+    }
+
+    /**
+     * Builds graph from rows that may contain the same target more than
+     * once, summing the weights of duplicates
+     */
+    private static CompressedSparseRowGraph mergeDuplicates(int numNodes, int[] offsets,
+            int[] adj, double[] adjWeights){
+        int[] newOffsets = new int[numNodes + 1];
+        int[] newAdj = new int[adj.length];
+        double[] newWeights = new double[adj.length];
+        double[] accum = new double[numNodes];
+        boolean[] seen = new boolean[numNodes];
+        int out = 0;
+        for (int i = 0; i < numNodes; i++){
+            int rowStart = out;
+            for (int e = offsets[i]; e < offsets[i+1]; e++){
+                int t = adj[e];
+                if (seen[t] == false){
+                    seen[t] = true;
+                    newAdj[out++] = t;
+                }
+                accum[t] += adjWeights[e];
+            }
+            for (int e = rowStart; e < out; e++){
+                int t = newAdj[e];
+                newWeights[e] = accum[t];
+                accum[t] = 0;
+                seen[t] = false;
+            }
+            newOffsets[i+1] = out;
+        }
+        return new CompressedSparseRowGraph(numNodes, newOffsets,
+                Arrays.copyOf(newAdj, out), Arrays.copyOf(newWeights, out));
+    }
+
+    /**
+     * Builds graph whose nodes are the communities of this graph. The weight
+     * between two communities is the sum of weights of edges between their
+     * members and edges within a community become a self loop
+     * @param communities community of each node numbered {@code 0} to
+     *                    {@code numCommunities-1}
+     * @param numCommunities number of communities
+     * @return aggregated graph
+     */
+    public CompressedSparseRowGraph aggregate(int[] communities, int numCommunities){
+        int[] memberOffsets = new int[numCommunities + 1];
+        for (int i = 0; i < _numNodes; i++){
+            memberOffsets[communities[i] + 1]++;
+        }
+        for (int c = 0; c < numCommunities; c++){
+            memberOffsets[c+1] += memberOffsets[c];
+        }
+        int[] members = new int[_numNodes];
+        int[] pos = Arrays.copyOf(memberOffsets, numCommunities);
+        for (int i = 0; i < _numNodes; i++){
+            members[pos[communities[i]]++] = i;
+        }
+        int[] offsets = new int[numCommunities + 1];
+        int[] adj = new int[_targets.length];
+        double[] adjWeights = new double[_targets.length];
+        double[] accum = new double[numCommunities];
+        boolean[] seen = new boolean[numCommunities];
+        int out = 0;
+        for (int c = 0; c < numCommunities; c++){
+            int rowStart = out;
+            for (int m = memberOffsets[c]; m < memberOffsets[c+1]; m++){
+                int i = members[m];
+                for (int e = _offsets[i]; e < _offsets[i+1]; e++){
+                    int d = communities[_targets[e]];
+                    if (seen[d] == false){
+                        seen[d] = true;
+                        adj[out++] = d;
+                    }
+                    accum[d] += _weights[e];
+                }
+            }
+            for (int e = rowStart; e < out; e++){
+                int d = adj[e];
+                adjWeights[e] = accum[d];
+                accum[d] = 0;
+                seen[d] = false;
+            }
+            offsets[c+1] = out;
+        }
+        return new CompressedSparseRowGraph(numCommunities, offsets,
+                Arrays.copyOf(adj, out), Arrays.copyOf(adjWeights, out));
+    }
+
+    /**
+     * Gets number of nodes
+     * @return number of nodes
+     */
+    public int getNumNodes() {
+        return _numNodes;
+    }
+
+    /**
+     * Gets row offsets which has {@link #getNumNodes()} + 1 entries
+     * @return offsets, caller should not modify
+     */
+    public int[] getOffsets() {
+        return _offsets;
+    }
+
+    /**
+     * Gets neighbors of all nodes
+     * @return neighbors, caller should not modify
+     */
+    public int[] getTargets() {
+        return _targets;
+    }
+
+    /**
+     * Gets weights of edges matching {@link #getTargets()}
+     * @return weights, caller should not modify
+     */
+    public double[] getWeights() {
+        return _weights;
+    }
+
+    /**
+     * Gets weighted degree of node
+     * @param node node
+     * @return sum of weights of edges of node
+     */
+    public double getDegree(int node) {
+        return _degrees[node];
+    }
+
+    /**
+     * Gets sum of weighted degree of all nodes which is twice
+     * the total edge weight
+     * @return total weight
+     */
+    public double getTotalWeight() {
+        return _totalWeight;
+    }
+}
@@ -0,0 +1,317 @@
+package org.ndexbio.communitydetection.rest.engine.algorithms;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import org.ndexbio.communitydetection.rest.model.CommunityDetectionRequest;
+import org.ndexbio.communitydetection.rest.model.CommunityDetectionResult;
+import org.ndexbio.communitydetection.rest.model.exceptions.CommunityDetectionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs heat diffusion in process via {@link HeatDiffusion} instead of via
+ * a docker container.
+ *
+ * Input is a CX network with {@code nodes}, {@code edges}, and
+ * {@code nodeAttributes} aspects. The initial heat of a node is the value of
+ * its {@link #INPUT_ATTRIBUTE_NAME} attribute, nodes without it have no heat.
+ * Edges are treated as undirected and unweighted with duplicates ignored.
+ *
+ * Output matches the legacy diffusion service which is a json object of form:
+ * <pre>
+ * {"data": {"nodeAttributes": [
+ *     {"po": NODEID, "n": "diffusion_output_heat", "v": HEAT, "d": "double"},
+ *     {"po": NODEID, "n": "diffusion_output_rank", "v": RANK, "d": "integer"},
+ *     ...]},
+ *  "errors": []}
+ * </pre>
+ * where rank {@code 0} is the hottest node.
+ *
+ * Only the {@link #TIME}, {@link #NORMALIZE_LAPLACIAN},
+ * {@link #INPUT_ATTRIBUTE_NAME}, and {@link #OUTPUT_ATTRIBUTE_NAME} parameters
+ * are supported. Use
+ * {@link #isSupported(org.ndexbio.communitydetection.rest.model.CommunityDetectionRequest, long)}
+ * to check if a request can be run by this object.
+ *
+ * @author churas
+ */
+public class HeatDiffusionCommunityDetectionRunner implements Callable<CommunityDetectionResult> {
+
+    static Logger _logger = LoggerFactory.getLogger(HeatDiffusionCommunityDetectionRunner.class);
+
+    public static final String TIME = "--time";
+    public static final String NORMALIZE_LAPLACIAN = "--normalize_laplacian";
+    public static final String INPUT_ATTRIBUTE_NAME = "--input_attribute_name";
+    public static final String OUTPUT_ATTRIBUTE_NAME = "--output_attribute_name";
+
+    public static final double DEFAULT_TIME = 0.1;
+    public static final String DEFAULT_INPUT_ATTRIBUTE_NAME = "diffusion_input";
+    public static final String DEFAULT_OUTPUT_ATTRIBUTE_NAME = "diffusion_output";
+
+    public static final String HEAT_SUFFIX = "_heat";
+    public static final String RANK_SUFFIX = "_rank";
+
+    public static final String NODES = "nodes";
+    public static final String EDGES = "edges";
+    public static final String NODE_ATTRIBUTES = "nodeAttributes";
+
+    private final String _id;
+    private final CommunityDetectionRequest _cdr;
+    private final long _startTime;
+    private final String _workDir;
+
+    /**
+     * Constructor
+     * @param id id of task
+     * @param cdr The request to process
+     * @param startTime Time task started in ms since epoch (1969)
+     * @param taskDir Base directory for tasks (this task will be put into taskDir/id)
+     */
+    public HeatDiffusionCommunityDetectionRunner(final String id,
+            final CommunityDetectionRequest cdr, final long startTime,
+            final String taskDir){
+        _id = id;
+        _cdr = cdr;
+        _startTime = startTime;
+        _workDir = taskDir + File.separator + id;
+    }
+
+    /**
+     * Checks if {@code request} can be run by this object. This verifies the
+     * parameters are supported and that the data is a CX network with no more
+     * than {@code maxEdges} edges
+     * @param request request to check
+     * @param maxEdges maximum number of edges allowed
+     * @return {@code true} if request can be run otherwise {@code false}
+     */
+    public static boolean isSupported(final CommunityDetectionRequest request, long maxEdges){
+        if (request == null || request.getData() == null || !request.getData().isArray()){
+            return false;
+        }
+        Map<String, String> params = request.getCustomParameters();
+        if (params != null){
+            for (Map.Entry<String, String> entry : params.entrySet()){
+                String key = entry.getKey();
+                String val = entry.getValue() == null ? null : entry.getValue().trim();
+                if (key.equals(TIME)){
+                    try {
+                        if (Double.parseDouble(val) < 0){
+                            return false;
+                        }
+                    } catch(NullPointerException | NumberFormatException ex){
+                        return false;
+                    }
+                } else if (key.equals(NORMALIZE_LAPLACIAN)){
+                    if (val == null || (!val.equalsIgnoreCase("true")
+                            && !val.equalsIgnoreCase("false"))){
+                        return false;
+                    }
+                } else if (key.equals(INPUT_ATTRIBUTE_NAME) || key.equals(OUTPUT_ATTRIBUTE_NAME)){
+                    if (val == null || val.isEmpty()){
+                        return false;
+                    }
+                } else {
+                    return false;
+                }
+            }
+        }
+        long numEdges = 0;
+        for (JsonNode fragment : request.getData()){
+            JsonNode edges = fragment.get(EDGES);
+            if (edges != null){
+                numEdges += edges.size();
+                if (numEdges > maxEdges){
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets value of parameter {@code key} or {@code defaultValue} if not set
+     */
+    private String getParameter(final String key, final String defaultValue){
+        Map<String, String> params = _cdr.getCustomParameters();
+        if (params == null || params.get(key) == null){
+            return defaultValue;
+        }
+        return params.get(key).trim();
+    }
+
+    /**
+     * Gets all elements of aspect {@code aspectName} in CX {@code data}
+     */
+    private static List<JsonNode> getAspectElements(final JsonNode data,
+            final String aspectName){
+        List<JsonNode> elements = new ArrayList<>();
+        for (JsonNode fragment : data){
+            JsonNode aspect = fragment.get(aspectName);
+            if (aspect != null && aspect.isArray()){
+                Iterator<JsonNode> itr = aspect.elements();
+                while (itr.hasNext()){
+                    elements.add(itr.next());
+                }
+            }
+        }
+        return elements;
+    }
+
+    private static long getRequiredId(final JsonNode element, final String field,
+            final String aspectName) throws CommunityDetectionException {
+        JsonNode val = element.get(field);
+        if (val == null || !val.canConvertToLong()){
+            throw new CommunityDetectionException("Missing or invalid " + field
+                    + " in " + aspectName + " element: " + element.toString());
+        }
+        return val.asLong();
+    }
+
+    /**
+     * Gets index of {@code nodeId} adding it to {@code nodeIds} if needed
+     */
+    private static int getNodeIndex(long nodeId, final Map<Long, Integer> nodeIndex,
+            final List<Long> nodeIds){
+        Integer idx = nodeIndex.get(nodeId);
+        if (idx == null){
+            idx = nodeIds.size();
+            nodeIndex.put(nodeId, idx);
+            nodeIds.add(nodeId);
+        }
+        return idx;
+    }
+
+    /**
+     * Runs heat diffusion on CX network {@code data} and generates output
+     * @param data CX network
+     * @param time diffusion time
+     * @param normalize if {@code true} use normalized laplacian
+     * @param inputAttributeName name of node attribute holding initial heat
+     * @param outputAttributeName prefix of output node attributes
+     * @return result in same format as legacy diffusion service
+     * @throws CommunityDetectionException if data could not be parsed
+     */
+    protected JsonNode runDiffusion(final JsonNode data, double time, boolean normalize,
+            final String inputAttributeName, final String outputAttributeName) throws CommunityDetectionException {
+        Map<Long, Integer> nodeIndex = new HashMap<>();
+        List<Long> nodeIds = new ArrayList<>();
+        for (JsonNode node : getAspectElements(data, NODES)){
+            getNodeIndex(getRequiredId(node, "@id", NODES), nodeIndex, nodeIds);
+        }
+        List<JsonNode> edges = getAspectElements(data, EDGES);
+        int[] sources = new int[edges.size()];
+        int[] targets = new int[edges.size()];
+        double[] weights = new double[edges.size()];
+        Set<Long> seenEdges = new HashSet<>();
+        int numEdges = 0;
+        for (JsonNode edge : edges){
+            int s = getNodeIndex(getRequiredId(edge, "s", EDGES), nodeIndex, nodeIds);
+            int t = getNodeIndex(getRequiredId(edge, "t", EDGES), nodeIndex, nodeIds);
+            long key = ((long)Math.min(s, t) << 32) | (long)Math.max(s, t);
+            if (seenEdges.add(key) == false){
+                continue;
+            }
+            sources[numEdges] = s;
+            targets[numEdges] = t;
+            // self loops are stored doubled by the graph, but add 1 to the degree
+            weights[numEdges++] = s == t ? 0.5 : 1.0;
+        }
+        int numNodes = nodeIds.size();
+        double[] heat = new double[numNodes];
+        for (JsonNode attr : getAspectElements(data, NODE_ATTRIBUTES)){
+            JsonNode name = attr.get("n");
+            if (name == null || !inputAttributeName.equals(name.asText())){
+                continue;
+            }
+            Integer idx = nodeIndex.get(getRequiredId(attr, "po", NODE_ATTRIBUTES));
+            if (idx == null){
+                continue;
+            }
+            JsonNode val = attr.get("v");
+            try {
+                heat[idx] = val.isNumber() ? val.asDouble() : Double.parseDouble(val.asText());
+            } catch(NullPointerException | NumberFormatException ex){
+                throw new CommunityDetectionException("Unable to parse heat from "
+                        + inputAttributeName + " attribute: " + attr.toString());
+            }
+        }
+
+        CompressedSparseRowGraph graph = CompressedSparseRowGraph.fromEdges(numNodes,
+                numEdges, sources, targets, weights);
+        final double[] result = new HeatDiffusion(graph, normalize).diffuse(heat, time);
+
+        // stable sort so ties are ranked in node order
+        Integer[] order = new Integer[numNodes];
+        for (int i = 0; i < numNodes; i++){
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(result[b], result[a]));
+        int[] rank = new int[numNodes];
+        for (int r = 0; r < numNodes; r++){
+            rank[order[r]] = r;
+        }
+
+        ObjectMapper mapper = new ObjectMapper();
+        ObjectNode root = mapper.createObjectNode();
+        ArrayNode nodeAttrs = root.putObject("data").putArray(NODE_ATTRIBUTES);
+        for (int i = 0; i < numNodes; i++){
+            ObjectNode heatAttr = nodeAttrs.addObject();
+            heatAttr.put("po", nodeIds.get(i));
+            heatAttr.put("n", outputAttributeName + HEAT_SUFFIX);
+            heatAttr.put("v", result[i]);
+            heatAttr.put("d", "double");
+            ObjectNode rankAttr = nodeAttrs.addObject();
+            rankAttr.put("po", nodeIds.get(i));
+            rankAttr.put("n", outputAttributeName + RANK_SUFFIX);
+            rankAttr.put("v", rank[i]);
+            rankAttr.put("d", "integer");
+        }
+        root.putArray("errors");
+        return root;
+    }
+
+    /**
+     * Runs heat diffusion on data in request passed in via constructor
+     * @return Result of running task
+     * @throws Exception if there was an error
+     */
+    @Override
+    public CommunityDetectionResult call() throws Exception {
+        CommunityDetectionResult cdr = new CommunityDetectionResult();
+        cdr.setId(_id);
+        cdr.setStartTime(_startTime);
+        cdr.setProgress(0);
+        cdr.setStatus(CommunityDetectionResult.PROCESSING_STATUS);
+        try {
+            File workDir = new File(_workDir);
+            if (workDir.isDirectory() == false && workDir.mkdirs() == false){
+                throw new CommunityDetectionException("Unable to create directory: " + _workDir);
+            }
+            cdr.setResult(runDiffusion(_cdr.getData(),
+                    Double.parseDouble(getParameter(TIME, Double.toString(DEFAULT_TIME))),
+                    Boolean.parseBoolean(getParameter(NORMALIZE_LAPLACIAN, "false")),
+                    getParameter(INPUT_ATTRIBUTE_NAME, DEFAULT_INPUT_ATTRIBUTE_NAME),
+                    getParameter(OUTPUT_ATTRIBUTE_NAME, DEFAULT_OUTPUT_ATTRIBUTE_NAME)));
+            cdr.setStatus(CommunityDetectionResult.COMPLETE_STATUS);
+        } catch(Exception ex){
+            cdr.setStatus(CommunityDetectionResult.FAILED_STATUS);
+            cdr.setMessage("Received error trying to run task: " + ex.getMessage());
+            _logger.error("Received error trying to run heat diffusion for task " + _id, ex);
+        }
+        cdr.setProgress(100);
+        cdr.setWallTime(System.currentTimeMillis() - cdr.getStartTime());
+        return cdr;
+    }
+}
@@ -0,0 +1,349 @@
+package org.ndexbio.communitydetection.rest.engine.algorithms;
+
+import com.fasterxml.jackson.databind.node.TextNode;
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import org.ndexbio.communitydetection.rest.model.CommunityDetectionRequest;
+import org.ndexbio.communitydetection.rest.model.CommunityDetectionResult;
+import org.ndexbio.communitydetection.rest.model.exceptions.CommunityDetectionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs Louvain community detection in process via {@link ParallelLouvain}
+ * instead of via a docker container.
+ *
+ * Input is an edge list with one {@code SOURCE TARGET [WEIGHT]} edge per line
+ * where {@code SOURCE} and {@code TARGET} are non negative integer node ids.
+ * Output matches the louvain docker image, which is one
+ * {@code PARENT,CHILD,TYPE;} entry per line where {@code TYPE} is {@code c-c}
+ * for a cluster to cluster edge and {@code c-m} for a cluster to member edge.
+ * Cluster ids start one past the largest node id with the first id being
+ * the root cluster.
+ *
+ * Only the {@link #CONFIGMODEL} (Default or RB), {@link #RESOLUTION},
+ * {@link #DEEP}, and {@link #SEED} parameters are supported. Use
+ * {@link #isSupported(org.ndexbio.communitydetection.rest.model.CommunityDetectionRequest, long)}
+ * to check if a request can be run by this object.
+ *
+ * @author churas
+ */
+public class LouvainCommunityDetectionRunner implements Callable<CommunityDetectionResult> {
+
+    static Logger _logger = LoggerFactory.getLogger(LouvainCommunityDetectionRunner.class);
+
+    public static final String CONFIGMODEL = "--configmodel";
+    public static final String RESOLUTION = "--resolution_parameter";
+    public static final String DEEP = "--deep";
+    public static final String SEED = "--seed";
+
+    public static final String DEFAULT_CONFIGMODEL = "Default";
+    public static final String RB_CONFIGMODEL = "RB";
+
+    private final String _id;
+    private final CommunityDetectionRequest _cdr;
+    private final long _startTime;
+    private final String _workDir;
+
+    /**
+     * Edge list parsed into primitive arrays
+     */
+    static class EdgeList {
+        int numEdges;
+        int[] sources;
+        int[] targets;
+        double[] weights;
+    }
+
+    /**
+     * Constructor
+     * @param id id of task
+     * @param cdr The request to process
+     * @param startTime Time task started in ms since epoch (1969)
+     * @param taskDir Base directory for tasks (this task will be put into taskDir/id)
+     */
+    public LouvainCommunityDetectionRunner(final String id,
+            final CommunityDetectionRequest cdr, final long startTime,
+            final String taskDir){
+        _id = id;
+        _cdr = cdr;
+        _startTime = startTime;
+        _workDir = taskDir + File.separator + id;
+    }
+
+    /**
+     * Checks if {@code request} can be run by this object. This verifies the
+     * parameters are supported and that the data is text with no more than
+     * {@code maxEdges} lines each starting with two integer node ids
+     * @param request request to check
+     * @param maxEdges maximum number of edges allowed
+     * @return {@code true} if request can be run otherwise {@code false}
+     */
+    public static boolean isSupported(final CommunityDetectionRequest request, long maxEdges){
+        if (request == null || !(request.getData() instanceof TextNode)){
+            return false;
+        }
+        Map<String, String> params = request.getCustomParameters();
+        if (params != null){
+            for (Map.Entry<String, String> entry : params.entrySet()){
+                String key = entry.getKey();
+                String val = entry.getValue() == null ? null : entry.getValue().trim();
+                if (key.equals(CONFIGMODEL)){
+                    if (val != null && !val.equals(DEFAULT_CONFIGMODEL) && !val.equals(RB_CONFIGMODEL)){
+                        return false;
+                    }
+                } else if (key.equals(RESOLUTION)){
+                    try {
+                        Double.parseDouble(val);
+                    } catch(NullPointerException | NumberFormatException ex){
+                        return false;
+                    }
+                } else if (key.equals(SEED)){
+                    try {
+                        Long.parseLong(val);
+                    } catch(NullPointerException | NumberFormatException ex){
+                        return false;
+                    }
+                } else if (!key.equals(DEEP)){
+                    return false;
+                }
+            }
+        }
+        String data = request.getData().asText();
+        long numEdges = 0;
+        int pos = 0;
+        while (pos < data.length()){
+            int end = data.indexOf('\n', pos);
+            if (end == -1){
+                end = data.length();
+            }
+            if (isBlank(data, pos, end) == false){
+                if (++numEdges > maxEdges || startsWithTwoIntegers(data, pos, end) == false){
+                    return false;
+                }
+            }
+            pos = end + 1;
+        }
+        return true;
+    }
+
+    private static boolean isBlank(final String data, int start, int end){
+        for (int i = start; i < end; i++){
+            if (!Character.isWhitespace(data.charAt(i))){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean startsWithTwoIntegers(final String data, int start, int end){
+        int pos = start;
+        for (int field = 0; field < 2; field++){
+            while (pos < end && Character.isWhitespace(data.charAt(pos))){
+                pos++;
+            }
+            int digits = 0;
+            while (pos < end && Character.isDigit(data.charAt(pos))){
+                pos++;
+                digits++;
+            }
+            if (digits == 0 || digits > 9 || (pos < end && !Character.isWhitespace(data.charAt(pos)))){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parses edge list in {@code data}
+     * @param data edge list text
+     * @return parsed edges
+     * @throws CommunityDetectionException if a line cannot be parsed
+     */
+    static EdgeList parseEdgeList(final String data) throws CommunityDetectionException {
+        EdgeList el = new EdgeList();
+        int capacity = 1024;
+        el.sources = new int[capacity];
+        el.targets = new int[capacity];
+        el.weights = new double[capacity];
+        int lineNum = 0;
+        for (String line : data.split("\n")){
+            lineNum++;
+            String trimmed = line.trim();
+            if (trimmed.isEmpty()){
+                continue;
+            }
+            String[] split = trimmed.split("\\s+");
+            if (split.length < 2){
+                throw new CommunityDetectionException("Line " + Integer.toString(lineNum)
+                        + " does not contain two nodes: " + line);
+            }
+            if (el.numEdges == capacity){
+                capacity *= 2;
+                el.sources = Arrays.copyOf(el.sources, capacity);
+                el.targets = Arrays.copyOf(el.targets, capacity);
+                el.weights = Arrays.copyOf(el.weights, capacity);
+            }
+            try {
+                el.sources[el.numEdges] = Integer.parseInt(split[0]);
+                el.targets[el.numEdges] = Integer.parseInt(split[1]);
+                el.weights[el.numEdges] = split.length > 2 ? Double.parseDouble(split[2]) : 1.0;
+            } catch(NumberFormatException nfe){
+                throw new CommunityDetectionException("Unable to parse line "
+                        + Integer.toString(lineNum) + " : " + nfe.getMessage());
+            }
+            el.numEdges++;
+        }
+        return el;
+    }
+
+    /**
+     * Gets resolution parameter from custom parameters
+     * @return resolution parameter, 1.0 if not set
+     */
+    protected double getResolution(){
+        Map<String, String> params = _cdr.getCustomParameters();
+        if (params == null || !params.containsKey(RESOLUTION)){
+            return 1.0;
+        }
+        String configModel = params.get(CONFIGMODEL);
+        if (configModel == null || !configModel.trim().equals(RB_CONFIGMODEL)){
+            return 1.0;
+        }
+        return Double.parseDouble(params.get(RESOLUTION).trim());
+    }
+
+    /**
+     * Gets seed from custom parameters
+     * @return seed, 0 if not set
+     */
+    protected long getSeed(){
+        Map<String, String> params = _cdr.getCustomParameters();
+        if (params == null || params.get(SEED) == null){
+            return 0;
+        }
+        return Long.parseLong(params.get(SEED).trim());
+    }
+
+    /**
+     * Denotes if the full hierarchy should be output
+     * @return {@code true} if {@link #DEEP} is set
+     */
+    protected boolean isDeep(){
+        Map<String, String> params = _cdr.getCustomParameters();
+        return params != null && params.containsKey(DEEP);
+    }
+
+    /**
+     * Runs Louvain on {@code data} and generates output
+     * @param data edge list
+     * @param resolution resolution parameter
+     * @param seed seed passed to {@link ParallelLouvain#setSeed(long)}
+     * @param deep if {@code true} output every level of hierarchy
+     * @return result in same format as louvain docker image
+     * @throws CommunityDetectionException if data could not be parsed
+     */
+    protected String runLouvain(final String data, double resolution, long seed,
+            boolean deep) throws CommunityDetectionException {
+        EdgeList el = parseEdgeList(data);
+
+        // map node ids to dense ids 0..n-1 via sorted unique ids
+        int[] ids = new int[el.numEdges * 2];
+        System.arraycopy(el.sources, 0, ids, 0, el.numEdges);
+        System.arraycopy(el.targets, 0, ids, el.numEdges, el.numEdges);
+        Arrays.sort(ids);
+        int numNodes = 0;
+        for (int i = 0; i < ids.length; i++){
+            if (i == 0 || ids[i] != ids[i-1]){
+                ids[numNodes++] = ids[i];
+            }
+        }
+        int[] nodeIds = Arrays.copyOf(ids, numNodes);
+        for (int i = 0; i < el.numEdges; i++){
+            el.sources[i] = Arrays.binarySearch(nodeIds, el.sources[i]);
+            el.targets[i] = Arrays.binarySearch(nodeIds, el.targets[i]);
+        }
+        StringBuilder sb = new StringBuilder();
+        if (numNodes == 0){
+            return sb.toString();
+        }
+        CompressedSparseRowGraph graph = CompressedSparseRowGraph.fromEdges(numNodes,
+                el.numEdges, el.sources, el.targets, el.weights);
+        ParallelLouvain louvain = new ParallelLouvain(null);
+        louvain.setResolution(resolution);
+        louvain.setSeed(seed);
+        List<int[]> levels = louvain.run(graph);
+        if (deep == false){
+            levels = Arrays.asList(ParallelLouvain.getFinalCommunities(levels));
+        }
+
+        // assign cluster ids, root first then levels from top down
+        long root = (long)nodeIds[numNodes - 1] + 1;
+        long[] levelStart = new long[levels.size()];
+        long nextId = root + 1;
+        for (int l = levels.size() - 1; l >= 0; l--){
+            levelStart[l] = nextId;
+            nextId += countCommunities(levels.get(l));
+        }
+        int top = levels.size() - 1;
+        for (int c = 0; c < countCommunities(levels.get(top)); c++){
+            appendEntry(sb, root, levelStart[top] + c, "c-c");
+        }
+        for (int l = top; l >= 1; l--){
+            int[] level = levels.get(l);
+            for (int child = 0; child < level.length; child++){
+                appendEntry(sb, levelStart[l] + level[child], levelStart[l-1] + child, "c-c");
+            }
+        }
+        int[] first = levels.get(0);
+        for (int i = 0; i < numNodes; i++){
+            appendEntry(sb, levelStart[0] + first[i], nodeIds[i], "c-m");
+        }
+        return sb.toString();
+    }
+
+    private static void appendEntry(StringBuilder sb, long parent, long child, final String type){
+        sb.append(parent).append(',').append(child).append(',').append(type).append(";\n");
+    }
+
+    private static int countCommunities(int[] communities){
+        int max = -1;
+        for (int c : communities){
+            max = Math.max(max, c);
+        }
+        return max + 1;
+    }
+
+    /**
+     * Runs Louvain on data in request passed in via constructor
+     * @return Result of running task
+     * @throws Exception if there was an error
+     */
+    @Override
+    public CommunityDetectionResult call() throws Exception {
+        CommunityDetectionResult cdr = new CommunityDetectionResult();
+        cdr.setId(_id);
+        cdr.setStartTime(_startTime);
+        cdr.setProgress(0);
+        cdr.setStatus(CommunityDetectionResult.PROCESSING_STATUS);
+        try {
+            File workDir = new File(_workDir);
+            if (workDir.isDirectory() == false && workDir.mkdirs() == false){
+                throw new CommunityDetectionException("Unable to create directory: " + _workDir);
+            }
+            cdr.setResult(new TextNode(runLouvain(_cdr.getData().asText(),
+                    getResolution(), getSeed(), isDeep())));
+            cdr.setStatus(CommunityDetectionResult.COMPLETE_STATUS);
+        } catch(Exception ex){
+            cdr.setStatus(CommunityDetectionResult.FAILED_STATUS);
+            cdr.setMessage("Received error trying to run task: " + ex.getMessage());
+            _logger.error("Received error trying to run louvain for task " + _id, ex);
+        }
+        cdr.setProgress(100);
+        cdr.setWallTime(System.currentTimeMillis() - cdr.getStartTime());
+        return cdr;
+    }
+}
@@ -0,0 +1,336 @@
+package org.ndexbio.communitydetection.rest.engine.algorithms;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Louvain modularity optimization that runs the local moving phase in
+ * parallel.
+ *
+ * Nodes are split into buckets by a hash of their id. For each bucket, the
+ * best community of every node in the bucket is computed in parallel against
+ * a snapshot of the current assignment and then all proposed moves are
+ * committed. Only moves that strictly increase modularity are proposed and a
+ * singleton node may only join another singleton with a lower id, which
+ * keeps pairs of nodes from repeatedly swapping communities. Since proposals
+ * only depend on the snapshot, the result does not depend on the number of
+ * threads used. The seed set via {@link #setSeed(long)} changes which nodes
+ * share a bucket and so can lead to a different, equally valid, result the
+ * way the seed of a randomized Louvain changes the order nodes are visited.
+ *
+ * After the local moving phase converges, communities are collapsed into
+ * nodes of a new graph and the process repeats until no further merges occur.
+ *
+ * @author churas
+ */
+public class ParallelLouvain {
+
+    private static final double EPSILON = 1e-12;
+
+    private final ForkJoinPool _pool;
+    private double _resolution = 1.0;
+    private int _maxSweeps = 100;
+    private int _maxLevels = 100;
+    private int _numBuckets = 8;
+    private double _minModularityGain = 1e-7;
+    private long _seed = 0;
+
+    /**
+     * Per thread scratch space used to sum edge weights to
+     * neighboring communities
+     */
+    private static class Scratch {
+        final double[] weights;
+        final boolean[] seen;
+        final int[] touched;
+
+        Scratch(int size){
+            weights = new double[size];
+            seen = new boolean[size];
+            touched = new int[size];
+        }
+    }
+
+    /**
+     * Constructor
+     * @param pool pool used to run parallel work, if {@code null} the
+     *             common pool is used
+     */
+    public ParallelLouvain(ForkJoinPool pool){
+        _pool = pool == null ? ForkJoinPool.commonPool() : pool;
+    }
+
+    /**
+     * Sets resolution parameter (gamma) of modularity, default is 1.0
+     * @param resolution resolution parameter
+     */
+    public void setResolution(double resolution){
+        _resolution = resolution;
+    }
+
+    /**
+     * Sets maximum number of passes over all nodes in a local moving phase
+     * @param maxSweeps maximum passes
+     */
+    public void setMaxSweeps(int maxSweeps){
+        _maxSweeps = maxSweeps;
+    }
+
+    /**
+     * Sets seed used to split nodes into buckets, runs with the same seed
+     * give the same result, default is 0
+     * @param seed seed
+     */
+    public void setSeed(long seed){
+        _seed = seed;
+    }
+
+    /**
+     * Sets maximum number of levels
+     * @param maxLevels maximum levels
+     */
+    public void setMaxLevels(int maxLevels){
+        _maxLevels = maxLevels;
+    }
+
+    /**
+     * Runs Louvain on {@code graph}
+     * @param graph graph to cluster
+     * @return list of community assignments, one per level. The first entry
+     *         maps nodes of {@code graph} to communities of the first level,
+     *         each later entry maps communities of the prior level to
+     *         communities of the next level. Communities at each level are
+     *         numbered {@code 0} to {@code n-1}. Always contains at least
+     *         one entry
+     */
+    public List<int[]> run(CompressedSparseRowGraph graph){
+        List<int[]> levels = new ArrayList<>();
+        CompressedSparseRowGraph g = graph;
+        while (levels.size() < _maxLevels){
+            int[] communities = localMoving(g);
+            int numCommunities = countCommunities(communities);
+            if (numCommunities == g.getNumNodes() && levels.isEmpty() == false){
+                break;
+            }
+            levels.add(communities);
+            if (numCommunities == g.getNumNodes()){
+                break;
+            }
+            g = g.aggregate(communities, numCommunities);
+        }
+        return levels;
+    }
+
+    /**
+     * Composes {@code levels} returned by {@link #run(CompressedSparseRowGraph)}
+     * to get community of each node in the last level
+     * @param levels levels
+     * @return community of each node of original graph
+     */
+    public static int[] getFinalCommunities(List<int[]> levels){
+        int[] communities = levels.get(0).clone();
+        for (int l = 1; l < levels.size(); l++){
+            int[] level = levels.get(l);
+            for (int i = 0; i < communities.length; i++){
+                communities[i] = level[communities[i]];
+            }
+        }
+        return communities;
+    }
+
+    /**
+     * Computes modularity of {@code communities} on {@code graph}
+     * @param graph graph
+     * @param communities community of each node numbered from {@code 0}
+     * @param resolution resolution parameter
+     * @return modularity
+     */
+    public static double modularity(CompressedSparseRowGraph graph, int[] communities,
+            double resolution){
+        double m2 = graph.getTotalWeight();
+        if (m2 <= 0){
+            return 0;
+        }
+        int[] offsets = graph.getOffsets();
+        int[] targets = graph.getTargets();
+        double[] weights = graph.getWeights();
+        double[] totals = new double[graph.getNumNodes()];
+        double internal = 0;
+        for (int i = 0; i < graph.getNumNodes(); i++){
+            int c = communities[i];
+            totals[c] += graph.getDegree(i);
+            for (int e = offsets[i]; e < offsets[i+1]; e++){
+                if (communities[targets[e]] == c){
+                    internal += weights[e];
+                }
+            }
+        }
+        double expected = 0;
+        for (double t : totals){
+            expected += t * t;
+        }
+        return internal / m2 - resolution * expected / (m2 * m2);
+    }
+
+    /**
+     * Runs local moving phase on {@code graph}
+     * @param graph graph
+     * @return community of each node renumbered from {@code 0}
+     */
+    protected int[] localMoving(final CompressedSparseRowGraph graph){
+        final int n = graph.getNumNodes();
+        final int[] communities = new int[n];
+        final double[] totals = new double[n];
+        final int[] sizes = new int[n];
+        for (int i = 0; i < n; i++){
+            communities[i] = i;
+            totals[i] = graph.getDegree(i);
+            sizes[i] = 1;
+        }
+        if (graph.getTotalWeight() <= 0){
+            return communities;
+        }
+        int[][] buckets = getBuckets(n);
+        final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(() -> new Scratch(n));
+        double q = modularity(graph, communities, _resolution);
+        for (int sweep = 0; sweep < _maxSweeps; sweep++){
+            int moves = 0;
+            for (final int[] bucket : buckets){
+                final int[] proposals = new int[bucket.length];
+                _pool.submit(() -> IntStream.range(0, bucket.length).parallel()
+                        .forEach(j -> proposals[j] = getBestCommunity(graph, bucket[j],
+                                communities, totals, sizes, scratch.get()))).join();
+                for (int j = 0; j < bucket.length; j++){
+                    int node = bucket[j];
+                    int oldC = communities[node];
+                    int newC = proposals[j];
+                    if (oldC == newC){
+                        continue;
+                    }
+                    double k = graph.getDegree(node);
+                    totals[oldC] -= k;
+                    totals[newC] += k;
+                    sizes[oldC]--;
+                    sizes[newC]++;
+                    communities[node] = newC;
+                    moves++;
+                }
+            }
+            if (moves == 0){
+                break;
+            }
+            double newQ = modularity(graph, communities, _resolution);
+            if (newQ - q < _minModularityGain){
+                break;
+            }
+            q = newQ;
+        }
+        return renumber(communities);
+    }
+
+    /**
+     * Gets community that gives largest modularity gain for {@code node}
+     * @return best community which is current community of {@code node}
+     *         if no move increases modularity
+     */
+    private int getBestCommunity(CompressedSparseRowGraph graph, int node,
+            int[] communities, double[] totals, int[] sizes, Scratch s){
+        int[] offsets = graph.getOffsets();
+        int[] targets = graph.getTargets();
+        double[] weights = graph.getWeights();
+        int numTouched = 0;
+        for (int e = offsets[node]; e < offsets[node+1]; e++){
+            int t = targets[e];
+            if (t == node){
+                continue;
+            }
+            int c = communities[t];
+            if (s.seen[c] == false){
+                s.seen[c] = true;
+                s.touched[numTouched++] = c;
+            }
+            s.weights[c] += weights[e];
+        }
+        double m2 = graph.getTotalWeight();
+        double k = graph.getDegree(node);
+        int current = communities[node];
+        int best = current;
+        double bestGain = s.weights[current] - _resolution * k * (totals[current] - k) / m2;
+        double stayGain = bestGain;
+        for (int j = 0; j < numTouched; j++){
+            int c = s.touched[j];
+            if (c == current){
+                continue;
+            }
+            if (sizes[current] == 1 && sizes[c] == 1 && c > current){
+                continue;
+            }
+            double gain = s.weights[c] - _resolution * k * totals[c] / m2;
+            if (gain > stayGain + EPSILON && (gain > bestGain + EPSILON
+                    || (gain > bestGain - EPSILON && c < best))){
+                best = c;
+                bestGain = gain;
+            }
+        }
+        for (int j = 0; j < numTouched; j++){
+            int c = s.touched[j];
+            s.weights[c] = 0;
+            s.seen[c] = false;
+        }
+        return best;
+    }
+
+    /**
+     * Splits nodes into buckets by a hash of their id and the seed
+     */
+    protected int[][] getBuckets(int n){
+        int numBuckets = Math.max(1, Math.min(_numBuckets, n));
+        int[] counts = new int[numBuckets];
+        int[] bucketOf = new int[n];
+        int seed = (int)(_seed ^ (_seed >>> 32)) * 0x85EBCA6B;
+        for (int i = 0; i < n; i++){
+            int h = (i ^ seed) * 0x9E3779B9;
+            bucketOf[i] = ((h ^ (h >>> 16)) & 0x7fffffff) % numBuckets;
+            counts[bucketOf[i]]++;
+        }
+        int[][] buckets = new int[numBuckets][];
+        for (int b = 0; b < numBuckets; b++){
+            buckets[b] = new int[counts[b]];
+            counts[b] = 0;
+        }
+        for (int i = 0; i < n; i++){
+            int b = bucketOf[i];
+            buckets[b][counts[b]++] = i;
+        }
+        return buckets;
+    }
+
+    /**
+     * Renumbers communities from {@code 0} in order of first appearance
+     */
+    private static int[] renumber(int[] communities){
+        int[] mapping = new int[communities.length];
+        Arrays.fill(mapping, -1);
+        int[] result = new int[communities.length];
+        int next = 0;
+        for (int i = 0; i < communities.length; i++){
+            int c = communities[i];
+            if (mapping[c] == -1){
+                mapping[c] = next++;
+            }
+            result[i] = mapping[c];
+        }
+        return result;
+    }
+
+    private static int countCommunities(int[] communities){
+        int max = -1;
+        for (int c : communities){
+            max = Math.max(max, c);
+        }
+        return max + 1;
+    }
+}
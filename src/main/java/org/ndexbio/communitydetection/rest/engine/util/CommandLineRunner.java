@@ -1,8 +1,10 @@
 package org.ndexbio.communitydetection.rest.engine.util;
 
 import java.io.File;
+import java.io.InputStream;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  *
@@ -22,6 +24,23 @@ public interface CommandLineRunner {
      *                for that environment variable
      */
     public void setEnvironmentVariables(Map<String, String> envVars);
+    
+    /**
+     * Sets listener passed each line written to standard error while the
+     * process runs. Standard error is still written to the file passed to
+     * {@link #runCommandLineProcess(long, java.util.concurrent.TimeUnit, java.io.File, java.io.File, java.lang.String...)}
+     * @param listener listener or {@code null} to only write standard
+     *                 error to the file
+     */
+    public void setStandardErrorListener(Consumer<String> listener);
+    
+    /**
+     * Sets data written to standard input of the next process run. Once
+     * all of it is written standard input of the process is closed
+     * @param stdIn data, closed once written, or {@code null} to leave
+     *              standard input of the process empty
+     */
+    public void setStandardInput(InputStream stdIn);
 
     /**
      * Last command run
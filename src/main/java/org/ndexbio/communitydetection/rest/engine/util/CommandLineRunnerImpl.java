@@ -1,9 +1,14 @@
 package org.ndexbio.communitydetection.rest.engine.util;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -18,6 +23,14 @@ public class CommandLineRunnerImpl implements CommandLineRunner {
     private String _workingDirectory;
     private Map<String, String> _environVars;
     private String _lastCommand;
+    private Consumer<String> _stdErrListener;
+    private InputStream _stdIn;
+    
+    /**
+     * Time in milliseconds to wait for remaining standard error to be
+     * read once the process exits
+     */
+    private static final long STD_ERR_DRAIN_MILLIS = 5000;
     
     /**
      * Sets the working directory for the process
@@ -37,6 +50,30 @@ public class CommandLineRunnerImpl implements CommandLineRunner {
         _environVars = envVars;
     }
 
+    /**
+     * Sets listener passed each line of standard error as it is written.
+     * If set, standard error is read by a separate thread that copies it
+     * to the standard error file, so only the current line is held in memory
+     * @param listener listener or {@code null} to have process write
+     *                 standard error straight to the file
+     */
+    @Override
+    public void setStandardErrorListener(Consumer<String> listener) {
+        _stdErrListener = listener;
+    }
+
+    /**
+     * Sets data copied to standard input of the next process run by a
+     * separate thread, so a process that does not read all of it cannot
+     * block the caller past the time out
+     * @param stdIn data, closed once written, or {@code null} to leave
+     *              standard input of the process empty
+     */
+    @Override
+    public void setStandardInput(InputStream stdIn) {
+        _stdIn = stdIn;
+    }
+
     /**
      * Gets the last command as a space delimited string
      * @return Last command as string or null if no commands have been run
@@ -91,15 +128,88 @@ public class CommandLineRunnerImpl implements CommandLineRunner {
                 env.put(key, _environVars.get(key));
             }
         }
-        pb.redirectError(stdErrFile);
+        final Consumer<String> stdErrListener = _stdErrListener;
+        if (stdErrListener == null){
+            pb.redirectError(stdErrFile);
+        }
         pb.redirectOutput(stdOutFile);
 
-        Process proc = pb.start();
-        
-        if (proc.waitFor(timeOut, unit) == false){
-            proc.destroyForcibly();
-            return 500;
-        } 
-        return proc.exitValue();        
+        final InputStream stdIn = _stdIn;
+        _stdIn = null;
+        Process proc;
+        try {
+            proc = pb.start();
+        } catch(IOException io){
+            if (stdIn != null){
+                stdIn.close();
+            }
+            throw io;
+        }
+        if (stdIn != null){
+            Thread stdInPump = TaskThreads.newThread("stdin-pump", () -> {
+                pumpStandardInput(stdIn, proc.getOutputStream());
+            });
+            stdInPump.start();
+        }
+        Thread stdErrPump = null;
+        if (stdErrListener != null){
+            stdErrPump = TaskThreads.newThread("stderr-pump", () -> {
+                pumpStandardError(proc.getErrorStream(), stdErrFile, stdErrListener);
+            });
+            stdErrPump.start();
+        }
+        try {
+            if (proc.waitFor(timeOut, unit) == false){
+                proc.destroyForcibly();
+                return 500;
+            } 
+            return proc.exitValue();
+        } finally {
+            if (stdErrPump != null){
+                stdErrPump.join(STD_ERR_DRAIN_MILLIS);
+            }
+        }
+    }
+    
+    /**
+     * Copies {@code stdIn} to standard input of process closing both
+     * when done. Errors are only logged since a process may exit without
+     * reading all of its input
+     * @param stdIn data to write
+     * @param procStdIn standard input of process
+     */
+    protected static void pumpStandardInput(final InputStream stdIn, final OutputStream procStdIn){
+        byte[] buf = new byte[8192];
+        try (InputStream in = stdIn;
+             OutputStream out = procStdIn){
+            int len;
+            while ((len = in.read(buf)) != -1){
+                out.write(buf, 0, len);
+            }
+        } catch(IOException io){
+            _log.debug("Unable to write all of standard input of process", io);
+        }
+    }
+    
+    /**
+     * Copies {@code stdErr} to {@code stdErrFile} passing each line to
+     * {@code listener} until end of stream
+     * @param stdErr standard error of process
+     * @param stdErrFile file to write to
+     * @param listener listener to pass lines to
+     */
+    protected static void pumpStandardError(final InputStream stdErr, final File stdErrFile,
+            final Consumer<String> listener){
+        byte[] buf = new byte[8192];
+        try (InputStream in = stdErr;
+             OutputStream out = new LineSplittingOutputStream(new FileOutputStream(stdErrFile),
+                     listener)){
+            int len;
+            while ((len = in.read(buf)) != -1){
+                out.write(buf, 0, len);
+            }
+        } catch(IOException io){
+            _log.error("Error reading standard error of process", io);
+        }
     }
 }
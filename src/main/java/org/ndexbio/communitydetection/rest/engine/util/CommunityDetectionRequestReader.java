@@ -0,0 +1,792 @@
+package org.ndexbio.communitydetection.rest.engine.util;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.TextNode;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import org.apache.commons.io.FileUtils;
+import org.ndexbio.communitydetection.rest.model.CommunityDetectionRequest;
+import org.ndexbio.communitydetection.rest.model.exceptions.CommunityDetectionBadRequestException;
+import org.ndexbio.communitydetection.rest.model.exceptions.CommunityDetectionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads a {@link org.ndexbio.communitydetection.rest.model.CommunityDetectionRequest}
+ * from JSON in a single pass without holding the whole request in memory.
+ *
+ * The {@code algorithm} and {@code customParameters} fields are small and
+ * are parsed normally. The {@code data} field is copied as it is read: a
+ * JSON string is decoded and written as text, anything else is written as
+ * JSON, which matches what
+ * {@link DockerCommunityDetectionRunner} writes to the input file of a task.
+ * If the data fits in {@link #setMaxInMemoryData(long)} characters it is
+ * set on the returned request as before, otherwise it is spilled to a file
+ * in the upload directory and an {@link InputFileCommunityDetectionRequest}
+ * is returned. Memory used is therefore bounded by that limit no matter
+ * how large the request is.
+ *
+ * Data copied as JSON is checked against the JSON grammar as it is read,
+ * literals, numbers, strings, and separators included, so malformed
+ * input is rejected before a task is created even when it is spilled to
+ * a file. Errors in the request are raised as
+ * {@link CommunityDetectionBadRequestException}.
+ *
+ * {@link #readBatch(java.io.InputStream)} reads a JSON array of requests
+ * the same way, one at a time.
+ *
+ * @author churas
+ */
+public class CommunityDetectionRequestReader {
+
+    static Logger _logger = LoggerFactory.getLogger(CommunityDetectionRequestReader.class);
+
+    /**
+     * Name of directory under task directory where large data is written
+     */
+    public static final String UPLOAD_DIR = "cdupload";
+
+    /**
+     * Default maximum number of requests in a batch
+     */
+    public static final int DEFAULT_MAX_BATCH_REQUESTS = 1000;
+
+    /**
+     * Default maximum number of characters of data kept in memory
+     */
+    public static final long DEFAULT_MAX_IN_MEMORY_DATA = 1048576;
+
+    /**
+     * Maximum number of characters allowed in a field other than data
+     */
+    public static final int MAX_FIELD_LENGTH = 1048576;
+
+    public static final String ALGORITHM_FIELD = "algorithm";
+    public static final String CUSTOM_PARAMETERS_FIELD = "customParameters";
+    public static final String DATA_FIELD = "data";
+
+    /**
+     * Optional field holding priority of task which is not part of
+     * {@link org.ndexbio.communitydetection.rest.model.CommunityDetectionRequest}
+     * and is returned by {@link #getPriority()} instead
+     */
+    public static final String PRIORITY_FIELD = "priority";
+
+    private final File _uploadDir;
+    private long _maxInMemoryData = DEFAULT_MAX_IN_MEMORY_DATA;
+    private int _priority;
+    private int _maxBatchRequests = DEFAULT_MAX_BATCH_REQUESTS;
+    private List<Integer> _priorities = Collections.emptyList();
+
+    /**
+     * Constructor
+     * @param uploadDir directory where data too large to keep in memory
+     *                  is written, created if needed
+     */
+    public CommunityDetectionRequestReader(final File uploadDir){
+        _uploadDir = uploadDir;
+    }
+
+    /**
+     * Sets maximum number of characters of data to keep in memory, larger
+     * data is written to a file
+     * @param maxInMemoryData number of characters
+     */
+    public void setMaxInMemoryData(long maxInMemoryData){
+        _maxInMemoryData = maxInMemoryData;
+    }
+
+    /**
+     * Sets maximum number of requests {@link #readBatch(java.io.InputStream)}
+     * accepts
+     * @param maxBatchRequests number of requests
+     */
+    public void setMaxBatchRequests(int maxBatchRequests){
+        _maxBatchRequests = maxBatchRequests;
+    }
+
+    /**
+     * Gets value of {@link #PRIORITY_FIELD} of last request read
+     * @return priority or 0 if request did not set one
+     */
+    public int getPriority(){
+        return _priority;
+    }
+
+    /**
+     * Gets value of {@link #PRIORITY_FIELD} of each request in last batch
+     * read by {@link #readBatch(java.io.InputStream)}
+     * @return priorities in same order as requests, 0 where a request
+     *         did not set one
+     */
+    public List<Integer> getPriorities(){
+        return _priorities;
+    }
+
+    /**
+     * Reads request from {@code in} which is assumed to be UTF-8 encoded JSON
+     * @param in stream to read, not closed by this method
+     * @return request which is an {@link InputFileCommunityDetectionRequest}
+     *         if data was written to a file
+     * @throws CommunityDetectionBadRequestException if the JSON is invalid
+     * @throws CommunityDetectionException if there was an error
+     * @throws IOException if there was an error reading or writing data
+     */
+    public CommunityDetectionRequest read(final InputStream in) throws CommunityDetectionException, IOException {
+        Source src = new Source(new InputStreamReader(in, StandardCharsets.UTF_8));
+        src.skipWhitespace();
+        CommunityDetectionRequest request = readRequest(src, new ObjectMapper());
+        src.skipWhitespace();
+        if (src.peek() != -1){
+            discard(request);
+            throw src.error("Unexpected content after request");
+        }
+        return request;
+    }
+
+    /**
+     * Reads JSON array of requests from {@code in} which is assumed to be
+     * UTF-8 encoded. Each request is read the same way as
+     * {@link #read(java.io.InputStream)} and its priority is put in
+     * {@link #getPriorities()}
+     * @param in stream to read, not closed by this method
+     * @return requests in the order they appear in the array
+     * @throws CommunityDetectionBadRequestException if the JSON is invalid
+     *         or there are more than {@link #setMaxBatchRequests(int)}
+     *         requests, in which case any data already written to files
+     *         is removed
+     * @throws CommunityDetectionException if there was an error
+     * @throws IOException if there was an error reading or writing data
+     */
+    public List<CommunityDetectionRequest> readBatch(final InputStream in) throws CommunityDetectionException, IOException {
+        Source src = new Source(new InputStreamReader(in, StandardCharsets.UTF_8));
+        ObjectMapper mapper = new ObjectMapper();
+        List<CommunityDetectionRequest> requests = new ArrayList<>();
+        List<Integer> priorities = new ArrayList<>();
+        try {
+            src.skipWhitespace();
+            src.expect('[');
+            src.skipWhitespace();
+            if (src.peek() == ']'){
+                src.next();
+            } else {
+                while (true){
+                    if (requests.size() >= _maxBatchRequests){
+                        throw new CommunityDetectionBadRequestException("Batch exceeds maximum of "
+                                + _maxBatchRequests + " requests");
+                    }
+                    src.skipWhitespace();
+                    requests.add(readRequest(src, mapper));
+                    priorities.add(_priority);
+                    src.skipWhitespace();
+                    int c = src.next();
+                    if (c == ']'){
+                        break;
+                    }
+                    if (c != ','){
+                        throw src.error("Expected , or ]");
+                    }
+                }
+            }
+            src.skipWhitespace();
+            if (src.peek() != -1){
+                throw src.error("Unexpected content after batch");
+            }
+        } catch(CommunityDetectionException | IOException | RuntimeException ex){
+            for (CommunityDetectionRequest request : requests){
+                discard(request);
+            }
+            throw ex;
+        }
+        _priorities = priorities;
+        return requests;
+    }
+
+    /**
+     * Removes file holding data of {@code request} if it has one
+     */
+    private static void discard(final CommunityDetectionRequest request){
+        if (request instanceof InputFileCommunityDetectionRequest){
+            ((InputFileCommunityDetectionRequest)request).getInputFile().delete();
+        }
+    }
+
+    /**
+     * Reads one request object starting at current position of {@code src}
+     */
+    private CommunityDetectionRequest readRequest(final Source src,
+            final ObjectMapper mapper) throws CommunityDetectionException, IOException {
+        String algorithm = null;
+        LinkedHashMap<String, String> customParameters = null;
+        SpillWriter data = null;
+        boolean textData = false;
+        _priority = 0;
+        try {
+            src.expect('{');
+            src.skipWhitespace();
+            if (src.peek() == '}'){
+                src.next();
+            } else {
+                while (true){
+                    src.skipWhitespace();
+                    src.expect('"');
+                    StringBuilder key = new StringBuilder();
+                    decodeString(src, new BoundedWriter(key, MAX_FIELD_LENGTH));
+                    src.skipWhitespace();
+                    src.expect(':');
+                    src.skipWhitespace();
+                    if (key.toString().equals(DATA_FIELD)){
+                        if (data != null){
+                            throw new CommunityDetectionBadRequestException("Duplicate " + DATA_FIELD + " field in request");
+                        }
+                        data = new SpillWriter(_maxInMemoryData, _uploadDir);
+                        textData = src.peek() == '"';
+                        if (textData){
+                            src.next();
+                            decodeString(src, data);
+                        } else {
+                            copyValue(src, data);
+                        }
+                        data.close();
+                    } else {
+                        StringBuilder value = new StringBuilder();
+                        copyValue(src, new BoundedWriter(value, MAX_FIELD_LENGTH));
+                        try {
+                            if (key.toString().equals(ALGORITHM_FIELD)){
+                                algorithm = mapper.readValue(value.toString(), String.class);
+                            } else if (key.toString().equals(CUSTOM_PARAMETERS_FIELD)){
+                                customParameters = mapper.readValue(value.toString(),
+                                        new TypeReference<LinkedHashMap<String, String>>(){});
+                            } else if (key.toString().equals(PRIORITY_FIELD)){
+                                Integer priority = mapper.readValue(value.toString(), Integer.class);
+                                _priority = priority == null ? 0 : priority;
+                            } else {
+                                _logger.debug("Ignoring unknown field in request: " + key.toString());
+                            }
+                        } catch(JsonProcessingException jpe){
+                            throw src.error("Invalid value for " + key.toString() + " field");
+                        }
+                    }
+                    src.skipWhitespace();
+                    int c = src.next();
+                    if (c == '}'){
+                        break;
+                    }
+                    if (c != ','){
+                        throw src.error("Expected , or }");
+                    }
+                }
+            }
+        } catch(CommunityDetectionException | IOException | RuntimeException ex){
+            if (data != null){
+                data.discard();
+            }
+            throw ex;
+        }
+
+        CommunityDetectionRequest request;
+        if (data != null && data.getFile() != null){
+            request = new InputFileCommunityDetectionRequest(data.getFile(), textData);
+        } else {
+            request = new CommunityDetectionRequest();
+            if (data != null){
+                request.setData(textData ? new TextNode(data.toString())
+                        : mapper.readTree(data.toString()));
+            }
+        }
+        request.setAlgorithm(algorithm);
+        request.setCustomParameters(customParameters);
+        return request;
+    }
+
+    /**
+     * Decodes JSON string whose opening quote has been read writing
+     * the decoded characters to {@code out}. The closing quote is consumed
+     */
+    private static void decodeString(final Source src, final Writer out) throws CommunityDetectionException, IOException {
+        while (true){
+            // copy runs of plain characters straight from the buffer
+            if (src.fill() == false){
+                throw src.error("Unterminated string");
+            }
+            int start = src._pos;
+            while (src._pos < src._len){
+                char c = src._buf[src._pos];
+                if (c == '"' || c == '\\' || c < 0x20){
+                    break;
+                }
+                src._pos++;
+            }
+            if (src._pos > start){
+                out.write(src._buf, start, src._pos - start);
+                continue;
+            }
+            int c = src.next();
+            if (c == '"'){
+                return;
+            }
+            if (c != '\\'){
+                throw src.error("Illegal unescaped control character in string");
+            }
+            int e = src.next();
+            switch (e){
+                case '"':
+                case '\\':
+                case '/':
+                    out.write(e);
+                    break;
+                case 'b':
+                    out.write('\b');
+                    break;
+                case 'f':
+                    out.write('\f');
+                    break;
+                case 'n':
+                    out.write('\n');
+                    break;
+                case 'r':
+                    out.write('\r');
+                    break;
+                case 't':
+                    out.write('\t');
+                    break;
+                case 'u':
+                    int code = 0;
+                    for (int i = 0; i < 4; i++){
+                        int digit = Character.digit(src.next(), 16);
+                        if (digit < 0){
+                            throw src.error("Invalid unicode escape in string");
+                        }
+                        code = code * 16 + digit;
+                    }
+                    out.write(code);
+                    break;
+                default:
+                    throw src.error("Invalid escape in string");
+            }
+        }
+    }
+
+    /**
+     * Copies JSON value starting at current position to {@code out} as is,
+     * checking it against the JSON grammar. Nesting is tracked on a stack
+     * of closing brackets rather than by recursion so deeply nested input
+     * cannot overflow the thread stack
+     */
+    private static void copyValue(final Source src, final Writer out) throws CommunityDetectionException, IOException {
+        StringBuilder closers = new StringBuilder();
+        int c = src.next();
+        while (true){
+            // c is the first character of a value
+            if (c == '{' || c == '['){
+                out.write(c);
+                char closer = c == '{' ? '}' : ']';
+                copyWhitespace(src, out);
+                if (src.peek() == closer){
+                    out.write(src.next());
+                } else {
+                    closers.append(closer);
+                    if (closer == '}'){
+                        copyKey(src, out);
+                    }
+                    c = src.next();
+                    continue;
+                }
+            } else if (c == '"'){
+                out.write(c);
+                copyRawString(src, out);
+            } else if (c == 't' || c == 'f' || c == 'n'){
+                copyLiteral(src, out, c);
+            } else if (c == '-' || (c >= '0' && c <= '9')){
+                copyNumber(src, out, c);
+            } else {
+                throw src.error("Expected value");
+            }
+
+            // a value was copied, close containers it ends until a , is found
+            while (true){
+                if (closers.length() == 0){
+                    return;
+                }
+                char closer = closers.charAt(closers.length() - 1);
+                copyWhitespace(src, out);
+                c = src.next();
+                if (c == closer){
+                    out.write(c);
+                    closers.setLength(closers.length() - 1);
+                    continue;
+                }
+                if (c != ','){
+                    throw src.error("Expected , or " + closer);
+                }
+                out.write(c);
+                copyWhitespace(src, out);
+                if (closer == '}'){
+                    copyKey(src, out);
+                }
+                break;
+            }
+            c = src.next();
+        }
+    }
+
+    /**
+     * Copies object key, the {@code :} that follows it, and any whitespace
+     * up to the value
+     */
+    private static void copyKey(final Source src, final Writer out) throws CommunityDetectionException, IOException {
+        copyWhitespace(src, out);
+        if (src.next() != '"'){
+            throw src.error("Expected \"");
+        }
+        out.write('"');
+        copyRawString(src, out);
+        copyWhitespace(src, out);
+        if (src.next() != ':'){
+            throw src.error("Expected :");
+        }
+        out.write(':');
+        copyWhitespace(src, out);
+    }
+
+    /**
+     * Copies rest of {@code true}, {@code false}, or {@code null} whose
+     * first character {@code first} has been read
+     */
+    private static void copyLiteral(final Source src, final Writer out, int first) throws CommunityDetectionException, IOException {
+        String literal = first == 't' ? "true" : first == 'f' ? "false" : "null";
+        out.write(first);
+        for (int i = 1; i < literal.length(); i++){
+            if (src.next() != literal.charAt(i)){
+                throw src.error("Invalid literal, expected " + literal);
+            }
+            out.write(literal.charAt(i));
+        }
+    }
+
+    /**
+     * Copies rest of number whose first character {@code first} has been
+     * read, which must be an optional minus sign followed by an integer
+     * without leading zeros, an optional fraction, and an optional exponent
+     */
+    private static void copyNumber(final Source src, final Writer out, int first) throws CommunityDetectionException, IOException {
+        out.write(first);
+        int leading = first;
+        if (first == '-'){
+            leading = src.next();
+            if (leading < '0' || leading > '9'){
+                throw src.error("Invalid number");
+            }
+            out.write(leading);
+        }
+        if (leading != '0'){
+            copyDigits(src, out);
+        }
+        if (src.peek() == '.'){
+            out.write(src.next());
+            if (copyDigits(src, out) == 0){
+                throw src.error("Invalid number");
+            }
+        }
+        int c = src.peek();
+        if (c == 'e' || c == 'E'){
+            out.write(src.next());
+            c = src.peek();
+            if (c == '+' || c == '-'){
+                out.write(src.next());
+            }
+            if (copyDigits(src, out) == 0){
+                throw src.error("Invalid number");
+            }
+        }
+    }
+
+    /**
+     * Copies run of digits
+     * @return number of digits copied
+     */
+    private static long copyDigits(final Source src, final Writer out) throws IOException {
+        long count = 0;
+        while (src.fill()){
+            int start = src._pos;
+            while (src._pos < src._len && src._buf[src._pos] >= '0'
+                    && src._buf[src._pos] <= '9'){
+                src._pos++;
+            }
+            if (src._pos == start){
+                break;
+            }
+            out.write(src._buf, start, src._pos - start);
+            count += src._pos - start;
+        }
+        return count;
+    }
+
+    /**
+     * Copies run of JSON whitespace, that is spaces, tabs, and line breaks
+     */
+    private static void copyWhitespace(final Source src, final Writer out) throws IOException {
+        while (src.fill()){
+            int start = src._pos;
+            while (src._pos < src._len && isJsonWhitespace(src._buf[src._pos])){
+                src._pos++;
+            }
+            if (src._pos == start){
+                return;
+            }
+            out.write(src._buf, start, src._pos - start);
+        }
+    }
+
+    private static boolean isJsonWhitespace(char c){
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+    }
+
+    /**
+     * Copies rest of JSON string whose opening quote has been read
+     * including the closing quote without decoding it, escapes and
+     * control characters are checked the same way as
+     * {@link #decodeString(Source, Writer)}
+     */
+    private static void copyRawString(final Source src, final Writer out) throws CommunityDetectionException, IOException {
+        while (true){
+            // copy runs of plain characters straight from the buffer
+            if (src.fill() == false){
+                throw src.error("Unterminated string");
+            }
+            int start = src._pos;
+            while (src._pos < src._len){
+                char c = src._buf[src._pos];
+                if (c == '"' || c == '\\' || c < 0x20){
+                    break;
+                }
+                src._pos++;
+            }
+            if (src._pos > start){
+                out.write(src._buf, start, src._pos - start);
+                continue;
+            }
+            int c = src.next();
+            if (c == '"'){
+                out.write(c);
+                return;
+            }
+            if (c != '\\'){
+                throw src.error("Illegal unescaped control character in string");
+            }
+            out.write(c);
+            int e = src.next();
+            switch (e){
+                case '"':
+                case '\\':
+                case '/':
+                case 'b':
+                case 'f':
+                case 'n':
+                case 'r':
+                case 't':
+                    out.write(e);
+                    break;
+                case 'u':
+                    out.write(e);
+                    for (int i = 0; i < 4; i++){
+                        int digit = src.next();
+                        if (Character.digit(digit, 16) < 0){
+                            throw src.error("Invalid unicode escape in string");
+                        }
+                        out.write(digit);
+                    }
+                    break;
+                default:
+                    throw src.error("Invalid escape in string");
+            }
+        }
+    }
+
+    /**
+     * Buffered character source that tracks position for error messages
+     */
+    private static class Source {
+        private final Reader _reader;
+        private final char[] _buf = new char[8192];
+        private int _pos = 0;
+        private int _len = 0;
+        private long _offset = 0;
+
+        Source(final Reader reader){
+            _reader = reader;
+        }
+
+        /**
+         * Reads more data if buffer is empty
+         * @return {@code false} if end of input was reached
+         */
+        boolean fill() throws IOException {
+            while (_pos >= _len){
+                _offset += _len;
+                _len = _reader.read(_buf, 0, _buf.length);
+                _pos = 0;
+                if (_len == -1){
+                    _len = 0;
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        int peek() throws IOException {
+            return fill() ? _buf[_pos] : -1;
+        }
+
+        int next() throws IOException {
+            return fill() ? _buf[_pos++] : -1;
+        }
+
+        void skipWhitespace() throws IOException {
+            while (fill() && Character.isWhitespace(_buf[_pos])){
+                _pos++;
+            }
+        }
+
+        void expect(char c) throws CommunityDetectionException, IOException {
+            if (next() != c){
+                throw error("Expected " + c);
+            }
+        }
+
+        CommunityDetectionBadRequestException error(final String message){
+            return new CommunityDetectionBadRequestException("Unable to parse request: " + message
+                    + " at character " + Long.toString(_offset + _pos));
+        }
+    }
+
+    /**
+     * Appends to a {@link StringBuilder} failing if more than
+     * {@code maxLength} characters are written
+     */
+    private static class BoundedWriter extends Writer {
+        private final StringBuilder _sb;
+        private final int _maxLength;
+
+        BoundedWriter(final StringBuilder sb, int maxLength){
+            _sb = sb;
+            _maxLength = maxLength;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            if (_sb.length() + len > _maxLength){
+                throw new IOException("Request field exceeds " + Integer.toString(_maxLength)
+                        + " characters");
+            }
+            _sb.append(cbuf, off, len);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Keeps data in memory until more than {@code maxInMemory} characters
+     * are written at which point everything is written to a file in
+     * {@code uploadDir}
+     */
+    private static class SpillWriter extends Writer {
+        private final long _maxInMemory;
+        private final File _uploadDir;
+        private StringBuilder _sb = new StringBuilder();
+        private long _count = 0;
+        private File _file;
+        private Writer _fileWriter;
+
+        SpillWriter(long maxInMemory, final File uploadDir){
+            _maxInMemory = maxInMemory;
+            _uploadDir = uploadDir;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            _count += len;
+            if (_fileWriter == null && _count > _maxInMemory){
+                spill();
+            }
+            if (_fileWriter != null){
+                _fileWriter.write(cbuf, off, len);
+            } else {
+                _sb.append(cbuf, off, len);
+            }
+        }
+
+        private void spill() throws IOException {
+            if (_uploadDir.isDirectory() == false && _uploadDir.mkdirs() == false
+                    && _uploadDir.isDirectory() == false){
+                throw new IOException("Unable to create directory: " + _uploadDir.getAbsolutePath());
+            }
+            _file = File.createTempFile("cdrequest", ".upload", _uploadDir);
+            _fileWriter = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(_file), StandardCharsets.UTF_8));
+            _fileWriter.append(_sb);
+            _sb = null;
+        }
+
+        /**
+         * Gets file data was written to
+         * @return file or {@code null} if data is in memory
+         */
+        File getFile(){
+            return _file;
+        }
+
+        /**
+         * Closes and deletes file if one was created
+         */
+        void discard(){
+            try {
+                close();
+            } catch(IOException io){
+                _logger.debug("Error closing upload file", io);
+            }
+            if (_file != null){
+                FileUtils.deleteQuietly(_file);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (_fileWriter != null){
+                _fileWriter.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (_fileWriter != null){
+                _fileWriter.close();
+            }
+        }
+
+        @Override
+        public String toString(){
+            return _sb == null ? null : _sb.toString();
+        }
+    }
+}
@@ -55,7 +55,7 @@ public class CommunityDetectionRequestValidatorImpl implements CommunityDetectio
             return er;
             
         }
-        if (cdr.getData() == null){
+        if (cdr.getData() == null && !(cdr instanceof InputFileCommunityDetectionRequest)){
             ErrorResponse er = new ErrorResponse();
             er.setMessage("No data passed in with request");
             er.setDescription("All requests require some data to be set in the data field");
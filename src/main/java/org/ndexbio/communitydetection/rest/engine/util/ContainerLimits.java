@@ -0,0 +1,171 @@
+package org.ndexbio.communitydetection.rest.engine.util;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Resource limits applied to the container running an algorithm. Each
+ * limit is only applied if set, a value of 0 or {@code null} means
+ * unlimited which is the docker default.
+ *
+ * @author churas
+ */
+public class ContainerLimits {
+
+    private final double _cpus;
+    private final long _memoryBytes;
+    private final long _pidsLimit;
+    private final String _cpuset;
+
+    /**
+     * Constructor
+     * @param cpus number of cpus container can use, may be fractional
+     * @param memoryBytes memory in bytes container can use
+     * @param pidsLimit number of processes container can run
+     */
+    public ContainerLimits(double cpus, long memoryBytes, long pidsLimit){
+        this(cpus, memoryBytes, pidsLimit, null);
+    }
+
+    /**
+     * Constructor
+     * @param cpus number of cpus container can use, may be fractional
+     * @param memoryBytes memory in bytes container can use
+     * @param pidsLimit number of processes container can run
+     * @param cpuset cpus container is pinned to in {@code --cpuset-cpus}
+     *               format such as {@code 0-3,8}
+     */
+    public ContainerLimits(double cpus, long memoryBytes, long pidsLimit,
+            final String cpuset){
+        _cpus = cpus;
+        _memoryBytes = memoryBytes;
+        _pidsLimit = pidsLimit;
+        _cpuset = cpuset;
+    }
+
+    /**
+     * Parses memory size in the format accepted by {@code docker run --memory}
+     * which is a number of bytes optionally followed by {@code b}, {@code k},
+     * {@code m}, or {@code g}
+     * @param memory memory size such as {@code 512m} or {@code 2g}
+     * @return size in bytes, 0 if {@code memory} is {@code null} or empty
+     * @throws IllegalArgumentException if {@code memory} is not a valid size
+     */
+    public static long parseMemory(final String memory){
+        if (memory == null || memory.trim().isEmpty()){
+            return 0;
+        }
+        String val = memory.trim().toLowerCase(Locale.ROOT);
+        long multiplier = 1;
+        char unit = val.charAt(val.length() - 1);
+        if (Character.isLetter(unit)){
+            switch (unit){
+                case 'b': multiplier = 1; break;
+                case 'k': multiplier = 1024L; break;
+                case 'm': multiplier = 1024L * 1024L; break;
+                case 'g': multiplier = 1024L * 1024L * 1024L; break;
+                default:
+                    throw new IllegalArgumentException("Invalid memory size: " + memory);
+            }
+            val = val.substring(0, val.length() - 1);
+        }
+        try {
+            long num = Long.parseLong(val);
+            if (num < 0){
+                throw new IllegalArgumentException("Invalid memory size: " + memory);
+            }
+            return Math.multiplyExact(num, multiplier);
+        } catch(NumberFormatException | ArithmeticException ex){
+            throw new IllegalArgumentException("Invalid memory size: " + memory);
+        }
+    }
+
+    /**
+     * Gets number of cpus container can use
+     * @return cpus, 0 or less means unlimited
+     */
+    public double getCpus() {
+        return _cpus;
+    }
+
+    /**
+     * Gets memory container can use
+     * @return bytes, 0 or less means unlimited
+     */
+    public long getMemoryBytes() {
+        return _memoryBytes;
+    }
+
+    /**
+     * Gets number of processes container can run
+     * @return processes, 0 or less means unlimited
+     */
+    public long getPidsLimit() {
+        return _pidsLimit;
+    }
+
+    /**
+     * Gets cpus container is pinned to
+     * @return cpus in {@code --cpuset-cpus} format or {@code null} if not pinned
+     */
+    public String getCpuset() {
+        return _cpuset;
+    }
+
+    /**
+     * Creates copy of these limits pinned to {@code cpuset}
+     * @param cpuset cpus in {@code --cpuset-cpus} format
+     * @return new limits
+     */
+    public ContainerLimits withCpuset(final String cpuset){
+        return new ContainerLimits(_cpus, _memoryBytes, _pidsLimit, cpuset);
+    }
+
+    /**
+     * Builds flags passed to {@code docker run} to apply these limits
+     * @return flags, empty if no limits are set
+     */
+    public List<String> getDockerRunArguments(){
+        ArrayList<String> args = new ArrayList<>();
+        if (_cpus > 0){
+            args.add("--cpus");
+            args.add(BigDecimal.valueOf(_cpus).stripTrailingZeros().toPlainString());
+        }
+        if (_cpuset != null && _cpuset.isEmpty() == false){
+            args.add("--cpuset-cpus");
+            args.add(_cpuset);
+        }
+        if (_memoryBytes > 0){
+            args.add("--memory");
+            args.add(Long.toString(_memoryBytes) + "b");
+        }
+        if (_pidsLimit > 0){
+            args.add("--pids-limit");
+            args.add(Long.toString(_pidsLimit));
+        }
+        return args;
+    }
+
+    /**
+     * Adds these limits to {@code HostConfig} of a Docker Engine API
+     * container create request
+     * @param hostConfig {@code HostConfig} object to update
+     */
+    public void addToHostConfig(final ObjectNode hostConfig){
+        if (_cpus > 0){
+            hostConfig.put("NanoCpus", Math.round(_cpus * 1e9));
+        }
+        if (_cpuset != null && _cpuset.isEmpty() == false){
+            hostConfig.put("CpusetCpus", _cpuset);
+        }
+        if (_memoryBytes > 0){
+            hostConfig.put("Memory", _memoryBytes);
+        }
+        if (_pidsLimit > 0){
+            hostConfig.put("PidsLimit", _pidsLimit);
+        }
+    }
+}
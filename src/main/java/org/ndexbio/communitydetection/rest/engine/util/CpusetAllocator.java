@@ -0,0 +1,143 @@
+package org.ndexbio.communitydetection.rest.engine.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+import org.ndexbio.communitydetection.rest.model.exceptions.CommunityDetectionException;
+
+/**
+ * Hands out disjoint sets of cpus so containers running at the same time
+ * are pinned to different cores via {@code --cpuset-cpus} and do not
+ * compete for them. The lowest numbered free cpus are handed out first.
+ *
+ * @author churas
+ */
+public class CpusetAllocator {
+
+    private final TreeSet<Integer> _cpus;
+    private final TreeSet<Integer> _free;
+
+    /**
+     * Constructor
+     * @param cpus cpus that can be handed out
+     */
+    public CpusetAllocator(final Collection<Integer> cpus){
+        _cpus = new TreeSet<>(cpus);
+        _free = new TreeSet<>(cpus);
+    }
+
+    /**
+     * Parses list of cpus in the format used by {@code --cpuset-cpus}
+     * such as {@code 0-3,8,10-11}
+     * @param cpus list of cpus
+     * @return cpus, empty if {@code cpus} is {@code null} or empty
+     * @throws CommunityDetectionException if {@code cpus} is not a valid list
+     */
+    public static List<Integer> parse(final String cpus) throws CommunityDetectionException {
+        TreeSet<Integer> res = new TreeSet<>();
+        if (cpus == null || cpus.trim().isEmpty()){
+            return new ArrayList<>(res);
+        }
+        try {
+            for (String part : cpus.split(",")){
+                String[] range = part.trim().split("-", 2);
+                int start = Integer.parseInt(range[0].trim());
+                int end = range.length == 2 ? Integer.parseInt(range[1].trim()) : start;
+                if (start < 0 || end < start){
+                    throw new NumberFormatException();
+                }
+                for (int i = start; i <= end; i++){
+                    res.add(i);
+                }
+            }
+        } catch(NumberFormatException nfe){
+            throw new CommunityDetectionException("Invalid list of cpus: " + cpus);
+        }
+        return new ArrayList<>(res);
+    }
+
+    /**
+     * Formats {@code cpus} as used by {@code --cpuset-cpus} collapsing
+     * consecutive cpus into ranges
+     * @param cpus cpus to format
+     * @return formatted list such as {@code 0-3,8}
+     */
+    public static String format(final Collection<Integer> cpus){
+        StringBuilder sb = new StringBuilder();
+        Integer start = null;
+        Integer prev = null;
+        for (Integer cpu : new TreeSet<>(cpus)){
+            if (prev != null && cpu == prev + 1){
+                prev = cpu;
+                continue;
+            }
+            appendRange(sb, start, prev);
+            start = cpu;
+            prev = cpu;
+        }
+        appendRange(sb, start, prev);
+        return sb.toString();
+    }
+
+    private static void appendRange(StringBuilder sb, Integer start, Integer end){
+        if (start == null){
+            return;
+        }
+        if (sb.length() > 0){
+            sb.append(",");
+        }
+        sb.append(start);
+        if (end > start){
+            sb.append("-").append(end);
+        }
+    }
+
+    /**
+     * Takes {@code count} free cpus
+     * @param count number of cpus needed
+     * @return cpus which must be given back via {@link #release(java.util.Collection)}
+     *         or {@code null} if fewer than {@code count} cpus are free
+     */
+    public synchronized List<Integer> allocate(int count){
+        if (count <= 0 || count > _free.size()){
+            return null;
+        }
+        ArrayList<Integer> res = new ArrayList<>(count);
+        for (int i = 0; i < count; i++){
+            res.add(_free.pollFirst());
+        }
+        return res;
+    }
+
+    /**
+     * Gives back cpus taken via {@link #allocate(int)}
+     * @param cpus cpus to give back, ignored if {@code null}
+     */
+    public synchronized void release(final Collection<Integer> cpus){
+        if (cpus == null){
+            return;
+        }
+        for (Integer cpu : cpus){
+            if (_cpus.contains(cpu)){
+                _free.add(cpu);
+            }
+        }
+    }
+
+    /**
+     * Gets number of cpus that can be handed out
+     * @return number of cpus
+     */
+    public int getNumberCpus(){
+        return _cpus.size();
+    }
+
+    /**
+     * Gets number of cpus not handed out
+     * @return number of cpus
+     */
+    public synchronized int getNumberFreeCpus(){
+        return _free.size();
+    }
+}
@@ -1,18 +1,30 @@
 package org.ndexbio.communitydetection.rest.engine.util;
 
 import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.TextNode;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
 import org.ndexbio.communitydetection.rest.model.CommunityDetectionRequest;
 import org.ndexbio.communitydetection.rest.model.CommunityDetectionResult;
 import org.ndexbio.communitydetection.rest.model.exceptions.CommunityDetectionException;
@@ -21,9 +33,23 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Runs algorithm via commandline
+ * 
+ * Algorithms can report progress by writing lines of the form
+ * {@code @@PROGRESS <percent>} to standard error, for example
+ * {@code @@PROGRESS 42}. If a listener is set via
+ * {@link #setProgressListener(java.util.function.IntConsumer)} standard error
+ * is read as the algorithm runs and the listener is passed each percent
+ * reported. Such lines are also kept in the standard error file.
+ * 
+ * By default the input is written to {@link #INPUT_FILE} in the task
+ * directory which is bind mounted into the container. If input is
+ * streamed, the input is piped to standard input of the container via
+ * {@code docker run -i} and {@link #STDIN_ARGUMENT} is passed to the
+ * algorithm in place of the path, so no input file is written and nothing
+ * is mounted.
  * @author churas
  */
-public class DockerCommunityDetectionRunner implements Callable {
+public class DockerCommunityDetectionRunner implements Callable<CommunityDetectionResult> {
 
     
     static Logger _logger = LoggerFactory.getLogger(DockerCommunityDetectionRunner.class);
@@ -33,6 +59,24 @@ public class DockerCommunityDetectionRunner implements Callable {
     public static final String STD_ERR_FILE = "stderr.txt";
     public static final String CMD_RUN_FILE = "cmdrun.sh";
     
+    /**
+     * Prefix of line written to standard error by algorithm to report
+     * percent complete
+     */
+    public static final String PROGRESS_PREFIX = "@@PROGRESS";
+    
+    /**
+     * Passed to algorithm in place of path to input file when input is
+     * streamed to standard input
+     */
+    public static final String STDIN_ARGUMENT = "-";
+    
+    /**
+     * Size of pipe data of request is serialized into when input is
+     * streamed to standard input
+     */
+    public static final int STDIN_PIPE_BYTES = 65536;
+    
     private String _id;
     private CommunityDetectionRequest _cdr;
     private String _dockerCmd;
@@ -45,8 +89,14 @@ public class DockerCommunityDetectionRunner implements Callable {
     private TimeUnit _timeUnit;
     private String _mountOptions;
     private String _inputFilePath;
+    private boolean _streamInput;
  
     private CommandLineRunner _runner;
+    private DockerContainerPool _containerPool;
+    private IntConsumer _progressListener;
+    private DockerEngineClient _dockerClient;
+    private ContainerLimits _limits;
+    private CpusetAllocator _cpusetAllocator;
     
     /**
      * Constructor 
@@ -69,6 +119,34 @@ public class DockerCommunityDetectionRunner implements Callable {
             final long timeOut,
             final TimeUnit unit,
             final String mountOptions) throws Exception{
+        this(id, cdr, startTime, taskDir, dockerCmd, dockerImage, customParameters,
+                timeOut, unit, mountOptions, false);
+    }
+    
+    /**
+     * Constructor 
+     * @param id id of task (should be a 37 char uuid string)
+     * @param cdr The request to process
+     * @param startTime Time task started in ms since epoch (1969)
+     * @param taskDir Base directory for tasks (this task will be put into taskDir/id)
+     * @param dockerCmd Command to run docker (/usr/bin/docker /bin/docker etc..)
+     * @param dockerImage Docker image to run (hello-world)
+     * @param customParameters Parameters to add to command line
+     * @param timeOut Any task exceeding this time (in unit set by unit) will be killed
+     * @param unit Unit to use for timeout
+     * @param mountOptions flags used by container to mount filesystem
+     * @param streamInput if {@code true}, input is piped to standard input
+     *                    of the container instead of being written to a file
+     * @throws Exception If there is an issue writing the input data from the cdr object
+     */
+    public DockerCommunityDetectionRunner(final String id,
+            final CommunityDetectionRequest cdr, final long startTime, final String taskDir,
+            final String dockerCmd, final String dockerImage,
+            final Map<String, String> customParameters,
+            final long timeOut,
+            final TimeUnit unit,
+            final String mountOptions,
+            boolean streamInput) throws Exception{
         _id = id;
         _cdr = cdr;
         _dockerCmd = dockerCmd;
@@ -86,7 +164,12 @@ public class DockerCommunityDetectionRunner implements Callable {
             _mountOptions = "";
         }
 
-        _inputFilePath = writeInputFile();
+        _streamInput = streamInput;
+        if (_streamInput){
+            createWorkDirectory();
+        } else {
+            _inputFilePath = writeInputFile();
+        }
        
         _runner = new CommandLineRunnerImpl();
         
@@ -100,16 +183,115 @@ public class DockerCommunityDetectionRunner implements Callable {
         _runner = clr;
     }
     
+    /**
+     * Sets pool of warm containers to run algorithm in via {@code docker exec}.
+     * If {@code null} or input is streamed, algorithm is run via
+     * {@code docker run --rm}
+     * @param containerPool pool of containers for docker image of this task
+     */
+    public void setContainerPool(DockerContainerPool containerPool){
+        _containerPool = containerPool;
+    }
+    
+    /**
+     * Sets client used to run algorithm via the Docker Engine API instead
+     * of forking {@code docker run}. Not used if a container pool is set.
+     * If the daemon cannot be reached via the client, the docker command
+     * line tool is used instead
+     * @param dockerClient client or {@code null} to use docker command line tool
+     */
+    public void setDockerEngineClient(DockerEngineClient dockerClient){
+        _dockerClient = dockerClient;
+    }
+    
+    /**
+     * Sets resource limits of container started via {@code docker run}.
+     * Containers in a container pool get the limits of the pool instead
+     * @param limits limits or {@code null} for none
+     */
+    public void setContainerLimits(ContainerLimits limits){
+        _limits = limits;
+    }
+    
+    /**
+     * Sets allocator that pins container started via {@code docker run}
+     * to as many cpus as {@link ContainerLimits#getCpus()} rounded up
+     * while the algorithm runs. If not enough cpus are free the container
+     * is run without pinning
+     * @param cpusetAllocator allocator or {@code null} to never pin
+     */
+    public void setCpusetAllocator(CpusetAllocator cpusetAllocator){
+        _cpusetAllocator = cpusetAllocator;
+    }
+    
+    /**
+     * Sets listener passed percent complete each time algorithm reports
+     * progress on standard error
+     * @param progressListener listener or {@code null} to not read
+     *                         standard error until algorithm finishes
+     */
+    public void setProgressListener(IntConsumer progressListener){
+        _progressListener = progressListener;
+    }
+    
+    /**
+     * Parses line of standard error written by algorithm
+     * @param line line to parse
+     * @return percent complete between 0 and 100 if {@code line} is a
+     *         progress line otherwise -1
+     */
+    protected static int parseProgress(final String line){
+        if (line == null){
+            return -1;
+        }
+        String trimmed = line.trim();
+        if (trimmed.startsWith(PROGRESS_PREFIX) == false){
+            return -1;
+        }
+        String[] split = trimmed.substring(PROGRESS_PREFIX.length()).trim().split("\\s+", 2);
+        try {
+            double progress = Double.parseDouble(split[0]);
+            if (Double.isNaN(progress)){
+                return -1;
+            }
+            return (int)Math.max(0, Math.min(100, progress));
+        } catch(NumberFormatException nfe){
+            _logger.debug("Ignoring invalid progress line: " + trimmed);
+            return -1;
+        }
+    }
+    
     /**
      * Writes contents {@link org.ndexbio.communitydetection.rest.model.CommunityDetectionRequest#getData()}
      * set via constructor 
      * to file which is assumed to be either a {@link com.fasterxml.jackson.databind.node.TextNode}
-     * which is written as text or JSON which is mapped back via ObjectMapper
+     * which is written as text or JSON which is mapped back via ObjectMapper.
+     * If the request is an {@link InputFileCommunityDetectionRequest} without
+     * data the input file is assumed to already be in place
      * @return full path to input file as String
      * @throws CommunityDetectionException If there was an issue creating task directories
      * @throws IOException If there was IO error writing the data to a file
      */
     protected String writeInputFile() throws CommunityDetectionException, IOException {
+        createWorkDirectory();
+        File destFile = getInputFile();
+        if (_cdr instanceof InputFileCommunityDetectionRequest && _cdr.getData() == null){
+            if (destFile.isFile() == false){
+                throw new CommunityDetectionException("Input file not found: "
+                        + destFile.getAbsolutePath());
+            }
+        }
+        else {
+            writeData(_cdr.getData(), destFile);
+        }
+        return destFile.getAbsolutePath();
+    }
+    
+    /**
+     * Creates directory of this task if it does not exist
+     * @throws CommunityDetectionException If the directory could not be created
+     */
+    protected void createWorkDirectory() throws CommunityDetectionException {
         File workDir = new File(_workDir);
         
         if (workDir.isDirectory() == false){
@@ -117,17 +299,69 @@ public class DockerCommunityDetectionRunner implements Callable {
                 throw new CommunityDetectionException("Unable to create directory: " + _workDir);
             }
         }
-        File destFile = getInputFile();
-        if (_cdr.getData()instanceof TextNode){
+    }
+    
+    /**
+     * Opens input of task for piping to standard input of the container.
+     * Data of the request is serialized the same way
+     * {@link #writeData(com.fasterxml.jackson.databind.JsonNode, java.io.File)}
+     * would write it, by a separate thread into a pipe of
+     * {@link #STDIN_PIPE_BYTES} so the serialized data is never held in
+     * memory as a whole. If the request has no data, the input file already
+     * in the task directory is read instead
+     * @return input, caller must close it
+     * @throws CommunityDetectionException If the request has no data and
+     *         there is no input file
+     * @throws IOException If there was an error opening the input
+     */
+    protected InputStream openStandardInput() throws CommunityDetectionException, IOException {
+        JsonNode data = _cdr.getData();
+        if (data == null){
+            File inputFile = getInputFile();
+            if (inputFile.isFile() == false){
+                throw new CommunityDetectionException("Input file not found: "
+                        + inputFile.getAbsolutePath());
+            }
+            return new FileInputStream(inputFile);
+        }
+        PipedInputStream in = new PipedInputStream(STDIN_PIPE_BYTES);
+        final PipedOutputStream out = new PipedOutputStream(in);
+        Thread writer = TaskThreads.newThread("stdin-writer", () -> {
+            try (OutputStream os = out){
+                if (data instanceof TextNode){
+                    Writer w = new OutputStreamWriter(os, StandardCharsets.UTF_8);
+                    w.write(data.asText());
+                    w.flush();
+                } else {
+                    new ObjectMapper().writeValue(os, data);
+                }
+            } catch(IOException io){
+                // container exited or input was closed before it was all read
+                _logger.debug("Stopped writing input of task " + _id
+                        + " to standard input: " + io.getMessage());
+            }
+        });
+        writer.start();
+        return in;
+    }
+    
+    /**
+     * Writes {@code data} to {@code destFile} as text if it is a
+     * {@link com.fasterxml.jackson.databind.node.TextNode} otherwise as JSON
+     * @param data data to write
+     * @param destFile file to write to
+     * @throws IOException If there was IO error writing the data to a file
+     */
+    public static void writeData(final JsonNode data, final File destFile) throws IOException {
+        if (data instanceof TextNode){
             try (BufferedWriter bw = new BufferedWriter(new FileWriter(destFile))){
-                bw.write(_cdr.getData().asText());
+                bw.write(data.asText());
             }
         }
         else {
             ObjectMapper mapper = new ObjectMapper();
-            mapper.writeValue(destFile, _cdr.getData()); 
+            mapper.writeValue(destFile, data); 
         }
-        return destFile.getAbsolutePath();
     }
     
     /**
@@ -262,6 +496,158 @@ public class DockerCommunityDetectionRunner implements Callable {
         }
     }
     
+    /**
+     * Writes {@code command} to {@link #getCommandRunFile() }, used when
+     * the algorithm was not run via the command line runner
+     * @param command command to write
+     */
+    protected void writeCommandRunToFile(final String command){
+        File outFile = getCommandRunFile();
+        
+        try (BufferedWriter bw = new BufferedWriter(new FileWriter(outFile))){
+            bw.write(command);
+        } catch(IOException io){
+            _logger.error("Error writing command run to: " + outFile.getAbsolutePath(), io);
+        }
+    }
+    
+    /**
+     * Builds arguments passed to algorithm which are the custom parameters
+     * followed by the path to the input file or {@link #STDIN_ARGUMENT}
+     * if input is streamed
+     * @return arguments
+     */
+    protected List<String> getAlgorithmArguments(){
+        return getAlgorithmArguments(_streamInput ? STDIN_ARGUMENT : _inputFilePath);
+    }
+    
+    /**
+     * Builds arguments passed to algorithm which are the custom parameters
+     * followed by {@code inputArgument}
+     * @param inputArgument path to input file or {@link #STDIN_ARGUMENT}
+     * @return arguments
+     */
+    protected List<String> getAlgorithmArguments(final String inputArgument){
+        ArrayList<String> args = new ArrayList<>();
+        if (_customParameters != null){
+            _logger.debug("Custom Parameters is not null adding to command line call");
+            for (String key : _customParameters.keySet()){
+                args.add(key);
+
+                String val = _customParameters.get(key);
+                if (val != null && val.trim().isEmpty() == false){
+                    args.add(val);
+                }
+            }
+        } else {
+            _logger.debug("Custom Parameters is null");
+        }
+        args.add(inputArgument);
+        return args;
+    }
+    
+    /**
+     * Builds {@code docker run} command that runs algorithm
+     * @param mapDir volume to mount in {@code host:container[:options]}
+     *               format, not mounted if input is streamed
+     * @param limits resource limits of container or {@code null} for none
+     * @return command
+     */
+    protected List<String> getDockerRunCommand(final String mapDir,
+            final ContainerLimits limits){
+        ArrayList<String> mCmd = new ArrayList<String>();
+        mCmd.add(_dockerCmd);
+        mCmd.add("run");
+        mCmd.add("--rm");
+        if (limits != null){
+            mCmd.addAll(limits.getDockerRunArguments());
+        }
+        if (_streamInput){
+            mCmd.add("-i");
+        } else {
+            mCmd.add("-v");
+            mCmd.add(mapDir);
+        }
+        mCmd.add(_dockerImage);
+        mCmd.addAll(getAlgorithmArguments());
+        return mCmd;
+    }
+    
+    /**
+     * Runs algorithm in a container obtained from the container pool via
+     * {@code docker exec}. The input file is staged into the directory the
+     * pool mounts into its containers for as long as the algorithm runs,
+     * which is also its working directory. If the algorithm exceeds the
+     * timeout, the container is discarded since the process may still be
+     * running in it. If {@code docker exec} fails because the container
+     * is broken, as denoted by
+     * {@link DockerContainerPool#isContainerFailure(int)}, the container
+     * is discarded and the algorithm is run once more in another container
+     * @param stdOutFile destination for standard output
+     * @param stdErrFile destination for standard error
+     * @return exit code of algorithm or 500 if timeout was exceeded
+     * @throws Exception if no container could be obtained or there was
+     *         an error running the command
+     */
+    protected int runInContainerPool(File stdOutFile, File stdErrFile) throws Exception {
+        for (int attempt = 1; ; attempt++){
+            DockerContainerPool.PooledContainer container = _containerPool.acquire(_timeOut, _timeUnit);
+            boolean discard = true;
+            try {
+                File stagedDir = _containerPool.stageInput(_id, getInputFile());
+                try {
+                    List<String> mCmd = _containerPool.getExecCommand(container,
+                            stagedDir.getAbsolutePath(), getAlgorithmArguments(
+                                    new File(stagedDir, INPUT_FILE).getAbsolutePath()));
+                    int exitValue = _runner.runCommandLineProcess(_timeOut, _timeUnit,
+                            stdOutFile, stdErrFile, mCmd.toArray(new String[0]));
+                    if (DockerContainerPool.isContainerFailure(exitValue)){
+                        _logger.info("Received exit code " + Integer.toString(exitValue)
+                                + " from container " + container.getContainerId()
+                                + " for task " + _id + ", discarding container");
+                        if (attempt < 2){
+                            continue;
+                        }
+                        return exitValue;
+                    }
+                    discard = exitValue == 500;
+                    return exitValue;
+                } finally {
+                    _containerPool.unstage(_id);
+                }
+            } finally {
+                _containerPool.release(container, discard);
+            }
+        }
+    }
+    
+    /**
+     * Runs algorithm via the Docker Engine API the same way
+     * {@link #getDockerRunCommand(java.lang.String, org.ndexbio.communitydetection.rest.engine.util.ContainerLimits)} would
+     * @param mapDir volume to mount in {@code host:container[:options]} format
+     * @param limits resource limits of container or {@code null} for none
+     * @param stdOutFile destination for standard output
+     * @param stdErrFile destination for standard error
+     * @param stdErrListener if not {@code null}, passed each line of standard error
+     * @return exit code of algorithm or 500 if timeout was exceeded
+     * @throws DockerEngineClient.UnavailableException if daemon cannot be
+     *         reached to create the container, only then is it safe to
+     *         run the algorithm another way
+     * @throws Exception if there was an error running the container
+     */
+    protected int runViaDockerEngine(final String mapDir, final ContainerLimits limits,
+            File stdOutFile, File stdErrFile, Consumer<String> stdErrListener) throws Exception {
+        List<String> binds = new ArrayList<>();
+        if (_streamInput == false){
+            binds.add(mapDir);
+        }
+        int exitValue = _dockerClient.runContainer(_dockerImage, binds, getAlgorithmArguments(),
+                limits, _timeOut, _timeUnit, stdOutFile, stdErrFile, stdErrListener,
+                _streamInput ? openStandardInput() : null);
+        writeCommandRunToFile(String.join(" ", getDockerRunCommand(mapDir, limits)));
+        return exitValue;
+    }
+    
     /**
      * Runs the command line process set via the constructor storing output, error, and
      * command run by this process to the file system. 
@@ -280,41 +666,69 @@ public class DockerCommunityDetectionRunner implements Callable {
         File stdErrFile = getStandardErrorFile();
         
         CommunityDetectionResult cdr = createCommunityDetectionResult();
-        
+        final IntConsumer progressListener = _progressListener;
+        Consumer<String> stdErrListener = null;
+        if (progressListener != null){
+            stdErrListener = (line) -> {
+                int progress = parseProgress(line);
+                if (progress >= 0){
+                    progressListener.accept(progress);
+                }
+            };
+            _runner.setStandardErrorListener(stdErrListener);
+        }
+        List<Integer> cpuset = null;
         try {
             if (workDir.isDirectory() == false){
                 throw new Exception(_workDir + " directory does not exist");
             }
-            ArrayList<String> mCmd = new ArrayList<String>();
-            mCmd.add(_dockerCmd);
-            mCmd.add("run");
-            mCmd.add("--rm");
-            mCmd.add("-v");
-            mCmd.add(mapDir);
-            mCmd.add(_dockerImage);
-            if (_customParameters != null){
-                _logger.debug("Custom Parameters is not null adding to command line call");
-                for (String key : _customParameters.keySet()){
-                    mCmd.add(key);
-                    
-                    String val = _customParameters.get(key);
-                    if (val != null && val.trim().isEmpty() == false){
-                        mCmd.add(val);
+            int exitValue = -1;
+            boolean ranViaApi = false;
+            boolean usePool = _containerPool != null && _streamInput == false;
+            ContainerLimits limits = _limits;
+            if (usePool == false && _cpusetAllocator != null && limits != null
+                    && limits.getCpus() > 0){
+                cpuset = _cpusetAllocator.allocate((int)Math.ceil(limits.getCpus()));
+                if (cpuset == null){
+                    _logger.info("Not enough free cpus to pin task " + _id
+                            + ", running it unpinned");
+                } else {
+                    limits = limits.withCpuset(CpusetAllocator.format(cpuset));
+                }
+            }
+            if (usePool == false && _dockerClient != null){
+                try {
+                    exitValue = runViaDockerEngine(mapDir, limits, stdOutFile, stdErrFile,
+                            stdErrListener);
+                    ranViaApi = true;
+                } catch(DockerEngineClient.UnavailableException ue){
+                    _logger.warn("Docker Engine API unavailable, falling back to "
+                            + _dockerCmd + ": " + ue.getMessage());
+                }
+            }
+            if (ranViaApi == false){
+                if (usePool == false){
+                    if (_streamInput){
+                        _runner.setStandardInput(openStandardInput());
                     }
+                    List<String> mCmd = getDockerRunCommand(mapDir, limits);
+                    exitValue = _runner.runCommandLineProcess(_timeOut, _timeUnit,
+                            stdOutFile, stdErrFile, mCmd.toArray(new String[0]));
+                } else {
+                    exitValue = runInContainerPool(stdOutFile, stdErrFile);
                 }
-            } else {
-                _logger.debug("Custom Parameters is null");
+                writeCommandRunToFile();
             }
-            mCmd.add(_inputFilePath);
-            int  exitValue = _runner.runCommandLineProcess(_timeOut, _timeUnit,
-                    stdOutFile, stdErrFile, mCmd.toArray(new String[0]));
-            writeCommandRunToFile();
             updateCommunityDetectionResult(exitValue, stdOutFile, stdErrFile, cdr);
             
         } catch(Exception ex){
             cdr.setStatus(CommunityDetectionResult.FAILED_STATUS);
             cdr.setMessage("Received error trying to run task: " + ex.getMessage());
             _logger.error("Received error trying to run algorithm for task in " + _workDir, ex);
+        } finally {
+            if (_cpusetAllocator != null){
+                _cpusetAllocator.release(cpuset);
+            }
         }
         cdr.setProgress(100);
         cdr.setWallTime(System.currentTimeMillis() - cdr.getStartTime());
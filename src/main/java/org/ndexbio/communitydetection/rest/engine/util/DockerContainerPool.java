@@ -0,0 +1,501 @@
+package org.ndexbio.communitydetection.rest.engine.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.apache.commons.io.FileUtils;
+import org.ndexbio.communitydetection.rest.model.exceptions.CommunityDetectionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pool of long lived docker containers for a single algorithm image. Instead
+ * of paying for container create, start, and teardown on every task via
+ * {@code docker run --rm}, containers are started once with their entrypoint
+ * replaced by an idle process and tasks are run inside them via
+ * {@code docker exec} using the entrypoint of the image.
+ *
+ * Containers only mount a staging directory of the pool, created under
+ * {@link #POOL_DIR} when the pool is started, not the task directory, so
+ * a container never sees the results, logs or inputs of tasks it does not
+ * run. Before a task is run its input is linked, or copied if it cannot
+ * be linked, into a directory of its own under the staging directory via
+ * {@link #stageInput(java.lang.String, java.io.File)} and removed again
+ * via {@link #unstage(java.lang.String)} once it is done. Containers are
+ * not inspected before being handed out, which would cost a docker
+ * command per task. Instead a container is discarded if a task exceeds
+ * its timeout or {@code docker exec} fails in a way that denotes the
+ * container itself is broken, see {@link #isContainerFailure(int)}, and
+ * recycled after running {@code maxTasksPerContainer} tasks. Replacement
+ * containers are started on demand by
+ * {@link #acquire(long, java.util.concurrent.TimeUnit)}
+ *
+ * @author churas
+ */
+public class DockerContainerPool {
+
+    static Logger _logger = LoggerFactory.getLogger(DockerContainerPool.class);
+
+    /**
+     * Name of directory under task directory where output of docker
+     * commands used to manage the pool are written
+     */
+    public static final String POOL_DIR = "cdcontainerpool";
+
+    /**
+     * Command run by containers in pool to keep them alive
+     */
+    public static final String[] IDLE_COMMAND = {"tail", "-f", "/dev/null"};
+
+    /**
+     * Prefix of staging directory of pool under {@link #POOL_DIR}
+     */
+    public static final String STAGING_DIR_PREFIX = "staging-";
+
+    /**
+     * Exit code of {@code docker exec} when docker itself failed, for
+     * example because the container is no longer running
+     */
+    public static final int EXEC_DOCKER_ERROR_EXIT_CODE = 125;
+
+    /**
+     * Exit code of {@code docker exec} when the command could not be
+     * invoked in the container
+     */
+    public static final int EXEC_CANNOT_INVOKE_EXIT_CODE = 126;
+
+    private final String _dockerCmd;
+    private final String _dockerImage;
+    private final String _taskDir;
+    private final String _mountOptions;
+    private final int _poolSize;
+    private final int _maxTasksPerContainer;
+    private final Supplier<CommandLineRunner> _runnerSupplier;
+    private final File _scratchDir;
+    private File _stagingDir;
+    private long _commandTimeOut = 120;
+    private List<String> _entrypoint;
+    private ContainerLimits _limits;
+    private final LinkedBlockingQueue<PooledContainer> _idle;
+    private final Set<PooledContainer> _containers;
+    private int _containersStarting;
+    private volatile boolean _shutdown;
+
+    /**
+     * A running container in the pool
+     */
+    public static class PooledContainer {
+        private final String _containerId;
+        private int _tasksRun;
+
+        PooledContainer(final String containerId){
+            _containerId = containerId;
+            _tasksRun = 0;
+        }
+
+        /**
+         * Gets id of docker container
+         * @return container id
+         */
+        public String getContainerId() {
+            return _containerId;
+        }
+
+        /**
+         * Gets number of tasks run by this container
+         * @return number of tasks
+         */
+        public int getTasksRun() {
+            return _tasksRun;
+        }
+    }
+
+    /**
+     * Constructor
+     * @param dockerCmd Command to run docker (/usr/bin/docker /bin/docker etc..)
+     * @param dockerImage Docker image to run in pool
+     * @param taskDir Base directory for tasks under which the staging
+     *                directory mounted into every container is created
+     * @param mountOptions flags used by container to mount filesystem
+     * @param poolSize maximum number of containers in pool
+     * @param maxTasksPerContainer number of tasks a container runs before it is replaced
+     * @param runnerSupplier creates {@link CommandLineRunner} objects used
+     *                       to invoke docker
+     */
+    public DockerContainerPool(final String dockerCmd, final String dockerImage,
+            final String taskDir, final String mountOptions, int poolSize,
+            int maxTasksPerContainer, Supplier<CommandLineRunner> runnerSupplier){
+        _dockerCmd = dockerCmd;
+        _dockerImage = dockerImage;
+        _taskDir = taskDir;
+        _mountOptions = mountOptions == null ? "" : mountOptions;
+        _poolSize = poolSize;
+        _maxTasksPerContainer = maxTasksPerContainer;
+        _runnerSupplier = runnerSupplier;
+        _scratchDir = new File(taskDir + File.separator + POOL_DIR);
+        _idle = new LinkedBlockingQueue<>();
+        _containers = ConcurrentHashMap.newKeySet();
+        _containersStarting = 0;
+        _shutdown = false;
+    }
+
+    /**
+     * Sets timeout for docker commands used to manage the pool
+     * @param timeOut time in seconds
+     */
+    public void setCommandTimeOut(long timeOut){
+        _commandTimeOut = timeOut;
+    }
+
+    /**
+     * Sets resource limits of containers in pool. Since containers are
+     * shared by tasks over time they are never pinned to cpus
+     * @param limits limits or {@code null} for none
+     */
+    public void setContainerLimits(ContainerLimits limits){
+        _limits = limits == null ? null
+                : new ContainerLimits(limits.getCpus(), limits.getMemoryBytes(),
+                        limits.getPidsLimit());
+    }
+
+    /**
+     * Gets docker image run by this pool
+     * @return docker image
+     */
+    public String getDockerImage(){
+        return _dockerImage;
+    }
+
+    /**
+     * Gets number of containers in pool both idle and busy
+     * @return number of containers
+     */
+    public int getNumberContainers(){
+        return _containers.size();
+    }
+
+    /**
+     * Gets number of idle containers in pool
+     * @return number of idle containers
+     */
+    public int getNumberIdleContainers(){
+        return _idle.size();
+    }
+
+    /**
+     * Starts the containers for this pool and looks up the entrypoint
+     * of the image which is used when running tasks
+     * @throws CommunityDetectionException if a container could not be started
+     *         or the entrypoint of the image could not be determined
+     */
+    public void start() throws CommunityDetectionException {
+        if (_scratchDir.isDirectory() == false && _scratchDir.mkdirs() == false){
+            throw new CommunityDetectionException("Unable to create directory: "
+                    + _scratchDir.getAbsolutePath());
+        }
+        try {
+            _stagingDir = Files.createTempDirectory(_scratchDir.toPath(),
+                    STAGING_DIR_PREFIX).toFile();
+        } catch(IOException io){
+            throw new CommunityDetectionException("Unable to create staging directory under "
+                    + _scratchDir.getAbsolutePath() + " : " + io.getMessage());
+        }
+        for (int i = 0; i < _poolSize; i++){
+            PooledContainer container = startContainer();
+            _containers.add(container);
+            _idle.add(container);
+        }
+        _entrypoint = getImageEntrypoint();
+        _logger.info("Started " + Integer.toString(_poolSize) + " containers for "
+                + _dockerImage + " with entrypoint " + _entrypoint.toString());
+    }
+
+    /**
+     * Gets an idle container from the pool starting a new one if
+     * the pool has fewer than {@code poolSize} containers. If all containers
+     * are busy this method waits for one to be released
+     * @param timeOut maximum time to wait for a container
+     * @param unit unit of {@code timeOut}
+     * @return container
+     * @throws CommunityDetectionException if pool is shutdown, no container
+     *         became available in time or a container could not be started
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public PooledContainer acquire(long timeOut, TimeUnit unit) throws CommunityDetectionException,
+            InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeOut);
+        while (_shutdown == false){
+            PooledContainer container = _idle.poll();
+            if (container == null){
+                container = startContainerIfPoolHasRoom();
+                if (container != null){
+                    return container;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0){
+                    throw new CommunityDetectionException("Timed out waiting for container running "
+                            + _dockerImage);
+                }
+                container = _idle.poll(remaining, TimeUnit.NANOSECONDS);
+                if (container == null){
+                    continue;
+                }
+            }
+            return container;
+        }
+        throw new CommunityDetectionException("Container pool for " + _dockerImage + " is shutdown");
+    }
+
+    /**
+     * Returns {@code container} to the pool. The container is instead
+     * removed if {@code discard} is {@code true}, the pool is shutdown, or
+     * the container has run {@code maxTasksPerContainer} tasks
+     * @param container container to return
+     * @param discard if {@code true} container is removed
+     */
+    public void release(PooledContainer container, boolean discard){
+        if (container == null){
+            return;
+        }
+        container._tasksRun++;
+        if (discard || _shutdown || container.getTasksRun() >= _maxTasksPerContainer){
+            _logger.debug("Removing container " + container.getContainerId() + " after "
+                    + Integer.toString(container.getTasksRun()) + " tasks");
+            discard(container);
+            return;
+        }
+        _idle.add(container);
+    }
+
+    /**
+     * Denotes if {@code exitValue} of {@code docker exec} means the task
+     * never ran because the container is broken, in which case the
+     * container should be discarded and the task can be run in another
+     * @param exitValue exit code of {@code docker exec}
+     * @return {@code true} if {@code exitValue} is
+     *         {@link #EXEC_DOCKER_ERROR_EXIT_CODE} or
+     *         {@link #EXEC_CANNOT_INVOKE_EXIT_CODE}
+     */
+    public static boolean isContainerFailure(int exitValue){
+        return exitValue == EXEC_DOCKER_ERROR_EXIT_CODE
+                || exitValue == EXEC_CANNOT_INVOKE_EXIT_CODE;
+    }
+
+    /**
+     * Builds command to run algorithm in {@code container} via {@code docker exec}
+     * @param container container to run algorithm in
+     * @param workDir working directory for algorithm
+     * @param args arguments to pass to entrypoint of image
+     * @return command
+     */
+    public List<String> getExecCommand(PooledContainer container, final String workDir,
+            List<String> args){
+        ArrayList<String> mCmd = new ArrayList<>();
+        mCmd.add(_dockerCmd);
+        mCmd.add("exec");
+        mCmd.add("-w");
+        mCmd.add(workDir);
+        mCmd.add(container.getContainerId());
+        if (_entrypoint != null){
+            mCmd.addAll(_entrypoint);
+        }
+        mCmd.addAll(args);
+        return mCmd;
+    }
+
+    /**
+     * Gets directory mounted into every container of pool
+     * @return directory or {@code null} if pool has not been started
+     */
+    public File getStagingDirectory(){
+        return _stagingDir;
+    }
+
+    /**
+     * Makes {@code inputFile} of task {@code taskId} visible to containers
+     * of pool by linking it into a directory of the task under the staging
+     * directory. The file is copied instead if it cannot be linked, for
+     * example if the staging directory is on another filesystem
+     * @param taskId id of task
+     * @param inputFile input of task
+     * @return directory of task under staging directory, which holds
+     *         {@code inputFile} under the same name and should be used as
+     *         the working directory of the algorithm
+     * @throws CommunityDetectionException if the input could not be staged
+     */
+    public File stageInput(final String taskId, final File inputFile) throws CommunityDetectionException {
+        File taskStagingDir = new File(_stagingDir, taskId);
+        try {
+            Files.createDirectories(taskStagingDir.toPath());
+            Path stagedFile = new File(taskStagingDir, inputFile.getName()).toPath();
+            try {
+                Files.createLink(stagedFile, inputFile.toPath());
+            } catch(IOException | UnsupportedOperationException ex){
+                Files.copy(inputFile.toPath(), stagedFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return taskStagingDir;
+        } catch(IOException io){
+            throw new CommunityDetectionException("Unable to stage input of task "
+                    + taskId + " : " + io.getMessage());
+        }
+    }
+
+    /**
+     * Removes directory of task {@code taskId} under staging directory
+     * @param taskId id of task
+     */
+    public void unstage(final String taskId){
+        FileUtils.deleteQuietly(new File(_stagingDir, taskId));
+    }
+
+    /**
+     * Removes all containers in pool and the staging directory. Containers
+     * in use are removed when released
+     */
+    public void shutdown(){
+        _shutdown = true;
+        PooledContainer container = _idle.poll();
+        while (container != null){
+            discard(container);
+            container = _idle.poll();
+        }
+        if (_stagingDir != null){
+            FileUtils.deleteQuietly(_stagingDir);
+        }
+    }
+
+    /**
+     * Starts a container if pool has fewer than {@code poolSize} containers
+     * @return new container or {@code null} if pool is full
+     */
+    private PooledContainer startContainerIfPoolHasRoom() throws CommunityDetectionException {
+        synchronized(this){
+            if (_containers.size() + _containersStarting >= _poolSize){
+                return null;
+            }
+            _containersStarting++;
+        }
+        try {
+            PooledContainer container = startContainer();
+            _containers.add(container);
+            return container;
+        } finally {
+            synchronized(this){
+                _containersStarting--;
+            }
+        }
+    }
+
+    /**
+     * Starts a container running {@link #IDLE_COMMAND} with staging directory mounted
+     * @return started container
+     * @throws CommunityDetectionException if container failed to start
+     */
+    protected PooledContainer startContainer() throws CommunityDetectionException {
+        String stagingPath = _stagingDir.getAbsolutePath();
+        String mapDir = stagingPath + ":" + stagingPath + _mountOptions;
+        ArrayList<String> mCmd = new ArrayList<>();
+        mCmd.add(_dockerCmd);
+        mCmd.add("run");
+        mCmd.add("-d");
+        mCmd.add("--rm");
+        if (_limits != null){
+            mCmd.addAll(_limits.getDockerRunArguments());
+        }
+        mCmd.add("--entrypoint");
+        mCmd.add(IDLE_COMMAND[0]);
+        mCmd.add("-v");
+        mCmd.add(mapDir);
+        mCmd.add(_dockerImage);
+        mCmd.add(IDLE_COMMAND[1]);
+        mCmd.add(IDLE_COMMAND[2]);
+        String containerId = runDockerCommand(mCmd.toArray(new String[0]));
+        if (containerId == null || containerId.isEmpty()){
+            throw new CommunityDetectionException("Unable to start container for " + _dockerImage);
+        }
+        _logger.debug("Started container " + containerId + " for " + _dockerImage);
+        return new PooledContainer(containerId);
+    }
+
+    /**
+     * Gets entrypoint of image via {@code docker inspect}
+     * @return entrypoint which is empty if image has none
+     * @throws CommunityDetectionException if docker inspect fails or output cannot be parsed
+     */
+    protected List<String> getImageEntrypoint() throws CommunityDetectionException {
+        String res = runDockerCommand(_dockerCmd, "inspect", "-f",
+                "{{json .Config.Entrypoint}}", _dockerImage);
+        if (res == null){
+            throw new CommunityDetectionException("Unable to inspect " + _dockerImage);
+        }
+        ArrayList<String> entrypoint = new ArrayList<>();
+        try {
+            JsonNode node = new ObjectMapper().readTree(res);
+            if (node != null && node.isArray()){
+                for (JsonNode val : node){
+                    entrypoint.add(val.asText());
+                }
+            }
+        } catch(IOException io){
+            throw new CommunityDetectionException("Unable to parse entrypoint of "
+                    + _dockerImage + " : " + io.getMessage());
+        }
+        return entrypoint;
+    }
+
+    /**
+     * Removes {@code container} via {@code docker rm -f}
+     * @param container container to remove
+     */
+    protected void discard(PooledContainer container){
+        _containers.remove(container);
+        try {
+            runDockerCommand(_dockerCmd, "rm", "-f", container.getContainerId());
+        } catch(CommunityDetectionException cde){
+            _logger.error("Error removing container " + container.getContainerId(), cde);
+        }
+    }
+
+    /**
+     * Runs docker command returning trimmed standard output
+     * @param command command to run
+     * @return standard output with whitespace trimmed or {@code null} if
+     *         command exited with non zero exit code
+     * @throws CommunityDetectionException if there was an error running command
+     */
+    protected String runDockerCommand(String... command) throws CommunityDetectionException {
+        File stdOutFile = null;
+        File stdErrFile = null;
+        try {
+            stdOutFile = File.createTempFile("out", ".txt", _scratchDir);
+            stdErrFile = File.createTempFile("err", ".txt", _scratchDir);
+            CommandLineRunner runner = _runnerSupplier.get();
+            int exitValue = runner.runCommandLineProcess(_commandTimeOut, TimeUnit.SECONDS,
+                    stdOutFile, stdErrFile, command);
+            if (exitValue != 0){
+                _logger.error("Received exit code " + Integer.toString(exitValue) + " running: "
+                        + runner.getLastCommand() + " : "
+                        + FileUtils.readFileToString(stdErrFile, StandardCharsets.UTF_8));
+                return null;
+            }
+            return FileUtils.readFileToString(stdOutFile, StandardCharsets.UTF_8).trim();
+        } catch(Exception ex){
+            throw new CommunityDetectionException("Error running docker command: " + ex.getMessage());
+        } finally {
+            FileUtils.deleteQuietly(stdOutFile);
+            FileUtils.deleteQuietly(stdErrFile);
+        }
+    }
+}
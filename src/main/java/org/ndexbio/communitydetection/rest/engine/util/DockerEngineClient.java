@@ -0,0 +1,853 @@
+package org.ndexbio.communitydetection.rest.engine.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.InvocationTargetException;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.URLEncoder;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Minimal client of the <a href="https://docs.docker.com/engine/api/">Docker Engine API</a>
+ * that talks HTTP/1.1 to the daemon over its unix domain socket. It runs
+ * a container the way {@code docker run --rm -v <bind> <image> <args>}
+ * does without forking the docker command line tool.
+ *
+ * Connections are kept alive and reused across requests, up to
+ * {@link #MAX_IDLE_CONNECTIONS} idle ones. Following the logs of a
+ * container holds a connection until the container exits so that is
+ * done on a connection of its own.
+ *
+ * Unix domain socket channels were added in Java 16, so they are looked
+ * up via reflection and {@link #isSupported()} returns {@code false} on
+ * older runtimes. If the daemon cannot be reached an
+ * {@link UnavailableException} is thrown so callers can fall back to the
+ * command line tool.
+ *
+ * @author churas
+ */
+public class DockerEngineClient {
+
+    static Logger _logger = LoggerFactory.getLogger(DockerEngineClient.class);
+
+    /**
+     * Default path to unix domain socket of Docker daemon
+     */
+    public static final String DEFAULT_SOCKET = "/var/run/docker.sock";
+
+    /**
+     * Maximum number of idle connections kept for reuse
+     */
+    public static final int MAX_IDLE_CONNECTIONS = 4;
+
+    /**
+     * Stream types in header of each frame of multiplexed log stream
+     */
+    public static final int STDOUT_STREAM = 1;
+    public static final int STDERR_STREAM = 2;
+
+    /**
+     * Time in milliseconds to wait for remaining logs once container exits
+     */
+    private static final long LOG_DRAIN_MILLIS = 5000;
+
+    private static final int MAX_LINE_LENGTH = 8192;
+
+    /**
+     * Kills containers that exceed their time out
+     */
+    private static final ScheduledExecutorService _timeoutExecutor = Executors.newSingleThreadScheduledExecutor((r) -> {
+        Thread t = new Thread(r, "docker-api-timeout");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * Thrown when the Docker daemon cannot be reached
+     */
+    public static class UnavailableException extends IOException {
+
+        /**
+         * Constructor
+         * @param message description of problem
+         */
+        public UnavailableException(final String message){
+            super(message);
+        }
+    }
+
+    /**
+     * Open connection to the daemon
+     */
+    protected static class Connection implements Closeable {
+        private final InputStream _in;
+        private final OutputStream _out;
+        private final Closeable _channel;
+
+        /**
+         * Constructor
+         * @param in stream to read responses from
+         * @param out stream to write requests to
+         * @param channel closed when connection is closed
+         */
+        public Connection(final InputStream in, final OutputStream out, final Closeable channel){
+            _in = new BufferedInputStream(in);
+            _out = new BufferedOutputStream(out);
+            _channel = channel;
+        }
+
+        @Override
+        public void close() {
+            try {
+                _channel.close();
+            } catch(IOException io){
+                _logger.debug("Error closing connection to docker daemon", io);
+            }
+        }
+    }
+
+    /**
+     * Response to a request whose body was read in full
+     */
+    public static class Response {
+        private final int _statusCode;
+        private final byte[] _body;
+
+        Response(int statusCode, final byte[] body){
+            _statusCode = statusCode;
+            _body = body;
+        }
+
+        /**
+         * Gets HTTP status code
+         * @return status code
+         */
+        public int getStatusCode() {
+            return _statusCode;
+        }
+
+        /**
+         * Gets body of response
+         * @return body, empty if there was none
+         */
+        public byte[] getBody() {
+            return _body;
+        }
+    }
+
+    /**
+     * Status line and headers of a response
+     */
+    private static class ResponseHead {
+        private int _statusCode;
+        private long _contentLength = -1;
+        private boolean _chunked = false;
+        private boolean _keepAlive = true;
+    }
+
+    private final String _socketPath;
+    private final ConcurrentLinkedDeque<Connection> _idle = new ConcurrentLinkedDeque<>();
+    private final ObjectMapper _mapper = new ObjectMapper();
+
+    /**
+     * Constructor
+     * @param socketPath path to unix domain socket of Docker daemon
+     */
+    public DockerEngineClient(final String socketPath){
+        _socketPath = socketPath;
+    }
+
+    /**
+     * Denotes if this runtime supports unix domain socket channels
+     * @return {@code true} if running on Java 16 or later
+     */
+    public static boolean isSupported(){
+        try {
+            Class.forName("java.net.UnixDomainSocketAddress");
+            StandardProtocolFamily.valueOf("UNIX");
+            return true;
+        } catch(ClassNotFoundException | IllegalArgumentException ex){
+            return false;
+        }
+    }
+
+    /**
+     * Gets path to unix domain socket of Docker daemon
+     * @return path
+     */
+    public String getSocketPath(){
+        return _socketPath;
+    }
+
+    /**
+     * Opens new connection to daemon
+     * @return connection
+     * @throws UnavailableException if unix domain sockets are not supported
+     *         or daemon cannot be reached
+     */
+    protected Connection openConnection() throws IOException {
+        SocketChannel channel;
+        SocketAddress address;
+        try {
+            address = (SocketAddress)Class.forName("java.net.UnixDomainSocketAddress")
+                    .getMethod("of", String.class).invoke(null, _socketPath);
+            channel = (SocketChannel)SocketChannel.class.getMethod("open", ProtocolFamily.class)
+                    .invoke(null, StandardProtocolFamily.valueOf("UNIX"));
+        } catch(InvocationTargetException ite){
+            throw new UnavailableException("Unable to open " + _socketPath + ": "
+                    + ite.getCause().getMessage());
+        } catch(ReflectiveOperationException | IllegalArgumentException ex){
+            throw new UnavailableException("Unix domain sockets are not supported by this runtime");
+        }
+        try {
+            channel.connect(address);
+        } catch(IOException io){
+            channel.close();
+            throw new UnavailableException("Unable to connect to " + _socketPath + ": "
+                    + io.getMessage());
+        }
+        return new Connection(Channels.newInputStream(channel),
+                Channels.newOutputStream(channel), channel);
+    }
+
+    /**
+     * Closes idle connections
+     */
+    public void close(){
+        Connection conn;
+        while ((conn = _idle.pollFirst()) != null){
+            conn.close();
+        }
+    }
+
+    /**
+     * Runs container like {@code docker run --rm}, writing its standard
+     * output and error to files as it runs
+     * @param image docker image
+     * @param binds volumes to mount in {@code host:container[:options]} format
+     * @param cmd arguments passed to entrypoint of image
+     * @param limits resource limits of container or {@code null} for none
+     * @param timeOut container is killed if it runs longer than this
+     * @param unit unit of {@code timeOut}
+     * @param stdOutFile destination for standard output
+     * @param stdErrFile destination for standard error
+     * @param stdErrListener if not {@code null}, passed each line of
+     *                       standard error as it is written
+     * @param stdIn if not {@code null}, written to standard input of the
+     *              container like {@code docker run -i} and then closed
+     * @return exit code of container or 500 if {@code timeOut} was exceeded
+     * @throws UnavailableException if daemon cannot be reached to create
+     *         the container, so nothing was run
+     * @throws IOException if daemon returned an error or could no longer be
+     *         reached once the container was created, in which case it
+     *         may have run
+     * @throws InterruptedException if interrupted waiting on logs
+     */
+    public int runContainer(final String image, final List<String> binds,
+            final List<String> cmd, final ContainerLimits limits,
+            long timeOut, final TimeUnit unit,
+            final File stdOutFile, final File stdErrFile,
+            final Consumer<String> stdErrListener,
+            final InputStream stdIn) throws IOException, InterruptedException {
+        String containerId = null;
+        try {
+            containerId = createContainer(image, binds, cmd, limits, stdIn != null);
+        } finally {
+            if (containerId == null && stdIn != null){
+                stdIn.close();
+            }
+        }
+        final String id = containerId;
+        try {
+            if (stdIn != null){
+                startStandardInputPump(id, stdIn);
+            }
+            startContainer(id);
+            Thread logThread = TaskThreads.newThread("docker-logs", () -> {
+                try (OutputStream out = new FileOutputStream(stdOutFile);
+                     OutputStream err = stdErrListener == null ? new FileOutputStream(stdErrFile)
+                             : new LineSplittingOutputStream(new FileOutputStream(stdErrFile),
+                                     stdErrListener)){
+                    followLogs(id, out, err);
+                } catch(IOException io){
+                    _logger.error("Error reading logs of container " + id, io);
+                }
+            });
+            logThread.start();
+
+            final AtomicBoolean timedOut = new AtomicBoolean(false);
+            ScheduledFuture<?> killer = _timeoutExecutor.schedule(() -> {
+                timedOut.set(true);
+                try {
+                    killContainer(id);
+                } catch(IOException io){
+                    _logger.error("Unable to kill container " + id, io);
+                }
+            }, timeOut, unit);
+            int exitCode;
+            try {
+                exitCode = waitContainer(id);
+            } finally {
+                killer.cancel(false);
+            }
+            logThread.join(LOG_DRAIN_MILLIS);
+            return timedOut.get() ? 500 : exitCode;
+        } catch(UnavailableException ue){
+            // container exists and may be running so caller must not
+            // run it again another way
+            throw new IOException("Lost connection to docker daemon while running container "
+                    + id + ": " + ue.getMessage(), ue);
+        } finally {
+            try {
+                removeContainer(id);
+            } catch(IOException io){
+                _logger.error("Unable to remove container " + id, io);
+            }
+        }
+    }
+
+    /**
+     * Attaches to standard input of container {@code id}, which must not
+     * be started yet, and copies {@code stdIn} to it on a separate thread.
+     * Closing the connection once done closes standard input of the
+     * container since it was created with {@code StdinOnce}
+     * @param id id of container
+     * @param stdIn data to write, closed once written
+     * @throws IOException if there was an error attaching
+     */
+    protected void startStandardInputPump(final String id, final InputStream stdIn) throws IOException {
+        final Connection conn;
+        try {
+            conn = openConnection();
+        } catch(IOException io){
+            stdIn.close();
+            throw io;
+        }
+        try {
+            writeRequest(conn, "POST", "/containers/" + encode(id)
+                    + "/attach?stream=true&stdin=true", null, true);
+            ResponseHead head = readHead(conn._in);
+            if (head._statusCode != 101 && head._statusCode != 200){
+                checkStatus(new Response(head._statusCode, readFully(getBodyStream(conn._in, head))),
+                        "attach to container " + id, 101, 200);
+            }
+        } catch(IOException io){
+            conn.close();
+            stdIn.close();
+            throw io;
+        }
+        Thread t = TaskThreads.newThread("docker-stdin", () -> {
+            byte[] buf = new byte[8192];
+            try (InputStream in = stdIn){
+                int len;
+                while ((len = in.read(buf)) != -1){
+                    conn._out.write(buf, 0, len);
+                }
+                conn._out.flush();
+            } catch(IOException io){
+                _logger.debug("Unable to write all of standard input of container " + id, io);
+            } finally {
+                conn.close();
+            }
+        });
+        t.start();
+    }
+
+    /**
+     * Creates container pulling {@code image} first if it is not present
+     * @param image docker image
+     * @param binds volumes to mount
+     * @param cmd arguments passed to entrypoint of image
+     * @return id of container
+     * @throws IOException if there was an error
+     */
+    public String createContainer(final String image, final List<String> binds,
+            final List<String> cmd) throws IOException {
+        return createContainer(image, binds, cmd, null, false);
+    }
+
+    /**
+     * Creates container pulling {@code image} first if it is not present
+     * @param image docker image
+     * @param binds volumes to mount
+     * @param cmd arguments passed to entrypoint of image
+     * @param limits resource limits of container or {@code null} for none
+     * @param openStdin if {@code true}, standard input of the container is
+     *                  left open for a single attach like {@code docker run -i}
+     * @return id of container
+     * @throws IOException if there was an error
+     */
+    public String createContainer(final String image, final List<String> binds,
+            final List<String> cmd, final ContainerLimits limits,
+            boolean openStdin) throws IOException {
+        ObjectNode body = _mapper.createObjectNode();
+        body.put("Image", image);
+        if (openStdin){
+            body.put("AttachStdin", true);
+            body.put("OpenStdin", true);
+            body.put("StdinOnce", true);
+        }
+        ArrayNode cmdNode = body.putArray("Cmd");
+        for (String arg : cmd){
+            cmdNode.add(arg);
+        }
+        ObjectNode hostConfig = body.putObject("HostConfig");
+        ArrayNode bindsNode = hostConfig.putArray("Binds");
+        for (String bind : binds){
+            bindsNode.add(bind);
+        }
+        if (limits != null){
+            limits.addToHostConfig(hostConfig);
+        }
+        byte[] bodyBytes = _mapper.writeValueAsBytes(body);
+        Response res = execute("POST", "/containers/create", bodyBytes);
+        if (res.getStatusCode() == 404){
+            pullImage(image);
+            res = execute("POST", "/containers/create", bodyBytes);
+        }
+        checkStatus(res, "create container from " + image, 201);
+        return _mapper.readTree(res.getBody()).get("Id").asText();
+    }
+
+    /**
+     * Pulls {@code image} from its registry
+     * @param image docker image, tag defaults to {@code latest}
+     * @throws IOException if there was an error
+     */
+    public void pullImage(final String image) throws IOException {
+        String name = image;
+        String tag = "latest";
+        int colon = image.lastIndexOf(':');
+        if (colon > image.lastIndexOf('/')){
+            name = image.substring(0, colon);
+            tag = image.substring(colon + 1);
+        }
+        Response res = execute("POST", "/images/create?fromImage=" + encode(name)
+                + "&tag=" + encode(tag), null);
+        checkStatus(res, "pull " + image, 200);
+        // progress is streamed as JSON objects, failures only show up there
+        String progress = new String(res.getBody(), StandardCharsets.UTF_8);
+        if (progress.contains("\"error\"")){
+            throw new IOException("Unable to pull " + image + ": " + progress.trim());
+        }
+    }
+
+    /**
+     * Starts container
+     * @param id id of container
+     * @throws IOException if there was an error
+     */
+    public void startContainer(final String id) throws IOException {
+        checkStatus(execute("POST", "/containers/" + encode(id) + "/start", null),
+                "start container " + id, 204, 304);
+    }
+
+    /**
+     * Waits for container to exit
+     * @param id id of container
+     * @return exit code of container
+     * @throws IOException if there was an error
+     */
+    public int waitContainer(final String id) throws IOException {
+        Response res = execute("POST", "/containers/" + encode(id) + "/wait", null);
+        checkStatus(res, "wait on container " + id, 200);
+        return _mapper.readTree(res.getBody()).get("StatusCode").asInt();
+    }
+
+    /**
+     * Kills container
+     * @param id id of container
+     * @throws IOException if there was an error
+     */
+    public void killContainer(final String id) throws IOException {
+        checkStatus(execute("POST", "/containers/" + encode(id) + "/kill", null),
+                "kill container " + id, 204, 409);
+    }
+
+    /**
+     * Removes container and its anonymous volumes, killing it if running
+     * @param id id of container
+     * @throws IOException if there was an error
+     */
+    public void removeContainer(final String id) throws IOException {
+        checkStatus(execute("DELETE", "/containers/" + encode(id) + "?force=true&v=true", null),
+                "remove container " + id, 204, 404);
+    }
+
+    /**
+     * Copies standard output and error of container to {@code stdOut} and
+     * {@code stdErr} from the start until the container exits
+     * @param id id of container
+     * @param stdOut destination for standard output
+     * @param stdErr destination for standard error
+     * @throws IOException if there was an error
+     */
+    public void followLogs(final String id, final OutputStream stdOut,
+            final OutputStream stdErr) throws IOException {
+        try (Connection conn = openConnection()){
+            writeRequest(conn, "GET", "/containers/" + encode(id)
+                    + "/logs?follow=true&stdout=true&stderr=true", null);
+            ResponseHead head = readHead(conn._in);
+            InputStream body = getBodyStream(conn._in, head);
+            if (head._statusCode != 200){
+                checkStatus(new Response(head._statusCode, readFully(body)),
+                        "get logs of container " + id, 200);
+            }
+            byte[] header = new byte[8];
+            byte[] buf = new byte[8192];
+            while (readFrameHeader(body, header)){
+                long size = ((header[4] & 0xffL) << 24) | ((header[5] & 0xff) << 16)
+                        | ((header[6] & 0xff) << 8) | (header[7] & 0xff);
+                OutputStream dest = header[0] == STDERR_STREAM ? stdErr : stdOut;
+                while (size > 0){
+                    int len = body.read(buf, 0, (int)Math.min(buf.length, size));
+                    if (len == -1){
+                        throw new EOFException("Log stream of container " + id + " ended mid frame");
+                    }
+                    dest.write(buf, 0, len);
+                    size -= len;
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads 8 byte header of next frame of multiplexed log stream
+     * @return {@code false} if stream ended before the header
+     */
+    private static boolean readFrameHeader(final InputStream in, final byte[] header) throws IOException {
+        int read = 0;
+        while (read < header.length){
+            int len = in.read(header, read, header.length - read);
+            if (len == -1){
+                if (read == 0){
+                    return false;
+                }
+                throw new EOFException("Log stream ended mid frame header");
+            }
+            read += len;
+        }
+        return true;
+    }
+
+    /**
+     * Sends request reading the whole response, reusing an idle
+     * connection if there is one. If the reused connection fails, the
+     * request is sent again on a new connection only if writing it failed
+     * or it is a {@code GET} or {@code HEAD}. Otherwise the daemon may
+     * already have acted on it, so sending it again could create a
+     * second container or repeat a start or kill, and the error is raised
+     * @param method HTTP method
+     * @param path path and query of request
+     * @param body JSON body or {@code null}
+     * @return response
+     * @throws IOException if there was an error
+     */
+    protected Response execute(final String method, final String path,
+            final byte[] body) throws IOException {
+        Connection conn = _idle.pollFirst();
+        ResponseHead head;
+        if (conn != null){
+            boolean written = false;
+            try {
+                writeRequest(conn, method, path, body);
+                written = true;
+                head = readHead(conn._in);
+            } catch(IOException io){
+                conn.close();
+                if (written && isIdempotent(method) == false){
+                    throw io;
+                }
+                // daemon closed idle connection, try again on a new one
+                _logger.debug("Reused connection to docker daemon failed", io);
+                conn = null;
+                head = null;
+            }
+        } else {
+            head = null;
+        }
+        if (conn == null){
+            conn = openConnection();
+            try {
+                writeRequest(conn, method, path, body);
+                head = readHead(conn._in);
+            } catch(IOException io){
+                conn.close();
+                throw io;
+            }
+        }
+        byte[] resBody;
+        try {
+            resBody = readFully(getBodyStream(conn._in, head));
+        } catch(IOException io){
+            conn.close();
+            throw io;
+        }
+        if (head._keepAlive && _idle.size() < MAX_IDLE_CONNECTIONS){
+            _idle.addFirst(conn);
+        } else {
+            conn.close();
+        }
+        return new Response(head._statusCode, resBody);
+    }
+
+    private static boolean isIdempotent(final String method){
+        return method.equals("GET") || method.equals("HEAD");
+    }
+
+    private static void writeRequest(final Connection conn, final String method,
+            final String path, final byte[] body) throws IOException {
+        writeRequest(conn, method, path, body, false);
+    }
+
+    /**
+     * Writes request
+     * @param upgrade if {@code true}, asks daemon to hijack the connection
+     *                for a raw stream as attach requests do
+     */
+    private static void writeRequest(final Connection conn, final String method,
+            final String path, final byte[] body, boolean upgrade) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        sb.append(method).append(' ').append(path).append(" HTTP/1.1\r\n");
+        sb.append("Host: docker\r\n");
+        sb.append("User-Agent: communitydetection\r\n");
+        if (upgrade){
+            sb.append("Connection: Upgrade\r\n");
+            sb.append("Upgrade: tcp\r\n");
+        }
+        if (body != null){
+            sb.append("Content-Type: application/json\r\n");
+        }
+        sb.append("Content-Length: ").append(body == null ? 0 : body.length).append("\r\n");
+        sb.append("\r\n");
+        conn._out.write(sb.toString().getBytes(StandardCharsets.US_ASCII));
+        if (body != null){
+            conn._out.write(body);
+        }
+        conn._out.flush();
+    }
+
+    private static ResponseHead readHead(final InputStream in) throws IOException {
+        String statusLine = readLine(in);
+        if (statusLine == null){
+            throw new EOFException("Docker daemon closed connection");
+        }
+        String[] split = statusLine.split(" ", 3);
+        if (split.length < 2 || split[0].startsWith("HTTP/") == false){
+            throw new IOException("Invalid response from docker daemon: " + statusLine);
+        }
+        ResponseHead head = new ResponseHead();
+        try {
+            head._statusCode = Integer.parseInt(split[1]);
+        } catch(NumberFormatException nfe){
+            throw new IOException("Invalid response from docker daemon: " + statusLine);
+        }
+        head._keepAlive = split[0].equals("HTTP/1.1");
+        String line;
+        while ((line = readLine(in)) != null && line.isEmpty() == false){
+            int colon = line.indexOf(':');
+            if (colon <= 0){
+                continue;
+            }
+            String name = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            String value = line.substring(colon + 1).trim();
+            if (name.equals("content-length")){
+                head._contentLength = Long.parseLong(value);
+            } else if (name.equals("transfer-encoding")){
+                head._chunked = value.toLowerCase(Locale.ROOT).contains("chunked");
+            } else if (name.equals("connection")){
+                head._keepAlive = value.equalsIgnoreCase("close") == false;
+            }
+        }
+        if (line == null){
+            throw new EOFException("Docker daemon closed connection in headers");
+        }
+        if (head._chunked == false && head._contentLength < 0){
+            // body runs until connection closes
+            head._keepAlive = false;
+        }
+        return head;
+    }
+
+    private static InputStream getBodyStream(final InputStream in, final ResponseHead head){
+        if (head._chunked){
+            return new ChunkedInputStream(in);
+        }
+        if (head._contentLength >= 0){
+            return new LimitedInputStream(in, head._contentLength);
+        }
+        return in;
+    }
+
+    private static byte[] readFully(final InputStream in) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        int len;
+        while ((len = in.read(buf)) != -1){
+            bos.write(buf, 0, len);
+        }
+        return bos.toByteArray();
+    }
+
+    /**
+     * Reads line terminated by LF or CRLF
+     * @return line without terminator or {@code null} at end of stream
+     */
+    private static String readLine(final InputStream in) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int c;
+        while ((c = in.read()) != -1){
+            if (c == '\n'){
+                int len = sb.length();
+                if (len > 0 && sb.charAt(len - 1) == '\r'){
+                    sb.setLength(len - 1);
+                }
+                return sb.toString();
+            }
+            if (sb.length() >= MAX_LINE_LENGTH){
+                throw new IOException("Line from docker daemon too long");
+            }
+            sb.append((char)c);
+        }
+        return sb.length() == 0 ? null : sb.toString();
+    }
+
+    private void checkStatus(final Response res, final String action,
+            int... expectedCodes) throws IOException {
+        for (int code : expectedCodes){
+            if (res.getStatusCode() == code){
+                return;
+            }
+        }
+        String message = new String(res.getBody(), StandardCharsets.UTF_8).trim();
+        try {
+            JsonNode node = _mapper.readTree(res.getBody());
+            if (node != null && node.has("message")){
+                message = node.get("message").asText();
+            }
+        } catch(IOException io){
+            // not json, use body as is
+        }
+        throw new IOException("Unable to " + action + " (" + res.getStatusCode() + "): " + message);
+    }
+
+    private static String encode(final String val) throws UnsupportedEncodingException {
+        return URLEncoder.encode(val, "UTF-8");
+    }
+
+    /**
+     * Reads body sent with chunked transfer encoding
+     */
+    private static class ChunkedInputStream extends InputStream {
+        private final InputStream _in;
+        private long _remaining = 0;
+        private boolean _eof = false;
+
+        ChunkedInputStream(final InputStream in){
+            _in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (_eof){
+                return -1;
+            }
+            if (_remaining == 0){
+                String sizeLine = readLine(_in);
+                if (sizeLine == null){
+                    throw new EOFException("Chunked response ended early");
+                }
+                int semi = sizeLine.indexOf(';');
+                try {
+                    _remaining = Long.parseLong((semi >= 0 ? sizeLine.substring(0, semi)
+                            : sizeLine).trim(), 16);
+                } catch(NumberFormatException nfe){
+                    throw new IOException("Invalid chunk size: " + sizeLine);
+                }
+                if (_remaining == 0){
+                    // skip trailers
+                    String line;
+                    while ((line = readLine(_in)) != null && line.isEmpty() == false){
+                    }
+                    _eof = true;
+                    return -1;
+                }
+            }
+            int read = _in.read(b, off, (int)Math.min(len, _remaining));
+            if (read == -1){
+                throw new EOFException("Chunked response ended early");
+            }
+            _remaining -= read;
+            if (_remaining == 0){
+                readLine(_in);
+            }
+            return read;
+        }
+    }
+
+    /**
+     * Reads body whose length is set in Content-Length header
+     */
+    private static class LimitedInputStream extends InputStream {
+        private final InputStream _in;
+        private long _remaining;
+
+        LimitedInputStream(final InputStream in, long length){
+            _in = in;
+            _remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (_remaining <= 0){
+                return -1;
+            }
+            int read = _in.read(b, off, (int)Math.min(len, _remaining));
+            if (read == -1){
+                throw new EOFException("Response ended early");
+            }
+            _remaining -= read;
+            return read;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package org.ndexbio.communitydetection.rest.engine.util;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import java.io.File;
+import org.ndexbio.communitydetection.rest.model.CommunityDetectionRequest;
+
+/**
+ * Request whose data was written to a file as it was received instead of
+ * being held in memory. {@link #getData()} of this object returns
+ * {@code null} and the data is in {@link #getInputFile()} exactly as it
+ * would be written to the input file of the task.
+ *
+ * When this object is passed to
+ * {@link org.ndexbio.communitydetection.rest.engine.CommunityDetectionEngine#request(org.ndexbio.communitydetection.rest.model.CommunityDetectionRequest)}
+ * the engine takes ownership of {@link #getInputFile()} moving it into
+ * the directory of the task or deleting it if the request is rejected.
+ *
+ * @author churas
+ */
+public class InputFileCommunityDetectionRequest extends CommunityDetectionRequest {
+
+    private final File _inputFile;
+    private final boolean _textData;
+
+    /**
+     * Constructor
+     * @param inputFile file containing data of request
+     * @param textData {@code true} if data was a json string that was
+     *                 written as text, {@code false} if data was json
+     */
+    public InputFileCommunityDetectionRequest(final File inputFile, boolean textData){
+        super();
+        _inputFile = inputFile;
+        _textData = textData;
+    }
+
+    /**
+     * Gets file containing data of request
+     * @return file
+     */
+    @JsonIgnore
+    public File getInputFile() {
+        return _inputFile;
+    }
+
+    /**
+     * Denotes if data was a json string
+     * @return {@code true} if data was a json string written as text,
+     *         {@code false} if data was written as json
+     */
+    @JsonIgnore
+    public boolean isTextData() {
+        return _textData;
+    }
+}
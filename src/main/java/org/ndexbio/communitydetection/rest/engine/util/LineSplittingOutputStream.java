@@ -0,0 +1,107 @@
+package org.ndexbio.communitydetection.rest.engine.util;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Passes bytes through to another stream unchanged while handing each
+ * complete line, decoded as UTF-8 without its line terminator, to a
+ * listener. Only the current line is held in memory and at most
+ * {@link #MAX_LINE_LENGTH} bytes of it are passed to the listener. A
+ * final line without a terminator is passed on when the stream is closed.
+ *
+ * @author churas
+ */
+public class LineSplittingOutputStream extends FilterOutputStream {
+
+    static Logger _logger = LoggerFactory.getLogger(LineSplittingOutputStream.class);
+
+    /**
+     * Longest line passed to listener, the rest of a longer line is
+     * still written to the underlying stream
+     */
+    public static final int MAX_LINE_LENGTH = 8192;
+
+    private final Consumer<String> _listener;
+    private final byte[] _line = new byte[MAX_LINE_LENGTH];
+    private int _len = 0;
+    private boolean _hasData = false;
+
+    /**
+     * Constructor
+     * @param out stream to write to, closed when this stream is closed
+     * @param listener listener passed each line
+     */
+    public LineSplittingOutputStream(final OutputStream out, final Consumer<String> listener){
+        super(out);
+        _listener = listener;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte)b}, 0, 1);
+    }
+
+    /**
+     * Writes bytes to underlying stream, flushing it so the output file
+     * is current while the process runs, and passes on completed lines
+     * @param buf data
+     * @param off offset into {@code buf}
+     * @param len number of bytes
+     * @throws IOException if there was an error writing
+     */
+    @Override
+    public void write(byte[] buf, int off, int len) throws IOException {
+        out.write(buf, off, len);
+        out.flush();
+        int start = off;
+        int end = off + len;
+        for (int i = off; i < end; i++){
+            if (buf[i] == '\n'){
+                append(buf, start, i - start);
+                notifyListener();
+                start = i + 1;
+            }
+        }
+        append(buf, start, end - start);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (_hasData){
+            notifyListener();
+        }
+        super.close();
+    }
+
+    private void append(byte[] buf, int offset, int len){
+        if (len > 0){
+            _hasData = true;
+        }
+        int copy = Math.min(len, _line.length - _len);
+        if (copy > 0){
+            System.arraycopy(buf, offset, _line, _len, copy);
+            _len += copy;
+        }
+    }
+
+    private void notifyListener(){
+        int end = _len;
+        if (end > 0 && _line[end - 1] == '\r'){
+            end--;
+        }
+        String line = new String(_line, 0, end, StandardCharsets.UTF_8);
+        _len = 0;
+        _hasData = false;
+        try {
+            _listener.accept(line);
+        } catch(RuntimeException re){
+            _logger.error("Line listener failed", re);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package org.ndexbio.communitydetection.rest.engine.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creates threads that spend their life blocked, such as those waiting
+ * on an algorithm process, pumping its output, or writing a response.
+ * When built with the {@code jdk21} profile, which adds
+ * {@code VirtualThreadFactory} from {@code src/main/java21}, these are
+ * virtual threads. Otherwise they are platform daemon threads.
+ *
+ * @author churas
+ */
+public class TaskThreads {
+
+    static Logger _logger = LoggerFactory.getLogger(TaskThreads.class);
+
+    /**
+     * Class only present when built with the {@code jdk21} profile
+     */
+    public static final String VIRTUAL_THREAD_FACTORY = "org.ndexbio.communitydetection.rest.engine.util.VirtualThreadFactory";
+
+    private static final Method _newVirtualThreadFactory = findVirtualThreadFactory();
+
+    private static Method findVirtualThreadFactory(){
+        try {
+            Method m = Class.forName(VIRTUAL_THREAD_FACTORY).getMethod("newThreadFactory", String.class);
+            // fails if class was built for a newer runtime than this one
+            m.invoke(null, "probe");
+            return m;
+        } catch(ClassNotFoundException cnfe){
+            return null;
+        } catch(ReflectiveOperationException | LinkageError ex){
+            _logger.warn("Unable to use virtual threads, using platform threads", ex);
+            return null;
+        }
+    }
+
+    /**
+     * Denotes if threads created here are virtual threads
+     * @return {@code true} if built with {@code jdk21} profile
+     */
+    public static boolean isVirtual(){
+        return _newVirtualThreadFactory != null;
+    }
+
+    /**
+     * Creates factory of threads named {@code name}, virtual if
+     * {@link #isVirtual()} otherwise platform daemon threads
+     * @param name name of threads, virtual threads get a counter appended
+     * @return factory
+     */
+    public static ThreadFactory newThreadFactory(final String name){
+        if (_newVirtualThreadFactory != null){
+            try {
+                return (ThreadFactory)_newVirtualThreadFactory.invoke(null, name);
+            } catch(ReflectiveOperationException ex){
+                _logger.warn("Unable to create virtual thread factory", ex);
+            }
+        }
+        return (r) -> {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    /**
+     * Creates thread named {@code name} that runs {@code task}, it is
+     * not started
+     * @param name name of thread
+     * @param task task to run
+     * @return thread
+     */
+    public static Thread newThread(final String name, final Runnable task){
+        return newThreadFactory(name).newThread(task);
+    }
+
+    /**
+     * Creates executor with no limit on tasks running at once. Each task
+     * gets its own virtual thread if {@link #isVirtual()} otherwise idle
+     * platform threads are reused
+     * @param name name of threads
+     * @return executor
+     */
+    public static ExecutorService newExecutor(final String name){
+        if (isVirtual()){
+            return new ThreadPerTaskExecutor(newThreadFactory(name), 0);
+        }
+        return Executors.newCachedThreadPool(newThreadFactory(name));
+    }
+}
@@ -0,0 +1,194 @@
+package org.ndexbio.communitydetection.rest.engine.util;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs every task on a new thread from a {@link ThreadFactory}, meant for
+ * the virtual threads of {@link TaskThreads}, which are cheap enough to
+ * block in {@link Process#waitFor()} for the whole life of a task. The
+ * number of tasks running at once is bounded by a fair {@link Semaphore}
+ * instead of by the number of threads, tasks beyond the bound wait for
+ * a permit in the order they were submitted.
+ *
+ * @author churas
+ */
+public class ThreadPerTaskExecutor extends AbstractExecutorService {
+
+    /**
+     * Semaphore whose number of permits can be lowered
+     */
+    private static class ResizableSemaphore extends Semaphore {
+
+        ResizableSemaphore(int permits){
+            super(permits, true);
+        }
+
+        @Override
+        protected void reducePermits(int reduction) {
+            super.reducePermits(reduction);
+        }
+    }
+
+    private final ThreadFactory _threadFactory;
+    private final ResizableSemaphore _permits;
+    private final Set<Thread> _threads = new HashSet<>();
+    private int _maxConcurrency;
+    private int _activeCount = 0;
+    private boolean _shutdown = false;
+
+    /**
+     * Constructor
+     * @param threadFactory creates thread for each task
+     * @param maxConcurrency maximum number of tasks running at once,
+     *                       0 or less for no limit
+     */
+    public ThreadPerTaskExecutor(final ThreadFactory threadFactory, int maxConcurrency){
+        _threadFactory = threadFactory;
+        _maxConcurrency = Math.max(0, maxConcurrency);
+        _permits = _maxConcurrency > 0 ? new ResizableSemaphore(_maxConcurrency) : null;
+    }
+
+    /**
+     * Starts a thread that waits for a permit and then runs {@code command}
+     * @param command task to run
+     * @throws RejectedExecutionException if executor is shut down
+     */
+    @Override
+    public void execute(final Runnable command) {
+        Thread t = _threadFactory.newThread(() -> runTask(command));
+        synchronized(this){
+            if (_shutdown == true){
+                throw new RejectedExecutionException("Executor is shut down");
+            }
+            _threads.add(t);
+        }
+        t.start();
+    }
+
+    private void runTask(final Runnable command){
+        boolean acquired = false;
+        try {
+            if (_permits != null){
+                _permits.acquire();
+                acquired = true;
+            }
+            synchronized(this){
+                _activeCount++;
+            }
+            try {
+                command.run();
+            } finally {
+                synchronized(this){
+                    _activeCount--;
+                }
+            }
+        } catch(InterruptedException ie){
+            // shut down while waiting for a permit, task never ran
+        } finally {
+            if (acquired == true){
+                _permits.release();
+            }
+            synchronized(this){
+                _threads.remove(Thread.currentThread());
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Sets maximum number of tasks running at once. Tasks already running
+     * are not affected, if the maximum is lowered new tasks wait until
+     * enough of them finish. Ignored if executor was created without a limit
+     * @param maxConcurrency maximum number of tasks, at least 1
+     */
+    public void setMaxConcurrency(int maxConcurrency){
+        if (_permits == null){
+            return;
+        }
+        int newMax = Math.max(1, maxConcurrency);
+        synchronized(this){
+            if (newMax > _maxConcurrency){
+                _permits.release(newMax - _maxConcurrency);
+            } else if (newMax < _maxConcurrency){
+                _permits.reducePermits(_maxConcurrency - newMax);
+            }
+            _maxConcurrency = newMax;
+        }
+    }
+
+    /**
+     * Gets maximum number of tasks running at once
+     * @return maximum or 0 if there is no limit
+     */
+    public synchronized int getMaxConcurrency(){
+        return _maxConcurrency;
+    }
+
+    /**
+     * Gets number of tasks running
+     * @return number of tasks
+     */
+    public synchronized int getActiveCount(){
+        return _activeCount;
+    }
+
+    /**
+     * Gets number of tasks waiting for a permit
+     * @return number of tasks, an estimate
+     */
+    public int getWaitingCount(){
+        return _permits == null ? 0 : _permits.getQueueLength();
+    }
+
+    @Override
+    public synchronized void shutdown() {
+        _shutdown = true;
+        notifyAll();
+    }
+
+    /**
+     * Shuts down executor and interrupts every task running or waiting
+     * for a permit
+     * @return empty list since tasks are never queued in this executor
+     */
+    @Override
+    public synchronized List<Runnable> shutdownNow() {
+        _shutdown = true;
+        for (Thread t : _threads){
+            t.interrupt();
+        }
+        notifyAll();
+        return new ArrayList<>();
+    }
+
+    @Override
+    public synchronized boolean isShutdown() {
+        return _shutdown;
+    }
+
+    @Override
+    public synchronized boolean isTerminated() {
+        return _shutdown && _threads.isEmpty();
+    }
+
+    @Override
+    public synchronized boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (isTerminated() == false){
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0){
+                return false;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,83 @@
+package org.ndexbio.communitydetection.rest.services;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import org.ndexbio.communitydetection.rest.model.CommunityDetectionResultStatus;
+import org.ndexbio.communitydetection.rest.model.ErrorResponse;
+
+/**
+ * Outcome of one item of a batch submission or bulk status request. Each
+ * item carries the HTTP status code the single item endpoint would have
+ * returned so one bad item does not fail the whole batch
+ *
+ * @author churas
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BulkTaskResult {
+
+    private String _id;
+    private String _location;
+    private int _statusCode;
+    private CommunityDetectionResultStatus _status;
+    private ErrorResponse _error;
+
+    /**
+     * Gets id of task
+     * @return id or {@code null} if task could not be submitted
+     */
+    public String getId() {
+        return _id;
+    }
+
+    public void setId(String id) {
+        _id = id;
+    }
+
+    /**
+     * Gets URL of result of submitted task
+     * @return URL or {@code null} if not a submission or submission failed
+     */
+    public String getLocation() {
+        return _location;
+    }
+
+    public void setLocation(String location) {
+        _location = location;
+    }
+
+    /**
+     * Gets HTTP status code of item, 202 for a submitted task, 200 for a
+     * status found, otherwise the error code of the single item endpoint
+     * @return status code
+     */
+    public int getStatusCode() {
+        return _statusCode;
+    }
+
+    public void setStatusCode(int statusCode) {
+        _statusCode = statusCode;
+    }
+
+    /**
+     * Gets status of task
+     * @return status or {@code null} if not a status request or task not found
+     */
+    public CommunityDetectionResultStatus getStatus() {
+        return _status;
+    }
+
+    public void setStatus(CommunityDetectionResultStatus status) {
+        _status = status;
+    }
+
+    /**
+     * Gets error of item
+     * @return error or {@code null} if item succeeded
+     */
+    public ErrorResponse getError() {
+        return _error;
+    }
+
+    public void setError(ErrorResponse error) {
+        _error = error;
+    }
+}
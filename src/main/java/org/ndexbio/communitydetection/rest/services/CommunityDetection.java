@@ -1,7 +1,12 @@
 package org.ndexbio.communitydetection.rest.services; // Note your package will be {{ groupId }}.rest
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URI;
+import java.nio.channels.Channels;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 import javax.ws.rs.core.MediaType;
@@ -13,24 +18,40 @@ import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.headers.Header;
 import io.swagger.v3.oas.annotations.info.Info;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.parameters.RequestBody;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.servers.Server;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 import org.ndexbio.communitydetection.rest.model.CommunityDetectionRequest;
 import org.ndexbio.communitydetection.rest.model.CommunityDetectionResult;
 import org.ndexbio.communitydetection.rest.engine.CommunityDetectionEngine;
+import org.ndexbio.communitydetection.rest.engine.CommunityDetectionOverloadedException;
+import org.ndexbio.communitydetection.rest.engine.CommunityDetectionTaskListener;
+import org.ndexbio.communitydetection.rest.engine.StoredResult;
+import org.ndexbio.communitydetection.rest.engine.util.CommunityDetectionRequestReader;
+import org.ndexbio.communitydetection.rest.engine.util.TaskThreads;
 import org.ndexbio.communitydetection.rest.model.CXMateResult;
 import org.ndexbio.communitydetection.rest.model.CommunityDetectionAlgorithm;
 import org.ndexbio.communitydetection.rest.model.CommunityDetectionAlgorithms;
@@ -63,9 +84,68 @@ public class CommunityDetection {
     
     static Logger _logger = LoggerFactory.getLogger(CommunityDetection.class);
     
+    /**
+     * Header identifying client submitting a task. Workers are shared
+     * fairly between clients so one client cannot hog them. The header
+     * is not authenticated, a client can claim any id including one
+     * given a larger weight by {@link Configuration#CLIENT_WEIGHTS}, so
+     * it should be set or checked by a proxy in front of the service
+     */
+    public static final String CLIENT_ID_HEADER = "X-Client-Id";
+    
+    /**
+     * Header set by proxies, first address is used as client id if
+     * {@link #CLIENT_ID_HEADER} is not set. Like that header it is
+     * trusted as is
+     */
+    public static final String FORWARDED_FOR_HEADER = "X-Forwarded-For";
+    
+    /**
+     * Header telling caller how many seconds to wait before retrying a
+     * request rejected because the server is overloaded
+     */
+    public static final String RETRY_AFTER_HEADER = "Retry-After";
+    
+    /**
+     * Header telling proxies and clients not to cache event streams
+     */
+    public static final String CACHE_CONTROL_HEADER = "Cache-Control";
+    
+    /**
+     * Query parameter of status endpoint setting how long to wait for
+     * status of task to change
+     */
+    public static final String WAIT_PARAM = "wait";
+    
+    /**
+     * Longest time in seconds a status request is held open
+     */
+    public static final long MAX_WAIT_SECONDS = 120;
+    
+    /**
+     * Maximum number of ids accepted by bulk status endpoint
+     */
+    public static final int MAX_BULK_STATUS_IDS = 1000;
+    
+    /**
+     * Shared by endpoints that handle many tasks per request, safe for
+     * concurrent use once configured
+     */
+    private static final ObjectMapper _mapper = new ObjectMapper();
+    
+    /**
+     * Threads used to write status responses and event streams so neither
+     * is done by a request thread or by the engine
+     * and, when built with the jdk21 profile, virtual threads so a
+     * response blocked on a slow client costs no platform thread
+     */
+    private static final ExecutorService _responseExecutor = TaskThreads.newExecutor("communitydetection-response");
+    
     /**
      * Handles requests to run CommunityDetection
      * @param query The task to run
+     * @param clientId Value of {@link #CLIENT_ID_HEADER} header
+     * @param forwardedFor Value of {@link #FORWARDED_FOR_HEADER} header
      * @return {@link javax.ws.rs.core.Response} 
      */
     @POST 
@@ -79,7 +159,12 @@ public class CommunityDetection {
                        + "endpoint \n" +
 "\n" +
 "The service should upon post return 202 and set location to resource to poll for result. Which will\n" +
-"Match the URL of GET request below.",
+"Match the URL of GET request below.\n" +
+"\n" +
+"An optional integer 'priority' field (-10 to 10, default 0) can be added to the payload. Tasks with a higher\n" +
+"priority run first, priorities above 0 are lowered to the maximum set by the server\n" +
+"(0 unless configured). Tasks of equal priority share workers fairly among clients identified by the\n" +
+"X-Client-Id header.",
                responses = {
                    @ApiResponse(responseCode = "202",
                            description = "The task was successfully submitted to the service. Visit the URL "
@@ -91,12 +176,24 @@ public class CommunityDetection {
                    @ApiResponse(responseCode = "400", description = "Bad Request",
                                 content = @Content(mediaType = MediaType.APPLICATION_JSON,
                                 schema = @Schema(implementation = ErrorResponse.class))),
+                   @ApiResponse(responseCode = "429", description = "Too many tasks are waiting, "
+                           + "retry after number of seconds in Retry-After header",
+                                headers = @Header(name = "Retry-After", description = "Seconds to wait before retrying"),
+                                content = @Content(mediaType = MediaType.APPLICATION_JSON,
+                                schema = @Schema(implementation = ErrorResponse.class))),
                    @ApiResponse(responseCode = "500", description = "Server Error",
+                                content = @Content(mediaType = MediaType.APPLICATION_JSON,
+                                schema = @Schema(implementation = ErrorResponse.class))),
+                   @ApiResponse(responseCode = "503", description = "Server is out of disk space, "
+                           + "retry after number of seconds in Retry-After header",
+                                headers = @Header(name = "Retry-After", description = "Seconds to wait before retrying"),
                                 content = @Content(mediaType = MediaType.APPLICATION_JSON,
                                 schema = @Schema(implementation = ErrorResponse.class)))
                })
     public Response request(@RequestBody(description="Request as json", required = true,
-                                                   content = @Content(schema = @Schema(implementation = CommunityDetectionRequest.class))) final String query) {
+                                                   content = @Content(schema = @Schema(implementation = CommunityDetectionRequest.class))) final InputStream query,
+                            @Parameter(description = "Id of client submitting task") @HeaderParam(CLIENT_ID_HEADER) final String clientId,
+                            @Parameter(hidden = true) @HeaderParam(FORWARDED_FOR_HEADER) final String forwardedFor) {
         ObjectMapper omappy = new ObjectMapper();
 
         try {
@@ -107,8 +204,19 @@ public class CommunityDetection {
             if (engine == null){
                 throw new NullPointerException("CommunityDetection Engine not loaded");
             }
-            CommunityDetectionRequest pQuery = omappy.readValue(query, CommunityDetectionRequest.class);
-            String id = engine.request(pQuery);
+            // data is streamed to disk as it is read so large networks
+            // are never held in memory in full
+            CommunityDetectionRequestReader reader = new CommunityDetectionRequestReader(
+                    new File(Configuration.getInstance().getTaskDirectory(),
+                             CommunityDetectionRequestReader.UPLOAD_DIR));
+            CommunityDetectionRequest pQuery;
+            try {
+                pQuery = reader.read(query);
+            } catch(CommunityDetectionBadRequestException breq){
+                return getParseErrorResponse(breq);
+            }
+            String id = engine.request(pQuery, getClientId(clientId, forwardedFor),
+                    getAllowedPriority(reader.getPriority()));
             if (id == null){
                 throw new CommunityDetectionException("No id returned from CommunityDetection engine");
             }
@@ -122,12 +230,167 @@ public class CommunityDetection {
                 er = new ErrorResponse("Bad request received", breq);
             }
             return Response.serverError().type(MediaType.APPLICATION_JSON).entity(er.asJson()).build();
+        } catch(CommunityDetectionOverloadedException coe){
+            ErrorResponse er = new ErrorResponse("Server is overloaded", coe);
+            return Response.status(coe.getStatusCode()).header(RETRY_AFTER_HEADER, coe.getRetryAfter())
+                    .type(MediaType.APPLICATION_JSON).entity(er.asJson()).build();
         }catch(Exception ex){
             ErrorResponse er = new ErrorResponse("Error requesting CommunityDetection", ex);
             return Response.serverError().type(MediaType.APPLICATION_JSON).entity(er.asJson()).build();
         }
     }
 
+    /**
+     * Builds 400 response for a payload {@link CommunityDetectionRequestReader}
+     * could not parse
+     * @param breq error raised while reading payload
+     * @return response with {@link ErrorResponse} as JSON
+     */
+    protected static Response getParseErrorResponse(final CommunityDetectionBadRequestException breq){
+        ErrorResponse er = new ErrorResponse("Unable to parse request", breq);
+        return Response.status(Response.Status.BAD_REQUEST)
+                .type(MediaType.APPLICATION_JSON).entity(er.asJson()).build();
+    }
+
+    /**
+     * Lowers {@code priority} from a request to
+     * {@link Configuration#getClientMaxPriority()} since priority comes
+     * from the unauthenticated payload
+     * @param priority priority set in request
+     * @return priority task is submitted with
+     * @throws CommunityDetectionException if configuration could not be loaded
+     */
+    protected static int getAllowedPriority(int priority) throws CommunityDetectionException {
+        int maxPriority = Configuration.getInstance().getClientMaxPriority();
+        if (priority > maxPriority){
+            _logger.debug("Lowering requested priority " + priority + " to " + maxPriority);
+            return maxPriority;
+        }
+        return priority;
+    }
+
+    /**
+     * Gets id of client from {@code clientId} falling back to first address
+     * in {@code forwardedFor}
+     * @param clientId value of {@link #CLIENT_ID_HEADER} header
+     * @param forwardedFor value of {@link #FORWARDED_FOR_HEADER} header
+     * @return client id or {@code null} if neither header is set
+     */
+    protected static String getClientId(final String clientId, final String forwardedFor){
+        if (clientId != null && clientId.trim().isEmpty() == false){
+            return clientId.trim();
+        }
+        if (forwardedFor != null){
+            String firstAddress = forwardedFor.split(",")[0].trim();
+            if (firstAddress.isEmpty() == false){
+                return firstAddress;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Handles requests to run several CommunityDetection tasks at once
+     * @param query JSON array of tasks to run
+     * @param clientId Value of {@link #CLIENT_ID_HEADER} header
+     * @param forwardedFor Value of {@link #FORWARDED_FOR_HEADER} header
+     * @return {@link javax.ws.rs.core.Response} 
+     */
+    @POST 
+    @Path(Configuration.V_ONE_PATH + "/batch")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    @Operation(summary = "Submits several tasks",
+               description="Payload is a JSON array of tasks each in the same format accepted by the "
+                       + "submit task endpoint, up to "
+                       + CommunityDetectionRequestReader.DEFAULT_MAX_BATCH_REQUESTS + " tasks. "
+                       + "Each task is submitted on its own and the response holds, in the same order, "
+                       + "the id and result URL of each task or the error that kept it from being "
+                       + "submitted along with the status code the submit task endpoint would have returned.",
+               responses = {
+                   @ApiResponse(responseCode = "202",
+                           description = "The batch was processed, check statusCode of each item",
+                           content = @Content(mediaType = MediaType.APPLICATION_JSON,
+                                array = @ArraySchema(schema = @Schema(implementation = BulkTaskResult.class)))),
+                   @ApiResponse(responseCode = "400", description = "Batch could not be parsed or "
+                           + "has too many tasks",
+                                content = @Content(mediaType = MediaType.APPLICATION_JSON,
+                                schema = @Schema(implementation = ErrorResponse.class))),
+                   @ApiResponse(responseCode = "500", description = "Server Error",
+                                content = @Content(mediaType = MediaType.APPLICATION_JSON,
+                                schema = @Schema(implementation = ErrorResponse.class)))
+               })
+    public Response requestBatch(@RequestBody(description="Requests as json array", required = true,
+                                                   content = @Content(array = @ArraySchema(schema = @Schema(implementation = CommunityDetectionRequest.class)))) final InputStream query,
+                            @Parameter(description = "Id of client submitting tasks") @HeaderParam(CLIENT_ID_HEADER) final String clientId,
+                            @Parameter(hidden = true) @HeaderParam(FORWARDED_FOR_HEADER) final String forwardedFor) {
+        try {
+            CommunityDetectionEngine engine = Configuration.getInstance().getCommunityDetectionEngine();
+            if (engine == null){
+                throw new NullPointerException("CommunityDetection Engine not loaded");
+            }
+            CommunityDetectionRequestReader reader = new CommunityDetectionRequestReader(
+                    new File(Configuration.getInstance().getTaskDirectory(),
+                             CommunityDetectionRequestReader.UPLOAD_DIR));
+            List<CommunityDetectionRequest> requests;
+            try {
+                requests = reader.readBatch(query);
+            } catch(CommunityDetectionBadRequestException breq){
+                return getParseErrorResponse(breq);
+            }
+            List<Integer> priorities = reader.getPriorities();
+            String client = getClientId(clientId, forwardedFor);
+            List<BulkTaskResult> results = new ArrayList<>(requests.size());
+            for (int i = 0; i < requests.size(); i++){
+                results.add(submitBatchItem(engine, requests.get(i), client,
+                        getAllowedPriority(priorities.get(i))));
+            }
+            return Response.status(202).type(MediaType.APPLICATION_JSON)
+                    .entity(_mapper.writeValueAsString(results)).build();
+        } catch(Exception ex){
+            ErrorResponse er = new ErrorResponse("Error requesting CommunityDetection", ex);
+            return Response.serverError().type(MediaType.APPLICATION_JSON).entity(er.asJson()).build();
+        }
+    }
+    
+    /**
+     * Submits one request of a batch
+     * @param engine engine to submit to
+     * @param request request to submit
+     * @param clientId id of client submitting request
+     * @param priority priority of request
+     * @return id and location of task or error with status code the
+     *         submit task endpoint would have returned
+     */
+    protected BulkTaskResult submitBatchItem(final CommunityDetectionEngine engine,
+            final CommunityDetectionRequest request, final String clientId, int priority){
+        BulkTaskResult res = new BulkTaskResult();
+        try {
+            String id = engine.request(request, clientId, priority);
+            if (id == null){
+                throw new CommunityDetectionException("No id returned from CommunityDetection engine");
+            }
+            res.setId(id);
+            res.setLocation(new URI(Configuration.getInstance().getHostURL() +
+                                    Configuration.V_ONE_PATH + "/" + id).normalize().toString());
+            res.setStatusCode(202);
+        } catch(CommunityDetectionBadRequestException breq){
+            ErrorResponse er = breq.getErrorResponse();
+            if (er == null){
+                er = new ErrorResponse("Bad request received", breq);
+            }
+            res.setError(er);
+            res.setStatusCode(Response.Status.BAD_REQUEST.getStatusCode());
+        } catch(CommunityDetectionOverloadedException coe){
+            res.setError(new ErrorResponse("Server is overloaded", coe));
+            res.setStatusCode(coe.getStatusCode());
+        } catch(Exception ex){
+            res.setError(new ErrorResponse("Error requesting CommunityDetection", ex));
+            res.setStatusCode(Response.Status.INTERNAL_SERVER_ERROR.getStatusCode());
+        }
+        return res;
+    }
+
     @GET 
     @Path(Configuration.V_ONE_PATH + "/{id}")
     @Produces(MediaType.APPLICATION_JSON)
@@ -154,6 +417,12 @@ public class CommunityDetection {
                 throw new NullPointerException("CommunityDetection Engine not loaded");
             }
             
+            // finished results are sent as is from the task store so large
+            // results are not parsed and serialized again on every request
+            StoredResult stored = engine.openResult(id);
+            if (stored != null){
+                return Response.ok().type(MediaType.APPLICATION_JSON).entity(getStreamingOutput(stored)).build();
+            }
             CommunityDetectionResult eqr = engine.getResult(id);
             if (eqr == null){
                 return Response.status(410).build();
@@ -166,6 +435,20 @@ public class CommunityDetection {
         }
     }
     
+    /**
+     * Creates {@link javax.ws.rs.core.StreamingOutput} that transfers
+     * {@code stored} to the response and then closes it
+     * @param stored result to send
+     * @return output
+     */
+    protected static StreamingOutput getStreamingOutput(final StoredResult stored){
+        return (OutputStream output) -> {
+            try (StoredResult sr = stored){
+                sr.transferTo(Channels.newChannel(output));
+            }
+        };
+    }
+    
     @GET
     @Path(Configuration.V_ONE_PATH + "/algorithms")
     @Produces(MediaType.APPLICATION_JSON)
@@ -206,37 +489,334 @@ public class CommunityDetection {
     @Path(Configuration.V_ONE_PATH + "/{id}/status")
     @Produces(MediaType.APPLICATION_JSON)
     @Operation(summary = "Gets status of task",
-               description="This lets caller get status without getting the full result back",
+               description="This lets caller get status without getting the full result back.\n\n"
+                       + "If 'wait' is set and the task is still queued or running the response is held "
+                       + "until the status or progress of the task changes, the task finishes, or 'wait' "
+                       + "elapses, whichever comes first. The current status is returned in all cases "
+                       + "so callers can loop on this endpoint instead of polling on a timer.",
                responses = {
                    @ApiResponse(responseCode = "200",
                            description = "Success",
                            content = @Content(mediaType = MediaType.APPLICATION_JSON,
                                 schema = @Schema(implementation = CommunityDetectionResultStatus.class))),
+                   @ApiResponse(responseCode = "400", description = "Invalid value for wait",
+                                content = @Content(mediaType = MediaType.APPLICATION_JSON,
+                                schema = @Schema(implementation = ErrorResponse.class))),
                    @ApiResponse(responseCode = "410",
                            description = "Task not found"),
                    @ApiResponse(responseCode = "500", description = "Server Error",
                                 content = @Content(mediaType = MediaType.APPLICATION_JSON,
                                 schema = @Schema(implementation = ErrorResponse.class)))
                })
-    public Response getRequestStatus(@PathParam("id") final String id) {
-        ObjectMapper omappy = new ObjectMapper();
-
+    public void getRequestStatus(@Suspended final AsyncResponse asyncResponse,
+            @PathParam("id") final String id,
+            @Parameter(description = "Maximum time to wait for status to change, as seconds "
+                    + "with optional 's' suffix or milliseconds with 'ms' suffix. Capped at "
+                    + MAX_WAIT_SECONDS + " seconds", example = "30s")
+            @QueryParam(WAIT_PARAM) final String wait) {
         try {
-            CommunityDetectionEngine engine = Configuration.getInstance().getCommunityDetectionEngine();
+            long waitMillis = parseWait(wait);
+            final CommunityDetectionEngine engine = Configuration.getInstance().getCommunityDetectionEngine();
+            if (engine == null){
+                throw new NullPointerException("CommunityDetection Engine not loaded");
+            }
+            CommunityDetectionResultStatus eqs = engine.getStatus(id);
+            if (eqs == null || waitMillis <= 0 || StatusEventStream.isFinished(eqs)){
+                asyncResponse.resume(getStatusResponse(id, eqs));
+                return;
+            }
+            StatusWaiter waiter = new StatusWaiter(asyncResponse, engine, id);
+            asyncResponse.setTimeoutHandler((ar) -> waiter.resumeWithCurrentStatus());
+            asyncResponse.setTimeout(waitMillis, TimeUnit.MILLISECONDS);
+            engine.addTaskListener(id, waiter);
+            
+            // status may have changed before listener was registered
+            CommunityDetectionResultStatus current = engine.getStatus(id);
+            if (current == null || current.getProgress() != eqs.getProgress()
+                    || !Objects.equals(current.getStatus(), eqs.getStatus())){
+                waiter.resume(current);
+            }
+        } catch(CommunityDetectionBadRequestException breq){
+            ErrorResponse er = breq.getErrorResponse();
+            if (er == null){
+                er = new ErrorResponse("Bad request received", breq);
+            }
+            asyncResponse.resume(Response.status(Response.Status.BAD_REQUEST)
+                    .type(MediaType.APPLICATION_JSON).entity(er.asJson()).build());
+        }
+        catch(Exception ex){
+            ErrorResponse er = new ErrorResponse("Error getting results for id: " + id, ex);
+            asyncResponse.resume(Response.serverError().type(MediaType.APPLICATION_JSON).entity(er.asJson()).build());
+        }
+    }
+    
+    @GET 
+    @Path(Configuration.V_ONE_PATH + "/{id}/events")
+    @Produces({StatusEventStream.EVENT_STREAM_TYPE, MediaType.APPLICATION_JSON})
+    @Operation(summary = "Streams status of task as Server-Sent Events",
+               description="Sends a 'status' event, whose data is the status of the task as JSON, "
+                       + "right away and then each time the status or progress of the task changes. "
+                       + "The stream ends once the task is complete or failed.",
+               responses = {
+                   @ApiResponse(responseCode = "200",
+                           description = "Stream of status events",
+                           content = @Content(mediaType = StatusEventStream.EVENT_STREAM_TYPE)),
+                   @ApiResponse(responseCode = "410",
+                           description = "Task not found"),
+                   @ApiResponse(responseCode = "429", description = "Too many event streams are open, "
+                           + "retry after number of seconds in Retry-After header",
+                                headers = @Header(name = "Retry-After", description = "Seconds to wait before retrying"),
+                                content = @Content(mediaType = MediaType.APPLICATION_JSON,
+                                schema = @Schema(implementation = ErrorResponse.class))),
+                   @ApiResponse(responseCode = "500", description = "Server Error",
+                                content = @Content(mediaType = MediaType.APPLICATION_JSON,
+                                schema = @Schema(implementation = ErrorResponse.class)))
+               })
+    public void getRequestEvents(@Suspended final AsyncResponse asyncResponse,
+            @PathParam("id") final String id) {
+        try {
+            final CommunityDetectionEngine engine = Configuration.getInstance().getCommunityDetectionEngine();
             if (engine == null){
                 throw new NullPointerException("CommunityDetection Engine not loaded");
             }
             CommunityDetectionResultStatus eqs = engine.getStatus(id);
             if (eqs ==  null){
-                return Response.status(410).build();
+                asyncResponse.resume(Response.status(410).build());
+                return;
+            }
+            // each open stream holds a thread until its task finishes
+            StatusEventStream stream = StatusEventStream.open(engine, id, eqs,
+                    StatusEventStream.DEFAULT_KEEPALIVE_MILLIS,
+                    Configuration.getInstance().getEventsMaxStreams());
+            if (stream == null){
+                throw new CommunityDetectionOverloadedException("Too many event streams are open",
+                        CommunityDetectionOverloadedException.TOO_MANY_REQUESTS_STATUS,
+                        StatusEventStream.DEFAULT_KEEPALIVE_MILLIS / 1000);
             }
-            return Response.ok().type(MediaType.APPLICATION_JSON).entity(omappy.writeValueAsString(eqs)).build();
+            if (!StatusEventStream.isFinished(eqs)){
+                engine.addTaskListener(id, stream);
+            }
+            // stream is written by the thread that resumes, keep it off
+            // the request thread
+            _responseExecutor.execute(() -> {
+                try {
+                    if (asyncResponse.resume(Response.ok(stream).type(StatusEventStream.EVENT_STREAM_TYPE)
+                            .header(CACHE_CONTROL_HEADER, "no-cache").build()) == false){
+                        // request already ended so stream will not be written
+                        stream.close();
+                    }
+                } catch(RuntimeException re){
+                    _logger.error("Caught exception streaming status of task: " + id, re);
+                    stream.close();
+                }
+            });
+        } catch(CommunityDetectionOverloadedException coe){
+            ErrorResponse er = new ErrorResponse("Server is overloaded", coe);
+            asyncResponse.resume(Response.status(coe.getStatusCode()).header(RETRY_AFTER_HEADER, coe.getRetryAfter())
+                    .type(MediaType.APPLICATION_JSON).entity(er.asJson()).build());
         }
         catch(Exception ex){
             ErrorResponse er = new ErrorResponse("Error getting results for id: " + id, ex);
+            asyncResponse.resume(Response.serverError().type(MediaType.APPLICATION_JSON).entity(er.asJson()).build());
+        }
+    }
+    
+    @POST 
+    @Path(Configuration.V_ONE_PATH + "/status/bulk")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    @Operation(summary = "Gets status of several tasks",
+               description="Payload is a JSON array of task ids, up to " + MAX_BULK_STATUS_IDS
+                       + " ids. The response holds, in the same order, the status of each task or "
+                       + "an error along with the status code the get status endpoint would have "
+                       + "returned, 410 if the task was not found.",
+               responses = {
+                   @ApiResponse(responseCode = "200",
+                           description = "Success, check statusCode of each item",
+                           content = @Content(mediaType = MediaType.APPLICATION_JSON,
+                                array = @ArraySchema(schema = @Schema(implementation = BulkTaskResult.class)))),
+                   @ApiResponse(responseCode = "400", description = "Payload is not an array of ids "
+                           + "or has too many ids",
+                                content = @Content(mediaType = MediaType.APPLICATION_JSON,
+                                schema = @Schema(implementation = ErrorResponse.class))),
+                   @ApiResponse(responseCode = "500", description = "Server Error",
+                                content = @Content(mediaType = MediaType.APPLICATION_JSON,
+                                schema = @Schema(implementation = ErrorResponse.class)))
+               })
+    public Response getBulkRequestStatus(@RequestBody(description="Task ids as json array", required = true,
+                                                   content = @Content(array = @ArraySchema(schema = @Schema(implementation = String.class)))) final InputStream ids) {
+        String[] idArray;
+        try {
+            idArray = _mapper.readValue(ids, String[].class);
+            if (idArray == null){
+                throw new IOException("No ids in request");
+            }
+        } catch(IOException io){
+            ErrorResponse er = new ErrorResponse("Request must be a JSON array of task ids", io);
+            return Response.status(Response.Status.BAD_REQUEST).type(MediaType.APPLICATION_JSON)
+                    .entity(er.asJson()).build();
+        }
+        if (idArray.length > MAX_BULK_STATUS_IDS){
+            ErrorResponse er = new ErrorResponse("Request has " + idArray.length
+                    + " ids which exceeds maximum of " + MAX_BULK_STATUS_IDS, null);
+            return Response.status(Response.Status.BAD_REQUEST).type(MediaType.APPLICATION_JSON)
+                    .entity(er.asJson()).build();
+        }
+        try {
+            CommunityDetectionEngine engine = Configuration.getInstance().getCommunityDetectionEngine();
+            if (engine == null){
+                throw new NullPointerException("CommunityDetection Engine not loaded");
+            }
+            List<BulkTaskResult> results = new ArrayList<>(idArray.length);
+            for (String id : idArray){
+                BulkTaskResult res = new BulkTaskResult();
+                res.setId(id);
+                try {
+                    CommunityDetectionResultStatus eqs = engine.getStatus(id);
+                    if (eqs == null){
+                        res.setStatusCode(Response.Status.GONE.getStatusCode());
+                    } else {
+                        res.setStatus(eqs);
+                        res.setStatusCode(Response.Status.OK.getStatusCode());
+                    }
+                } catch(Exception ex){
+                    res.setError(new ErrorResponse("Error getting results for id: " + id, ex));
+                    res.setStatusCode(Response.Status.INTERNAL_SERVER_ERROR.getStatusCode());
+                }
+                results.add(res);
+            }
+            return Response.ok().type(MediaType.APPLICATION_JSON)
+                    .entity(_mapper.writeValueAsString(results)).build();
+        }
+        catch(Exception ex){
+            ErrorResponse er = new ErrorResponse("Error getting status of tasks", ex);
+            return Response.serverError().type(MediaType.APPLICATION_JSON).entity(er.asJson()).build();
+        }
+    }
+    
+    /**
+     * Parses value of {@link #WAIT_PARAM} query parameter
+     * @param wait seconds with optional {@code s} suffix or milliseconds
+     *             with {@code ms} suffix, {@code null} or empty for no wait
+     * @return time to wait in milliseconds, at most {@link #MAX_WAIT_SECONDS} seconds
+     * @throws CommunityDetectionBadRequestException if {@code wait} is not
+     *         a non negative number
+     */
+    protected static long parseWait(final String wait) throws CommunityDetectionBadRequestException {
+        if (wait == null || wait.trim().isEmpty()){
+            return 0;
+        }
+        String val = wait.trim().toLowerCase();
+        long multiplier = 1000;
+        if (val.endsWith("ms")){
+            val = val.substring(0, val.length() - 2);
+            multiplier = 1;
+        } else if (val.endsWith("s")){
+            val = val.substring(0, val.length() - 1);
+        }
+        double amount;
+        try {
+            amount = Double.parseDouble(val.trim());
+        } catch(NumberFormatException nfe){
+            throw new CommunityDetectionBadRequestException("Invalid value for "
+                    + WAIT_PARAM + ": " + wait);
+        }
+        if (Double.isNaN(amount) || amount < 0){
+            throw new CommunityDetectionBadRequestException("Invalid value for "
+                    + WAIT_PARAM + ": " + wait);
+        }
+        return (long)Math.min(amount * multiplier, MAX_WAIT_SECONDS * 1000);
+    }
+    
+    /**
+     * Builds response for status endpoint
+     * @param id id of task
+     * @param eqs status of task, {@code null} if task was not found
+     * @return 200 response with {@code eqs} as JSON or 410 if {@code eqs}
+     *         is {@code null}
+     */
+    protected static Response getStatusResponse(final String id,
+            final CommunityDetectionResultStatus eqs){
+        if (eqs ==  null){
+            return Response.status(410).build();
+        }
+        try {
+            return Response.ok().type(MediaType.APPLICATION_JSON).entity(_mapper.writeValueAsString(eqs)).build();
+        } catch(JsonProcessingException jpe){
+            ErrorResponse er = new ErrorResponse("Error getting results for id: " + id, jpe);
             return Response.serverError().type(MediaType.APPLICATION_JSON).entity(er.asJson()).build();
         }
     }
+    
+    /**
+     * Resumes a suspended status request once, with the first status
+     * change of the task or with its current status on timeout
+     */
+    protected static class StatusWaiter implements CommunityDetectionTaskListener {
+        
+        private final AsyncResponse _asyncResponse;
+        private final CommunityDetectionEngine _engine;
+        private final String _id;
+        private final AtomicBoolean _resumed = new AtomicBoolean(false);
+        
+        StatusWaiter(final AsyncResponse asyncResponse,
+                final CommunityDetectionEngine engine, final String id){
+            _asyncResponse = asyncResponse;
+            _engine = engine;
+            _id = id;
+        }
+
+        @Override
+        public void taskCompleted(final CommunityDetectionResult result) {
+            resume(result == null ? null : new CommunityDetectionResultStatus(result));
+        }
+
+        @Override
+        public void statusChanged(final CommunityDetectionResultStatus status) {
+            resume(status);
+        }
+        
+        /**
+         * Resumes with {@code status} unless already resumed. Called from
+         * engine threads so the response is written by another thread
+         * @param status status to send, {@code null} if task is gone
+         */
+        void resume(final CommunityDetectionResultStatus status){
+            if (!_resumed.compareAndSet(false, true)){
+                return;
+            }
+            _responseExecutor.execute(() -> {
+                _engine.removeTaskListener(_id, this);
+                try {
+                    _asyncResponse.resume(getStatusResponse(_id, status));
+                } catch(RuntimeException re){
+                    _logger.error("Caught exception sending status of task: " + _id, re);
+                }
+            });
+        }
+        
+        /**
+         * Resumes with current status of task unless already resumed
+         */
+        void resumeWithCurrentStatus(){
+            if (!_resumed.compareAndSet(false, true)){
+                return;
+            }
+            _engine.removeTaskListener(_id, this);
+            Response response;
+            try {
+                response = getStatusResponse(_id, _engine.getStatus(_id));
+            } catch(CommunityDetectionException cde){
+                ErrorResponse er = new ErrorResponse("Error getting results for id: " + _id, cde);
+                response = Response.serverError().type(MediaType.APPLICATION_JSON).entity(er.asJson()).build();
+            }
+            try {
+                _asyncResponse.resume(response);
+            } catch(RuntimeException re){
+                _logger.error("Caught exception sending status of task: " + _id, re);
+            }
+        }
+    }
 
     @DELETE 
     @Path(Configuration.V_ONE_PATH + "/{id}")
@@ -10,7 +10,7 @@ import java.util.jar.Attributes;
 import java.util.jar.JarFile;
 import java.util.jar.Manifest;
 import javax.servlet.ServletException;
-import org.jboss.resteasy.plugins.server.servlet.HttpServletDispatcher;
+import org.jboss.resteasy.plugins.server.servlet.HttpServlet30Dispatcher;
 import org.ndexbio.communitydetection.rest.engine.BasicCommunityDetectionEngineFactory;
 import org.ndexbio.communitydetection.rest.model.exceptions.CommunityDetectionException;
 import org.slf4j.Logger;
@@ -20,7 +20,7 @@ import org.ndexbio.communitydetection.rest.engine.CommunityDetectionEngine;
  *
  * @author churas
  */
-public class CommunityDetectionHttpServletDispatcher extends HttpServletDispatcher {
+public class CommunityDetectionHttpServletDispatcher extends HttpServlet30Dispatcher {
     
     static Logger _logger = LoggerFactory.getLogger(CommunityDetectionHttpServletDispatcher.class.getSimpleName());
 
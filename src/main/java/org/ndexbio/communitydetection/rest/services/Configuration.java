@@ -1,17 +1,23 @@
 package org.ndexbio.communitydetection.rest.services;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import javax.naming.InitialContext;
 import javax.naming.NamingException;
 import org.ndexbio.communitydetection.rest.model.exceptions.CommunityDetectionException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.ndexbio.communitydetection.rest.engine.AlgorithmExecutionSettings;
 import org.ndexbio.communitydetection.rest.engine.CommunityDetectionEngine;
 import org.ndexbio.communitydetection.rest.model.CommunityDetectionAlgorithm;
 import org.ndexbio.communitydetection.rest.model.CommunityDetectionAlgorithms;
@@ -41,10 +47,49 @@ public class Configuration {
     public static final String MOUNT_OPTIONS = "communitydetection.mount.options";
     public static final String DIFFUSION_ALGO = "communitydetection.diffusion.algorithm";
     public static final String DIFFUSION_POLLDELAY = "communitydetection.diffusion.polldelay";
+    public static final String RESULT_CACHE_MAX_ENTRIES = "communitydetection.result.cache.maxentries";
+    public static final String RESULT_CACHE_TTL = "communitydetection.result.cache.ttl";
+    public static final String POOL_SIZE = "communitydetection.pool.size";
+    public static final String POOL_RECYCLE_TASKS = "communitydetection.pool.recycle.tasks";
+    public static final String POOL_ALGORITHMS = "communitydetection.pool.algorithms";
+    public static final String JOURNAL_ENABLED = "communitydetection.journal.enabled";
+    public static final String JOURNAL_RETRY_RUNNING = "communitydetection.journal.retry.running";
+    public static final String CLUSTER_ENABLED = "communitydetection.cluster.enabled";
+    public static final String CLUSTER_LEASE_TTL = "communitydetection.cluster.lease.ttl";
+    public static final String CLIENT_WEIGHTS = "communitydetection.client.weights";
+    public static final String CLIENT_MAX_PRIORITY = "communitydetection.client.max.priority";
+    public static final String ADMISSION_MAX_QUEUED_TASKS = "communitydetection.admission.max.queued.tasks";
+    public static final String ADMISSION_MAX_PENDING_BYTES = "communitydetection.admission.max.pending.bytes";
+    public static final String ADMISSION_MAX_DISK_FULL = "communitydetection.admission.max.disk.full";
+    public static final String REAPER_TTL = "communitydetection.reaper.ttl";
+    public static final String REAPER_MAX_BYTES = "communitydetection.reaper.max.bytes";
+    public static final String REAPER_INTERVAL = "communitydetection.reaper.interval";
+    public static final String STATUS_CACHE_MAX_ENTRIES = "communitydetection.status.cache.maxentries";
+    public static final String STATUS_CACHE_TTL = "communitydetection.status.cache.ttl";
+    public static final String EVENTS_MAX_STREAMS = "communitydetection.events.max.streams";
+    public static final String PARSED_RESULT_CACHE_MAX_BYTES = "communitydetection.parsed.result.cache.maxbytes";
+    public static final String TASK_STORE = "communitydetection.task.store";
+    public static final String DOCKER_SOCKET = "communitydetection.docker.socket";
+    public static final String CPUSET_CPUS = "communitydetection.cpuset.cpus";
+    public static final String MIN_WORKERS = "communitydetection.number.workers.min";
+    public static final String MAX_WORKERS = "communitydetection.number.workers.max";
+    public static final String WORKERS_ADJUST_INTERVAL = "communitydetection.number.workers.adjust.interval";
     public static final String SWAGGER_TITLE = "swagger.title";
     public static final String SWAGGER_DESC = "swagger.description";
 
     
+    /**
+     * Value of {@link #TASK_STORE} to keep results of all tasks in a
+     * single log file
+     */
+    public static final String TASK_STORE_LOG = "log";
+    
+    /**
+     * Value of {@link #TASK_STORE} to keep result of each task in its
+     * own directory
+     */
+    public static final String TASK_STORE_DIRECTORY = "directory";
+    
     public static final String RUNSERVER_CONTEXTPATH = "runserver.contextpath";
     public static final String RUNSERVER_APP_PATH = "runserver.applicationpath";
     
@@ -57,10 +102,38 @@ public class Configuration {
     private static String _dockerCmd;
     private static int _numWorkers;
     private static CommunityDetectionAlgorithms _algorithms;
+    private static Map<String, AlgorithmExecutionSettings> _executionSettings;
     private static CommunityDetectionAlgorithm _diffusionAlgo;
     private static long _diffusionPollingDelay;
     private static long _timeOut;
     private String _mountOptions;
+    private int _resultCacheMaxEntries;
+    private long _resultCacheTTL;
+    private int _poolSize;
+    private int _poolRecycleTasks;
+    private Set<String> _poolAlgorithms;
+    private boolean _journalEnabled;
+    private boolean _journalRetryRunning;
+    private boolean _clusterEnabled;
+    private long _clusterLeaseTTL;
+    private Map<String, Integer> _clientWeights;
+    private int _clientMaxPriority;
+    private int _admissionMaxQueuedTasks;
+    private long _admissionMaxPendingBytes;
+    private int _admissionMaxDiskFull;
+    private long _reaperTTL;
+    private long _reaperMaxBytes;
+    private long _reaperInterval;
+    private int _statusCacheMaxEntries;
+    private long _statusCacheTTL;
+    private int _eventsMaxStreams;
+    private long _parsedResultCacheMaxBytes;
+    private String _taskStore;
+    private String _dockerSocket;
+    private String _cpusetCpus;
+    private int _minWorkers;
+    private int _maxWorkers;
+    private long _workersAdjustInterval;
     private String _swaggerTitle;
     private String _swaggerDescription;
     private String _contextPath;
@@ -93,6 +166,7 @@ public class Configuration {
         _hostURL = props.getProperty(Configuration.HOST_URL, "");
         _dockerCmd = props.getProperty(Configuration.DOCKER_CMD, "docker");
 	_diffusionPollingDelay = Long.parseLong(props.getProperty(DIFFUSION_POLLDELAY, "100"));
+        _executionSettings = new LinkedHashMap<>();
         _algorithms = getAlgorithms(props.getProperty(Configuration.ALGORITHM_MAP, null));
         
         String diffAlgoName = props.getProperty(Configuration.DIFFUSION_ALGO, null);
@@ -110,6 +184,50 @@ public class Configuration {
         
         _timeOut = Long.parseLong(props.getProperty(Configuration.ALGORITHM_TIMEOUT, "180"));
         _mountOptions = props.getProperty(Configuration.MOUNT_OPTIONS, ":ro");
+        _resultCacheMaxEntries = Integer.parseInt(props.getProperty(Configuration.RESULT_CACHE_MAX_ENTRIES, "0"));
+        _resultCacheTTL = Long.parseLong(props.getProperty(Configuration.RESULT_CACHE_TTL, "86400"));
+        _poolSize = Integer.parseInt(props.getProperty(Configuration.POOL_SIZE, "0"));
+        _poolRecycleTasks = Integer.parseInt(props.getProperty(Configuration.POOL_RECYCLE_TASKS, "100"));
+        _poolAlgorithms = new LinkedHashSet<>();
+        for (String algoName : props.getProperty(Configuration.POOL_ALGORITHMS, "").split(",")){
+            if (algoName.trim().isEmpty() == false){
+                _poolAlgorithms.add(algoName.trim());
+            }
+        }
+        _journalEnabled = Boolean.parseBoolean(props.getProperty(Configuration.JOURNAL_ENABLED, "true"));
+        _journalRetryRunning = Boolean.parseBoolean(props.getProperty(Configuration.JOURNAL_RETRY_RUNNING, "false"));
+        _clusterEnabled = Boolean.parseBoolean(props.getProperty(Configuration.CLUSTER_ENABLED, "false"));
+        _clusterLeaseTTL = Long.parseLong(props.getProperty(Configuration.CLUSTER_LEASE_TTL, "60"));
+        _clientWeights = new LinkedHashMap<>();
+        for (String clientWeight : props.getProperty(Configuration.CLIENT_WEIGHTS, "").split(",")){
+            int equalPos = clientWeight.lastIndexOf('=');
+            if (equalPos <= 0){
+                if (clientWeight.trim().isEmpty() == false){
+                    _logger.error("Ignoring " + clientWeight.trim() + " in "
+                            + Configuration.CLIENT_WEIGHTS + " expected client=weight");
+                }
+                continue;
+            }
+            _clientWeights.put(clientWeight.substring(0, equalPos).trim(),
+                    Integer.valueOf(clientWeight.substring(equalPos + 1).trim()));
+        }
+        _clientMaxPriority = Integer.parseInt(props.getProperty(Configuration.CLIENT_MAX_PRIORITY, "0"));
+        _admissionMaxQueuedTasks = Integer.parseInt(props.getProperty(Configuration.ADMISSION_MAX_QUEUED_TASKS, "0"));
+        _admissionMaxPendingBytes = Long.parseLong(props.getProperty(Configuration.ADMISSION_MAX_PENDING_BYTES, "0"));
+        _admissionMaxDiskFull = Integer.parseInt(props.getProperty(Configuration.ADMISSION_MAX_DISK_FULL, "0"));
+        _reaperTTL = Long.parseLong(props.getProperty(Configuration.REAPER_TTL, "0"));
+        _reaperMaxBytes = Long.parseLong(props.getProperty(Configuration.REAPER_MAX_BYTES, "0"));
+        _reaperInterval = Long.parseLong(props.getProperty(Configuration.REAPER_INTERVAL, "60"));
+        _statusCacheMaxEntries = Integer.parseInt(props.getProperty(Configuration.STATUS_CACHE_MAX_ENTRIES, "10000"));
+        _statusCacheTTL = Long.parseLong(props.getProperty(Configuration.STATUS_CACHE_TTL, "3600"));
+        _eventsMaxStreams = Integer.parseInt(props.getProperty(Configuration.EVENTS_MAX_STREAMS, "256"));
+        _parsedResultCacheMaxBytes = Long.parseLong(props.getProperty(Configuration.PARSED_RESULT_CACHE_MAX_BYTES, "67108864"));
+        _taskStore = props.getProperty(Configuration.TASK_STORE, Configuration.TASK_STORE_LOG).trim();
+        _dockerSocket = props.getProperty(Configuration.DOCKER_SOCKET, "").trim();
+        _cpusetCpus = props.getProperty(Configuration.CPUSET_CPUS, "").trim();
+        _minWorkers = Integer.parseInt(props.getProperty(Configuration.MIN_WORKERS, "1"));
+        _maxWorkers = Integer.parseInt(props.getProperty(Configuration.MAX_WORKERS, "0"));
+        _workersAdjustInterval = Long.parseLong(props.getProperty(Configuration.WORKERS_ADJUST_INTERVAL, "30"));
         _swaggerTitle = props.getProperty(Configuration.SWAGGER_TITLE, null);
         _swaggerDescription = props.getProperty(Configuration.SWAGGER_DESC, null);
         _contextPath = props.getProperty(Configuration.RUNSERVER_CONTEXTPATH, "/cd");
@@ -133,7 +251,9 @@ public class Configuration {
                 _logger.error(algoFile.getAbsolutePath() + " is not a file");
                 return null;
             }
-            return mapper.readValue(algoFile, CommunityDetectionAlgorithms.class);
+            JsonNode root = mapper.readTree(algoFile);
+            _executionSettings = extractExecutionSettings(mapper, root);
+            return mapper.treeToValue(root, CommunityDetectionAlgorithms.class);
         }
         catch(IOException io){
               _logger.error("Error parsing json: " + algoPath + " : " + io.getMessage());
@@ -142,6 +262,36 @@ public class Configuration {
         return null;
     }
         
+    /**
+     * Removes the optional {@link AlgorithmExecutionSettings#EXECUTION_FIELD}
+     * object from each algorithm in {@code root} since it is not part of
+     * {@link org.ndexbio.communitydetection.rest.model.CommunityDetectionAlgorithm}
+     * @param mapper mapper used to convert settings
+     * @param root parsed algorithms json
+     * @return map of algorithm name to settings for algorithms with settings
+     * @throws IOException if settings could not be converted
+     */
+    protected Map<String, AlgorithmExecutionSettings> extractExecutionSettings(ObjectMapper mapper,
+            JsonNode root) throws IOException {
+        LinkedHashMap<String, AlgorithmExecutionSettings> settings = new LinkedHashMap<>();
+        JsonNode algos = root == null ? null : root.get("algorithms");
+        if (algos == null || algos.isObject() == false){
+            return settings;
+        }
+        Iterator<Map.Entry<String, JsonNode>> itr = algos.fields();
+        while (itr.hasNext()){
+            Map.Entry<String, JsonNode> entry = itr.next();
+            if (entry.getValue().isObject() == false){
+                continue;
+            }
+            JsonNode exec = ((ObjectNode)entry.getValue()).remove(AlgorithmExecutionSettings.EXECUTION_FIELD);
+            if (exec != null){
+                settings.put(entry.getKey(), mapper.treeToValue(exec, AlgorithmExecutionSettings.class));
+            }
+        }
+        return settings;
+    }
+        
     protected void setCommunityDetectionEngine(CommunityDetectionEngine ee){
         _communityEngine = ee;
     }
@@ -198,6 +348,14 @@ public class Configuration {
         return _algorithms;
     }
     
+    /**
+     * Execution settings for algorithms that set them in algorithms json
+     * @return map of algorithm name to settings
+     */
+    public Map<String, AlgorithmExecutionSettings> getAlgorithmExecutionSettings(){
+        return _executionSettings;
+    }
+    
     /**
      * Mount options needed by containers such as docker or pod
      * @return usually :ro or :ro,z
@@ -206,6 +364,248 @@ public class Configuration {
         return _mountOptions;
     }
     
+    /**
+     * Maximum number of results to keep in result cache
+     * @return number of entries, 0 or less means result cache is disabled
+     */
+    public int getResultCacheMaxEntries(){
+        return _resultCacheMaxEntries;
+    }
+    
+    /**
+     * Time a result remains valid in result cache
+     * @return seconds
+     */
+    public long getResultCacheTTL(){
+        return _resultCacheTTL;
+    }
+    
+    /**
+     * Number of warm containers to keep for each pooled algorithm
+     * @return number of containers, 0 or less means algorithms are run
+     *         via docker run
+     */
+    public int getPoolSize(){
+        return _poolSize;
+    }
+    
+    /**
+     * Number of tasks a pooled container runs before it is replaced
+     * @return number of tasks
+     */
+    public int getPoolRecycleTasks(){
+        return _poolRecycleTasks;
+    }
+    
+    /**
+     * Names of algorithms to run in warm container pools
+     * @return names of algorithms, if empty all algorithms are pooled
+     */
+    public Set<String> getPoolAlgorithms(){
+        return _poolAlgorithms;
+    }
+    
+    /**
+     * Denotes if tasks are recorded in a journal under the task directory
+     * so they can be recovered after a restart
+     * @return {@code true} if journal is enabled, default is {@code true}
+     */
+    public boolean isJournalEnabled(){
+        return _journalEnabled;
+    }
+    
+    /**
+     * Denotes if tasks that were running when the server stopped are
+     * run again upon restart instead of being marked failed
+     * @return {@code true} if interrupted tasks are run again
+     */
+    public boolean isJournalRetryRunning(){
+        return _journalRetryRunning;
+    }
+    
+    /**
+     * Denotes if this server shares a queue of tasks with other servers
+     * using the same task directory
+     * @return {@code true} if cluster mode is enabled, default is {@code false}
+     */
+    public boolean isClusterEnabled(){
+        return _clusterEnabled;
+    }
+    
+    /**
+     * Time a server can go without renewing its claim on a task before
+     * another server takes over the task
+     * @return seconds
+     */
+    public long getClusterLeaseTTL(){
+        return _clusterLeaseTTL;
+    }
+    
+    /**
+     * Share of workers given to each client relative to other clients
+     * when tasks are waiting. Clients are identified by the
+     * X-Client-Id or X-Forwarded-For header which is not authenticated,
+     * so weights are only as trustworthy as whatever sets those headers
+     * @return map of client id to weight, empty if not set
+     */
+    public Map<String, Integer> getClientWeights(){
+        return _clientWeights;
+    }
+    
+    /**
+     * Highest priority a client can request for a task, higher values
+     * in a request are lowered to this. Lower priorities are always
+     * allowed
+     * @return priority, default is 0 so clients cannot jump ahead of
+     *         other clients
+     */
+    public int getClientMaxPriority(){
+        return _clientMaxPriority;
+    }
+    
+    /**
+     * Maximum number of tasks queued or running before new requests
+     * are rejected with a 429 status
+     * @return number of tasks, 0 means no limit which is the default
+     */
+    public int getAdmissionMaxQueuedTasks(){
+        return _admissionMaxQueuedTasks;
+    }
+    
+    /**
+     * Maximum bytes of input held by tasks queued or running before new
+     * requests are rejected with a 429 status
+     * @return bytes, 0 means no limit which is the default
+     */
+    public long getAdmissionMaxPendingBytes(){
+        return _admissionMaxPendingBytes;
+    }
+    
+    /**
+     * Percent of task directory disk that can be used before new
+     * requests are rejected with a 503 status
+     * @return percent, 0 means no limit which is the default
+     */
+    public int getAdmissionMaxDiskFull(){
+        return _admissionMaxDiskFull;
+    }
+    
+    /**
+     * Time completed tasks are kept after their result was last read
+     * @return seconds, 0 means tasks are kept until deleted which is the default
+     */
+    public long getReaperTTL(){
+        return _reaperTTL;
+    }
+    
+    /**
+     * Maximum bytes completed tasks can take up before those read least
+     * recently are deleted
+     * @return bytes, 0 means no limit which is the default
+     */
+    public long getReaperMaxBytes(){
+        return _reaperMaxBytes;
+    }
+    
+    /**
+     * Time between checks for completed tasks to delete
+     * @return seconds, default is 60
+     */
+    public long getReaperInterval(){
+        return _reaperInterval;
+    }
+    
+    /**
+     * Maximum number of finished tasks whose status is kept in memory
+     * @return number of tasks, 0 disables, default is 10000
+     */
+    public int getStatusCacheMaxEntries(){
+        return _statusCacheMaxEntries;
+    }
+    
+    /**
+     * Time status of a finished task is kept in memory
+     * @return seconds, default is 3600
+     */
+    public long getStatusCacheTTL(){
+        return _statusCacheTTL;
+    }
+    
+    /**
+     * Maximum number of status event streams open at once, further
+     * requests are rejected with a 429 status. Each open stream holds a
+     * thread until its task finishes
+     * @return number of streams, default is 256, 0 means no limit
+     */
+    public int getEventsMaxStreams(){
+        return _eventsMaxStreams;
+    }
+    
+    /**
+     * Maximum size of result files of finished tasks whose parsed
+     * result is kept in memory
+     * @return bytes, 0 disables, default is 67108864 (64 MiB)
+     */
+    public long getParsedResultCacheMaxBytes(){
+        return _parsedResultCacheMaxBytes;
+    }
+    
+    /**
+     * Where results of finished tasks are kept
+     * @return {@link #TASK_STORE_LOG}, the default, or {@link #TASK_STORE_DIRECTORY}
+     */
+    public String getTaskStore(){
+        return _taskStore;
+    }
+    
+    /**
+     * Path to unix domain socket of Docker daemon used to run containers
+     * via the Docker Engine API instead of {@link #getDockerCommand()}
+     * such as {@code /var/run/docker.sock}
+     * @return path, default is empty string which always uses
+     *         {@link #getDockerCommand()}
+     */
+    public String getDockerSocket(){
+        return _dockerSocket;
+    }
+    
+    /**
+     * Cpus that containers of algorithms with a cpu limit are pinned to,
+     * each running container getting its own subset
+     * @return cpus in {@code --cpuset-cpus} format such as {@code 0-15},
+     *         default is empty string which disables pinning
+     */
+    public String getCpusetCpus(){
+        return _cpusetCpus;
+    }
+    
+    /**
+     * Fewest workers the number of workers is lowered to when the
+     * host is overloaded. Only used if {@link #getMaxWorkers()} is set
+     * @return number of workers, default is 1
+     */
+    public int getMinWorkers(){
+        return _minWorkers;
+    }
+    
+    /**
+     * Most workers the number of workers is raised to while tasks are
+     * waiting and the host has spare capacity
+     * @return number of workers, default is 0 which keeps the number
+     *         of workers fixed at {@link #getNumberWorkers()}
+     */
+    public int getMaxWorkers(){
+        return _maxWorkers;
+    }
+    
+    /**
+     * Time between adjustments of the number of workers
+     * @return seconds, default is 30
+     */
+    public long getWorkersAdjustInterval(){
+        return _workersAdjustInterval;
+    }
+    
     /**
      * Alternate swagger title
      * @return swagger title
@@ -259,7 +659,10 @@ public class Configuration {
      * long service should wait before checking if diffusion task
      * is complete
      * @return time in milliseconds
+     * @deprecated legacy diffusion endpoint is now notified when
+     *             task completes so this value is no longer used
      */
+    @Deprecated
     public long getDiffusionPollingDelay(){
 	return _diffusionPollingDelay;
     }
@@ -15,16 +15,21 @@ import io.swagger.v3.oas.annotations.parameters.RequestBody;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.Response;
 import org.ndexbio.communitydetection.rest.model.CommunityDetectionRequest;
 import org.ndexbio.communitydetection.rest.model.CommunityDetectionResult;
 import org.ndexbio.communitydetection.rest.engine.CommunityDetectionEngine;
+import org.ndexbio.communitydetection.rest.engine.CommunityDetectionOverloadedException;
+import org.ndexbio.communitydetection.rest.engine.util.TaskThreads;
 import org.ndexbio.communitydetection.rest.model.CXMateResult;
 import org.ndexbio.communitydetection.rest.model.CommunityDetectionAlgorithm;
 import org.ndexbio.communitydetection.rest.model.ErrorResponse;
@@ -39,6 +44,13 @@ import org.ndexbio.communitydetection.rest.model.exceptions.CommunityDetectionEx
 public class Diffusion {
     
     static Logger logger = LoggerFactory.getLogger(Diffusion.class);
+    
+    /**
+     * Threads used to write responses and delete completed tasks so
+     * neither is done by a request thread or by the engine, virtual
+     * threads when built with the jdk21 profile
+     */
+    private static final ExecutorService _responseExecutor = TaskThreads.newExecutor("diffusion-response");
 
     @GET
     @Path(Configuration.LEGACY_DIFFUSION_PATH + "/")
@@ -138,7 +150,8 @@ public class Diffusion {
                                             content = @Content(mediaType = MediaType.APPLICATION_JSON,
                               schema = @Schema(implementation = CXMateResult.class)))
                        })
-    public Response legacyDiffusion(@RequestBody(description="The body of the request must be a CX network "
+    public void legacyDiffusion(@Suspended final AsyncResponse asyncResponse,
+                    @RequestBody(description="The body of the request must be a CX network "
                     + "containing the nodes, edges, and nodeAttributes aspects. There must exist at least one "
                     + "nodeAttribute with a key name that matches the input_attribute_name parameter and holds "
                     + "a double, which will be interepreted as the heat of that node. (This condition can be "
@@ -180,66 +193,94 @@ public class Diffusion {
             cdr.setAlgorithm(cda.getName());
             cdr.setData(omapper.readTree(cxdata));
 
-            CommunityDetectionEngine engine = Configuration.getInstance().getCommunityDetectionEngine();
+            final CommunityDetectionEngine engine = Configuration.getInstance().getCommunityDetectionEngine();
             if (engine == null){
                 throw new NullPointerException("CommunityDetection Engine not loaded");
             }
             // Submit task to service
-            String id = engine.request(cdr);
+            final String id = engine.request(cdr);
             if (id == null){
                 throw new CommunityDetectionException("No id returned from CommunityDetection Engine");
             }
 
-            long pollingDelay = Configuration.getInstance().getDiffusionPollingDelay();
-            // Wait for completion by invoking status once per second
-            CommunityDetectionResult unknownCRes = new CommunityDetectionResult();
-            unknownCRes.setProgress(0);
-
-            CommunityDetectionResult cRes = unknownCRes;
-            while (cRes.getProgress() < 100){				
-                Thread.sleep(pollingDelay);
-                try {
-                    cRes = engine.getResult(id);
-                } catch(Exception ex){
-                    logger.info("Caught exception checking on status of task: ", ex);
-                    // @TODO Should have a way to catch errors that are not transient
-                   cRes = unknownCRes; 
-                }
-            }
-            // if we did not complete then throw an exception
-            if (!cRes.getStatus().equals(CommunityDetectionResult.COMPLETE_STATUS)){
-                CXMateResult cError = new CXMateResult(cRes.getResult().asText(),
-                                                       null, Response.Status.INTERNAL_SERVER_ERROR.getStatusCode(), null);
-                return Response.serverError().type(MediaType.APPLICATION_JSON).entity(cError.asJson()).build();
-            } 
-            
-            // we had a successful run, so delete the task
-            // @TODO at some point it would be nice to put this
-            //       work somewhere else so the user can get 
-            //       the result quicker.
-            try {
-                engine.delete(id);
-            } catch(CommunityDetectionException delEx){
-                logger.error("Caught exception trying to delete completed task: "
-                        + id, delEx);
-            }
-
-            return Response.status(Response.Status.OK).type(MediaType.APPLICATION_JSON).entity(omapper.writeValueAsString(cRes.getResult())).build();
+            // request thread is released here, response is sent once
+            // engine notifies us the task is done
+            engine.addTaskListener(id, (cRes) -> _responseExecutor.execute(() -> {
+                resumeWithResult(asyncResponse, engine, id, cRes);
+            }));
         } catch(JsonProcessingException jpe){
             CXMateResult er = new CXMateResult("Error parsing input data", cdr.getAlgorithm(),
             Response.Status.INTERNAL_SERVER_ERROR.getStatusCode(), jpe);
-            return Response.serverError().type(MediaType.APPLICATION_JSON).entity(er.asJson()).build();
+            asyncResponse.resume(Response.serverError().type(MediaType.APPLICATION_JSON).entity(er.asJson()).build());
         } catch(CommunityDetectionBadRequestException breq){
             ErrorResponse er = breq.getErrorResponse();
             if (er == null){
                 er = new ErrorResponse("Bad request received", breq);
             }
             CXMateResult cError = new CXMateResult(cdr.getAlgorithm(), er);
-            return Response.serverError().type(MediaType.APPLICATION_JSON).entity(cError.asJson()).build();
+            asyncResponse.resume(Response.serverError().type(MediaType.APPLICATION_JSON).entity(cError.asJson()).build());
+        } catch(CommunityDetectionOverloadedException coe){
+            CXMateResult er = new CXMateResult("Server is overloaded",
+            cdr.getAlgorithm(), coe.getStatusCode(), coe);
+            asyncResponse.resume(Response.status(coe.getStatusCode())
+                    .header(CommunityDetection.RETRY_AFTER_HEADER, coe.getRetryAfter())
+                    .type(MediaType.APPLICATION_JSON).entity(er.asJson()).build());
         } catch(Exception ex){
             CXMateResult er = new CXMateResult("Error running diffusion",
             cdr.getAlgorithm(), Response.Status.INTERNAL_SERVER_ERROR.getStatusCode(), ex);
-            return Response.serverError().type(MediaType.APPLICATION_JSON).entity(er.asJson()).build();
+            asyncResponse.resume(Response.serverError().type(MediaType.APPLICATION_JSON).entity(er.asJson()).build());
+        }
+    }
+    
+    /**
+     * Resumes {@code asyncResponse} with result of diffusion task and then
+     * deletes the task if it completed successfully
+     * @param asyncResponse suspended response
+     * @param engine engine that ran task
+     * @param id id of task
+     * @param cRes final result of task
+     */
+    protected void resumeWithResult(final AsyncResponse asyncResponse,
+            final CommunityDetectionEngine engine, final String id,
+            final CommunityDetectionResult cRes){
+        Response response;
+        boolean completed = cRes != null
+                && CommunityDetectionResult.COMPLETE_STATUS.equals(cRes.getStatus());
+        // if we did not complete then send an error
+        if (completed == false){
+            String errMsg = "Unknown error running task";
+            if (cRes != null){
+                errMsg = cRes.getResult() == null ? cRes.getMessage() : cRes.getResult().asText();
+            }
+            CXMateResult cError = new CXMateResult(errMsg,
+                                                   null, Response.Status.INTERNAL_SERVER_ERROR.getStatusCode(), null);
+            response = Response.serverError().type(MediaType.APPLICATION_JSON).entity(cError.asJson()).build();
+        } else {
+            try {
+                ObjectMapper omapper = new ObjectMapper();
+                response = Response.status(Response.Status.OK).type(MediaType.APPLICATION_JSON)
+                        .entity(omapper.writeValueAsString(cRes.getResult())).build();
+            } catch(JsonProcessingException jpe){
+                CXMateResult er = new CXMateResult("Error writing result", null,
+                        Response.Status.INTERNAL_SERVER_ERROR.getStatusCode(), jpe);
+                response = Response.serverError().type(MediaType.APPLICATION_JSON).entity(er.asJson()).build();
+            }
+        }
+        try {
+            asyncResponse.resume(response);
+        } catch(RuntimeException re){
+            logger.error("Caught exception sending result of task: " + id, re);
+        }
+        if (completed == false){
+            return;
+        }
+        
+        // response has been sent so clean up the task
+        try {
+            engine.delete(id);
+        } catch(CommunityDetectionException delEx){
+            logger.error("Caught exception trying to delete completed task: "
+                    + id, delEx);
         }
     }
-}
\ No newline at end of file
+}
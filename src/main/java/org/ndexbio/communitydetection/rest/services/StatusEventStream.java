@@ -0,0 +1,207 @@
+package org.ndexbio.communitydetection.rest.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.ws.rs.core.StreamingOutput;
+import org.ndexbio.communitydetection.rest.engine.CommunityDetectionEngine;
+import org.ndexbio.communitydetection.rest.engine.CommunityDetectionTaskListener;
+import org.ndexbio.communitydetection.rest.model.CommunityDetectionResult;
+import org.ndexbio.communitydetection.rest.model.CommunityDetectionResultStatus;
+
+/**
+ * Writes status changes of a task as a
+ * <a href="https://html.spec.whatwg.org/multipage/server-sent-events.html">Server-Sent Events</a>
+ * stream. Each status is sent as a {@code status} event whose data is the
+ * status as JSON, starting with the status passed into the constructor.
+ * The stream ends once a {@code complete} or {@code failed} status is
+ * sent or the task is removed. A comment is sent if nothing happens for a
+ * while so proxies and clients do not drop the connection.
+ *
+ * Instances must be registered with the engine via
+ * {@link CommunityDetectionEngine#addTaskListener(java.lang.String, org.ndexbio.communitydetection.rest.engine.CommunityDetectionTaskListener)}
+ * before they are written and unregister themselves once done. Writing
+ * blocks the calling thread until the stream ends, so streams should be
+ * created with {@link #open(org.ndexbio.communitydetection.rest.engine.CommunityDetectionEngine, java.lang.String, org.ndexbio.communitydetection.rest.model.CommunityDetectionResultStatus, long, int)}
+ * which bounds how many are open at once.
+ *
+ * @author churas
+ */
+public class StatusEventStream implements CommunityDetectionTaskListener, StreamingOutput {
+
+    /**
+     * Media type of Server-Sent Events
+     */
+    public static final String EVENT_STREAM_TYPE = "text/event-stream";
+
+    /**
+     * Name of event holding status of task
+     */
+    public static final String STATUS_EVENT = "status";
+
+    /**
+     * Default time in milliseconds to wait for a status change before
+     * sending a keep alive comment
+     */
+    public static final long DEFAULT_KEEPALIVE_MILLIS = 15000;
+
+    /**
+     * Put on queue when task was removed, never written
+     */
+    private static final CommunityDetectionResultStatus END_OF_STREAM = new CommunityDetectionResultStatus();
+
+    /**
+     * Number of streams created via {@link #open(org.ndexbio.communitydetection.rest.engine.CommunityDetectionEngine, java.lang.String, org.ndexbio.communitydetection.rest.model.CommunityDetectionResultStatus, long, int)}
+     * that have not been closed
+     */
+    private static final AtomicInteger _openStreams = new AtomicInteger(0);
+
+    private final CommunityDetectionEngine _engine;
+    private final String _id;
+    private final long _keepAliveMillis;
+    private final LinkedBlockingQueue<CommunityDetectionResultStatus> _queue;
+    private final ObjectMapper _mapper;
+    private final boolean _counted;
+    private final AtomicBoolean _closed = new AtomicBoolean(false);
+
+    /**
+     * Creates stream if fewer than {@code maxStreams} streams created by
+     * this method are open
+     * @param engine engine stream will be registered with
+     * @param id id of task
+     * @param initialStatus first status to send
+     * @param keepAliveMillis time in milliseconds to wait for a status
+     *                        change before sending a keep alive comment
+     * @param maxStreams most streams open at once, 0 or less for no limit
+     * @return stream which must be written or closed, or {@code null} if
+     *         too many streams are open
+     */
+    public static StatusEventStream open(final CommunityDetectionEngine engine, final String id,
+            final CommunityDetectionResultStatus initialStatus, long keepAliveMillis,
+            int maxStreams){
+        while (true){
+            int open = _openStreams.get();
+            if (maxStreams > 0 && open >= maxStreams){
+                return null;
+            }
+            if (_openStreams.compareAndSet(open, open + 1)){
+                return new StatusEventStream(engine, id, initialStatus, keepAliveMillis, true);
+            }
+        }
+    }
+
+    /**
+     * Gets number of streams created by {@link #open(org.ndexbio.communitydetection.rest.engine.CommunityDetectionEngine, java.lang.String, org.ndexbio.communitydetection.rest.model.CommunityDetectionResultStatus, long, int)}
+     * that are still open
+     * @return number of streams
+     */
+    public static int getOpenStreams(){
+        return _openStreams.get();
+    }
+
+    /**
+     * Constructor
+     * @param engine engine this stream is registered with
+     * @param id id of task
+     * @param initialStatus first status to send
+     * @param keepAliveMillis time in milliseconds to wait for a status
+     *                        change before sending a keep alive comment
+     */
+    public StatusEventStream(final CommunityDetectionEngine engine, final String id,
+            final CommunityDetectionResultStatus initialStatus, long keepAliveMillis){
+        this(engine, id, initialStatus, keepAliveMillis, false);
+    }
+
+    private StatusEventStream(final CommunityDetectionEngine engine, final String id,
+            final CommunityDetectionResultStatus initialStatus, long keepAliveMillis,
+            boolean counted){
+        _counted = counted;
+        _engine = engine;
+        _id = id;
+        _keepAliveMillis = keepAliveMillis;
+        _queue = new LinkedBlockingQueue<>();
+        _queue.add(initialStatus == null ? END_OF_STREAM : initialStatus);
+        _mapper = new ObjectMapper();
+    }
+
+    @Override
+    public void taskCompleted(final CommunityDetectionResult result) {
+        _queue.add(result == null ? END_OF_STREAM : new CommunityDetectionResultStatus(result));
+    }
+
+    @Override
+    public void statusChanged(final CommunityDetectionResultStatus status) {
+        if (status != null){
+            _queue.add(status);
+        }
+    }
+
+    /**
+     * Denotes if {@code status} is the last status of a task
+     * @param status status to check
+     * @return {@code true} if {@code status} is {@code complete} or {@code failed}
+     */
+    protected static boolean isFinished(final CommunityDetectionResultStatus status){
+        return status != null
+                && (CommunityDetectionResult.COMPLETE_STATUS.equals(status.getStatus())
+                || CommunityDetectionResult.FAILED_STATUS.equals(status.getStatus()));
+    }
+
+    /**
+     * Writes events until task finishes or client disconnects
+     * @param out stream to write to
+     * @throws IOException if there was an error writing, which happens
+     *         when the client disconnects
+     */
+    @Override
+    public void write(final OutputStream out) throws IOException {
+        try {
+            while (true){
+                CommunityDetectionResultStatus status = _queue.poll(_keepAliveMillis,
+                        TimeUnit.MILLISECONDS);
+                if (status == END_OF_STREAM){
+                    return;
+                }
+                if (status == null){
+                    out.write(": keepalive\n\n".getBytes(StandardCharsets.UTF_8));
+                } else {
+                    StringBuilder sb = new StringBuilder();
+                    sb.append("event: ");
+                    sb.append(STATUS_EVENT);
+                    sb.append("\ndata: ");
+                    sb.append(_mapper.writeValueAsString(status));
+                    sb.append("\n\n");
+                    out.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+                }
+                out.flush();
+                if (isFinished(status)){
+                    return;
+                }
+            }
+        } catch(InterruptedException ie){
+            Thread.currentThread().interrupt();
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Unregisters stream from engine and frees its slot, invoked once
+     * written or by caller if stream will never be written. Only the
+     * first call has any effect
+     */
+    public void close(){
+        if (_closed.compareAndSet(false, true) == false){
+            return;
+        }
+        if (_counted){
+            _openStreams.decrementAndGet();
+        }
+        _engine.removeTaskListener(_id, this);
+    }
+}
@@ -0,0 +1,23 @@
+package org.ndexbio.communitydetection.rest.engine.util;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates virtual threads. Only compiled by the {@code jdk21} profile,
+ * {@link TaskThreads} uses it when it is on the classpath and falls back
+ * to platform threads otherwise.
+ *
+ * @author churas
+ */
+public class VirtualThreadFactory {
+
+    /**
+     * Creates factory of virtual threads named {@code name} followed by
+     * a counter
+     * @param name prefix of thread names
+     * @return factory
+     */
+    public static ThreadFactory newThreadFactory(final String name){
+        return Thread.ofVirtual().name(name + "-", 0).factory();
+    }
+}
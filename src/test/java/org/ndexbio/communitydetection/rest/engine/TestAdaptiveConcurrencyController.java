@@ -0,0 +1,214 @@
+package org.ndexbio.communitydetection.rest.engine;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+import org.ndexbio.communitydetection.rest.engine.util.TaskThreads;
+import org.ndexbio.communitydetection.rest.engine.util.ThreadPerTaskExecutor;
+
+/**
+ *
+ * @author churas
+ */
+public class TestAdaptiveConcurrencyController {
+
+    /**
+     * Controller whose measurements are set by the test
+     */
+    private static class FixedController extends AdaptiveConcurrencyController {
+        private double _load = 0.0;
+        private double _headroom = 0.5;
+
+        FixedController(ExecutorService executor, int minWorkers, int maxWorkers){
+            super(executor, minWorkers, maxWorkers);
+        }
+
+        @Override
+        protected double getLoadAverage() {
+            return _load;
+        }
+
+        @Override
+        protected int getAvailableProcessors() {
+            return 4;
+        }
+
+        @Override
+        protected double getMemoryHeadroom() {
+            return _headroom;
+        }
+    }
+
+    private ThreadPoolExecutor newPool(int workers){
+        return new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>());
+    }
+
+    @Test
+    public void testConstructorClampsWorkers(){
+        ThreadPoolExecutor tpe = newPool(10);
+        try {
+            FixedController controller = new FixedController(tpe, 0, 4);
+            assertEquals(1, controller.getMinWorkers());
+            assertEquals(4, controller.getMaxWorkers());
+            assertEquals(4, controller.getWorkers());
+            assertEquals(4, tpe.getMaximumPoolSize());
+
+            controller = new FixedController(tpe, 6, 2);
+            assertEquals(6, controller.getMaxWorkers());
+            assertEquals(6, controller.getWorkers());
+            assertEquals(0, controller.getLastAdjustment());
+            assertEquals(AdaptiveConcurrencyController.HOLD_DECISION, controller.getLastDecision());
+        } finally {
+            tpe.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testUnsupportedExecutor(){
+        ExecutorService forkJoin = Executors.newWorkStealingPool(1);
+        ThreadPerTaskExecutor unbounded = new ThreadPerTaskExecutor(
+                TaskThreads.newThreadFactory("test"), 0);
+        try {
+            for (ExecutorService executor : new ExecutorService[]{forkJoin, unbounded}){
+                try {
+                    new FixedController(executor, 1, 2);
+                    fail("Expected IllegalArgumentException");
+                } catch(IllegalArgumentException iae){
+                    assertEquals("Number of workers of executor cannot be adjusted", iae.getMessage());
+                }
+            }
+        } finally {
+            forkJoin.shutdownNow();
+            unbounded.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testThreadPerTaskExecutor(){
+        ThreadPerTaskExecutor executor = new ThreadPerTaskExecutor(
+                TaskThreads.newThreadFactory("test"), 6);
+        try {
+            FixedController controller = new FixedController(executor, 1, 4);
+            assertEquals(4, controller.getWorkers());
+            assertEquals(4, executor.getMaxConcurrency());
+            controller._load = 8.0;
+            assertEquals(AdaptiveConcurrencyController.DECREASE_DECISION, controller.adjust(0));
+            assertEquals(3, executor.getMaxConcurrency());
+            controller._load = 0.0;
+            assertEquals(AdaptiveConcurrencyController.INCREASE_DECISION, controller.adjust(2));
+            assertEquals(4, executor.getMaxConcurrency());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testAdditiveIncrease(){
+        ThreadPoolExecutor tpe = newPool(1);
+        try {
+            FixedController controller = new FixedController(tpe, 1, 3);
+            assertEquals(AdaptiveConcurrencyController.HOLD_DECISION, controller.adjust(0));
+            assertEquals("no tasks waiting", controller.getLastReason());
+            assertEquals(1, controller.getWorkers());
+
+            assertEquals(AdaptiveConcurrencyController.INCREASE_DECISION, controller.adjust(5));
+            assertEquals(2, controller.getWorkers());
+            assertEquals(AdaptiveConcurrencyController.INCREASE_DECISION, controller.adjust(5));
+            assertEquals(3, controller.getWorkers());
+            assertEquals(3, tpe.getCorePoolSize());
+            assertEquals(3, tpe.getMaximumPoolSize());
+            assertEquals(AdaptiveConcurrencyController.HOLD_DECISION, controller.adjust(5));
+            assertTrue(controller.getLastReason().contains("maximum"));
+            assertEquals(2, controller.getIncreases());
+            assertEquals(0.0, controller.getLoadPerCore(), 0.0001);
+            assertEquals(0.5, controller.getLastMemoryHeadroom(), 0.0001);
+            assertTrue(controller.getLastAdjustment() > 0);
+        } finally {
+            tpe.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testMultiplicativeDecreaseOnLoad(){
+        ThreadPoolExecutor tpe = newPool(8);
+        try {
+            FixedController controller = new FixedController(tpe, 2, 8);
+            controller._load = 6.0;
+            assertEquals(AdaptiveConcurrencyController.DECREASE_DECISION, controller.adjust(5));
+            assertEquals(1.5, controller.getLoadPerCore(), 0.0001);
+            assertTrue(controller.getLastReason().startsWith("load per core 1.50"));
+            assertEquals(6, controller.getWorkers());
+            assertEquals(6, tpe.getMaximumPoolSize());
+            controller.adjust(5);
+            assertEquals(4, controller.getWorkers());
+            controller.adjust(5);
+            assertEquals(3, controller.getWorkers());
+            controller.adjust(5);
+            assertEquals(2, controller.getWorkers());
+            assertEquals(AdaptiveConcurrencyController.HOLD_DECISION, controller.adjust(5));
+            assertTrue(controller.getLastReason().contains("minimum"));
+            assertEquals(4, controller.getDecreases());
+
+            // unknown load is ignored
+            controller._load = -1;
+            assertEquals(AdaptiveConcurrencyController.INCREASE_DECISION, controller.adjust(5));
+            assertEquals(-1, controller.getLoadPerCore(), 0.0001);
+        } finally {
+            tpe.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testDecreaseOnMemory(){
+        ThreadPoolExecutor tpe = newPool(4);
+        try {
+            FixedController controller = new FixedController(tpe, 1, 4);
+            controller._headroom = 0.05;
+            assertEquals(AdaptiveConcurrencyController.DECREASE_DECISION, controller.adjust(0));
+            assertTrue(controller.getLastReason().startsWith("available memory"));
+            assertEquals(3, controller.getWorkers());
+
+            // unknown headroom is ignored
+            controller._headroom = -1;
+            assertEquals(AdaptiveConcurrencyController.HOLD_DECISION, controller.adjust(0));
+        } finally {
+            tpe.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testDecreaseOnLatency(){
+        ThreadPoolExecutor tpe = newPool(3);
+        try {
+            FixedController controller = new FixedController(tpe, 1, 4);
+            assertEquals(0.0, controller.getLatencyGradient(), 0.0001);
+            assertEquals(-1, controller.getTaskLatency());
+            controller.taskCompleted(-5);
+            assertEquals(-1, controller.getTaskLatency());
+            for (int i = 0; i < 20; i++){
+                controller.taskCompleted(1000);
+            }
+            assertEquals(1000, controller.getTaskLatency());
+            assertEquals(1.0, controller.getLatencyGradient(), 0.0001);
+            assertEquals(AdaptiveConcurrencyController.INCREASE_DECISION, controller.adjust(1));
+
+            // a run of slow tasks moves recent average well past long term
+            for (int i = 0; i < 5; i++){
+                controller.taskCompleted(10000);
+            }
+            assertTrue(controller.getLatencyGradient() > AdaptiveConcurrencyController.MAX_LATENCY_GRADIENT);
+            assertEquals(AdaptiveConcurrencyController.DECREASE_DECISION, controller.adjust(1));
+            assertTrue(controller.getLastReason().startsWith("task latency grew"));
+            assertEquals(3, controller.getWorkers());
+        } finally {
+            tpe.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package org.ndexbio.communitydetection.rest.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+/**
+ *
+ * @author churas
+ */
+public class TestAdmissionController {
+
+    @Test
+    public void testNoLimits() throws Exception {
+        AdmissionController ac = new AdmissionController(0, 0, 0);
+        ac.admit(100000, Long.MAX_VALUE / 2, 1000, 100);
+        assertEquals(0.0, ac.getDrainRate(), 0.0001);
+        assertEquals(AdmissionController.DEFAULT_RETRY_AFTER, ac.getRetryAfter(5));
+    }
+
+    @Test
+    public void testQueuedTasksLimit() throws Exception {
+        AdmissionController ac = new AdmissionController(10, 0, 0);
+        ac.admit(9, 0, 0, 50);
+        for (int i = 0; i < 30; i++){
+            ac.taskCompleted();
+        }
+        // 30 tasks over 300 seconds is 0.1 tasks per second
+        assertEquals(0.1, ac.getDrainRate(), 0.0001);
+        try {
+            ac.admit(12, 0, 0, 50);
+            fail("Expected CommunityDetectionOverloadedException");
+        } catch(CommunityDetectionOverloadedException coe){
+            assertEquals(CommunityDetectionOverloadedException.TOO_MANY_REQUESTS_STATUS,
+                    coe.getStatusCode());
+            // 3 tasks need to finish to get under limit
+            assertEquals(30, coe.getRetryAfter());
+            assertTrue(coe.getMessage().contains("12 tasks"));
+        }
+    }
+
+    @Test
+    public void testPendingBytesLimit() throws Exception {
+        AdmissionController ac = new AdmissionController(0, 1000, 0);
+        // first task is always let in no matter its size
+        ac.admit(0, 0, 5000, 0);
+        ac.admit(4, 800, 200, 0);
+        try {
+            ac.admit(4, 800, 201, 0);
+            fail("Expected CommunityDetectionOverloadedException");
+        } catch(CommunityDetectionOverloadedException coe){
+            assertEquals(CommunityDetectionOverloadedException.TOO_MANY_REQUESTS_STATUS,
+                    coe.getStatusCode());
+            assertEquals(AdmissionController.DEFAULT_RETRY_AFTER, coe.getRetryAfter());
+        }
+    }
+
+    @Test
+    public void testDiskFullLimit() throws Exception {
+        AdmissionController ac = new AdmissionController(0, 0, 90);
+        ac.admit(0, 0, 0, 89);
+        try {
+            ac.admit(0, 0, 0, 90);
+            fail("Expected CommunityDetectionOverloadedException");
+        } catch(CommunityDetectionOverloadedException coe){
+            assertEquals(CommunityDetectionOverloadedException.SERVICE_UNAVAILABLE_STATUS,
+                    coe.getStatusCode());
+            assertTrue(coe.getMessage().contains("90%"));
+        }
+    }
+
+    @Test
+    public void testGetRetryAfterBounds(){
+        AdmissionController ac = new AdmissionController(0, 0, 0);
+        for (int i = 0; i < 3000; i++){
+            ac.taskCompleted();
+        }
+        assertEquals(AdmissionController.MIN_RETRY_AFTER, ac.getRetryAfter(1));
+        assertEquals(AdmissionController.MAX_RETRY_AFTER, ac.getRetryAfter(100000));
+    }
+}
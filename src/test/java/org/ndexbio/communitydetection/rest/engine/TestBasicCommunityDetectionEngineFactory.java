@@ -4,14 +4,25 @@ package org.ndexbio.communitydetection.rest.engine;
 import static org.easymock.EasyMock.expect;
 
 import static org.easymock.EasyMock.mock;
+import static org.easymock.EasyMock.niceMock;
 import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.verify;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import org.junit.Rule;
 import org.junit.rules.TemporaryFolder;
+import java.io.File;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadPoolExecutor;
 import org.junit.Test;
+import org.ndexbio.communitydetection.rest.engine.util.DockerEngineClient;
 import org.ndexbio.communitydetection.rest.model.CommunityDetectionAlgorithms;
 import org.ndexbio.communitydetection.rest.model.ServerStatus;
+import org.ndexbio.communitydetection.rest.model.exceptions.CommunityDetectionException;
 import org.ndexbio.communitydetection.rest.services.Configuration;
 
 
@@ -22,6 +33,8 @@ import org.ndexbio.communitydetection.rest.services.Configuration;
  */
 public class TestBasicCommunityDetectionEngineFactory {
     
+    @Rule
+    public TemporaryFolder _folder = new TemporaryFolder();
 
    
     @Test
@@ -34,6 +47,30 @@ public class TestBasicCommunityDetectionEngineFactory {
         CommunityDetectionAlgorithms cdas = new CommunityDetectionAlgorithms();
 
         expect(mockConfig.getAlgorithms()).andReturn(cdas);
+        expect(mockConfig.getAlgorithmExecutionSettings()).andReturn(null);
+        expect(mockConfig.getResultCacheMaxEntries()).andReturn(0);
+        expect(mockConfig.getResultCacheTTL()).andReturn(86400L);
+        expect(mockConfig.getPoolSize()).andReturn(0);
+        expect(mockConfig.isJournalEnabled()).andReturn(false);
+        expect(mockConfig.isJournalRetryRunning()).andReturn(false);
+        expect(mockConfig.isClusterEnabled()).andReturn(false);
+        expect(mockConfig.getClusterLeaseTTL()).andReturn(60L);
+        expect(mockConfig.getClientWeights()).andReturn(new HashMap<>());
+        expect(mockConfig.getAdmissionMaxQueuedTasks()).andReturn(0);
+        expect(mockConfig.getAdmissionMaxPendingBytes()).andReturn(0L);
+        expect(mockConfig.getAdmissionMaxDiskFull()).andReturn(0);
+        expect(mockConfig.getReaperTTL()).andReturn(0L);
+        expect(mockConfig.getReaperMaxBytes()).andReturn(0L);
+        expect(mockConfig.getReaperInterval()).andReturn(60L);
+        expect(mockConfig.getStatusCacheMaxEntries()).andReturn(10000);
+        expect(mockConfig.getStatusCacheTTL()).andReturn(3600L);
+        expect(mockConfig.getParsedResultCacheMaxBytes()).andReturn(67108864L);
+        expect(mockConfig.getTaskStore()).andReturn(Configuration.TASK_STORE_DIRECTORY);
+        expect(mockConfig.getDockerSocket()).andReturn("");
+        expect(mockConfig.getCpusetCpus()).andReturn("");
+        expect(mockConfig.getMinWorkers()).andReturn(2);
+        expect(mockConfig.getMaxWorkers()).andReturn(8);
+        expect(mockConfig.getWorkersAdjustInterval()).andReturn(30L);
         replay(mockConfig);
         BasicCommunityDetectionEngineFactory factory = new BasicCommunityDetectionEngineFactory(mockConfig);
         CommunityDetectionEngine cde = factory.getCommunityDetectionEngine();
@@ -42,5 +79,135 @@ public class TestBasicCommunityDetectionEngineFactory {
         assertEquals(cdas, cde.getAlgorithms());
         ServerStatus ss = cde.getServerStatus();
         assertEquals(ServerStatus.OK_STATUS, ss.getStatus());
+        ExtendedServerStatus.ConcurrencyControllerStatus ccs = ((ExtendedServerStatus)ss).getConcurrencyController();
+        assertEquals(5, ccs.getWorkers());
+        assertEquals(2, ccs.getMinWorkers());
+        assertEquals(8, ccs.getMaxWorkers());
+        assertEquals(AdaptiveConcurrencyController.HOLD_DECISION, ccs.getLastDecision());
     }
-}
\ No newline at end of file
+    
+    @Test
+    public void testGetAlgorithmExecutorServices() throws Exception {
+        Configuration mockConfig = mock(Configuration.class);
+        expect(mockConfig.getNumberWorkers()).andReturn(5);
+        expect(mockConfig.getTaskDirectory()).andReturn("/task");
+        expect(mockConfig.getDockerCommand()).andReturn("/bin/docker");
+        expect(mockConfig.getAlgorithms()).andReturn(new CommunityDetectionAlgorithms());
+        LinkedHashMap<String, AlgorithmExecutionSettings> settings = new LinkedHashMap<>();
+        AlgorithmExecutionSettings bounded = new AlgorithmExecutionSettings();
+        bounded.setMaxConcurrency(2);
+        bounded.setQueueCapacity(3);
+        settings.put("clixo", bounded);
+        AlgorithmExecutionSettings unbounded = new AlgorithmExecutionSettings();
+        unbounded.setMaxConcurrency(1);
+        settings.put("louvain", unbounded);
+        settings.put("infomap", new AlgorithmExecutionSettings());
+        expect(mockConfig.getAlgorithmExecutionSettings()).andReturn(settings);
+        expect(mockConfig.getResultCacheMaxEntries()).andReturn(0);
+        expect(mockConfig.getResultCacheTTL()).andReturn(86400L);
+        expect(mockConfig.getPoolSize()).andReturn(0);
+        expect(mockConfig.isJournalEnabled()).andReturn(false);
+        expect(mockConfig.isJournalRetryRunning()).andReturn(false);
+        expect(mockConfig.isClusterEnabled()).andReturn(false);
+        expect(mockConfig.getClusterLeaseTTL()).andReturn(60L);
+        expect(mockConfig.getClientWeights()).andReturn(new HashMap<>());
+        expect(mockConfig.getAdmissionMaxQueuedTasks()).andReturn(0);
+        expect(mockConfig.getAdmissionMaxPendingBytes()).andReturn(0L);
+        expect(mockConfig.getAdmissionMaxDiskFull()).andReturn(0);
+        expect(mockConfig.getReaperTTL()).andReturn(0L);
+        expect(mockConfig.getReaperMaxBytes()).andReturn(0L);
+        expect(mockConfig.getReaperInterval()).andReturn(60L);
+        expect(mockConfig.getStatusCacheMaxEntries()).andReturn(10000);
+        expect(mockConfig.getStatusCacheTTL()).andReturn(3600L);
+        expect(mockConfig.getParsedResultCacheMaxBytes()).andReturn(67108864L);
+        expect(mockConfig.getTaskStore()).andReturn(Configuration.TASK_STORE_LOG);
+        expect(mockConfig.getDockerSocket()).andReturn(DockerEngineClient.DEFAULT_SOCKET);
+        expect(mockConfig.getCpusetCpus()).andReturn("0-3");
+        expect(mockConfig.getMinWorkers()).andReturn(1);
+        expect(mockConfig.getMaxWorkers()).andReturn(0);
+        expect(mockConfig.getWorkersAdjustInterval()).andReturn(30L);
+        replay(mockConfig);
+        BasicCommunityDetectionEngineFactory factory = new BasicCommunityDetectionEngineFactory(mockConfig);
+        Map<String, ThreadPoolExecutor> pools = factory.getAlgorithmExecutorServices();
+        try {
+            assertEquals(2, pools.size());
+            assertEquals(2, pools.get("clixo").getMaximumPoolSize());
+            assertEquals(3, pools.get("clixo").getQueue().remainingCapacity());
+            assertEquals(1, pools.get("louvain").getMaximumPoolSize());
+            assertEquals(Integer.MAX_VALUE, pools.get("louvain").getQueue().remainingCapacity());
+        } finally {
+            for (ThreadPoolExecutor tpe : pools.values()){
+                tpe.shutdownNow();
+            }
+        }
+        verify(mockConfig);
+    }
+    
+    @Test
+    public void testGetTaskStore() throws Exception {
+        File tempDir = _folder.newFolder();
+        try {
+            Configuration mockConfig = niceMock(Configuration.class);
+            expect(mockConfig.getTaskDirectory()).andReturn(tempDir.getAbsolutePath()).anyTimes();
+            expect(mockConfig.getTaskStore()).andReturn(Configuration.TASK_STORE_LOG);
+            replay(mockConfig);
+            TaskStore taskStore = new BasicCommunityDetectionEngineFactory(mockConfig).getTaskStore();
+            assertTrue(taskStore instanceof LogTaskStore);
+            assertTrue(new File(tempDir, LogTaskStore.LOG_FILE).isFile());
+            taskStore.close();
+            
+            // log is not shared between servers
+            mockConfig = niceMock(Configuration.class);
+            expect(mockConfig.getTaskDirectory()).andReturn(tempDir.getAbsolutePath()).anyTimes();
+            expect(mockConfig.isClusterEnabled()).andReturn(true);
+            expect(mockConfig.getTaskStore()).andReturn(Configuration.TASK_STORE_LOG);
+            replay(mockConfig);
+            taskStore = new BasicCommunityDetectionEngineFactory(mockConfig).getTaskStore();
+            assertTrue(taskStore instanceof DirectoryTaskStore);
+            
+            mockConfig = niceMock(Configuration.class);
+            expect(mockConfig.getTaskDirectory()).andReturn(tempDir.getAbsolutePath()).anyTimes();
+            expect(mockConfig.getTaskStore()).andReturn("foo");
+            replay(mockConfig);
+            try {
+                new BasicCommunityDetectionEngineFactory(mockConfig).getTaskStore();
+                fail("Expected CommunityDetectionException");
+            } catch(CommunityDetectionException cde){
+                assertEquals("Unknown value for " + Configuration.TASK_STORE + ": foo",
+                        cde.getMessage());
+            }
+        } finally {
+            _folder.delete();
+        }
+    }
+    
+    @Test
+    public void testGetDockerEngineClient() throws Exception {
+        File tempDir = _folder.newFolder();
+        try {
+            Configuration mockConfig = niceMock(Configuration.class);
+            expect(mockConfig.getDockerSocket()).andReturn("");
+            replay(mockConfig);
+            assertNull(new BasicCommunityDetectionEngineFactory(mockConfig).getDockerEngineClient());
+            
+            File socket = new File(tempDir, "docker.sock");
+            mockConfig = niceMock(Configuration.class);
+            expect(mockConfig.getDockerSocket()).andReturn(socket.getAbsolutePath());
+            replay(mockConfig);
+            assertNull(new BasicCommunityDetectionEngineFactory(mockConfig).getDockerEngineClient());
+            
+            assertTrue(socket.createNewFile());
+            mockConfig = niceMock(Configuration.class);
+            expect(mockConfig.getDockerSocket()).andReturn(socket.getAbsolutePath());
+            replay(mockConfig);
+            DockerEngineClient client = new BasicCommunityDetectionEngineFactory(mockConfig).getDockerEngineClient();
+            if (DockerEngineClient.isSupported()){
+                assertEquals(socket.getAbsolutePath(), client.getSocketPath());
+            } else {
+                assertNull(client);
+            }
+        } finally {
+            _folder.delete();
+        }
+    }
+}
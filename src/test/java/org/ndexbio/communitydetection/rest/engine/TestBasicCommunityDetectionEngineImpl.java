@@ -5,15 +5,27 @@ import com.fasterxml.jackson.databind.node.TextNode;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.FutureTask;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import org.easymock.Capture;
+import org.easymock.CaptureType;
+import static org.easymock.EasyMock.anyObject;
 import static org.easymock.EasyMock.capture;
 import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
 import static org.easymock.EasyMock.mock;
 import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.verify;
@@ -21,6 +33,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import org.junit.Rule;
@@ -28,6 +41,7 @@ import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import org.ndexbio.communitydetection.rest.engine.util.CommunityDetectionRequestValidator;
 import org.ndexbio.communitydetection.rest.engine.util.DockerCommunityDetectionRunner;
+import org.ndexbio.communitydetection.rest.engine.util.InputFileCommunityDetectionRequest;
 import org.ndexbio.communitydetection.rest.model.CommunityDetectionAlgorithm;
 import org.ndexbio.communitydetection.rest.model.CommunityDetectionAlgorithms;
 import org.ndexbio.communitydetection.rest.model.CommunityDetectionRequest;
@@ -54,11 +68,147 @@ public class TestBasicCommunityDetectionEngineImpl {
     }
    
     @Test
-    public void testthreadSleep() throws Exception {
-        CommunityDetectionEngineImpl engine = new CommunityDetectionEngineImpl(null, "task",
-                "docker", null, null);
-        engine.updateThreadSleepTime(1);
-        engine.threadSleep();
+    public void testProcessCompletedTask() throws Exception {
+        File tempDir = _folder.newFolder();
+        try {
+            CommunityDetectionEngineImpl engine = new CommunityDetectionEngineImpl(null,
+                    tempDir.getAbsolutePath(), "docker", null, null);
+            File taskDir = new File(tempDir.getAbsolutePath() + File.separator + "1");
+            assertTrue(taskDir.mkdirs());
+            final CommunityDetectionResult cdr = new CommunityDetectionResult();
+            cdr.setId("1");
+            cdr.setMessage("message");
+            CommunityDetectionFutureTask task = new CommunityDetectionFutureTask("1",
+                    new Callable<CommunityDetectionResult>() {
+                @Override
+                public CommunityDetectionResult call() throws Exception {
+                    return cdr;
+                }
+            }, null);
+            task.run();
+            engine.processCompletedTask(task);
+            CommunityDetectionResult cRes = engine.getResult("1");
+            assertEquals("message", cRes.getMessage());
+            
+            ServerStatus ss = engine.getServerStatus();
+            assertEquals(1, ss.getCompletedTasks());
+            assertEquals(0, ss.getCanceledTasks());
+        } finally {
+            _folder.delete();
+        }
+    }
+    
+    @Test
+    public void testProcessCompletedTaskCanceled() throws Exception {
+        File tempDir = _folder.newFolder();
+        try {
+            CommunityDetectionEngineImpl engine = new CommunityDetectionEngineImpl(null,
+                    tempDir.getAbsolutePath(), "docker", null, null);
+            LinkedBlockingQueue<CommunityDetectionFutureTask> queue = new LinkedBlockingQueue<>();
+            CommunityDetectionFutureTask task = new CommunityDetectionFutureTask("1",
+                    new Callable<CommunityDetectionResult>() {
+                @Override
+                public CommunityDetectionResult call() throws Exception {
+                    return new CommunityDetectionResult();
+                }
+            }, queue);
+            assertTrue(task.cancel(true));
+            assertEquals(task, queue.poll());
+            engine.processCompletedTask(task);
+            ServerStatus ss = engine.getServerStatus();
+            assertEquals(0, ss.getCompletedTasks());
+            assertEquals(1, ss.getCanceledTasks());
+        } finally {
+            _folder.delete();
+        }
+    }
+    
+    @Test
+    public void testAddTaskListener() throws Exception {
+        try {
+            File tempDir = _folder.newFolder();
+            
+            File confFile = new File(tempDir.getAbsolutePath() + File.separator + "foo.conf");
+            
+            FileWriter fw = new FileWriter(confFile);
+            fw.write(Configuration.TASK_DIR + " = " + tempDir.getAbsolutePath() + "\n");
+            fw.flush();
+            fw.close();
+            Configuration.setAlternateConfigurationFile(confFile.getAbsolutePath());
+            CommunityDetectionAlgorithms algos = new CommunityDetectionAlgorithms();
+            CommunityDetectionAlgorithm cda = new CommunityDetectionAlgorithm();
+            cda.setName("foo");
+            LinkedHashMap<String, CommunityDetectionAlgorithm> aMap = new LinkedHashMap<>();
+            aMap.put(cda.getName(), cda);
+            algos.setAlgorithms(aMap);
+            CommunityDetectionRequestValidator mockValidator = mock(CommunityDetectionRequestValidator.class);
+            CommunityDetectionRequest cdr = new CommunityDetectionRequest();
+            cdr.setAlgorithm("foo");
+            cdr.setData(TextNode.valueOf("hi"));
+            expect(mockValidator.validateRequest(cda, cdr)).andReturn(null).times(2);
+            ExecutorService mockES = mock(ExecutorService.class);
+            mockES.execute(anyObject());
+            expectLastCall().times(2);
+            replay(mockES);
+            replay(mockValidator);
+            CommunityDetectionEngineImpl engine = new CommunityDetectionEngineImpl(mockES,
+                    tempDir.getAbsolutePath(), "docker", algos, mockValidator);
+            final List<CommunityDetectionResult> notified = new ArrayList<>();
+            CommunityDetectionTaskListener listener = (res) -> notified.add(res);
+            try {
+                engine.addTaskListener(null, listener);
+                fail("Expected CommunityDetectionException");
+            } catch(CommunityDetectionException cde){
+                assertEquals("Id is null", cde.getMessage());
+            }
+            try {
+                engine.addTaskListener("1", null);
+                fail("Expected CommunityDetectionException");
+            } catch(CommunityDetectionException cde){
+                assertEquals("Listener is null", cde.getMessage());
+            }
+            try {
+                engine.addTaskListener("1", listener);
+                fail("Expected CommunityDetectionException");
+            } catch(CommunityDetectionException cde){
+                assertEquals("No task with id of 1 found", cde.getMessage());
+            }
+            
+            // listener added before task completes is notified once
+            String id = engine.request(cdr);
+            engine.addTaskListener(id, listener);
+            assertTrue(notified.isEmpty());
+            final CommunityDetectionResult taskRes = new CommunityDetectionResult(1L);
+            taskRes.setId(id);
+            taskRes.setStatus(CommunityDetectionResult.COMPLETE_STATUS);
+            CommunityDetectionFutureTask task = new CommunityDetectionFutureTask(id,
+                    new Callable<CommunityDetectionResult>() {
+                @Override
+                public CommunityDetectionResult call() throws Exception {
+                    return taskRes;
+                }
+            }, null);
+            task.run();
+            engine.processCompletedTask(task);
+            assertEquals(1, notified.size());
+            assertEquals(taskRes, notified.get(0));
+            
+            // listener added after task completes is notified right away
+            engine.addTaskListener(id, listener);
+            assertEquals(2, notified.size());
+            assertEquals(CommunityDetectionResult.COMPLETE_STATUS, notified.get(1).getStatus());
+            
+            // listener of deleted task is told task failed
+            String deletedId = engine.request(cdr);
+            engine.addTaskListener(deletedId, listener);
+            engine.delete(deletedId);
+            assertEquals(3, notified.size());
+            assertEquals(CommunityDetectionResult.FAILED_STATUS, notified.get(2).getStatus());
+            assertEquals("Task " + deletedId + " was deleted", notified.get(2).getMessage());
+            verify(mockES);
+        } finally {
+            _folder.delete();
+        }
     }
     
     @Test
@@ -69,6 +219,80 @@ public class TestBasicCommunityDetectionEngineImpl {
         engine.run();
     }
     
+    @Test
+    public void testCompletedTasksProcessedWhileTaskStoreCompacts() throws Exception {
+        File tempDir = _folder.newFolder();
+        ExecutorService es = Executors.newSingleThreadExecutor();
+        CountDownLatch compacting = new CountDownLatch(1);
+        CountDownLatch finishCompact = new CountDownLatch(1);
+        try {
+            CommunityDetectionAlgorithms algos = new CommunityDetectionAlgorithms();
+            CommunityDetectionAlgorithm cda = new CommunityDetectionAlgorithm();
+            cda.setName("foo");
+            LinkedHashMap<String, CommunityDetectionAlgorithm> aMap = new LinkedHashMap<>();
+            aMap.put(cda.getName(), cda);
+            algos.setAlgorithms(aMap);
+            CommunityDetectionRequest cdr = new CommunityDetectionRequest();
+            cdr.setAlgorithm("foo");
+            cdr.setData(TextNode.valueOf("hi"));
+            CommunityDetectionRequestValidator mockValidator = mock(CommunityDetectionRequestValidator.class);
+            expect(mockValidator.validateRequest(cda, cdr)).andReturn(null);
+            replay(mockValidator);
+            CommunityDetectionEngineImpl engine = new CommunityDetectionEngineImpl(es,
+                    tempDir.getAbsolutePath(), "docker", algos, mockValidator){
+                @Override
+                protected Callable<CommunityDetectionResult> createTask(final String id,
+                        final CommunityDetectionRequest request, long startTime,
+                        final String dockerImage, final String executor) {
+                    new File(tempDir, id).mkdirs();
+                    return () -> {
+                        CommunityDetectionResult res = new CommunityDetectionResult(startTime);
+                        res.setId(id);
+                        res.setStatus(CommunityDetectionResult.COMPLETE_STATUS);
+                        res.setProgress(100);
+                        return res;
+                    };
+                }
+            };
+            engine.setTaskStore(new DirectoryTaskStore(tempDir.getAbsolutePath()){
+                @Override
+                public void compact() {
+                    compacting.countDown();
+                    try {
+                        finishCompact.await();
+                    } catch(InterruptedException ie){
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            engine.updateThreadSleepTime(10L);
+            Thread engineThread = new Thread(engine);
+            engineThread.start();
+            try {
+                assertTrue(compacting.await(10, TimeUnit.SECONDS));
+                String id = engine.request(cdr);
+                long deadline = System.currentTimeMillis() + 10000L;
+                CommunityDetectionResultStatus status = engine.getStatus(id);
+                while (!CommunityDetectionResult.COMPLETE_STATUS.equals(status.getStatus())
+                        && System.currentTimeMillis() < deadline){
+                    Thread.sleep(10);
+                    status = engine.getStatus(id);
+                }
+                // task completed while compaction was still blocked
+                assertEquals(CommunityDetectionResult.COMPLETE_STATUS, status.getStatus());
+                assertEquals(1L, finishCompact.getCount());
+            } finally {
+                finishCompact.countDown();
+                engine.shutdown();
+                engineThread.join(10000);
+            }
+            assertFalse(engineThread.isAlive());
+        } finally {
+            es.shutdownNow();
+            _folder.delete();
+        }
+    }
+    
     @Test
     public void testLogServerStatus(){
         // try with null
@@ -232,6 +456,40 @@ public class TestBasicCommunityDetectionEngineImpl {
         } 
     }
     
+    @Test
+    public void testopenResult() throws Exception {
+        try {
+            File tempDir = _folder.newFolder();
+            CommunityDetectionEngineImpl engine = new CommunityDetectionEngineImpl(null,
+                    tempDir.getAbsolutePath(), "docker", null, null);
+            
+            //try with null
+            try {
+                engine.openResult(null);
+                fail("Expected CommunityDetectionException");
+            } catch(CommunityDetectionException cde){
+                assertEquals("Id is null", cde.getMessage());
+            }
+            
+            //try with invalid id
+            assertNull(engine.openResult("1"));
+            
+            File taskDir = new File(tempDir.getAbsolutePath() + File.separator + "1");
+            assertTrue(taskDir.mkdirs());
+            CommunityDetectionResult cdr = new CommunityDetectionResult();
+            cdr.setId("1");
+            cdr.setMessage("message");
+            engine.saveCommunityDetectionResultToFilesystem(cdr);
+            File resFile = new File(engine.getCommunityDetectionResultFilePath("1"));
+            try (StoredResult stored = engine.openResult("1")){
+                assertEquals(0, stored.getOffset());
+                assertEquals(resFile.length(), stored.getLength());
+            }
+        } finally {
+            _folder.delete();
+        } 
+    }
+    
     @Test
     public void testgetStatus() throws IOException {
         try {
@@ -406,8 +664,9 @@ public class TestBasicCommunityDetectionEngineImpl {
             expect(mockValidator.validateRequest(cda, cdr)).andReturn(null);
 
             ExecutorService mockES = mock(ExecutorService.class);
-            Capture<DockerCommunityDetectionRunner> cappy = Capture.newInstance();
-            expect(mockES.submit(capture(cappy))).andThrow(new RejectedExecutionException("failed"));
+            Capture<CommunityDetectionFutureTask> cappy = Capture.newInstance();
+            mockES.execute(capture(cappy));
+            expectLastCall().andThrow(new RejectedExecutionException("failed"));
             replay(mockES);
             replay(mockValidator);
             CommunityDetectionEngineImpl engine = new CommunityDetectionEngineImpl(mockES,
@@ -429,21 +688,169 @@ public class TestBasicCommunityDetectionEngineImpl {
     }
     
     @Test
-    public void testRequestSuccess() throws IOException {
+    public void testRejectedRequestLeavesNothingBehind() throws Exception {
+        try {
+            File tempDir = _folder.newFolder();
+            CommunityDetectionAlgorithms algos = new CommunityDetectionAlgorithms();
+            CommunityDetectionAlgorithm cda = new CommunityDetectionAlgorithm();
+            cda.setName("foo");
+            LinkedHashMap<String, CommunityDetectionAlgorithm> aMap = new LinkedHashMap<>();
+            aMap.put(cda.getName(), cda);
+            algos.setAlgorithms(aMap);
+            CommunityDetectionRequest cdr = new CommunityDetectionRequest();
+            cdr.setAlgorithm("foo");
+            cdr.setData(TextNode.valueOf("hi"));
+            CommunityDetectionRequestValidator mockValidator = mock(CommunityDetectionRequestValidator.class);
+            expect(mockValidator.validateRequest(cda, cdr)).andReturn(null);
+
+            ExecutorService mockES = mock(ExecutorService.class);
+            mockES.execute(anyObject());
+            expectLastCall().andThrow(new RejectedExecutionException("full"));
+            replay(mockES);
+            replay(mockValidator);
+            File taskDir = new File(tempDir, "tasks");
+            taskDir.mkdirs();
+            CommunityDetectionEngineImpl engine = new CommunityDetectionEngineImpl(mockES,
+                    taskDir.getAbsolutePath(), "docker", algos, mockValidator);
+            TaskStatusStore store = new TaskStatusStore();
+            engine.setTaskStatusStore(store);
+            // journal writes input of task to its task directory
+            engine.setTaskJournal(new TaskJournal(tempDir.getAbsolutePath()));
+            try {
+                engine.request(cdr);
+                fail("Expected CommunityDetectionOverloadedException");
+            } catch(CommunityDetectionOverloadedException coe){
+                assertEquals(CommunityDetectionOverloadedException.TOO_MANY_REQUESTS_STATUS,
+                        coe.getStatusCode());
+            }
+            assertEquals(0, store.getActiveCount());
+            assertEquals(0, taskDir.list().length);
+            verify(mockES);
+            verify(mockValidator);
+        } finally {
+            _folder.delete();
+        }
+    }
+    
+    @Test
+    public void testRequestRejectedByAdmissionController() throws Exception {
         try {
             File tempDir = _folder.newFolder();
+            CommunityDetectionAlgorithms algos = new CommunityDetectionAlgorithms();
+            CommunityDetectionAlgorithm cda = new CommunityDetectionAlgorithm();
+            cda.setName("foo");
+            LinkedHashMap<String, CommunityDetectionAlgorithm> aMap = new LinkedHashMap<>();
+            aMap.put(cda.getName(), cda);
+            algos.setAlgorithms(aMap);
+            CommunityDetectionRequestValidator mockValidator = mock(CommunityDetectionRequestValidator.class);
+            CommunityDetectionRequest cdr = new CommunityDetectionRequest();
+            cdr.setAlgorithm("foo");
+            cdr.setData(TextNode.valueOf("0123456789"));
+            expect(mockValidator.validateRequest(cda, cdr)).andReturn(null).times(5);
+            ExecutorService mockES = mock(ExecutorService.class);
+            mockES.execute(anyObject());
+            expectLastCall().times(3);
+            replay(mockES);
+            replay(mockValidator);
+            CommunityDetectionEngineImpl engine = new CommunityDetectionEngineImpl(mockES,
+                    tempDir.getAbsolutePath(), "docker", algos, mockValidator);
+            engine.setAdmissionController(new AdmissionController(2, 15, 0));
             
-            File confFile = new File(tempDir.getAbsolutePath() + File.separator + "foo.conf");
+            String id = engine.request(cdr);
             
-            FileWriter fw = new FileWriter(confFile);
+            // second task would put pending input over 15 bytes
+            try {
+                engine.request(cdr);
+                fail("Expected CommunityDetectionOverloadedException");
+            } catch(CommunityDetectionOverloadedException coe){
+                assertEquals(CommunityDetectionOverloadedException.TOO_MANY_REQUESTS_STATUS,
+                        coe.getStatusCode());
+                assertEquals(AdmissionController.DEFAULT_RETRY_AFTER, coe.getRetryAfter());
+            }
             
-            fw.write(Configuration.TASK_DIR + " = " + tempDir.getAbsolutePath() + "\n");
-            fw.write(Configuration.MOUNT_OPTIONS + " = :ro,z\n");
-            fw.write(Configuration.ALGORITHM_TIMEOUT + " = 10\n");
+            // once first task completes its input no longer counts
+            final CommunityDetectionResult taskRes = new CommunityDetectionResult(1L);
+            taskRes.setId(id);
+            taskRes.setStatus(CommunityDetectionResult.COMPLETE_STATUS);
+            CommunityDetectionFutureTask task = new CommunityDetectionFutureTask(id, "foo",
+                    () -> taskRes, null);
+            task.run();
+            engine.processCompletedTask(task);
+            engine.request(cdr);
             
-            fw.flush();
-            fw.close();
-            Configuration.setAlternateConfigurationFile(confFile.getAbsolutePath());
+            // queue limit of 2 tasks
+            engine.setAdmissionController(new AdmissionController(2, 0, 0));
+            engine.request(cdr);
+            try {
+                engine.request(cdr);
+                fail("Expected CommunityDetectionOverloadedException");
+            } catch(CommunityDetectionOverloadedException coe){
+                assertEquals(CommunityDetectionOverloadedException.TOO_MANY_REQUESTS_STATUS,
+                        coe.getStatusCode());
+            }
+            assertEquals(2, engine.getServerStatus().getQueuedTasks());
+            verify(mockES);
+        } finally {
+            _folder.delete();
+        }
+    }
+    
+    @Test
+    public void testCompletedTaskRemovedByTaskReaper() throws Exception {
+        try {
+            File tempDir = _folder.newFolder();
+            CommunityDetectionAlgorithms algos = new CommunityDetectionAlgorithms();
+            CommunityDetectionAlgorithm cda = new CommunityDetectionAlgorithm();
+            cda.setName("foo");
+            LinkedHashMap<String, CommunityDetectionAlgorithm> aMap = new LinkedHashMap<>();
+            aMap.put(cda.getName(), cda);
+            algos.setAlgorithms(aMap);
+            CommunityDetectionRequestValidator mockValidator = mock(CommunityDetectionRequestValidator.class);
+            CommunityDetectionRequest cdr = new CommunityDetectionRequest();
+            cdr.setAlgorithm("foo");
+            cdr.setData(TextNode.valueOf("hi"));
+            expect(mockValidator.validateRequest(cda, cdr)).andReturn(null);
+            ExecutorService mockES = mock(ExecutorService.class);
+            mockES.execute(anyObject());
+            expectLastCall();
+            replay(mockES);
+            replay(mockValidator);
+            CommunityDetectionEngineImpl engine = new CommunityDetectionEngineImpl(mockES,
+                    tempDir.getAbsolutePath(), "docker", algos, mockValidator);
+            TaskReaper reaper = new TaskReaper(tempDir.getAbsolutePath(), 60000L, 0L);
+            engine.setTaskReaper(reaper, 0L);
+            
+            String id = engine.request(cdr);
+            new File(tempDir, id).mkdirs();
+            final CommunityDetectionResult taskRes = new CommunityDetectionResult(1L);
+            taskRes.setId(id);
+            taskRes.setStatus(CommunityDetectionResult.COMPLETE_STATUS);
+            CommunityDetectionFutureTask task = new CommunityDetectionFutureTask(id, "foo",
+                    () -> taskRes, null);
+            task.run();
+            engine.processCompletedTask(task);
+            assertEquals(1, reaper.getRetainedTasks());
+            
+            engine.reapTasks();
+            assertNotNull(engine.getResult(id));
+            ExtendedServerStatus ss = engine.getExtendedServerStatus();
+            assertEquals(1, ss.getTaskReaper().getRetainedTasks());
+            assertTrue(ss.getTaskReaper().getRetainedBytes() > 0);
+            assertEquals(0L, ss.getTaskReaper().getEvictedTasks());
+            assertTrue(new File(tempDir, TaskReaper.INDEX_FILE).isFile());
+            
+            engine.delete(id);
+            assertEquals(0, reaper.getRetainedTasks());
+            verify(mockES);
+        } finally {
+            _folder.delete();
+        }
+    }
+    
+    @Test
+    public void testTaskWithNullResultIsFailedAndStatusKeptInMemory() throws Exception {
+        try {
+            File tempDir = _folder.newFolder();
             CommunityDetectionAlgorithms algos = new CommunityDetectionAlgorithms();
             CommunityDetectionAlgorithm cda = new CommunityDetectionAlgorithm();
             cda.setName("foo");
@@ -454,34 +861,808 @@ public class TestBasicCommunityDetectionEngineImpl {
             CommunityDetectionRequest cdr = new CommunityDetectionRequest();
             cdr.setAlgorithm("foo");
             cdr.setData(TextNode.valueOf("hi"));
-            Map<String, String> cParams = new HashMap<>();
-            cParams.put("key1", null);
-            cParams.put("key2", "val2");
-            cdr.setCustomParameters(cParams);
-
             expect(mockValidator.validateRequest(cda, cdr)).andReturn(null);
-
             ExecutorService mockES = mock(ExecutorService.class);
-            Capture<DockerCommunityDetectionRunner> cappy = Capture.newInstance();
-            FutureTask<CommunityDetectionResult> mockFT = mock(FutureTask.class);
-            expect(mockES.submit(capture(cappy))).andReturn(mockFT);
-            replay(mockFT);
+            mockES.execute(anyObject());
+            expectLastCall();
             replay(mockES);
             replay(mockValidator);
             CommunityDetectionEngineImpl engine = new CommunityDetectionEngineImpl(mockES,
                     tempDir.getAbsolutePath(), "docker", algos, mockValidator);
+            TaskStatusStore store = new TaskStatusStore(10, 60000L);
+            engine.setTaskStatusStore(store);
+            
+            String id = engine.request(cdr);
+            assertEquals(CommunityDetectionResult.SUBMITTED_STATUS,
+                    engine.getStatus(id).getStatus());
+            assertEquals(1, store.getActiveCount());
+            new File(tempDir, id).mkdirs();
+            CommunityDetectionFutureTask task = new CommunityDetectionFutureTask(id, "foo",
+                    () -> null, null);
+            task.run();
+            engine.processCompletedTask(task);
+            assertEquals(0, store.getActiveCount());
+            assertEquals(1, store.getFinishedCount());
+            
+            CommunityDetectionResultStatus status = engine.getStatus(id);
+            assertEquals(CommunityDetectionResult.FAILED_STATUS, status.getStatus());
+            assertTrue(status.getMessage().contains("Task ended without a result"));
+            assertSame(status, engine.getStatus(id));
+            
+            // status in memory is not used once result file is gone
+            assertTrue(new File(tempDir, id + File.separator
+                    + CommunityDetectionEngineImpl.CDRESULT_JSON_FILE).delete());
             try {
-                assertNotNull(engine.request(cdr));
-            } catch(CommunityDetectionBadRequestException cdbe){
-                fail("Unexpected exception: " + cdbe.getMessage());
+                engine.getStatus(id);
+                fail("Expected CommunityDetectionException");
             } catch(CommunityDetectionException cde){
-                fail("Unexpected exception: " + cde.getMessage());
+                assertEquals("No task with id of " + id + " found", cde.getMessage());
             }
+            assertEquals(0, store.getFinishedCount());
+            verify(mockES);
+        } finally {
+            _folder.delete();
+        }
+    }
+    
+    @Test
+    public void testStatusFromSidecarAndResultFromParsedResultCache() throws Exception {
+        try {
+            File tempDir = _folder.newFolder();
+            CommunityDetectionAlgorithms algos = new CommunityDetectionAlgorithms();
+            CommunityDetectionAlgorithm cda = new CommunityDetectionAlgorithm();
+            cda.setName("foo");
+            LinkedHashMap<String, CommunityDetectionAlgorithm> aMap = new LinkedHashMap<>();
+            aMap.put(cda.getName(), cda);
+            algos.setAlgorithms(aMap);
+            CommunityDetectionRequestValidator mockValidator = mock(CommunityDetectionRequestValidator.class);
+            CommunityDetectionRequest cdr = new CommunityDetectionRequest();
+            cdr.setAlgorithm("foo");
+            cdr.setData(TextNode.valueOf("hi"));
+            expect(mockValidator.validateRequest(cda, cdr)).andReturn(null);
+            ExecutorService mockES = mock(ExecutorService.class);
+            mockES.execute(anyObject());
+            expectLastCall();
+            replay(mockES);
+            replay(mockValidator);
+            CommunityDetectionEngineImpl engine = new CommunityDetectionEngineImpl(mockES,
+                    tempDir.getAbsolutePath(), "docker", algos, mockValidator);
+            // no status kept in memory so status file is read every time
+            engine.setTaskStatusStore(new TaskStatusStore(0, 0L));
+            ParsedResultCache cache = new ParsedResultCache(1000000L);
+            engine.setParsedResultCache(cache);
             
-            assertNotNull(cappy.getValue());
+            String id = engine.request(cdr);
+            new File(tempDir, id).mkdirs();
+            final CommunityDetectionResult taskRes = new CommunityDetectionResult(1L);
+            taskRes.setId(id);
+            taskRes.setStatus(CommunityDetectionResult.COMPLETE_STATUS);
+            taskRes.setProgress(100);
+            taskRes.setResult(TextNode.valueOf("result"));
+            CommunityDetectionFutureTask task = new CommunityDetectionFutureTask(id, "foo",
+                    () -> taskRes, null);
+            task.run();
+            engine.processCompletedTask(task);
+            File statusFile = new File(tempDir, id + File.separator
+                    + CommunityDetectionEngineImpl.CDSTATUS_JSON_FILE);
+            assertTrue(statusFile.isFile());
+            assertEquals(1, cache.getEntries());
+            
+            assertSame(taskRes, engine.getResult(id));
+            assertEquals(1L, cache.getHits());
+            ExtendedServerStatus ss = engine.getExtendedServerStatus();
+            assertEquals(1, ss.getParsedResultCache().getEntries());
+            assertEquals(1L, ss.getParsedResultCache().getHits());
+            
+            // status never parses result file
+            File resultFile = new File(tempDir, id + File.separator
+                    + CommunityDetectionEngineImpl.CDRESULT_JSON_FILE);
+            try (FileWriter fw = new FileWriter(resultFile)){
+                fw.write("not json");
+            }
+            resultFile.setLastModified(1000L);
+            CommunityDetectionResultStatus status = engine.getStatus(id);
+            assertEquals(CommunityDetectionResult.COMPLETE_STATUS, status.getStatus());
+            assertEquals(100, status.getProgress());
+            
+            // rewritten result file is not served from cache
+            try {
+                engine.getResult(id);
+                fail("Expected CommunityDetectionException");
+            } catch(CommunityDetectionException cde){
+                assertEquals("No task with id of " + id + " found", cde.getMessage());
+            }
+            
+            engine.delete(id);
+            assertEquals(0, cache.getEntries());
+            verify(mockES);
+        } finally {
+            _folder.delete();
+        }
+    }
+    
+    @Test
+    public void testResultSavedToLogTaskStore() throws Exception {
+        try {
+            File tempDir = _folder.newFolder();
+            CommunityDetectionAlgorithms algos = new CommunityDetectionAlgorithms();
+            CommunityDetectionAlgorithm cda = new CommunityDetectionAlgorithm();
+            cda.setName("foo");
+            LinkedHashMap<String, CommunityDetectionAlgorithm> aMap = new LinkedHashMap<>();
+            aMap.put(cda.getName(), cda);
+            algos.setAlgorithms(aMap);
+            CommunityDetectionRequestValidator mockValidator = mock(CommunityDetectionRequestValidator.class);
+            CommunityDetectionRequest cdr = new CommunityDetectionRequest();
+            cdr.setAlgorithm("foo");
+            cdr.setData(TextNode.valueOf("hi"));
+            expect(mockValidator.validateRequest(cda, cdr)).andReturn(null);
+            ExecutorService mockES = mock(ExecutorService.class);
+            mockES.execute(anyObject());
+            expectLastCall();
+            replay(mockES);
+            replay(mockValidator);
+            CommunityDetectionEngineImpl engine = new CommunityDetectionEngineImpl(mockES,
+                    tempDir.getAbsolutePath(), "docker", algos, mockValidator);
+            LogTaskStore taskStore = new LogTaskStore(tempDir.getAbsolutePath());
+            taskStore.open();
+            engine.setTaskStore(taskStore);
+            engine.setTaskStatusStore(new TaskStatusStore(0, 0L));
+            
+            String id = engine.request(cdr);
+            File taskDir = new File(tempDir, id);
+            taskDir.mkdirs();
+            final CommunityDetectionResult taskRes = new CommunityDetectionResult(1L);
+            taskRes.setId(id);
+            taskRes.setStatus(CommunityDetectionResult.COMPLETE_STATUS);
+            taskRes.setResult(TextNode.valueOf("result"));
+            CommunityDetectionFutureTask task = new CommunityDetectionFutureTask(id, "foo",
+                    () -> taskRes, null);
+            task.run();
+            engine.processCompletedTask(task);
+            
+            // working directory is removed once result is in the log
+            assertFalse(taskDir.exists());
+            assertEquals(1, taskStore.getTaskCount());
+            assertEquals("result", engine.getResult(id).getResult().asText());
+            assertEquals(CommunityDetectionResult.COMPLETE_STATUS,
+                    engine.getStatus(id).getStatus());
+            
+            engine.delete(id);
+            assertEquals(0, taskStore.getTaskCount());
+            try {
+                engine.getStatus(id);
+                fail("Expected CommunityDetectionException");
+            } catch(CommunityDetectionException cde){
+                assertEquals("No task with id of " + id + " found", cde.getMessage());
+            }
+            taskStore.close();
+            verify(mockES);
+        } finally {
+            _folder.delete();
+        }
+    }
+    
+    @Test
+    public void testUpdateTaskStatusNotifiesListeners() throws Exception {
+        try {
+            File tempDir = _folder.newFolder();
+            CommunityDetectionAlgorithms algos = new CommunityDetectionAlgorithms();
+            CommunityDetectionAlgorithm cda = new CommunityDetectionAlgorithm();
+            cda.setName("foo");
+            LinkedHashMap<String, CommunityDetectionAlgorithm> aMap = new LinkedHashMap<>();
+            aMap.put(cda.getName(), cda);
+            algos.setAlgorithms(aMap);
+            CommunityDetectionRequestValidator mockValidator = mock(CommunityDetectionRequestValidator.class);
+            CommunityDetectionRequest cdr = new CommunityDetectionRequest();
+            cdr.setAlgorithm("foo");
+            cdr.setData(TextNode.valueOf("hi"));
+            expect(mockValidator.validateRequest(cda, cdr)).andReturn(null);
+            ExecutorService mockES = mock(ExecutorService.class);
+            mockES.execute(anyObject());
+            expectLastCall();
+            replay(mockES);
+            replay(mockValidator);
+            CommunityDetectionEngineImpl engine = new CommunityDetectionEngineImpl(mockES,
+                    tempDir.getAbsolutePath(), "docker", algos, mockValidator);
+            
+            String id = engine.request(cdr);
+            List<CommunityDetectionResultStatus> changes = new ArrayList<>();
+            CommunityDetectionTaskListener listener = new CommunityDetectionTaskListener(){
+                @Override
+                public void taskCompleted(CommunityDetectionResult result) {
+                }
+
+                @Override
+                public void statusChanged(CommunityDetectionResultStatus status) {
+                    changes.add(status);
+                }
+            };
+            engine.addTaskListener(id, listener);
+            
+            engine.updateTaskStatus(id, CommunityDetectionResult.PROCESSING_STATUS, 0);
+            assertEquals(1, changes.size());
+            assertEquals(CommunityDetectionResult.PROCESSING_STATUS, changes.get(0).getStatus());
+            assertEquals(CommunityDetectionResult.PROCESSING_STATUS,
+                    engine.getStatus(id).getStatus());
+            
+            // nothing changed so no notification
+            engine.updateTaskStatus(id, CommunityDetectionResult.PROCESSING_STATUS, 0);
+            assertEquals(1, changes.size());
+            
+            engine.updateTaskStatus(id, CommunityDetectionResult.PROCESSING_STATUS, 50);
+            assertEquals(2, changes.size());
+            assertEquals(50, changes.get(1).getProgress());
+            
+            engine.removeTaskListener(id, listener);
+            engine.updateTaskStatus(id, CommunityDetectionResult.PROCESSING_STATUS, 75);
+            assertEquals(2, changes.size());
+            assertEquals(75, engine.getStatus(id).getProgress());
+            
+            // unknown task is ignored
+            engine.updateTaskStatus("doesnotexist", CommunityDetectionResult.PROCESSING_STATUS, 10);
+            verify(mockES);
+        } finally {
+            _folder.delete();
+        }
+    }
+    
+    @Test
+    public void testRequestSuccess() throws Exception {
+        try {
+            File tempDir = _folder.newFolder();
+            
+            File confFile = new File(tempDir.getAbsolutePath() + File.separator + "foo.conf");
+            
+            FileWriter fw = new FileWriter(confFile);
+            
+            fw.write(Configuration.TASK_DIR + " = " + tempDir.getAbsolutePath() + "\n");
+            fw.write(Configuration.MOUNT_OPTIONS + " = :ro,z\n");
+            fw.write(Configuration.ALGORITHM_TIMEOUT + " = 10\n");
+            
+            fw.flush();
+            fw.close();
+            Configuration.setAlternateConfigurationFile(confFile.getAbsolutePath());
+            CommunityDetectionAlgorithms algos = new CommunityDetectionAlgorithms();
+            CommunityDetectionAlgorithm cda = new CommunityDetectionAlgorithm();
+            cda.setName("foo");
+            LinkedHashMap<String, CommunityDetectionAlgorithm> aMap = new LinkedHashMap<>();
+            aMap.put(cda.getName(), cda);
+            algos.setAlgorithms(aMap);
+            CommunityDetectionRequestValidator mockValidator = mock(CommunityDetectionRequestValidator.class);
+            CommunityDetectionRequest cdr = new CommunityDetectionRequest();
+            cdr.setAlgorithm("foo");
+            cdr.setData(TextNode.valueOf("hi"));
+            Map<String, String> cParams = new HashMap<>();
+            cParams.put("key1", null);
+            cParams.put("key2", "val2");
+            cdr.setCustomParameters(cParams);
+
+            expect(mockValidator.validateRequest(cda, cdr)).andReturn(null);
+
+            ExecutorService mockES = mock(ExecutorService.class);
+            Capture<CommunityDetectionFutureTask> cappy = Capture.newInstance();
+            mockES.execute(capture(cappy));
+            expectLastCall();
+            replay(mockES);
+            replay(mockValidator);
+            CommunityDetectionEngineImpl engine = new CommunityDetectionEngineImpl(mockES,
+                    tempDir.getAbsolutePath(), "docker", algos, mockValidator);
+            try {
+                String id = engine.request(cdr);
+                assertNotNull(id);
+                assertEquals(id, cappy.getValue().getId());
+            } catch(CommunityDetectionBadRequestException cdbe){
+                fail("Unexpected exception: " + cdbe.getMessage());
+            } catch(CommunityDetectionException cde){
+                fail("Unexpected exception: " + cde.getMessage());
+            }
+            
+            assertNotNull(cappy.getValue());
+            assertEquals(1, engine.getServerStatus().getQueuedTasks());
+            verify(mockValidator);
+            verify(mockES);
+        } finally {
+            _folder.delete();
+        }
+    }
+    
+    @Test
+    public void testRequestWithInputFile() throws Exception {
+        try {
+            File tempDir = _folder.newFolder();
+            
+            File confFile = new File(tempDir.getAbsolutePath() + File.separator + "foo.conf");
+            
+            FileWriter fw = new FileWriter(confFile);
+            
+            fw.write(Configuration.TASK_DIR + " = " + tempDir.getAbsolutePath() + "\n");
+            fw.write(Configuration.MOUNT_OPTIONS + " = :ro,z\n");
+            fw.write(Configuration.ALGORITHM_TIMEOUT + " = 10\n");
+            
+            fw.flush();
+            fw.close();
+            Configuration.setAlternateConfigurationFile(confFile.getAbsolutePath());
+            CommunityDetectionAlgorithms algos = new CommunityDetectionAlgorithms();
+            CommunityDetectionAlgorithm cda = new CommunityDetectionAlgorithm();
+            cda.setName("foo");
+            LinkedHashMap<String, CommunityDetectionAlgorithm> aMap = new LinkedHashMap<>();
+            aMap.put(cda.getName(), cda);
+            algos.setAlgorithms(aMap);
+            
+            File uploadFile = new File(tempDir, "upload.txt");
+            fw = new FileWriter(uploadFile);
+            fw.write("0\t1\n");
+            fw.close();
+            InputFileCommunityDetectionRequest cdr = new InputFileCommunityDetectionRequest(uploadFile, true);
+            cdr.setAlgorithm("foo");
+            
+            File rejectedFile = new File(tempDir, "rejected.txt");
+            fw = new FileWriter(rejectedFile);
+            fw.write("0\t1\n");
+            fw.close();
+            InputFileCommunityDetectionRequest rejectedCdr = new InputFileCommunityDetectionRequest(rejectedFile, true);
+            rejectedCdr.setAlgorithm("foo");
+            
+            CommunityDetectionRequestValidator mockValidator = mock(CommunityDetectionRequestValidator.class);
+            expect(mockValidator.validateRequest(cda, cdr)).andReturn(null);
+            ErrorResponse er = new ErrorResponse();
+            er.setMessage("problem");
+            expect(mockValidator.validateRequest(cda, rejectedCdr)).andReturn(er);
+
+            ExecutorService mockES = mock(ExecutorService.class);
+            Capture<CommunityDetectionFutureTask> cappy = Capture.newInstance();
+            mockES.execute(capture(cappy));
+            expectLastCall();
+            replay(mockES);
+            replay(mockValidator);
+            CommunityDetectionEngineImpl engine = new CommunityDetectionEngineImpl(mockES,
+                    tempDir.getAbsolutePath(), "docker", algos, mockValidator);
+            String id = engine.request(cdr);
+            assertNotNull(id);
+            assertFalse(uploadFile.exists());
+            File taskInput = new File(tempDir.getAbsolutePath() + File.separator + id
+                    + File.separator + DockerCommunityDetectionRunner.INPUT_FILE);
+            assertTrue(taskInput.isFile());
+            
+            try {
+                engine.request(rejectedCdr);
+                fail("Expected CommunityDetectionBadRequestException");
+            } catch(CommunityDetectionBadRequestException cdbe){
+                assertEquals("Validation failed", cdbe.getMessage());
+            }
+            assertFalse(rejectedFile.exists());
+            verify(mockValidator);
+            verify(mockES);
+        } finally {
+            _folder.delete();
+        }
+    }
+    
+    @Test
+    public void testRequestAndRecoverTasksWithJournal() throws Exception {
+        try {
+            File tempDir = _folder.newFolder();
+            
+            File confFile = new File(tempDir.getAbsolutePath() + File.separator + "foo.conf");
+            
+            FileWriter fw = new FileWriter(confFile);
+            
+            fw.write(Configuration.TASK_DIR + " = " + tempDir.getAbsolutePath() + "\n");
+            fw.write(Configuration.MOUNT_OPTIONS + " = :ro,z\n");
+            fw.write(Configuration.ALGORITHM_TIMEOUT + " = 10\n");
+            
+            fw.flush();
+            fw.close();
+            Configuration.setAlternateConfigurationFile(confFile.getAbsolutePath());
+            CommunityDetectionAlgorithms algos = new CommunityDetectionAlgorithms();
+            CommunityDetectionAlgorithm cda = new CommunityDetectionAlgorithm();
+            cda.setName("foo");
+            cda.setDockerImage("image");
+            LinkedHashMap<String, CommunityDetectionAlgorithm> aMap = new LinkedHashMap<>();
+            aMap.put(cda.getName(), cda);
+            algos.setAlgorithms(aMap);
+            CommunityDetectionRequest cdr = new CommunityDetectionRequest();
+            cdr.setAlgorithm("foo");
+            cdr.setData(TextNode.valueOf("0\t1\n"));
+            
+            CommunityDetectionRequestValidator mockValidator = mock(CommunityDetectionRequestValidator.class);
+            expect(mockValidator.validateRequest(cda, cdr)).andReturn(null).times(2);
+            ExecutorService mockES = mock(ExecutorService.class);
+            mockES.execute(anyObject());
+            expectLastCall().times(3);
+            replay(mockES);
+            replay(mockValidator);
+            
+            // submit two tasks and pretend the first one started running
+            CommunityDetectionEngineImpl engine = new CommunityDetectionEngineImpl(mockES,
+                    tempDir.getAbsolutePath(), "docker", algos, mockValidator);
+            TaskJournal journal = new TaskJournal(tempDir.getAbsolutePath());
+            engine.setTaskJournal(journal);
+            String runningId = engine.request(cdr);
+            String queuedId = engine.request(cdr);
+            File queuedInput = new File(tempDir.getAbsolutePath() + File.separator + queuedId
+                    + File.separator + DockerCommunityDetectionRunner.INPUT_FILE);
+            assertTrue(queuedInput.isFile());
+            journal.append(new TaskJournal.Entry(TaskJournal.STARTED_OP, runningId));
+            TaskJournal.Entry goneEntry = new TaskJournal.Entry(TaskJournal.SUBMITTED_OP, "gone");
+            goneEntry.setAlgorithm("removedalgo");
+            journal.append(goneEntry);
+            journal.close();
+            
+            // restart engine
+            CommunityDetectionEngineImpl restarted = new CommunityDetectionEngineImpl(mockES,
+                    tempDir.getAbsolutePath(), "docker", algos, mockValidator);
+            restarted.setTaskJournal(new TaskJournal(tempDir.getAbsolutePath()));
+            assertEquals(1, restarted.recoverTasks(false));
+            
+            CommunityDetectionResult res = restarted.getResult(runningId);
+            assertEquals(CommunityDetectionResult.FAILED_STATUS, res.getStatus());
+            assertEquals("Task was interrupted by server restart", res.getMessage());
+            res = restarted.getResult("gone");
+            assertEquals(CommunityDetectionResult.FAILED_STATUS, res.getStatus());
+            assertEquals(CommunityDetectionResult.SUBMITTED_STATUS,
+                    restarted.getResult(queuedId).getStatus());
+            assertEquals(1, restarted.getServerStatus().getQueuedTasks());
+            assertEquals("[" + queuedId + "]", new TaskJournal(tempDir.getAbsolutePath())
+                    .replay().keySet().toString());
             verify(mockValidator);
             verify(mockES);
-            verify(mockFT);
+        } finally {
+            _folder.delete();
+        }
+    }
+    
+    @Test
+    public void testRequestInClusterMode() throws Exception {
+        try {
+            File tempDir = _folder.newFolder();
+            
+            File confFile = new File(tempDir.getAbsolutePath() + File.separator + "foo.conf");
+            
+            FileWriter fw = new FileWriter(confFile);
+            
+            fw.write(Configuration.TASK_DIR + " = " + tempDir.getAbsolutePath() + "\n");
+            fw.write(Configuration.MOUNT_OPTIONS + " = :ro,z\n");
+            fw.write(Configuration.ALGORITHM_TIMEOUT + " = 10\n");
+            
+            fw.flush();
+            fw.close();
+            Configuration.setAlternateConfigurationFile(confFile.getAbsolutePath());
+            CommunityDetectionAlgorithms algos = new CommunityDetectionAlgorithms();
+            CommunityDetectionAlgorithm cda = new CommunityDetectionAlgorithm();
+            cda.setName("foo");
+            cda.setDockerImage("image");
+            LinkedHashMap<String, CommunityDetectionAlgorithm> aMap = new LinkedHashMap<>();
+            aMap.put(cda.getName(), cda);
+            algos.setAlgorithms(aMap);
+            CommunityDetectionRequest cdr = new CommunityDetectionRequest();
+            cdr.setAlgorithm("foo");
+            cdr.setData(TextNode.valueOf("0\t1\n"));
+            
+            CommunityDetectionRequestValidator mockValidator = mock(CommunityDetectionRequestValidator.class);
+            expect(mockValidator.validateRequest(cda, cdr)).andReturn(null);
+            ExecutorService mockESOne = mock(ExecutorService.class);
+            ExecutorService mockESTwo = mock(ExecutorService.class);
+            Capture<CommunityDetectionFutureTask> cappy = Capture.newInstance();
+            mockESTwo.execute(capture(cappy));
+            expectLastCall();
+            replay(mockESOne);
+            replay(mockESTwo);
+            replay(mockValidator);
+            
+            CommunityDetectionEngineImpl nodeOne = new CommunityDetectionEngineImpl(mockESOne,
+                    tempDir.getAbsolutePath(), "docker", algos, mockValidator);
+            nodeOne.setClusterTaskQueue(new ClusterTaskQueue(tempDir.getAbsolutePath(), 60000L), 0);
+            CommunityDetectionEngineImpl nodeTwo = new CommunityDetectionEngineImpl(mockESTwo,
+                    tempDir.getAbsolutePath(), "docker", algos, mockValidator);
+            nodeTwo.setClusterTaskQueue(new ClusterTaskQueue(tempDir.getAbsolutePath(), 60000L), 2);
+            
+            // task is queued, not run, by node receiving request
+            String id = nodeOne.request(cdr);
+            assertEquals(CommunityDetectionResult.SUBMITTED_STATUS, nodeTwo.getResult(id).getStatus());
+            List<CommunityDetectionResult> notified = new ArrayList<>();
+            nodeOne.addTaskListener(id, (res) -> notified.add(res));
+            nodeOne.processClusterQueue();
+            
+            nodeTwo.processClusterQueue();
+            assertEquals(id, cappy.getValue().getId());
+            assertEquals(CommunityDetectionResult.PROCESSING_STATUS, nodeOne.getResult(id).getStatus());
+            
+            CommunityDetectionResult result = new CommunityDetectionResult();
+            result.setId(id);
+            result.setStatus(CommunityDetectionResult.COMPLETE_STATUS);
+            nodeTwo.saveCommunityDetectionResultToFilesystem(result);
+            assertNull(new ClusterTaskQueue(tempDir.getAbsolutePath(), 60000L).getLeased(id));
+            assertEquals(CommunityDetectionResult.COMPLETE_STATUS, nodeOne.getResult(id).getStatus());
+            
+            assertTrue(notified.isEmpty());
+            nodeOne.processClusterQueue();
+            assertEquals(1, notified.size());
+            assertEquals(CommunityDetectionResult.COMPLETE_STATUS, notified.get(0).getStatus());
+            verify(mockValidator);
+            verify(mockESOne);
+            verify(mockESTwo);
+        } finally {
+            _folder.delete();
+        }
+    }
+    
+    @Test
+    public void testRequestWithAlgorithmPool() throws Exception {
+        CommunityDetectionAlgorithms algos = new CommunityDetectionAlgorithms();
+        CommunityDetectionAlgorithm cda = new CommunityDetectionAlgorithm();
+        cda.setName("foo");
+        LinkedHashMap<String, CommunityDetectionAlgorithm> aMap = new LinkedHashMap<>();
+        aMap.put(cda.getName(), cda);
+        algos.setAlgorithms(aMap);
+        CommunityDetectionRequest cdr = new CommunityDetectionRequest();
+        cdr.setAlgorithm("foo");
+        cdr.setData(TextNode.valueOf("hi"));
+        CommunityDetectionRequestValidator mockValidator = mock(CommunityDetectionRequestValidator.class);
+        expect(mockValidator.validateRequest(cda, cdr)).andReturn(null).times(3);
+        
+        // default executor service should not be used
+        ExecutorService mockES = mock(ExecutorService.class);
+        replay(mockES);
+        replay(mockValidator);
+        
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        CommunityDetectionEngineImpl engine = new CommunityDetectionEngineImpl(mockES,
+                "task", "docker", algos, mockValidator){
+            @Override
+            protected Callable<CommunityDetectionResult> createTask(final String id,
+                    final CommunityDetectionRequest request, long startTime,
+                    final String dockerImage, final String executor) {
+                return () -> {
+                    started.countDown();
+                    finish.await();
+                    return null;
+                };
+            }
+        };
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(1));
+        try {
+            engine.setAlgorithmExecutorServices(Collections.singletonMap("foo", pool));
+            assertNotNull(engine.request(cdr));
+            assertNotNull(engine.request(cdr));
+            try {
+                engine.request(cdr);
+                fail("Expected CommunityDetectionException");
+            } catch(CommunityDetectionException cde){
+                // queue of algorithm is full
+                assertTrue(cde instanceof CommunityDetectionOverloadedException);
+                assertEquals(CommunityDetectionOverloadedException.TOO_MANY_REQUESTS_STATUS,
+                        ((CommunityDetectionOverloadedException)cde).getStatusCode());
+            }
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            ServerStatus ss = engine.getServerStatus();
+            assertTrue(ss instanceof ExtendedServerStatus);
+            ExtendedServerStatus.AlgorithmQueueStatus aqs = ((ExtendedServerStatus)ss)
+                    .getAlgorithmQueues().get("foo");
+            assertEquals(1, aqs.getMaxConcurrency());
+            assertEquals(1, aqs.getQueueCapacity());
+            assertEquals(1, aqs.getRunningTasks());
+            assertEquals(1, aqs.getQueuedTasks());
+            assertEquals(2, ss.getQueuedTasks());
+            ExtendedServerStatus.ClientQueueStatus cqs = ((ExtendedServerStatus)ss)
+                    .getClientQueues().get(FairTaskScheduler.DEFAULT_CLIENT);
+            assertEquals(1, cqs.getRunningTasks());
+            assertEquals(1, cqs.getQueuedTasks());
+        } finally {
+            finish.countDown();
+            pool.shutdownNow();
+        }
+        verify(mockValidator);
+        verify(mockES);
+    }
+    
+    @Test
+    public void testRequestWithResultCache() throws Exception {
+        try {
+            File tempDir = _folder.newFolder();
+            
+            File confFile = new File(tempDir.getAbsolutePath() + File.separator + "foo.conf");
+            
+            FileWriter fw = new FileWriter(confFile);
+            
+            fw.write(Configuration.TASK_DIR + " = " + tempDir.getAbsolutePath() + "\n");
+            fw.write(Configuration.ALGORITHM_TIMEOUT + " = 10\n");
+            
+            fw.flush();
+            fw.close();
+            Configuration.setAlternateConfigurationFile(confFile.getAbsolutePath());
+            CommunityDetectionAlgorithms algos = new CommunityDetectionAlgorithms();
+            CommunityDetectionAlgorithm cda = new CommunityDetectionAlgorithm();
+            cda.setName("foo");
+            cda.setDockerImage("foo/image");
+            LinkedHashMap<String, CommunityDetectionAlgorithm> aMap = new LinkedHashMap<>();
+            aMap.put(cda.getName(), cda);
+            algos.setAlgorithms(aMap);
+            CommunityDetectionRequestValidator mockValidator = mock(CommunityDetectionRequestValidator.class);
+            CommunityDetectionRequest cdr = new CommunityDetectionRequest();
+            cdr.setAlgorithm("foo");
+            cdr.setData(TextNode.valueOf("1\t2\n"));
+
+            expect(mockValidator.validateRequest(cda, cdr)).andReturn(null).times(3);
+
+            ExecutorService mockES = mock(ExecutorService.class);
+            Capture<CommunityDetectionFutureTask> cappy = Capture.newInstance();
+            mockES.execute(capture(cappy));
+            expectLastCall().once();
+            replay(mockES);
+            replay(mockValidator);
+            CommunityDetectionEngineImpl engine = new CommunityDetectionEngineImpl(mockES,
+                    tempDir.getAbsolutePath(), "docker", algos, mockValidator);
+            engine.setResultCache(new CommunityDetectionResultCache(new File(tempDir, "cache"),
+                    10, 60000));
+            
+            // first request runs, second waits on the first
+            String primaryId = engine.request(cdr);
+            assertEquals(primaryId, cappy.getValue().getId());
+            String followerId = engine.request(cdr);
+            assertFalse(primaryId.equals(followerId));
+            assertEquals(CommunityDetectionResult.SUBMITTED_STATUS,
+                    engine.getResult(followerId).getStatus());
+            
+            final CommunityDetectionResult primaryRes = new CommunityDetectionResult(1L);
+            primaryRes.setId(primaryId);
+            primaryRes.setStatus(CommunityDetectionResult.COMPLETE_STATUS);
+            primaryRes.setProgress(100);
+            primaryRes.setResult(TextNode.valueOf("result"));
+            CommunityDetectionFutureTask task = new CommunityDetectionFutureTask(primaryId,
+                    new Callable<CommunityDetectionResult>() {
+                @Override
+                public CommunityDetectionResult call() throws Exception {
+                    return primaryRes;
+                }
+            }, null);
+            task.run();
+            engine.processCompletedTask(task);
+            
+            CommunityDetectionResult followerRes = engine.getResult(followerId);
+            assertEquals(followerId, followerRes.getId());
+            assertEquals(CommunityDetectionResult.COMPLETE_STATUS, followerRes.getStatus());
+            assertEquals("result", followerRes.getResult().asText());
+            
+            // third request is answered from the cache
+            String cachedId = engine.request(cdr);
+            CommunityDetectionResult cachedRes = engine.getResult(cachedId);
+            assertEquals(cachedId, cachedRes.getId());
+            assertEquals(CommunityDetectionResult.COMPLETE_STATUS, cachedRes.getStatus());
+            assertEquals("result", cachedRes.getResult().asText());
+            assertEquals(3, engine.getServerStatus().getCompletedTasks());
+            verify(mockValidator);
+            verify(mockES);
+        } finally {
+            _folder.delete();
+        }
+    }
+    
+    @Test
+    public void testDeletePrimaryWithFollowers() throws Exception {
+        try {
+            File tempDir = _folder.newFolder();
+            
+            File confFile = new File(tempDir.getAbsolutePath() + File.separator + "foo.conf");
+            
+            FileWriter fw = new FileWriter(confFile);
+            fw.write(Configuration.TASK_DIR + " = " + tempDir.getAbsolutePath() + "\n");
+            fw.flush();
+            fw.close();
+            Configuration.setAlternateConfigurationFile(confFile.getAbsolutePath());
+            CommunityDetectionAlgorithms algos = new CommunityDetectionAlgorithms();
+            CommunityDetectionAlgorithm cda = new CommunityDetectionAlgorithm();
+            cda.setName("foo");
+            LinkedHashMap<String, CommunityDetectionAlgorithm> aMap = new LinkedHashMap<>();
+            aMap.put(cda.getName(), cda);
+            algos.setAlgorithms(aMap);
+            CommunityDetectionRequestValidator mockValidator = mock(CommunityDetectionRequestValidator.class);
+            CommunityDetectionRequest cdr = new CommunityDetectionRequest();
+            cdr.setAlgorithm("foo");
+            cdr.setData(TextNode.valueOf("hi"));
+
+            expect(mockValidator.validateRequest(cda, cdr)).andReturn(null).times(2);
+
+            ExecutorService mockES = mock(ExecutorService.class);
+            Capture<CommunityDetectionFutureTask> cappy = Capture.newInstance();
+            mockES.execute(capture(cappy));
+            expectLastCall().once();
+            replay(mockES);
+            replay(mockValidator);
+            CommunityDetectionEngineImpl engine = new CommunityDetectionEngineImpl(mockES,
+                    tempDir.getAbsolutePath(), "docker", algos, mockValidator);
+            engine.setResultCache(new CommunityDetectionResultCache(new File(tempDir, "cache"),
+                    10, 60000));
+            String primaryId = engine.request(cdr);
+            String followerId = engine.request(cdr);
+            
+            // primary should keep running since follower is waiting on it
+            engine.delete(primaryId);
+            assertFalse(cappy.getValue().isCancelled());
+            
+            final CommunityDetectionResult primaryRes = new CommunityDetectionResult(1L);
+            primaryRes.setId(primaryId);
+            primaryRes.setStatus(CommunityDetectionResult.COMPLETE_STATUS);
+            CommunityDetectionFutureTask task = new CommunityDetectionFutureTask(primaryId,
+                    new Callable<CommunityDetectionResult>() {
+                @Override
+                public CommunityDetectionResult call() throws Exception {
+                    return primaryRes;
+                }
+            }, null);
+            task.run();
+            engine.processCompletedTask(task);
+            assertEquals(CommunityDetectionResult.COMPLETE_STATUS,
+                    engine.getResult(followerId).getStatus());
+            assertFalse(new File(tempDir, primaryId).exists());
+            try {
+                engine.getResult(primaryId);
+                fail("Expected CommunityDetectionException");
+            } catch(CommunityDetectionException cde){
+                assertTrue(cde.getMessage().contains("No task with id"));
+            }
+            verify(mockES);
+        } finally {
+            _folder.delete();
+        }
+    }
+    
+    @Test
+    public void testCanceledPrimaryFailsFollowers() throws Exception {
+        try {
+            File tempDir = _folder.newFolder();
+            
+            File confFile = new File(tempDir.getAbsolutePath() + File.separator + "foo.conf");
+            
+            FileWriter fw = new FileWriter(confFile);
+            fw.write(Configuration.TASK_DIR + " = " + tempDir.getAbsolutePath() + "\n");
+            fw.flush();
+            fw.close();
+            Configuration.setAlternateConfigurationFile(confFile.getAbsolutePath());
+            CommunityDetectionAlgorithms algos = new CommunityDetectionAlgorithms();
+            CommunityDetectionAlgorithm cda = new CommunityDetectionAlgorithm();
+            cda.setName("foo");
+            LinkedHashMap<String, CommunityDetectionAlgorithm> aMap = new LinkedHashMap<>();
+            aMap.put(cda.getName(), cda);
+            algos.setAlgorithms(aMap);
+            CommunityDetectionRequestValidator mockValidator = mock(CommunityDetectionRequestValidator.class);
+            CommunityDetectionRequest cdr = new CommunityDetectionRequest();
+            cdr.setAlgorithm("foo");
+            cdr.setData(TextNode.valueOf("hi"));
+
+            expect(mockValidator.validateRequest(cda, cdr)).andReturn(null).times(3);
+
+            ExecutorService mockES = mock(ExecutorService.class);
+            Capture<CommunityDetectionFutureTask> cappy = Capture.newInstance(CaptureType.ALL);
+            mockES.execute(capture(cappy));
+            expectLastCall().times(2);
+            replay(mockES);
+            replay(mockValidator);
+            CommunityDetectionEngineImpl engine = new CommunityDetectionEngineImpl(mockES,
+                    tempDir.getAbsolutePath(), "docker", algos, mockValidator);
+            engine.setResultCache(new CommunityDetectionResultCache(new File(tempDir, "cache"),
+                    10, 60000));
+            String primaryId = engine.request(cdr);
+            String followerId = engine.request(cdr);
+            
+            // primary canceled, as when lease on it is lost
+            CommunityDetectionFutureTask task = cappy.getValues().get(0);
+            assertEquals(primaryId, task.getId());
+            assertTrue(task.cancel(true));
+            engine.processCompletedTask(task);
+            
+            CommunityDetectionResult followerRes = engine.getResult(followerId);
+            assertEquals(CommunityDetectionResult.FAILED_STATUS, followerRes.getStatus());
+            assertTrue(followerRes.getMessage().contains(primaryId + " whose result this task"
+                    + " was waiting on was canceled"));
+            assertEquals(1, engine.getServerStatus().getCompletedTasks());
+            
+            // identical request is run again instead of waiting on canceled task
+            String nextId = engine.request(cdr);
+            assertEquals(nextId, cappy.getValues().get(1).getId());
+            verify(mockES);
         } finally {
             _folder.delete();
         }
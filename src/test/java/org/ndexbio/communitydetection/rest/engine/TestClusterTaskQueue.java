@@ -0,0 +1,118 @@
+package org.ndexbio.communitydetection.rest.engine;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author churas
+ */
+public class TestClusterTaskQueue {
+
+    @Rule
+    public TemporaryFolder _folder = new TemporaryFolder();
+
+    private TaskJournal.Entry getEntry(final String id){
+        TaskJournal.Entry entry = new TaskJournal.Entry(TaskJournal.SUBMITTED_OP, id);
+        entry.setAlgorithm("louvain");
+        entry.setStartTime(5L);
+        return entry;
+    }
+
+    @Test
+    public void testClaimOnEmptyQueue() throws Exception {
+        File tempDir = _folder.newFolder();
+        try {
+            ClusterTaskQueue queue = new ClusterTaskQueue(tempDir.getAbsolutePath(), 1000L);
+            assertTrue(queue.claim(5).isEmpty());
+            assertEquals(0, queue.requeueExpired(Collections.emptyList(), (id) -> false));
+            assertNull(queue.getQueued("1"));
+            assertNull(queue.getLeased("1"));
+        } finally {
+            _folder.delete();
+        }
+    }
+
+    @Test
+    public void testEnqueueClaimAndRelease() throws Exception {
+        File tempDir = _folder.newFolder();
+        try {
+            ClusterTaskQueue nodeOne = new ClusterTaskQueue(tempDir.getAbsolutePath(), 60000L);
+            ClusterTaskQueue nodeTwo = new ClusterTaskQueue(tempDir.getAbsolutePath(), 60000L);
+            nodeOne.enqueue(getEntry("1"));
+            nodeOne.enqueue(getEntry("2"));
+            new File(tempDir, ClusterTaskQueue.QUEUE_DIR + File.separator
+                    + "1" + ClusterTaskQueue.TASK_SUFFIX).setLastModified(1000L);
+            assertNotNull(nodeTwo.getQueued("1"));
+
+            List<TaskJournal.Entry> claimed = nodeTwo.claim(1);
+            assertEquals(1, claimed.size());
+            assertEquals("1", claimed.get(0).getId());
+            assertEquals("louvain", claimed.get(0).getAlgorithm());
+            assertNull(nodeOne.getQueued("1"));
+            assertEquals(5L, nodeOne.getLeased("1").getStartTime());
+
+            // only one node can claim each task
+            claimed = nodeOne.claim(5);
+            assertEquals(1, claimed.size());
+            assertEquals("2", claimed.get(0).getId());
+            assertTrue(nodeTwo.claim(5).isEmpty());
+
+            assertTrue(nodeTwo.renew(Arrays.asList("1")).isEmpty());
+            nodeTwo.release("1");
+            assertNull(nodeOne.getLeased("1"));
+            assertEquals("[1]", nodeTwo.renew(Arrays.asList("1")).toString());
+
+            assertTrue(nodeTwo.remove("2"));
+            assertFalse(nodeTwo.remove("2"));
+        } finally {
+            _folder.delete();
+        }
+    }
+
+    @Test
+    public void testRequeueExpired() throws Exception {
+        File tempDir = _folder.newFolder();
+        try {
+            ClusterTaskQueue deadNode = new ClusterTaskQueue(tempDir.getAbsolutePath(), 60000L);
+            ClusterTaskQueue survivor = new ClusterTaskQueue(tempDir.getAbsolutePath(), 60000L);
+            deadNode.enqueue(getEntry("1"));
+            deadNode.enqueue(getEntry("2"));
+            deadNode.enqueue(getEntry("3"));
+            assertEquals(3, deadNode.claim(3).size());
+
+            // nothing has expired yet
+            assertEquals(0, survivor.requeueExpired(Collections.emptyList(), (id) -> false));
+
+            File leaseDir = new File(tempDir, ClusterTaskQueue.LEASE_DIR);
+            for (String id : Arrays.asList("1", "2", "3")){
+                new File(leaseDir, id + ClusterTaskQueue.TASK_SUFFIX).setLastModified(1000L);
+            }
+            // task 2 is owned by survivor and task 3 already has a result
+            assertEquals(1, survivor.requeueExpired(Arrays.asList("2"), (id) -> id.equals("3")));
+            assertNotNull(survivor.getQueued("1"));
+            assertNotNull(survivor.getLeased("2"));
+            assertNull(survivor.getLeased("3"));
+            assertNull(survivor.getQueued("3"));
+
+            // dead node finds it lost its lease
+            assertEquals("[1, 3]", deadNode.renew(Arrays.asList("1", "3")).toString());
+
+            List<TaskJournal.Entry> claimed = survivor.claim(5);
+            assertEquals(1, claimed.size());
+            assertEquals("1", claimed.get(0).getId());
+        } finally {
+            _folder.delete();
+        }
+    }
+}
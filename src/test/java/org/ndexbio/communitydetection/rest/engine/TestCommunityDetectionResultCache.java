@@ -0,0 +1,163 @@
+package org.ndexbio.communitydetection.rest.engine;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.TextNode;
+import java.io.File;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.ndexbio.communitydetection.rest.model.CommunityDetectionRequest;
+import org.ndexbio.communitydetection.rest.model.CommunityDetectionResult;
+
+/**
+ *
+ * @author churas
+ */
+public class TestCommunityDetectionResultCache {
+
+    @Rule
+    public TemporaryFolder _folder = new TemporaryFolder();
+
+    private CommunityDetectionResult getResult(final String id, final String status){
+        CommunityDetectionResult cdr = new CommunityDetectionResult(1L);
+        cdr.setId(id);
+        cdr.setStatus(status);
+        cdr.setResult(TextNode.valueOf("result" + id));
+        return cdr;
+    }
+
+    @Test
+    public void testGetKey() throws Exception {
+        CommunityDetectionRequest req = new CommunityDetectionRequest();
+        req.setAlgorithm("foo");
+        req.setData(TextNode.valueOf("1\t2\n"));
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put("--b", "2");
+        params.put("--a", null);
+        req.setCustomParameters(params);
+        String key = CommunityDetectionResultCache.getKey(req, "image");
+        assertEquals(64, key.length());
+
+        // parameter order should not matter
+        Map<String, String> reorderedParams = new LinkedHashMap<>();
+        reorderedParams.put("--a", null);
+        reorderedParams.put("--b", "2");
+        req.setCustomParameters(reorderedParams);
+        assertEquals(key, CommunityDetectionResultCache.getKey(req, "image"));
+
+        // a different image, parameter value, or data changes the key
+        assertFalse(key.equals(CommunityDetectionResultCache.getKey(req, "image2")));
+        reorderedParams.put("--b", "3");
+        assertFalse(key.equals(CommunityDetectionResultCache.getKey(req, "image")));
+        reorderedParams.put("--b", "2");
+        req.setData(TextNode.valueOf("1\t3\n"));
+        assertFalse(key.equals(CommunityDetectionResultCache.getKey(req, "image")));
+
+        // json data
+        Map<String, String> jsonData = new HashMap<>();
+        jsonData.put("x", "y");
+        req.setData(new ObjectMapper().valueToTree(jsonData));
+        String jsonKey = CommunityDetectionResultCache.getKey(req, "image");
+        assertEquals(jsonKey, CommunityDetectionResultCache.getKey(req, "image"));
+        assertFalse(key.equals(jsonKey));
+    }
+
+    @Test
+    public void testPutAndGet() throws Exception {
+        File tempDir = _folder.newFolder();
+        try {
+            File cacheDir = new File(tempDir, "cache");
+            CommunityDetectionResultCache cache = new CommunityDetectionResultCache(cacheDir,
+                    10, 60000);
+            assertTrue(cacheDir.isDirectory());
+            assertNull(cache.get(null));
+            assertNull(cache.get("abc"));
+
+            // failed results are not cached
+            cache.put("abc", getResult("1", CommunityDetectionResult.FAILED_STATUS));
+            assertNull(cache.get("abc"));
+            assertEquals(0, cache.size());
+
+            cache.put("abc", getResult("1", CommunityDetectionResult.COMPLETE_STATUS));
+            CommunityDetectionResult res = cache.get("abc");
+            assertNotNull(res);
+            assertEquals("result1", res.getResult().asText());
+
+            // entries are reloaded from cache directory
+            CommunityDetectionResultCache reloaded = new CommunityDetectionResultCache(cacheDir,
+                    10, 60000);
+            assertEquals(1, reloaded.size());
+            assertEquals("result1", reloaded.get("abc").getResult().asText());
+        } finally {
+            _folder.delete();
+        }
+    }
+
+    @Test
+    public void testEvictionAndExpiration() throws Exception {
+        File tempDir = _folder.newFolder();
+        try {
+            File cacheDir = new File(tempDir, "cache");
+            CommunityDetectionResultCache cache = new CommunityDetectionResultCache(cacheDir,
+                    2, 60000);
+            cache.put("a", getResult("a", CommunityDetectionResult.COMPLETE_STATUS));
+            cache.put("b", getResult("b", CommunityDetectionResult.COMPLETE_STATUS));
+
+            // access a so b is least recently used
+            assertNotNull(cache.get("a"));
+            cache.put("c", getResult("c", CommunityDetectionResult.COMPLETE_STATUS));
+            assertEquals(2, cache.size());
+            assertNull(cache.get("b"));
+            assertFalse(new File(cacheDir, "b" + CommunityDetectionResultCache.CACHE_FILE_SUFFIX).exists());
+            assertNotNull(cache.get("a"));
+            assertNotNull(cache.get("c"));
+
+            CommunityDetectionResultCache expiring = new CommunityDetectionResultCache(cacheDir,
+                    2, -1);
+            assertEquals(0, expiring.size());
+            assertNull(expiring.get("a"));
+        } finally {
+            _folder.delete();
+        }
+    }
+
+    @Test
+    public void testInFlight() throws Exception {
+        File tempDir = _folder.newFolder();
+        try {
+            CommunityDetectionResultCache cache = new CommunityDetectionResultCache(tempDir,
+                    2, 60000);
+            assertNull(cache.joinInFlight("key", "1"));
+            assertEquals("1", cache.joinInFlight("key", "2"));
+            assertEquals("1", cache.joinInFlight("key", "3"));
+            assertTrue(cache.removeFollower("3"));
+            assertFalse(cache.removeFollower("3"));
+
+            // primary with followers is kept running
+            assertTrue(cache.detachPrimary("1"));
+            CommunityDetectionResultCache.InFlightTask ift = cache.completeInFlight("1");
+            assertNotNull(ift);
+            assertEquals("key", ift.getKey());
+            assertTrue(ift.isPrimaryDeleted());
+            assertEquals(1, ift.getFollowerIds().size());
+            assertTrue(ift.getFollowerIds().contains("2"));
+            assertNull(cache.completeInFlight("1"));
+
+            // primary with no followers is detached
+            assertNull(cache.joinInFlight("key", "4"));
+            assertFalse(cache.detachPrimary("4"));
+            assertNull(cache.completeInFlight("4"));
+            assertNull(cache.joinInFlight("key", "5"));
+        } finally {
+            _folder.delete();
+        }
+    }
+}
@@ -1,10 +1,12 @@
 package org.ndexbio.communitydetection.rest.engine;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Properties;
 import static org.junit.Assert.*;
 import org.junit.Rule;
@@ -88,6 +90,33 @@ public class TestConfiguration {
             assertEquals(null, config.getDiffusionAlgorithm());
             assertEquals(100, config.getDiffusionPollingDelay());
             assertEquals(":ro", config.getMountOptions());
+            assertEquals(0, config.getResultCacheMaxEntries());
+            assertEquals(86400, config.getResultCacheTTL());
+            assertEquals(0, config.getPoolSize());
+            assertEquals(100, config.getPoolRecycleTasks());
+            assertTrue(config.getPoolAlgorithms().isEmpty());
+            assertTrue(config.isJournalEnabled());
+            assertFalse(config.isJournalRetryRunning());
+            assertFalse(config.isClusterEnabled());
+            assertEquals(60, config.getClusterLeaseTTL());
+            assertTrue(config.getClientWeights().isEmpty());
+            assertEquals(0, config.getClientMaxPriority());
+            assertEquals(256, config.getEventsMaxStreams());
+            assertEquals(0, config.getAdmissionMaxQueuedTasks());
+            assertEquals(0, config.getAdmissionMaxPendingBytes());
+            assertEquals(0, config.getAdmissionMaxDiskFull());
+            assertEquals(0, config.getReaperTTL());
+            assertEquals(0, config.getReaperMaxBytes());
+            assertEquals(60, config.getReaperInterval());
+            assertEquals(10000, config.getStatusCacheMaxEntries());
+            assertEquals(3600, config.getStatusCacheTTL());
+            assertEquals(67108864L, config.getParsedResultCacheMaxBytes());
+            assertEquals(Configuration.TASK_STORE_LOG, config.getTaskStore());
+            assertEquals("", config.getDockerSocket());
+            assertEquals("", config.getCpusetCpus());
+            assertEquals(1, config.getMinWorkers());
+            assertEquals(0, config.getMaxWorkers());
+            assertEquals(30L, config.getWorkersAdjustInterval());
             assertNull(config.getSwaggerTitle());
             assertNull(config.getSwaggerDescription());
             assertEquals("/cd", config.getRunServerContextPath());
@@ -122,6 +151,29 @@ public class TestConfiguration {
         }
     }
     
+    @Test
+    public void testConfigurationClientWeights() throws CommunityDetectionException, IOException {
+        File tempDir = _folder.newFolder();
+        try {
+            File configFile = new File(tempDir.getAbsolutePath() + File.separator + "conf");
+            Properties props = new Properties();
+            props.setProperty(Configuration.CLIENT_WEIGHTS, "cytoscape=4, batch = 1,,bad");
+            props.setProperty(Configuration.CLIENT_MAX_PRIORITY, "5");
+            FileOutputStream fos = new FileOutputStream(configFile);
+            props.store(fos, "hello");
+            fos.flush();
+            fos.close();
+            Configuration.setAlternateConfigurationFile(configFile.getAbsolutePath());
+            Configuration config = Configuration.reloadConfiguration();
+            assertEquals(2, config.getClientWeights().size());
+            assertEquals(4, config.getClientWeights().get("cytoscape").intValue());
+            assertEquals(1, config.getClientWeights().get("batch").intValue());
+            assertEquals(5, config.getClientMaxPriority());
+        } finally {
+            _folder.delete();
+        }
+    }
+    
     @Test
     public void testParseAlgorithmMapInvalidData() throws CommunityDetectionException, IOException {
         File tempDir = _folder.newFolder();
@@ -240,4 +292,50 @@ public class TestConfiguration {
             _folder.delete();
         }
     }
+    
+    @Test
+    public void testParseAlgorithmMapWithExecutionSettings() throws CommunityDetectionException, IOException {
+        File tempDir = _folder.newFolder();
+        try {
+            File configFile = new File(tempDir.getAbsolutePath() + File.separator + "conf");
+            File algoConfig = new File(tempDir.getAbsolutePath() + File.separator + "algo.json");
+            CommunityDetectionAlgorithms cdAlgos = new CommunityDetectionAlgorithms();
+            CommunityDetectionAlgorithm someAlgo = new CommunityDetectionAlgorithm();
+            someAlgo.setName("foo");
+            CommunityDetectionAlgorithm louvainAlgo = new CommunityDetectionAlgorithm();
+            louvainAlgo.setName("louvain");
+            LinkedHashMap<String, CommunityDetectionAlgorithm> algoList = new LinkedHashMap<>();
+            algoList.put(someAlgo.getName(), someAlgo);
+            algoList.put(louvainAlgo.getName(), louvainAlgo);
+            cdAlgos.setAlgorithms(algoList);
+            ObjectMapper oMapper = new ObjectMapper();
+            ObjectNode algosNode = oMapper.valueToTree(cdAlgos);
+            ObjectNode execNode = ((ObjectNode)algosNode.get("algorithms").get("louvain"))
+                    .putObject(AlgorithmExecutionSettings.EXECUTION_FIELD);
+            execNode.put("executor", AlgorithmExecutionSettings.JAVA_LOUVAIN_EXECUTOR);
+            execNode.put("maxNativeEdges", 10);
+            execNode.put("maxConcurrency", 2);
+            execNode.put("queueCapacity", 50);
+            oMapper.writeValue(algoConfig, algosNode);
+			
+            Properties props = new Properties();
+            props.setProperty(Configuration.ALGORITHM_MAP, algoConfig.getAbsolutePath());
+            FileOutputStream fos = new FileOutputStream(configFile);
+            props.store(fos, "hello");
+            fos.flush();
+            fos.close();
+            Configuration.setAlternateConfigurationFile(configFile.getAbsolutePath());
+            Configuration config = Configuration.reloadConfiguration();
+            assertEquals(2, config.getAlgorithms().getAlgorithms().size());
+            Map<String, AlgorithmExecutionSettings> settings = config.getAlgorithmExecutionSettings();
+            assertEquals(1, settings.size());
+            assertEquals(AlgorithmExecutionSettings.JAVA_LOUVAIN_EXECUTOR,
+                    settings.get("louvain").getExecutor());
+            assertEquals(10, settings.get("louvain").getMaxNativeEdges());
+            assertEquals(2, settings.get("louvain").getMaxConcurrency());
+            assertEquals(50, settings.get("louvain").getQueueCapacity());
+        } finally {
+            _folder.delete();
+        }
+    }
 }
@@ -0,0 +1,181 @@
+package org.ndexbio.communitydetection.rest.engine;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+import org.ndexbio.communitydetection.rest.engine.util.TaskThreads;
+import org.ndexbio.communitydetection.rest.engine.util.ThreadPerTaskExecutor;
+
+/**
+ *
+ * @author churas
+ */
+public class TestFairTaskScheduler {
+
+    /**
+     * Executor that holds tasks until {@link #runNext()} is called
+     */
+    private static class ManualExecutor implements Executor {
+        private final List<Runnable> _tasks = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable command) {
+            _tasks.add(command);
+        }
+
+        void runNext(){
+            _tasks.remove(0).run();
+        }
+
+        int size(){
+            return _tasks.size();
+        }
+    }
+
+    private Runnable record(final List<String> ran, final String name){
+        return () -> ran.add(name);
+    }
+
+    @Test
+    public void testCreate(){
+        ThreadPoolExecutor tpe = new ThreadPoolExecutor(2, 2, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(3));
+        try {
+            FairTaskScheduler scheduler = FairTaskScheduler.create(tpe, null);
+            for (int i = 0; i < 5; i++){
+                scheduler.submit("a", 0, new FutureTask<>(() -> {
+                    Thread.sleep(60000);
+                    return null;
+                }));
+            }
+            assertEquals(3, scheduler.getQueuedTasks());
+            try {
+                scheduler.submit("a", 0, () -> {});
+                fail("Expected RejectedExecutionException");
+            } catch(RejectedExecutionException ree){
+                assertTrue(ree.getMessage().contains("full"));
+            }
+        } finally {
+            tpe.shutdownNow();
+        }
+        ThreadPerTaskExecutor perTask = new ThreadPerTaskExecutor(
+                TaskThreads.newThreadFactory("test"), 2);
+        try {
+            FairTaskScheduler scheduler = FairTaskScheduler.create(perTask, null);
+            assertEquals(2, scheduler.getMaxRunning());
+            for (int i = 0; i < 5; i++){
+                scheduler.submit("a", 0, new FutureTask<>(() -> {
+                    Thread.sleep(60000);
+                    return null;
+                }));
+            }
+            // waiting tasks are held by scheduler, not by the semaphore
+            assertEquals(3, scheduler.getQueuedTasks());
+        } finally {
+            perTask.shutdownNow();
+        }
+        ManualExecutor executor = new ManualExecutor();
+        FairTaskScheduler scheduler = FairTaskScheduler.create(executor, null);
+        for (int i = 0; i < 5; i++){
+            scheduler.submit("a", 0, () -> {});
+        }
+        // not a thread pool so every task is passed on
+        assertEquals(5, executor.size());
+        assertEquals(0, scheduler.getQueuedTasks());
+    }
+
+    @Test
+    public void testFairShareAndPriority(){
+        ManualExecutor executor = new ManualExecutor();
+        Map<String, Integer> weights = new HashMap<>();
+        weights.put("cytoscape", 2);
+        FairTaskScheduler scheduler = new FairTaskScheduler(executor, 1, 0, weights);
+        List<String> ran = new ArrayList<>();
+        for (int i = 0; i < 4; i++){
+            scheduler.submit("batch", 0, record(ran, "b" + Integer.toString(i)));
+        }
+        scheduler.submit("cytoscape", 0, record(ran, "c0"));
+        scheduler.submit("cytoscape", 0, record(ran, "c1"));
+        scheduler.submit("cytoscape", 0, record(ran, "c2"));
+        scheduler.submit(null, 0, record(ran, "d0"));
+        scheduler.submit("batch", 20, record(ran, "urgent"));
+
+        Map<String, FairTaskScheduler.ClientCount> counts = scheduler.getClientCounts();
+        assertEquals(1, counts.get("batch").getRunning());
+        assertEquals(4, counts.get("batch").getQueued());
+        assertEquals(3, counts.get("cytoscape").getQueued());
+        assertEquals(1, counts.get(FairTaskScheduler.DEFAULT_CLIENT).getQueued());
+
+        while (executor.size() > 0){
+            executor.runNext();
+        }
+        // b0 was dispatched before anything else arrived, urgent has the
+        // highest priority, then cytoscape gets twice the share of batch
+        assertEquals("[b0, urgent, c0, b1, c1, d0, c2, b2, b3]", ran.toString());
+        assertTrue(scheduler.getClientCounts().isEmpty());
+    }
+
+    @Test
+    public void testCanceledTaskIsSkipped(){
+        ManualExecutor executor = new ManualExecutor();
+        FairTaskScheduler scheduler = new FairTaskScheduler(executor, 1, 0, null);
+        List<String> ran = new ArrayList<>();
+        scheduler.submit("a", 0, record(ran, "a0"));
+        FutureTask<Void> canceled = new FutureTask<>(record(ran, "a1"), null);
+        scheduler.submit("a", 0, canceled);
+        scheduler.submit("a", 0, record(ran, "a2"));
+        canceled.cancel(false);
+        executor.runNext();
+        assertEquals(1, executor.size());
+        executor.runNext();
+        assertEquals("[a0, a2]", ran.toString());
+        assertEquals(0, scheduler.getQueuedTasks());
+    }
+
+    @Test
+    public void testSetMaxRunning(){
+        ManualExecutor executor = new ManualExecutor();
+        FairTaskScheduler scheduler = new FairTaskScheduler(executor, 1, 0, null);
+        for (int i = 0; i < 4; i++){
+            scheduler.submit("a", 0, () -> {});
+        }
+        assertEquals(1, executor.size());
+        scheduler.setMaxRunning(3);
+        assertEquals(3, scheduler.getMaxRunning());
+        assertEquals(3, executor.size());
+        assertEquals(1, scheduler.getQueuedTasks());
+
+        // running tasks finish but nothing new is dispatched until
+        // fewer than 1 are running
+        scheduler.setMaxRunning(1);
+        executor.runNext();
+        executor.runNext();
+        assertEquals(1, executor.size());
+        executor.runNext();
+        assertEquals(1, executor.size());
+        assertEquals(0, scheduler.getQueuedTasks());
+    }
+
+    @Test
+    public void testRejectedAfterShutdown(){
+        ThreadPoolExecutor tpe = (ThreadPoolExecutor)Executors.newFixedThreadPool(1);
+        tpe.shutdown();
+        FairTaskScheduler scheduler = FairTaskScheduler.create(tpe, null);
+        FutureTask<Void> task = new FutureTask<>(() -> {}, null);
+        scheduler.submit("a", 0, task);
+        assertTrue(task.isCancelled());
+        assertTrue(scheduler.getClientCounts().isEmpty());
+    }
+}
@@ -0,0 +1,257 @@
+package org.ndexbio.communitydetection.rest.engine;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.TextNode;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.ndexbio.communitydetection.rest.model.CommunityDetectionResult;
+
+/**
+ *
+ * @author churas
+ */
+public class TestLogTaskStore {
+
+    @Rule
+    public TemporaryFolder _folder = new TemporaryFolder();
+
+    private CommunityDetectionResult createResult(final String id, final String data){
+        CommunityDetectionResult cdr = new CommunityDetectionResult(1L);
+        cdr.setId(id);
+        cdr.setStatus(CommunityDetectionResult.COMPLETE_STATUS);
+        cdr.setProgress(100);
+        cdr.setResult(TextNode.valueOf(data));
+        return cdr;
+    }
+
+    private byte[] readStoredResult(final StoredResult stored) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (StoredResult sr = stored){
+            sr.transferTo(Channels.newChannel(out));
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testPutGetDeleteAndReopen() throws Exception {
+        File tempDir = _folder.newFolder();
+        try {
+            LogTaskStore store = new LogTaskStore(tempDir.getAbsolutePath());
+            store.open();
+            assertFalse(store.usesTaskDirectory());
+            assertNull(store.getResult("1"));
+            assertNull(store.getStatus("1"));
+            assertEquals(0L, store.getVersion("1"));
+
+            store.putResult(createResult("1", "one"));
+            store.putResult(createResult("2", "two"));
+            long version = store.getVersion("1");
+            assertTrue(version > 0);
+            assertEquals("one", store.getResult("1").getResult().asText());
+            assertEquals(CommunityDetectionResult.COMPLETE_STATUS, store.getStatus("2").getStatus());
+            assertEquals(100, store.getStatus("2").getProgress());
+            assertTrue(store.getResultSize("1") > 0);
+
+            store.putResult(createResult("1", "uno"));
+            assertTrue(store.getVersion("1") != version);
+            assertEquals("uno", store.getResult("1").getResult().asText());
+            store.delete("2");
+            assertNull(store.getResult("2"));
+            assertEquals(1, store.getTaskCount());
+            assertTrue(store.getLiveBytes() < store.getLogBytes());
+            store.close();
+
+            LogTaskStore reopened = new LogTaskStore(tempDir.getAbsolutePath());
+            reopened.open();
+            assertEquals(1, reopened.getTaskCount());
+            assertEquals("uno", reopened.getResult("1").getResult().asText());
+            assertNull(reopened.getStatus("2"));
+            assertEquals(store.getLogBytes(), reopened.getLogBytes());
+            reopened.close();
+        } finally {
+            _folder.delete();
+        }
+    }
+
+    @Test
+    public void testOpenTruncatesIncompleteRecord() throws Exception {
+        File tempDir = _folder.newFolder();
+        try {
+            LogTaskStore store = new LogTaskStore(tempDir.getAbsolutePath());
+            store.open();
+            store.putResult(createResult("1", "one"));
+            long goodBytes = store.getLogBytes();
+            store.putResult(createResult("2", "two"));
+            store.close();
+
+            // simulate crash part way through writing second record
+            File logFile = new File(tempDir, LogTaskStore.LOG_FILE);
+            try (RandomAccessFile raf = new RandomAccessFile(logFile, "rw")){
+                raf.setLength(raf.length() - 3);
+            }
+            LogTaskStore reopened = new LogTaskStore(tempDir.getAbsolutePath());
+            reopened.open();
+            assertEquals(1, reopened.getTaskCount());
+            assertEquals(goodBytes, logFile.length());
+            assertNull(reopened.getResult("2"));
+
+            // appends continue after last good record
+            reopened.putResult(createResult("3", "three"));
+            assertEquals("three", reopened.getResult("3").getResult().asText());
+            reopened.close();
+        } finally {
+            _folder.delete();
+        }
+    }
+
+    @Test
+    public void testCompact() throws Exception {
+        File tempDir = _folder.newFolder();
+        try {
+            LogTaskStore store = new LogTaskStore(tempDir.getAbsolutePath());
+            store.open();
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 10000; i++){
+                sb.append("x");
+            }
+            String data = sb.toString();
+            for (int i = 0; i < 200; i++){
+                store.putResult(createResult(Integer.toString(i), data));
+            }
+            long version = store.getVersion("199");
+
+            // not enough dead records yet
+            store.compact();
+            assertEquals(200, store.getTaskCount());
+            for (int i = 0; i < 150; i++){
+                store.delete(Integer.toString(i));
+            }
+            long before = store.getLogBytes();
+            store.compact();
+            assertEquals(50, store.getTaskCount());
+            assertEquals(store.getLiveBytes(), store.getLogBytes());
+            assertTrue(store.getLogBytes() < before / 2);
+            assertEquals(store.getLogBytes(), new File(tempDir, LogTaskStore.LOG_FILE).length());
+            assertNull(store.getResult("0"));
+            assertEquals(data, store.getResult("199").getResult().asText());
+            assertTrue(store.getVersion("199") > 0);
+            assertTrue(store.getVersion("199") != version);
+
+            store.putResult(createResult("200", "new"));
+            assertEquals("new", store.getResult("200").getResult().asText());
+            store.close();
+        } finally {
+            _folder.delete();
+        }
+    }
+
+    @Test
+    public void testOpenResult() throws Exception {
+        File tempDir = _folder.newFolder();
+        try {
+            LogTaskStore store = new LogTaskStore(tempDir.getAbsolutePath());
+            store.open();
+            assertNull(store.openResult("1"));
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 10000; i++){
+                sb.append("x");
+            }
+            String data = sb.toString();
+            for (int i = 0; i < 200; i++){
+                store.putResult(createResult(Integer.toString(i), data));
+            }
+            CommunityDetectionResult cdr = createResult("keep", "kept");
+            store.putResult(cdr);
+            ObjectMapper mapper = new ObjectMapper();
+            assertArrayEquals(mapper.writeValueAsBytes(cdr),
+                    readStoredResult(store.openResult("keep")));
+
+            // result opened before compaction is still read from old log
+            StoredResult stored = store.openResult("199");
+            for (int i = 0; i < 199; i++){
+                store.delete(Integer.toString(i));
+            }
+            long before = store.getLogBytes();
+            store.compact();
+            assertTrue(store.getLogBytes() < before);
+            assertEquals(data, mapper.readValue(readStoredResult(stored),
+                    CommunityDetectionResult.class).getResult().asText());
+            assertArrayEquals(mapper.writeValueAsBytes(cdr),
+                    readStoredResult(store.openResult("keep")));
+            assertNull(store.openResult("0"));
+            store.close();
+        } finally {
+            _folder.delete();
+        }
+    }
+
+    @Test
+    public void testCompactWhileAppending() throws Exception {
+        File tempDir = _folder.newFolder();
+        try {
+            final AtomicBoolean appended = new AtomicBoolean(false);
+            LogTaskStore store = new LogTaskStore(tempDir.getAbsolutePath()){
+                @Override
+                protected void copyRecords(FileChannel from, long position, long count,
+                        FileChannel to) throws IOException {
+                    // tasks finish and are deleted while live records are copied
+                    if (appended.getAndSet(true) == false){
+                        putResult(createResult("new", "during"));
+                        putResult(createResult("199", "replaced"));
+                        delete("198");
+                    }
+                    super.copyRecords(from, position, count, to);
+                }
+            };
+            store.open();
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 10000; i++){
+                sb.append("x");
+            }
+            String data = sb.toString();
+            for (int i = 0; i < 200; i++){
+                store.putResult(createResult(Integer.toString(i), data));
+            }
+            for (int i = 0; i < 150; i++){
+                store.delete(Integer.toString(i));
+            }
+            long before = store.getLogBytes();
+            store.compact();
+            assertTrue(appended.get());
+            assertTrue(store.getLogBytes() < before / 2);
+            assertEquals(store.getLogBytes(), new File(tempDir, LogTaskStore.LOG_FILE).length());
+            assertEquals(50, store.getTaskCount());
+            assertEquals("during", store.getResult("new").getResult().asText());
+            assertEquals("replaced", store.getResult("199").getResult().asText());
+            assertNull(store.getResult("198"));
+            assertEquals(data, store.getResult("197").getResult().asText());
+            store.putResult(createResult("after", "after"));
+            store.close();
+
+            // log written by compaction is valid on its own
+            LogTaskStore reopened = new LogTaskStore(tempDir.getAbsolutePath());
+            reopened.open();
+            assertEquals(store.getLogBytes(), reopened.getLogBytes());
+            assertEquals(51, reopened.getTaskCount());
+            assertEquals("replaced", reopened.getResult("199").getResult().asText());
+            assertEquals("after", reopened.getResult("after").getResult().asText());
+            assertNull(reopened.getResult("198"));
+            reopened.close();
+        } finally {
+            _folder.delete();
+        }
+    }
+}
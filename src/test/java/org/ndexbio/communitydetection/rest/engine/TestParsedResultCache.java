@@ -0,0 +1,65 @@
+package org.ndexbio.communitydetection.rest.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import org.junit.Test;
+import org.ndexbio.communitydetection.rest.model.CommunityDetectionResult;
+
+/**
+ *
+ * @author churas
+ */
+public class TestParsedResultCache {
+
+    private CommunityDetectionResult createResult(final String id){
+        CommunityDetectionResult cdr = new CommunityDetectionResult(1L);
+        cdr.setId(id);
+        cdr.setStatus(CommunityDetectionResult.COMPLETE_STATUS);
+        return cdr;
+    }
+
+    @Test
+    public void testPutGetAndRemove(){
+        ParsedResultCache cache = new ParsedResultCache(100L);
+        assertNull(cache.get("1", 5L));
+        CommunityDetectionResult cdr = createResult("1");
+        cache.put("1", cdr, 10L, 5L);
+        assertSame(cdr, cache.get("1", 5L));
+        assertEquals(1L, cache.getHits());
+        assertEquals(1L, cache.getMisses());
+        assertEquals(10L, cache.getBytes());
+
+        // result file changed since it was cached
+        assertNull(cache.get("1", 6L));
+        assertEquals(0, cache.getEntries());
+        assertEquals(0L, cache.getBytes());
+
+        cache.put("1", cdr, 10L, 5L);
+        cache.put("1", cdr, 20L, 7L);
+        assertEquals(20L, cache.getBytes());
+        cache.remove("1");
+        assertEquals(0, cache.getEntries());
+        assertEquals(0L, cache.getBytes());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsedOverBudget(){
+        ParsedResultCache cache = new ParsedResultCache(100L);
+        cache.put("1", createResult("1"), 40L, 1L);
+        cache.put("2", createResult("2"), 40L, 1L);
+        // result 1 was read so result 2 is least recently used
+        cache.get("1", 1L);
+        cache.put("3", createResult("3"), 40L, 1L);
+        assertEquals(2, cache.getEntries());
+        assertEquals(80L, cache.getBytes());
+        assertNull(cache.get("2", 1L));
+        assertEquals("1", cache.get("1", 1L).getId());
+        assertEquals("3", cache.get("3", 1L).getId());
+
+        // larger than budget is never kept
+        cache.put("4", createResult("4"), 101L, 1L);
+        assertNull(cache.get("4", 1L));
+        assertEquals(2, cache.getEntries());
+    }
+}
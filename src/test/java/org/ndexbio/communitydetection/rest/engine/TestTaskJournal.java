@@ -0,0 +1,138 @@
+package org.ndexbio.communitydetection.rest.engine;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author churas
+ */
+public class TestTaskJournal {
+
+    @Rule
+    public TemporaryFolder _folder = new TemporaryFolder();
+
+    private TaskJournal.Entry getSubmitted(final String id){
+        TaskJournal.Entry entry = new TaskJournal.Entry(TaskJournal.SUBMITTED_OP, id);
+        entry.setAlgorithm("louvain");
+        entry.setStartTime(10L);
+        entry.setTextData(true);
+        Map<String, String> cParams = new HashMap<>();
+        cParams.put("--foo", "1");
+        entry.setCustomParameters(cParams);
+        return entry;
+    }
+
+    @Test
+    public void testReplayOnMissingJournal() throws Exception {
+        File tempDir = _folder.newFolder();
+        try {
+            TaskJournal journal = new TaskJournal(tempDir.getAbsolutePath());
+            assertTrue(journal.replay().isEmpty());
+            journal.compact(Collections.emptyList());
+            assertFalse(journal.getJournalFile().exists());
+        } finally {
+            _folder.delete();
+        }
+    }
+
+    @Test
+    public void testAppendReplayAndCompact() throws Exception {
+        File tempDir = _folder.newFolder();
+        try {
+            TaskJournal journal = new TaskJournal(tempDir.getAbsolutePath());
+            journal.append(getSubmitted("1"));
+            journal.append(getSubmitted("2"));
+            journal.append(getSubmitted("3"));
+            journal.append(new TaskJournal.Entry(TaskJournal.STARTED_OP, "1"));
+            journal.append(new TaskJournal.Entry(TaskJournal.STARTED_OP, "2"));
+            journal.append(new TaskJournal.Entry(TaskJournal.FINISHED_OP, "2"));
+            journal.close();
+
+            // simulate crash while writing last line
+            try (FileWriter fw = new FileWriter(journal.getJournalFile(), true)){
+                fw.write("{\"op\":\"finished\",\"id\":\"3");
+            }
+
+            Map<String, TaskJournal.PendingTask> pending = journal.replay();
+            assertEquals(2, pending.size());
+            assertEquals("[1, 3]", pending.keySet().toString());
+            assertTrue(pending.get("1").isStarted());
+            assertFalse(pending.get("3").isStarted());
+            TaskJournal.Entry entry = pending.get("3").getSubmitted();
+            assertEquals("louvain", entry.getAlgorithm());
+            assertEquals(10L, entry.getStartTime());
+            assertTrue(entry.isTextData());
+            assertEquals("1", entry.getCustomParameters().get("--foo"));
+
+            journal.compact(new ArrayList<>(pending.values()));
+            pending = journal.replay();
+            assertEquals("[1, 3]", pending.keySet().toString());
+            assertFalse(pending.get("1").isStarted());
+
+            // appends after compact go to new journal
+            journal.append(new TaskJournal.Entry(TaskJournal.FINISHED_OP, "1"));
+            pending = journal.replay();
+            assertEquals("[3]", pending.keySet().toString());
+            journal.close();
+        } finally {
+            _folder.delete();
+        }
+    }
+
+    @Test
+    public void testCompactIfNeeded() throws Exception {
+        File tempDir = _folder.newFolder();
+        try {
+            TaskJournal journal = new TaskJournal(tempDir.getAbsolutePath());
+            journal.setCompactThreshold(2);
+            journal.append(getSubmitted("old"));
+            journal.append(new TaskJournal.Entry(TaskJournal.FINISHED_OP, "old"));
+            journal.append(new TaskJournal.Entry(TaskJournal.FINISHED_OP, "old"));
+
+            // pending tasks unknown until journal is replayed
+            assertFalse(journal.compactIfNeeded());
+            assertTrue(journal.replay().isEmpty());
+            // finished entries read by replay count toward threshold
+            assertTrue(journal.compactIfNeeded());
+            assertEquals(0L, journal.getJournalFile().length());
+
+            journal.append(getSubmitted("1"));
+            journal.append(getSubmitted("2"));
+            journal.append(getSubmitted("3"));
+            journal.append(new TaskJournal.Entry(TaskJournal.STARTED_OP, "1"));
+            journal.append(new TaskJournal.Entry(TaskJournal.STARTED_OP, "2"));
+            journal.append(new TaskJournal.Entry(TaskJournal.FINISHED_OP, "2"));
+            assertFalse(journal.compactIfNeeded());
+            long size = journal.getJournalFile().length();
+            journal.append(new TaskJournal.Entry(TaskJournal.FINISHED_OP, "3"));
+            assertTrue(journal.compactIfNeeded());
+            assertTrue(journal.getJournalFile().length() < size);
+            assertFalse(journal.compactIfNeeded());
+
+            // started flag survives compaction
+            Map<String, TaskJournal.PendingTask> pending = journal.replay();
+            assertEquals("[1]", pending.keySet().toString());
+            assertTrue(pending.get("1").isStarted());
+            assertEquals("louvain", pending.get("1").getSubmitted().getAlgorithm());
+
+            // appends after compact go to new journal
+            journal.append(getSubmitted("4"));
+            journal.append(new TaskJournal.Entry(TaskJournal.FINISHED_OP, "1"));
+            assertEquals("[4]", journal.replay().keySet().toString());
+            journal.close();
+        } finally {
+            _folder.delete();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package org.ndexbio.communitydetection.rest.engine;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author churas
+ */
+public class TestTaskReaper {
+
+    @Rule
+    public TemporaryFolder _folder = new TemporaryFolder();
+
+    private File createTask(final File taskDir, final String id, int bytes) throws IOException {
+        File dir = new File(taskDir, id);
+        dir.mkdirs();
+        File resultFile = new File(dir, CommunityDetectionEngineImpl.CDRESULT_JSON_FILE);
+        try (FileWriter fw = new FileWriter(resultFile)){
+            for (int i = 0; i < bytes; i++){
+                fw.write("x");
+            }
+        }
+        return dir;
+    }
+
+    @Test
+    public void testLoadOnEmptyDirectory() throws Exception {
+        File tempDir = _folder.newFolder();
+        try {
+            TaskReaper reaper = new TaskReaper(tempDir.getAbsolutePath(), 1000L, 100L);
+            reaper.load();
+            assertEquals(0, reaper.getRetainedTasks());
+            assertTrue(reaper.reap(System.currentTimeMillis()).isEmpty());
+            reaper.save();
+            assertTrue(new File(tempDir, TaskReaper.INDEX_FILE).isFile());
+        } finally {
+            _folder.delete();
+        }
+    }
+
+    @Test
+    public void testReapOverBudgetLeastRecentlyAccessedFirst() throws Exception {
+        File tempDir = _folder.newFolder();
+        try {
+            TaskReaper reaper = new TaskReaper(tempDir.getAbsolutePath(), 0L, 250L);
+            File one = createTask(tempDir, "1", 100);
+            File two = createTask(tempDir, "2", 100);
+            File three = createTask(tempDir, "3", 100);
+            reaper.add("1");
+            reaper.add("2");
+            assertTrue(reaper.reap(System.currentTimeMillis()).isEmpty());
+            reaper.add("3");
+            assertEquals(300L, reaper.getRetainedBytes());
+
+            // task 1 was read so task 2 is least recently accessed
+            reaper.touch("1");
+            List<String> evicted = reaper.reap(System.currentTimeMillis());
+            assertEquals("[2]", evicted.toString());
+            assertFalse(two.exists());
+            assertTrue(one.exists());
+            assertTrue(three.exists());
+            assertEquals(2, reaper.getRetainedTasks());
+            assertEquals(200L, reaper.getRetainedBytes());
+            assertEquals(1L, reaper.getEvictedTasks());
+            assertEquals(100L, reaper.getReclaimedBytes());
+
+            reaper.remove("3");
+            assertEquals(100L, reaper.getRetainedBytes());
+        } finally {
+            _folder.delete();
+        }
+    }
+
+    @Test
+    public void testReapExpiredAndReload() throws Exception {
+        File tempDir = _folder.newFolder();
+        try {
+            TaskReaper reaper = new TaskReaper(tempDir.getAbsolutePath(), 60000L, 0L);
+            createTask(tempDir, "1", 10);
+            createTask(tempDir, "2", 10);
+            reaper.add("1");
+            reaper.add("2");
+            reaper.save();
+
+            // completed while index was not saved
+            File three = createTask(tempDir, "3", 10);
+            new File(three, CommunityDetectionEngineImpl.CDRESULT_JSON_FILE).setLastModified(1000L);
+            // not completed
+            new File(tempDir, "4").mkdirs();
+
+            TaskReaper reloaded = new TaskReaper(tempDir.getAbsolutePath(), 60000L, 0L);
+            reloaded.load();
+            assertEquals(3, reloaded.getRetainedTasks());
+            assertEquals(30L, reloaded.getRetainedBytes());
+
+            assertEquals("[3]", reloaded.reap(System.currentTimeMillis()).toString());
+            assertFalse(three.exists());
+            assertTrue(new File(tempDir, "4").exists());
+
+            List<String> evicted = reloaded.reap(System.currentTimeMillis() + 60000L);
+            assertEquals(2, evicted.size());
+            assertEquals(0, reloaded.getRetainedTasks());
+            assertEquals(3L, reloaded.getEvictedTasks());
+        } finally {
+            _folder.delete();
+        }
+    }
+}
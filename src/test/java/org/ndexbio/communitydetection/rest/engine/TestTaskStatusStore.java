@@ -0,0 +1,93 @@
+package org.ndexbio.communitydetection.rest.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import org.ndexbio.communitydetection.rest.model.CommunityDetectionResult;
+import org.ndexbio.communitydetection.rest.model.CommunityDetectionResultStatus;
+
+/**
+ *
+ * @author churas
+ */
+public class TestTaskStatusStore {
+
+    private CommunityDetectionResult createResult(final String id, final String status){
+        CommunityDetectionResult cdr = new CommunityDetectionResult(1L);
+        cdr.setId(id);
+        cdr.setStatus(status);
+        return cdr;
+    }
+
+    @Test
+    public void testActiveToFinished(){
+        TaskStatusStore store = new TaskStatusStore();
+        assertEquals(TaskStatusStore.State.UNKNOWN, store.getState("1"));
+        CommunityDetectionResult cdr = createResult("1", CommunityDetectionResult.PROCESSING_STATUS);
+        store.putActive("1", cdr);
+        assertEquals(TaskStatusStore.State.ACTIVE, store.getState("1"));
+        assertSame(cdr, store.getActive("1"));
+        assertTrue(store.isActive("1"));
+
+        // status read from disk is ignored while task is active
+        store.putFinished(new CommunityDetectionResultStatus(cdr));
+        assertEquals(0, store.getFinishedCount());
+
+        cdr.setStatus(CommunityDetectionResult.COMPLETE_STATUS);
+        store.finish(cdr);
+        assertFalse(store.isActive("1"));
+        assertNull(store.getActive("1"));
+        assertEquals(TaskStatusStore.State.FINISHED, store.getState("1"));
+        assertEquals(CommunityDetectionResult.COMPLETE_STATUS,
+                store.getFinishedStatus("1").getStatus());
+        assertEquals(0, store.getActiveCount());
+        assertEquals(1, store.getFinishedCount());
+
+        assertNull(store.remove("1"));
+        assertEquals(TaskStatusStore.State.UNKNOWN, store.getState("1"));
+    }
+
+    @Test
+    public void testFinishedEvictedLeastRecentlyUsedFirst(){
+        TaskStatusStore store = new TaskStatusStore(2, 60000L);
+        store.finish(createResult("1", CommunityDetectionResult.COMPLETE_STATUS));
+        store.finish(createResult("2", CommunityDetectionResult.COMPLETE_STATUS));
+        // task 1 was read so task 2 is least recently used
+        store.getFinishedStatus("1");
+        store.finish(createResult("3", CommunityDetectionResult.FAILED_STATUS));
+        assertEquals(2, store.getFinishedCount());
+        assertNull(store.getFinishedStatus("2"));
+        assertEquals("1", store.getFinishedStatus("1").getId());
+        assertEquals("3", store.getFinishedStatus("3").getId());
+    }
+
+    @Test
+    public void testActiveNeverEvicted(){
+        TaskStatusStore store = new TaskStatusStore(0, 0L);
+        for (int i = 0; i < 5; i++){
+            store.putActive(Integer.toString(i), createResult(Integer.toString(i),
+                    CommunityDetectionResult.SUBMITTED_STATUS));
+        }
+        assertEquals(5, store.getActiveCount());
+        store.finish(createResult("0", CommunityDetectionResult.COMPLETE_STATUS));
+        assertEquals(4, store.getActiveCount());
+        assertEquals(0, store.getFinishedCount());
+        assertEquals(TaskStatusStore.State.UNKNOWN, store.getState("0"));
+        assertEquals(CommunityDetectionResult.SUBMITTED_STATUS, store.remove("1").getStatus());
+        assertEquals(3, store.getActiveCount());
+    }
+
+    @Test
+    public void testFinishedExpires() throws Exception {
+        TaskStatusStore store = new TaskStatusStore(10, 1L);
+        store.putFinished(new CommunityDetectionResultStatus(createResult("1",
+                CommunityDetectionResult.COMPLETE_STATUS)));
+        assertEquals(1, store.getFinishedCount());
+        Thread.sleep(20);
+        assertNull(store.getFinishedStatus("1"));
+        assertEquals(0, store.getFinishedCount());
+    }
+}
@@ -0,0 +1,70 @@
+package org.ndexbio.communitydetection.rest.engine.algorithms;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ *
+ * @author churas
+ */
+public class TestHeatDiffusion {
+
+    private CompressedSparseRowGraph getPath(int numNodes){
+        int[] sources = new int[numNodes - 1];
+        int[] targets = new int[numNodes - 1];
+        double[] weights = new double[numNodes - 1];
+        for (int i = 0; i < numNodes - 1; i++){
+            sources[i] = i;
+            targets[i] = i + 1;
+            weights[i] = 1.0;
+        }
+        return CompressedSparseRowGraph.fromEdges(numNodes, numNodes - 1,
+                sources, targets, weights);
+    }
+
+    @Test
+    public void testTwoNodes(){
+        CompressedSparseRowGraph g = getPath(2);
+        double t = 0.1;
+        double expected = Math.exp(-2.0 * t);
+        for (boolean normalize : new boolean[]{false, true}){
+            double[] res = new HeatDiffusion(g, normalize).diffuse(new double[]{1.0, 0.0}, t);
+            assertEquals((1.0 + expected) / 2.0, res[0], 1e-12);
+            assertEquals((1.0 - expected) / 2.0, res[1], 1e-12);
+        }
+    }
+
+    @Test
+    public void testZeroTime(){
+        double[] heat = {1.0, 0.5, 0.0};
+        assertArrayEquals(heat, new HeatDiffusion(getPath(3), false).diffuse(heat, 0.0), 0.0);
+    }
+
+    @Test
+    public void testLongTimeConverges(){
+        // laplacian conserves total heat and spreads it evenly
+        double[] res = new HeatDiffusion(getPath(5), false).diffuse(
+                new double[]{1.0, 0.0, 0.0, 0.0, 0.0}, 100.0);
+        for (double h : res){
+            assertEquals(0.2, h, 1e-9);
+        }
+
+        // normalized laplacian converges to projection onto sqrt of degrees
+        res = new HeatDiffusion(getPath(3), true).diffuse(
+                new double[]{1.0, 0.0, 0.0}, 100.0);
+        assertEquals(0.25, res[0], 1e-9);
+        assertEquals(Math.sqrt(2.0) / 4.0, res[1], 1e-9);
+        assertEquals(0.25, res[2], 1e-9);
+    }
+
+    @Test
+    public void testIsolatedNode(){
+        CompressedSparseRowGraph g = CompressedSparseRowGraph.fromEdges(3, 1,
+                new int[]{0}, new int[]{1}, new double[]{1.0});
+        for (boolean normalize : new boolean[]{false, true}){
+            double[] res = new HeatDiffusion(g, normalize).diffuse(new double[]{0.0, 0.0, 2.0}, 1.0);
+            assertArrayEquals(new double[]{0.0, 0.0, 2.0}, res, 1e-12);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package org.ndexbio.communitydetection.rest.engine.algorithms;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.TextNode;
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.ndexbio.communitydetection.rest.model.CommunityDetectionRequest;
+import org.ndexbio.communitydetection.rest.model.CommunityDetectionResult;
+
+/**
+ *
+ * @author churas
+ */
+public class TestHeatDiffusionCommunityDetectionRunner {
+
+    @Rule
+    public TemporaryFolder _folder = new TemporaryFolder();
+
+    /**
+     * Path 10 - 11 - 12 with duplicate edge and heat on node 10
+     */
+    private static final String PATH_CX = "[{\"numberVerification\":[{\"longNumber\":281474976710655}]},"
+            + "{\"nodes\":[{\"@id\":10,\"n\":\"A\"},{\"@id\":11,\"n\":\"B\"},{\"@id\":12,\"n\":\"C\"}]},"
+            + "{\"edges\":[{\"@id\":0,\"s\":10,\"t\":11},{\"@id\":1,\"s\":11,\"t\":12},"
+            + "{\"@id\":2,\"s\":12,\"t\":11}]},"
+            + "{\"nodeAttributes\":[{\"po\":10,\"n\":\"diffusion_input\",\"v\":1.0,\"d\":\"double\"},"
+            + "{\"po\":12,\"n\":\"myinput\",\"v\":\"2.0\",\"d\":\"double\"}]}]";
+
+    private CommunityDetectionRequest getRequest(final JsonNode data, Map<String, String> params){
+        CommunityDetectionRequest cdr = new CommunityDetectionRequest();
+        cdr.setAlgorithm("diffusion");
+        cdr.setData(data);
+        cdr.setCustomParameters(params);
+        return cdr;
+    }
+
+    @Test
+    public void testIsSupported() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        JsonNode data = mapper.readTree(PATH_CX);
+        assertFalse(HeatDiffusionCommunityDetectionRunner.isSupported(null, 10));
+        assertFalse(HeatDiffusionCommunityDetectionRunner.isSupported(getRequest(null, null), 10));
+        assertFalse(HeatDiffusionCommunityDetectionRunner.isSupported(getRequest(new TextNode("1\t2"), null), 10));
+        assertTrue(HeatDiffusionCommunityDetectionRunner.isSupported(getRequest(data, null), 10));
+
+        // too many edges
+        assertFalse(HeatDiffusionCommunityDetectionRunner.isSupported(getRequest(data, null), 2));
+
+        Map<String, String> params = new HashMap<>();
+        params.put(HeatDiffusionCommunityDetectionRunner.TIME, "0.5");
+        params.put(HeatDiffusionCommunityDetectionRunner.NORMALIZE_LAPLACIAN, "True");
+        params.put(HeatDiffusionCommunityDetectionRunner.INPUT_ATTRIBUTE_NAME, "foo");
+        params.put(HeatDiffusionCommunityDetectionRunner.OUTPUT_ATTRIBUTE_NAME, "bar");
+        assertTrue(HeatDiffusionCommunityDetectionRunner.isSupported(getRequest(data, params), 10));
+
+        params.put(HeatDiffusionCommunityDetectionRunner.TIME, "x");
+        assertFalse(HeatDiffusionCommunityDetectionRunner.isSupported(getRequest(data, params), 10));
+        params.put(HeatDiffusionCommunityDetectionRunner.TIME, "-1");
+        assertFalse(HeatDiffusionCommunityDetectionRunner.isSupported(getRequest(data, params), 10));
+        params.put(HeatDiffusionCommunityDetectionRunner.TIME, "0.5");
+        params.put(HeatDiffusionCommunityDetectionRunner.NORMALIZE_LAPLACIAN, "yes");
+        assertFalse(HeatDiffusionCommunityDetectionRunner.isSupported(getRequest(data, params), 10));
+        params.put(HeatDiffusionCommunityDetectionRunner.NORMALIZE_LAPLACIAN, "false");
+        params.put("--foo", "1");
+        assertFalse(HeatDiffusionCommunityDetectionRunner.isSupported(getRequest(data, params), 10));
+    }
+
+    @Test
+    public void testCallDefaults() throws Exception {
+        File tempDir = _folder.newFolder();
+        try {
+            ObjectMapper mapper = new ObjectMapper();
+            HeatDiffusionCommunityDetectionRunner runner = new HeatDiffusionCommunityDetectionRunner("someid",
+                    getRequest(mapper.readTree(PATH_CX), null), 5, tempDir.getAbsolutePath());
+            CommunityDetectionResult res = runner.call();
+            assertEquals("someid", res.getId());
+            assertEquals(CommunityDetectionResult.COMPLETE_STATUS, res.getStatus());
+            assertEquals(100, res.getProgress());
+            assertEquals(5, res.getStartTime());
+            assertTrue(new File(tempDir, "someid").isDirectory());
+
+            assertEquals(0, res.getResult().get("errors").size());
+            JsonNode attrs = res.getResult().get("data").get("nodeAttributes");
+            assertEquals(6, attrs.size());
+
+            // verify heats against dense matrix exponential of 3 node path
+            double[] heats = new HeatDiffusion(CompressedSparseRowGraph.fromEdges(3, 2,
+                    new int[]{0, 1}, new int[]{1, 2}, new double[]{1.0, 1.0}), false)
+                    .diffuse(new double[]{1.0, 0.0, 0.0}, 0.1);
+            long[] ids = {10, 11, 12};
+            int[] ranks = {0, 1, 2};
+            for (int i = 0; i < 3; i++){
+                JsonNode heat = attrs.get(i * 2);
+                assertEquals(ids[i], heat.get("po").asLong());
+                assertEquals("diffusion_output_heat", heat.get("n").asText());
+                assertEquals("double", heat.get("d").asText());
+                assertEquals(heats[i], heat.get("v").asDouble(), 1e-12);
+                JsonNode rank = attrs.get(i * 2 + 1);
+                assertEquals(ids[i], rank.get("po").asLong());
+                assertEquals("diffusion_output_rank", rank.get("n").asText());
+                assertEquals("integer", rank.get("d").asText());
+                assertEquals(ranks[i], rank.get("v").asInt());
+            }
+        } finally {
+            _folder.delete();
+        }
+    }
+
+    @Test
+    public void testCallWithParameters() throws Exception {
+        File tempDir = _folder.newFolder();
+        try {
+            ObjectMapper mapper = new ObjectMapper();
+            Map<String, String> params = new HashMap<>();
+            params.put(HeatDiffusionCommunityDetectionRunner.TIME, "100");
+            params.put(HeatDiffusionCommunityDetectionRunner.NORMALIZE_LAPLACIAN, "True");
+            params.put(HeatDiffusionCommunityDetectionRunner.INPUT_ATTRIBUTE_NAME, "myinput");
+            params.put(HeatDiffusionCommunityDetectionRunner.OUTPUT_ATTRIBUTE_NAME, "out");
+            HeatDiffusionCommunityDetectionRunner runner = new HeatDiffusionCommunityDetectionRunner("someid",
+                    getRequest(mapper.readTree(PATH_CX), params), 5, tempDir.getAbsolutePath());
+            CommunityDetectionResult res = runner.call();
+            assertEquals(CommunityDetectionResult.COMPLETE_STATUS, res.getStatus());
+            JsonNode attrs = res.getResult().get("data").get("nodeAttributes");
+            assertEquals("out_heat", attrs.get(0).get("n").asText());
+            assertEquals("out_rank", attrs.get(1).get("n").asText());
+
+            // converges to sqrt(degree) * 2 / sum of degrees
+            assertEquals(0.5, attrs.get(0).get("v").asDouble(), 1e-9);
+            assertEquals(Math.sqrt(2.0) / 2.0, attrs.get(2).get("v").asDouble(), 1e-9);
+            assertEquals(0.5, attrs.get(4).get("v").asDouble(), 1e-9);
+
+            // ties are ranked in node order
+            assertEquals(1, attrs.get(1).get("v").asInt());
+            assertEquals(0, attrs.get(3).get("v").asInt());
+            assertEquals(2, attrs.get(5).get("v").asInt());
+        } finally {
+            _folder.delete();
+        }
+    }
+
+    @Test
+    public void testCallInvalidData() throws Exception {
+        File tempDir = _folder.newFolder();
+        try {
+            ObjectMapper mapper = new ObjectMapper();
+            HeatDiffusionCommunityDetectionRunner runner = new HeatDiffusionCommunityDetectionRunner("someid",
+                    getRequest(mapper.readTree("[{\"edges\":[{\"@id\":0,\"s\":\"x\",\"t\":1}]}]"), null),
+                    5, tempDir.getAbsolutePath());
+            CommunityDetectionResult res = runner.call();
+            assertEquals(CommunityDetectionResult.FAILED_STATUS, res.getStatus());
+            assertTrue(res.getMessage().contains("Missing or invalid s in edges element"));
+            assertEquals(100, res.getProgress());
+        } finally {
+            _folder.delete();
+        }
+    }
+}
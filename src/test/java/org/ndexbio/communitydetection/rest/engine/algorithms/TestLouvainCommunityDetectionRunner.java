@@ -0,0 +1,146 @@
+package org.ndexbio.communitydetection.rest.engine.algorithms;
+
+import com.fasterxml.jackson.databind.node.TextNode;
+import java.io.File;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.ndexbio.communitydetection.rest.model.CommunityDetectionRequest;
+import org.ndexbio.communitydetection.rest.model.CommunityDetectionResult;
+
+/**
+ *
+ * @author churas
+ */
+public class TestLouvainCommunityDetectionRunner {
+
+    @Rule
+    public TemporaryFolder _folder = new TemporaryFolder();
+
+    /**
+     * Two triangles 1,2,3 and 4,5,6 joined by edge 3-4
+     */
+    private static final String TWO_TRIANGLES = "1\t2\n2\t3\n1\t3\n3\t4\n4\t5\n5\t6\n4\t6\n";
+
+    private CommunityDetectionRequest getRequest(final String data, Map<String, String> params){
+        CommunityDetectionRequest cdr = new CommunityDetectionRequest();
+        cdr.setAlgorithm("louvain");
+        cdr.setData(new TextNode(data));
+        cdr.setCustomParameters(params);
+        return cdr;
+    }
+
+    @Test
+    public void testIsSupported(){
+        assertFalse(LouvainCommunityDetectionRunner.isSupported(null, 10));
+        CommunityDetectionRequest cdr = new CommunityDetectionRequest();
+        assertFalse(LouvainCommunityDetectionRunner.isSupported(cdr, 10));
+
+        assertTrue(LouvainCommunityDetectionRunner.isSupported(getRequest(TWO_TRIANGLES, null), 10));
+        assertTrue(LouvainCommunityDetectionRunner.isSupported(getRequest("1 2 0.5\n\n3 4", null), 10));
+
+        // too many edges
+        assertFalse(LouvainCommunityDetectionRunner.isSupported(getRequest(TWO_TRIANGLES, null), 6));
+
+        // non integer node ids
+        assertFalse(LouvainCommunityDetectionRunner.isSupported(getRequest("a\tb\n", null), 10));
+        assertFalse(LouvainCommunityDetectionRunner.isSupported(getRequest("1\n", null), 10));
+        assertFalse(LouvainCommunityDetectionRunner.isSupported(getRequest("-1\t2\n", null), 10));
+        assertFalse(LouvainCommunityDetectionRunner.isSupported(getRequest("12345678901\t2\n", null), 10));
+
+        Map<String, String> params = new HashMap<>();
+        params.put(LouvainCommunityDetectionRunner.CONFIGMODEL, "RB");
+        params.put(LouvainCommunityDetectionRunner.RESOLUTION, "0.5");
+        params.put(LouvainCommunityDetectionRunner.DEEP, null);
+        params.put(LouvainCommunityDetectionRunner.SEED, "1");
+        assertTrue(LouvainCommunityDetectionRunner.isSupported(getRequest(TWO_TRIANGLES, params), 10));
+
+        params.put(LouvainCommunityDetectionRunner.RESOLUTION, "x");
+        assertFalse(LouvainCommunityDetectionRunner.isSupported(getRequest(TWO_TRIANGLES, params), 10));
+        params.put(LouvainCommunityDetectionRunner.RESOLUTION, "0.5");
+        params.put(LouvainCommunityDetectionRunner.SEED, "x");
+        assertFalse(LouvainCommunityDetectionRunner.isSupported(getRequest(TWO_TRIANGLES, params), 10));
+        params.put(LouvainCommunityDetectionRunner.SEED, null);
+        assertFalse(LouvainCommunityDetectionRunner.isSupported(getRequest(TWO_TRIANGLES, params), 10));
+        params.put(LouvainCommunityDetectionRunner.SEED, " 42 ");
+        assertTrue(LouvainCommunityDetectionRunner.isSupported(getRequest(TWO_TRIANGLES, params), 10));
+        params.put(LouvainCommunityDetectionRunner.CONFIGMODEL, "CPM");
+        assertFalse(LouvainCommunityDetectionRunner.isSupported(getRequest(TWO_TRIANGLES, params), 10));
+        params.put(LouvainCommunityDetectionRunner.CONFIGMODEL, "Default");
+        params.put("--directed", null);
+        assertFalse(LouvainCommunityDetectionRunner.isSupported(getRequest(TWO_TRIANGLES, params), 10));
+    }
+
+    @Test
+    public void testCallTwoTriangles() throws Exception {
+        File tempDir = _folder.newFolder();
+        try {
+            LouvainCommunityDetectionRunner runner = new LouvainCommunityDetectionRunner("someid",
+                    getRequest(TWO_TRIANGLES, null), 5, tempDir.getAbsolutePath());
+            CommunityDetectionResult res = runner.call();
+            assertEquals("someid", res.getId());
+            assertEquals(CommunityDetectionResult.COMPLETE_STATUS, res.getStatus());
+            assertEquals(100, res.getProgress());
+            assertEquals(5, res.getStartTime());
+            assertTrue(new File(tempDir, "someid").isDirectory());
+            assertEquals("7,8,c-c;\n7,9,c-c;\n"
+                    + "8,1,c-m;\n8,2,c-m;\n8,3,c-m;\n"
+                    + "9,4,c-m;\n9,5,c-m;\n9,6,c-m;\n", res.getResult().asText());
+        } finally {
+            _folder.delete();
+        }
+    }
+
+    @Test
+    public void testGetSeed() throws Exception {
+        LouvainCommunityDetectionRunner runner = new LouvainCommunityDetectionRunner("someid",
+                getRequest(TWO_TRIANGLES, null), 5, "/tmp");
+        assertEquals(0, runner.getSeed());
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put(LouvainCommunityDetectionRunner.SEED, " 42 ");
+        runner = new LouvainCommunityDetectionRunner("someid",
+                getRequest(TWO_TRIANGLES, params), 5, "/tmp");
+        assertEquals(42, runner.getSeed());
+    }
+
+    @Test
+    public void testCallDeep() throws Exception {
+        File tempDir = _folder.newFolder();
+        try {
+            Map<String, String> params = new LinkedHashMap<>();
+            params.put(LouvainCommunityDetectionRunner.DEEP, null);
+            LouvainCommunityDetectionRunner runner = new LouvainCommunityDetectionRunner("someid",
+                    getRequest(TWO_TRIANGLES, params), 5, tempDir.getAbsolutePath());
+            CommunityDetectionResult res = runner.call();
+            assertEquals(CommunityDetectionResult.COMPLETE_STATUS, res.getStatus());
+            String result = res.getResult().asText();
+            assertTrue(result.startsWith("7,"));
+            for (int node = 1; node <= 6; node++){
+                assertTrue(result.contains("," + Integer.toString(node) + ",c-m;\n"));
+            }
+        } finally {
+            _folder.delete();
+        }
+    }
+
+    @Test
+    public void testCallInvalidData() throws Exception {
+        File tempDir = _folder.newFolder();
+        try {
+            LouvainCommunityDetectionRunner runner = new LouvainCommunityDetectionRunner("someid",
+                    getRequest("1\tx\n", null), 5, tempDir.getAbsolutePath());
+            CommunityDetectionResult res = runner.call();
+            assertEquals(CommunityDetectionResult.FAILED_STATUS, res.getStatus());
+            assertTrue(res.getMessage().contains("Unable to parse line 1"));
+            assertEquals(100, res.getProgress());
+        } finally {
+            _folder.delete();
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package org.ndexbio.communitydetection.rest.engine.algorithms;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author churas
+ */
+public class TestParallelLouvain {
+
+    /**
+     * Creates ring of {@code numCliques} cliques each with
+     * {@code cliqueSize} nodes where neighboring cliques are
+     * joined by a single edge
+     */
+    private CompressedSparseRowGraph getRingOfCliques(int numCliques, int cliqueSize){
+        int maxEdges = numCliques * (cliqueSize * (cliqueSize - 1) / 2 + 1);
+        int[] sources = new int[maxEdges];
+        int[] targets = new int[maxEdges];
+        double[] weights = new double[maxEdges];
+        int e = 0;
+        for (int c = 0; c < numCliques; c++){
+            int base = c * cliqueSize;
+            for (int i = 0; i < cliqueSize; i++){
+                for (int j = i + 1; j < cliqueSize; j++){
+                    sources[e] = base + i;
+                    targets[e] = base + j;
+                    weights[e++] = 1.0;
+                }
+            }
+            sources[e] = base;
+            targets[e] = ((c + 1) % numCliques) * cliqueSize + 1;
+            weights[e++] = 1.0;
+        }
+        return CompressedSparseRowGraph.fromEdges(numCliques * cliqueSize, e,
+                sources, targets, weights);
+    }
+
+    @Test
+    public void testCompressedSparseRowGraphDuplicatesAndSelfLoops(){
+        int[] sources = {0, 1, 0, 2};
+        int[] targets = {1, 0, 0, 1};
+        double[] weights = {1.0, 2.0, 1.5, 1.0};
+        CompressedSparseRowGraph g = CompressedSparseRowGraph.fromEdges(3, 4,
+                sources, targets, weights);
+        assertEquals(3, g.getNumNodes());
+        // node 0: edge to 1 with weight 3 and self loop stored as 3
+        assertEquals(6.0, g.getDegree(0), 0.0001);
+        assertEquals(4.0, g.getDegree(1), 0.0001);
+        assertEquals(1.0, g.getDegree(2), 0.0001);
+        assertEquals(11.0, g.getTotalWeight(), 0.0001);
+
+        CompressedSparseRowGraph agg = g.aggregate(new int[]{0, 0, 1}, 2);
+        assertEquals(2, agg.getNumNodes());
+        assertEquals(10.0, agg.getDegree(0), 0.0001);
+        assertEquals(1.0, agg.getDegree(1), 0.0001);
+        assertEquals(g.getTotalWeight(), agg.getTotalWeight(), 0.0001);
+    }
+
+    @Test
+    public void testRingOfCliques(){
+        CompressedSparseRowGraph g = getRingOfCliques(10, 5);
+        ParallelLouvain louvain = new ParallelLouvain(null);
+        List<int[]> levels = louvain.run(g);
+        int[] communities = ParallelLouvain.getFinalCommunities(levels);
+        assertEquals(50, communities.length);
+        for (int c = 0; c < 10; c++){
+            for (int i = 1; i < 5; i++){
+                assertEquals(communities[c * 5], communities[c * 5 + i]);
+            }
+            assertTrue(communities[c * 5] != communities[((c + 1) % 10) * 5]);
+        }
+        double q = ParallelLouvain.modularity(g, communities, 1.0);
+        assertTrue(q > 0.8);
+    }
+
+    @Test
+    public void testResultIndependentOfThreads(){
+        CompressedSparseRowGraph g = getRingOfCliques(30, 6);
+        int[] single = ParallelLouvain.getFinalCommunities(
+                new ParallelLouvain(new ForkJoinPool(1)).run(g));
+        int[] multi = ParallelLouvain.getFinalCommunities(
+                new ParallelLouvain(new ForkJoinPool(4)).run(g));
+        assertArrayEquals(single, multi);
+    }
+
+    @Test
+    public void testNoEdgeWeight(){
+        CompressedSparseRowGraph g = CompressedSparseRowGraph.fromEdges(2, 1,
+                new int[]{0}, new int[]{1}, new double[]{0.0});
+        List<int[]> levels = new ParallelLouvain(null).run(g);
+        assertEquals(1, levels.size());
+        assertArrayEquals(new int[]{0, 1}, levels.get(0));
+        assertEquals(0.0, ParallelLouvain.modularity(g, levels.get(0), 1.0), 0.0001);
+    }
+
+    @Test
+    public void testSeed(){
+        ParallelLouvain louvain = new ParallelLouvain(null);
+        int[][] defaultBuckets = louvain.getBuckets(100);
+        louvain.setSeed(0);
+        assertArrayEquals(defaultBuckets, louvain.getBuckets(100));
+        louvain.setSeed(12345);
+        int[][] seededBuckets = louvain.getBuckets(100);
+        assertArrayEquals(seededBuckets, louvain.getBuckets(100));
+        assertFalse(Arrays.deepEquals(defaultBuckets, seededBuckets));
+
+        // every node is still in exactly one bucket
+        boolean[] seen = new boolean[100];
+        for (int[] bucket : seededBuckets){
+            for (int node : bucket){
+                assertFalse(seen[node]);
+                seen[node] = true;
+            }
+        }
+
+        // seed changes grouping of nodes, not quality of result
+        CompressedSparseRowGraph g = getRingOfCliques(10, 5);
+        int[] communities = ParallelLouvain.getFinalCommunities(louvain.run(g));
+        assertArrayEquals(communities, ParallelLouvain.getFinalCommunities(louvain.run(g)));
+        assertTrue(ParallelLouvain.modularity(g, communities, 1.0) > 0.8);
+    }
+}
@@ -1,9 +1,15 @@
 package org.ndexbio.communitydetection.rest.engine.util;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
 import static org.junit.Assert.*;
 import org.junit.Rule;
@@ -174,4 +180,55 @@ public class TestCommandLineRunnerImpl {
     }
     
     
+    @Test
+    public void testRunCommandLineProcessWithStandardErrorListener() throws Exception {
+        File tempDir = _folder.newFolder();
+        try {
+            CommandLineRunnerImpl runner = new CommandLineRunnerImpl();
+            File stdoutfile = new File(tempDir.getAbsolutePath() + File.separator + "stdout");
+            File stderrfile = new File(tempDir.getAbsolutePath() + File.separator + "stderr");
+            List<String> lines = new CopyOnWriteArrayList<>();
+            runner.setStandardErrorListener((line) -> lines.add(line));
+            int eCode = runner.runCommandLineProcess(5, TimeUnit.SECONDS,
+                    stdoutfile, stderrfile, "/bin/sh", "-c",
+                    "echo out; echo first >&2; printf '@@PROGRESS 42\\r\\nlast' >&2");
+            
+            assertEquals(0, eCode);
+            assertEquals(Arrays.asList("first", "@@PROGRESS 42", "last"), lines);
+            assertEquals("first\n@@PROGRESS 42\r\nlast",
+                    new String(Files.readAllBytes(stderrfile.toPath()), StandardCharsets.UTF_8));
+            assertEquals("out\n",
+                    new String(Files.readAllBytes(stdoutfile.toPath()), StandardCharsets.UTF_8));
+        }
+        finally {
+            _folder.delete();
+        }
+    }
+    
+    @Test
+    public void testRunCommandLineProcessWithStandardInput() throws Exception {
+        File tempDir = _folder.newFolder();
+        try {
+            CommandLineRunnerImpl runner = new CommandLineRunnerImpl();
+            File stdoutfile = new File(tempDir.getAbsolutePath() + File.separator + "stdout");
+            File stderrfile = new File(tempDir.getAbsolutePath() + File.separator + "stderr");
+            runner.setStandardInput(new ByteArrayInputStream("1\t2\n2\t3\n".getBytes(StandardCharsets.UTF_8)));
+            int eCode = runner.runCommandLineProcess(5, TimeUnit.SECONDS,
+                    stdoutfile, stderrfile, "/bin/cat");
+            assertEquals(0, eCode);
+            assertEquals("1\t2\n2\t3\n",
+                    new String(Files.readAllBytes(stdoutfile.toPath()), StandardCharsets.UTF_8));
+            
+            // standard input is only used for one process
+            eCode = runner.runCommandLineProcess(5, TimeUnit.SECONDS,
+                    stdoutfile, stderrfile, "/bin/sh", "-c", "echo hi");
+            assertEquals(0, eCode);
+            assertEquals("hi\n",
+                    new String(Files.readAllBytes(stdoutfile.toPath()), StandardCharsets.UTF_8));
+        }
+        finally {
+            _folder.delete();
+        }
+    }
+    
 }
@@ -0,0 +1,235 @@
+package org.ndexbio.communitydetection.rest.engine.util;
+
+import com.fasterxml.jackson.databind.node.TextNode;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.commons.io.FileUtils;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.ndexbio.communitydetection.rest.model.CommunityDetectionRequest;
+import org.ndexbio.communitydetection.rest.model.exceptions.CommunityDetectionBadRequestException;
+import org.ndexbio.communitydetection.rest.model.exceptions.CommunityDetectionException;
+
+/**
+ *
+ * @author churas
+ */
+public class TestCommunityDetectionRequestReader {
+
+    @Rule
+    public TemporaryFolder _folder = new TemporaryFolder();
+
+    private CommunityDetectionRequest read(CommunityDetectionRequestReader reader,
+            final String json) throws Exception {
+        return reader.read(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void testSmallRequestKeptInMemory() throws Exception {
+        File tempDir = _folder.newFolder();
+        try {
+            File uploadDir = new File(tempDir, CommunityDetectionRequestReader.UPLOAD_DIR);
+            CommunityDetectionRequestReader reader = new CommunityDetectionRequestReader(uploadDir);
+            CommunityDetectionRequest cdr = read(reader, " {\"algorithm\": \"louvain\","
+                    + "\"unknown\": [1, {\"x\": \"}\"}],"
+                    + "\"customParameters\": {\"--a\": \"1\", \"--b\": null},"
+                    + "\"data\": {\"x\": [1, 2, \"a\\\"b\"]}} ");
+            assertFalse(cdr instanceof InputFileCommunityDetectionRequest);
+            assertEquals("louvain", cdr.getAlgorithm());
+            assertEquals("1", cdr.getCustomParameters().get("--a"));
+            assertTrue(cdr.getCustomParameters().containsKey("--b"));
+            assertEquals("a\"b", cdr.getData().get("x").get(2).asText());
+            assertFalse(uploadDir.exists());
+
+            cdr = read(reader, "{\"data\": \"1\\t2\\n\\u00e9\\/\"}");
+            assertTrue(cdr.getData() instanceof TextNode);
+            assertEquals("1\t2\n\u00e9/", cdr.getData().asText());
+            assertNull(cdr.getAlgorithm());
+
+            cdr = read(reader, "{}");
+            assertNull(cdr.getData());
+        } finally {
+            _folder.delete();
+        }
+    }
+
+    @Test
+    public void testLargeTextDataWrittenToFile() throws Exception {
+        File tempDir = _folder.newFolder();
+        try {
+            File uploadDir = new File(tempDir, CommunityDetectionRequestReader.UPLOAD_DIR);
+            CommunityDetectionRequestReader reader = new CommunityDetectionRequestReader(uploadDir);
+            reader.setMaxInMemoryData(10);
+            CommunityDetectionRequest cdr = read(reader, "{\"data\": \"0\\t1\\n1\\t2\\n2\\t\\u00e9\\n\","
+                    + "\"algorithm\": \"infomap\"}");
+            assertTrue(cdr instanceof InputFileCommunityDetectionRequest);
+            InputFileCommunityDetectionRequest ifr = (InputFileCommunityDetectionRequest)cdr;
+            assertTrue(ifr.isTextData());
+            assertNull(ifr.getData());
+            assertEquals("infomap", ifr.getAlgorithm());
+            assertEquals(uploadDir, ifr.getInputFile().getParentFile());
+            assertEquals("0\t1\n1\t2\n2\t\u00e9\n",
+                    FileUtils.readFileToString(ifr.getInputFile(), StandardCharsets.UTF_8));
+        } finally {
+            _folder.delete();
+        }
+    }
+
+    @Test
+    public void testLargeJsonDataWrittenToFile() throws Exception {
+        File tempDir = _folder.newFolder();
+        try {
+            File uploadDir = new File(tempDir, CommunityDetectionRequestReader.UPLOAD_DIR);
+            CommunityDetectionRequestReader reader = new CommunityDetectionRequestReader(uploadDir);
+            reader.setMaxInMemoryData(5);
+            CommunityDetectionRequest cdr = read(reader, "{\"data\":[{\"nodes\":[{\"@id\":1,\"n\":\"a]\"}]}]}");
+            InputFileCommunityDetectionRequest ifr = (InputFileCommunityDetectionRequest)cdr;
+            assertFalse(ifr.isTextData());
+            assertEquals("[{\"nodes\":[{\"@id\":1,\"n\":\"a]\"}]}]",
+                    FileUtils.readFileToString(ifr.getInputFile(), StandardCharsets.UTF_8));
+        } finally {
+            _folder.delete();
+        }
+    }
+
+    @Test
+    public void testValidJsonDataCopiedAsIs() throws Exception {
+        File tempDir = _folder.newFolder();
+        try {
+            File uploadDir = new File(tempDir, CommunityDetectionRequestReader.UPLOAD_DIR);
+            CommunityDetectionRequestReader reader = new CommunityDetectionRequestReader(uploadDir);
+            reader.setMaxInMemoryData(2);
+            String data = "{ \"a\" : [ -0.5e+3, 10, 0, 1E2, true, false, null ],\n"
+                    + "\t\"b\\\"\\u00e9\" : { }, \"c\":[], \"d\": [[{\"e\": \"\\/\"}]] }";
+            CommunityDetectionRequest cdr = read(reader, "{\"data\": " + data + " }");
+            InputFileCommunityDetectionRequest ifr = (InputFileCommunityDetectionRequest)cdr;
+            assertEquals(data, FileUtils.readFileToString(ifr.getInputFile(), StandardCharsets.UTF_8));
+
+            // scalars are copied as is too
+            reader.setMaxInMemoryData(100);
+            assertEquals(-12.5, read(reader, "{\"data\": -12.5}").getData().asDouble(), 0.0);
+            assertTrue(read(reader, "{\"data\":true}").getData().asBoolean());
+        } finally {
+            _folder.delete();
+        }
+    }
+
+    @Test
+    public void testMalformedJsonData() throws Exception {
+        File tempDir = _folder.newFolder();
+        try {
+            File uploadDir = new File(tempDir, CommunityDetectionRequestReader.UPLOAD_DIR);
+            CommunityDetectionRequestReader reader = new CommunityDetectionRequestReader(uploadDir);
+            reader.setMaxInMemoryData(2);
+            String[] badData = {"[tru]", "[nul]", "[truex]", "[1 2]", "[01]", "[1.]",
+                "[-]", "[1e]", "[.5]", "[+1]", "[1,]", "[,1]", "{\"a\" 1}",
+                "{\"a\":1,}", "{1:2}", "{\"a\":}", "[\"\\x\"]", "[\"\\u12g4\"]",
+                "[\"a\tb\"]", "[abc]", "{\"a\":[1}", "[[1]", "nul", "1x"};
+            for (String data : badData){
+                try {
+                    read(reader, "{\"data\": " + data + "}");
+                    fail("Expected CommunityDetectionBadRequestException for: " + data);
+                } catch(CommunityDetectionBadRequestException cde){
+                    assertTrue(cde.getMessage().startsWith("Unable to parse request"));
+                }
+            }
+            // fields other than data are checked the same way
+            for (String bad : new String[]{"{\"customParameters\": {\"a\": tru}}",
+                    "{\"algorithm\": {}}", "{\"priority\": \"high\"}"}){
+                try {
+                    read(reader, bad);
+                    fail("Expected CommunityDetectionBadRequestException for: " + bad);
+                } catch(CommunityDetectionBadRequestException cde){
+                    assertTrue(cde.getMessage().startsWith("Unable to parse request"));
+                }
+            }
+            assertTrue(!uploadDir.exists() || uploadDir.list().length == 0);
+        } finally {
+            _folder.delete();
+        }
+    }
+
+    @Test
+    public void testInvalidRequests() throws Exception {
+        File tempDir = _folder.newFolder();
+        try {
+            File uploadDir = new File(tempDir, CommunityDetectionRequestReader.UPLOAD_DIR);
+            CommunityDetectionRequestReader reader = new CommunityDetectionRequestReader(uploadDir);
+            reader.setMaxInMemoryData(2);
+            String[] badRequests = {"", "[]", "{\"data\": \"abc",
+                "{\"data\": [1, 2}", "{\"data\": \"ab\ncd\"}",
+                "{\"data\": \"abcdef\", \"data\": \"abcdef\"}",
+                "{\"data\": \"abcdef\"} x", "{\"algorithm\": }",
+                "{\"data\": \"\\q\"}"};
+            for (String badRequest : badRequests){
+                try {
+                    read(reader, badRequest);
+                    fail("Expected CommunityDetectionException for: " + badRequest);
+                } catch(CommunityDetectionException cde){
+                    assertTrue(cde.getMessage().startsWith("Unable to parse request")
+                            || cde.getMessage().startsWith("Duplicate"));
+                }
+            }
+            // any partially written upload files should be removed
+            assertTrue(!uploadDir.exists() || uploadDir.list().length == 0);
+        } finally {
+            _folder.delete();
+        }
+    }
+
+    @Test
+    public void testReadBatch() throws Exception {
+        File tempDir = _folder.newFolder();
+        try {
+            File uploadDir = new File(tempDir, CommunityDetectionRequestReader.UPLOAD_DIR);
+            CommunityDetectionRequestReader reader = new CommunityDetectionRequestReader(uploadDir);
+            reader.setMaxInMemoryData(5);
+            List<CommunityDetectionRequest> requests = reader.readBatch(new ByteArrayInputStream(
+                    (" [{\"algorithm\": \"louvain\", \"data\": \"a\"},"
+                    + "{\"algorithm\": \"infomap\", \"priority\": 3, \"data\": \"abcdefgh\"}] ")
+                            .getBytes(StandardCharsets.UTF_8)));
+            assertEquals(2, requests.size());
+            assertEquals("louvain", requests.get(0).getAlgorithm());
+            assertEquals("a", requests.get(0).getData().asText());
+            assertTrue(requests.get(1) instanceof InputFileCommunityDetectionRequest);
+            assertEquals(Arrays.asList(0, 3), reader.getPriorities());
+
+            requests = reader.readBatch(new ByteArrayInputStream("[]".getBytes(StandardCharsets.UTF_8)));
+            assertTrue(requests.isEmpty());
+            assertTrue(reader.getPriorities().isEmpty());
+
+            // data already written for earlier requests is removed on error
+            FileUtils.deleteDirectory(uploadDir);
+            String[] badBatches = {"{}", "[{\"data\": \"abcdefgh\"} {}]",
+                "[{\"data\": \"abcdefgh\"}, {\"data\": 1"};
+            for (String badBatch : badBatches){
+                try {
+                    reader.readBatch(new ByteArrayInputStream(badBatch.getBytes(StandardCharsets.UTF_8)));
+                    fail("Expected CommunityDetectionException for: " + badBatch);
+                } catch(CommunityDetectionException cde){
+                    assertTrue(cde.getMessage().startsWith("Unable to parse request"));
+                }
+            }
+            assertTrue(!uploadDir.exists() || uploadDir.list().length == 0);
+
+            reader.setMaxBatchRequests(1);
+            try {
+                reader.readBatch(new ByteArrayInputStream("[{}, {}]".getBytes(StandardCharsets.UTF_8)));
+                fail("Expected CommunityDetectionException");
+            } catch(CommunityDetectionException cde){
+                assertEquals("Batch exceeds maximum of 1 requests", cde.getMessage());
+            }
+        } finally {
+            _folder.delete();
+        }
+    }
+}
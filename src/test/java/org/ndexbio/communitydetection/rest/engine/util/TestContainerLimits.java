@@ -0,0 +1,55 @@
+package org.ndexbio.communitydetection.rest.engine.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.util.Arrays;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author churas
+ */
+public class TestContainerLimits {
+
+    @Test
+    public void testParseMemory(){
+        assertEquals(0, ContainerLimits.parseMemory(null));
+        assertEquals(0, ContainerLimits.parseMemory(""));
+        assertEquals(100, ContainerLimits.parseMemory("100"));
+        assertEquals(100, ContainerLimits.parseMemory("100b"));
+        assertEquals(2048, ContainerLimits.parseMemory("2k"));
+        assertEquals(512L * 1024 * 1024, ContainerLimits.parseMemory("512M"));
+        assertEquals(2L * 1024 * 1024 * 1024, ContainerLimits.parseMemory(" 2g "));
+        for (String bad : Arrays.asList("g", "1t", "-1m", "abc", "99999999999999999g")){
+            try {
+                ContainerLimits.parseMemory(bad);
+                fail("Expected IllegalArgumentException for " + bad);
+            } catch(IllegalArgumentException iae){
+                assertEquals("Invalid memory size: " + bad, iae.getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void testNoLimits(){
+        ContainerLimits limits = new ContainerLimits(0, 0, 0);
+        assertTrue(limits.getDockerRunArguments().isEmpty());
+        ObjectNode hostConfig = new ObjectMapper().createObjectNode();
+        limits.addToHostConfig(hostConfig);
+        assertEquals(0, hostConfig.size());
+    }
+
+    @Test
+    public void testAllLimits(){
+        ContainerLimits limits = new ContainerLimits(0.25, 4096, 32).withCpuset("4");
+        assertEquals(Arrays.asList("--cpus", "0.25", "--cpuset-cpus", "4",
+                "--memory", "4096b", "--pids-limit", "32"), limits.getDockerRunArguments());
+        ObjectNode hostConfig = new ObjectMapper().createObjectNode();
+        limits.addToHostConfig(hostConfig);
+        assertEquals(250000000L, hostConfig.get("NanoCpus").asLong());
+        assertEquals("4", hostConfig.get("CpusetCpus").asText());
+        assertEquals(4096L, hostConfig.get("Memory").asLong());
+        assertEquals(32L, hostConfig.get("PidsLimit").asLong());
+    }
+}
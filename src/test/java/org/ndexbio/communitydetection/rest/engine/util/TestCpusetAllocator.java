@@ -0,0 +1,56 @@
+package org.ndexbio.communitydetection.rest.engine.util;
+
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import org.ndexbio.communitydetection.rest.model.exceptions.CommunityDetectionException;
+
+/**
+ *
+ * @author churas
+ */
+public class TestCpusetAllocator {
+
+    @Test
+    public void testParseAndFormat() throws Exception {
+        assertTrue(CpusetAllocator.parse(null).isEmpty());
+        assertTrue(CpusetAllocator.parse(" ").isEmpty());
+        assertEquals(Arrays.asList(0, 1, 2, 3, 8, 10, 11),
+                CpusetAllocator.parse("8, 0-3,10-11,2"));
+        assertEquals("0-3,8,10-11", CpusetAllocator.format(Arrays.asList(11, 10, 8, 3, 2, 1, 0)));
+        assertEquals("5", CpusetAllocator.format(Arrays.asList(5)));
+        assertEquals("", CpusetAllocator.format(Arrays.asList()));
+
+        for (String bad : Arrays.asList("a", "3-1", "-1", "1,,2", "1-2-3")){
+            try {
+                CpusetAllocator.parse(bad);
+                fail("Expected CommunityDetectionException for " + bad);
+            } catch(CommunityDetectionException cde){
+                assertEquals("Invalid list of cpus: " + bad, cde.getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void testAllocateAndRelease(){
+        CpusetAllocator allocator = new CpusetAllocator(Arrays.asList(0, 1, 2, 3));
+        assertEquals(4, allocator.getNumberCpus());
+        assertNull(allocator.allocate(0));
+        assertNull(allocator.allocate(5));
+
+        List<Integer> first = allocator.allocate(2);
+        List<Integer> second = allocator.allocate(2);
+        assertEquals(Arrays.asList(0, 1), first);
+        assertEquals(Arrays.asList(2, 3), second);
+        assertEquals(0, allocator.getNumberFreeCpus());
+        assertNull(allocator.allocate(1));
+
+        allocator.release(first);
+        allocator.release(null);
+        // cpus not managed by allocator are ignored
+        allocator.release(Arrays.asList(7));
+        assertEquals(2, allocator.getNumberFreeCpus());
+        assertEquals(Arrays.asList(0), allocator.allocate(1));
+    }
+}
@@ -8,11 +8,23 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.easymock.Capture;
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.capture;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.isNull;
 import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
 import static org.easymock.EasyMock.mock;
 import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.verify;
@@ -466,4 +478,475 @@ public class TestDockerCommunityDetectionRunner {
             _folder.delete();
         }
     }
+    
+    @Test
+    public void testCallWithContainerPool() throws Exception {
+        File tempDir = _folder.newFolder();
+        try {
+            CommunityDetectionRequest cdr = new CommunityDetectionRequest();
+            cdr.setAlgorithm("somealgo");
+            cdr.setData(new TextNode("blah"));
+            Map<String, String> cParams = new LinkedHashMap<>();
+            cParams.put("somearg", "argvalue");
+            
+            String workingDir = tempDir.getAbsolutePath() 
+                    + File.separator + "task";
+            DockerCommunityDetectionRunner runner = new DockerCommunityDetectionRunner("someid", cdr,
+                    0, workingDir, "docker", "hello-world", cParams, 1,
+                    TimeUnit.SECONDS, ":ro");
+            
+            String wDir = workingDir + File.separator + "someid";
+            File inputFile = runner.getInputFile();
+            File stdOutFile = runner.getStandardOutFile();
+            File stdErrFile = runner.getStandardErrorFile();
+            try (BufferedWriter bw = new BufferedWriter(new FileWriter(stdOutFile))){
+                bw.write("hello");
+                bw.flush();
+            } 
+            DockerContainerPool.PooledContainer container = new DockerContainerPool.PooledContainer("cid");
+            DockerContainerPool mockPool = mock(DockerContainerPool.class);
+            File stagedDir = new File(tempDir, "staged");
+            File stagedInput = new File(stagedDir, DockerCommunityDetectionRunner.INPUT_FILE);
+            expect(mockPool.acquire(1, TimeUnit.SECONDS)).andReturn(container);
+            expect(mockPool.stageInput("someid", inputFile)).andReturn(stagedDir);
+            expect(mockPool.getExecCommand(container, stagedDir.getAbsolutePath(),
+                    Arrays.asList("somearg", "argvalue", stagedInput.getAbsolutePath())))
+                    .andReturn(Arrays.asList("docker", "exec", "cid", "somearg", "argvalue",
+                            stagedInput.getAbsolutePath()));
+            mockPool.unstage("someid");
+            mockPool.release(container, false);
+            
+            CommandLineRunner mockCLR = mock(CommandLineRunner.class);
+            mockCLR.setWorkingDirectory(wDir);
+            expect(mockCLR.runCommandLineProcess(1, TimeUnit.SECONDS, stdOutFile, stdErrFile,
+                    "docker", "exec", "cid", "somearg", "argvalue",
+                    stagedInput.getAbsolutePath())).andReturn(0);
+            expect(mockCLR.getLastCommand()).andReturn("lastcommand");
+            runner.setAlternateCommandLineRunner(mockCLR);
+            runner.setContainerPool(mockPool);
+            replay(mockCLR);
+            replay(mockPool);
+            CommunityDetectionResult res = runner.call();
+            assertEquals(CommunityDetectionResult.COMPLETE_STATUS, res.getStatus());
+            assertEquals("hello\n", res.getResult().asText());
+            verify(mockCLR);
+            verify(mockPool);
+        } finally {
+            _folder.delete();
+        }
+    }
+    
+    @Test
+    public void testCallWithContainerPoolTimeout() throws Exception {
+        File tempDir = _folder.newFolder();
+        try {
+            CommunityDetectionRequest cdr = new CommunityDetectionRequest();
+            cdr.setAlgorithm("somealgo");
+            cdr.setData(new TextNode("blah"));
+            
+            String workingDir = tempDir.getAbsolutePath() 
+                    + File.separator + "task";
+            DockerCommunityDetectionRunner runner = new DockerCommunityDetectionRunner("someid", cdr,
+                    0, workingDir, "docker", "hello-world", null, 1,
+                    TimeUnit.SECONDS, ":ro");
+            
+            String wDir = workingDir + File.separator + "someid";
+            File inputFile = runner.getInputFile();
+            File stdOutFile = runner.getStandardOutFile();
+            File stdErrFile = runner.getStandardErrorFile();
+            DockerContainerPool.PooledContainer container = new DockerContainerPool.PooledContainer("cid");
+            DockerContainerPool mockPool = mock(DockerContainerPool.class);
+            File stagedDir = new File(tempDir, "staged");
+            File stagedInput = new File(stagedDir, DockerCommunityDetectionRunner.INPUT_FILE);
+            expect(mockPool.acquire(1, TimeUnit.SECONDS)).andReturn(container);
+            expect(mockPool.stageInput("someid", inputFile)).andReturn(stagedDir);
+            expect(mockPool.getExecCommand(container, stagedDir.getAbsolutePath(),
+                    Arrays.asList(stagedInput.getAbsolutePath())))
+                    .andReturn(Arrays.asList("docker", "exec", "cid",
+                            stagedInput.getAbsolutePath()));
+            mockPool.unstage("someid");
+            
+            // container should be discarded since process may still be running
+            mockPool.release(container, true);
+            
+            CommandLineRunner mockCLR = mock(CommandLineRunner.class);
+            mockCLR.setWorkingDirectory(wDir);
+            expect(mockCLR.runCommandLineProcess(1, TimeUnit.SECONDS, stdOutFile, stdErrFile,
+                    "docker", "exec", "cid", stagedInput.getAbsolutePath())).andReturn(500);
+            expect(mockCLR.getLastCommand()).andReturn("lastcommand");
+            runner.setAlternateCommandLineRunner(mockCLR);
+            runner.setContainerPool(mockPool);
+            replay(mockCLR);
+            replay(mockPool);
+            CommunityDetectionResult res = runner.call();
+            assertEquals(CommunityDetectionResult.FAILED_STATUS, res.getStatus());
+            assertEquals("Runtime limit exceeded", res.getMessage());
+            verify(mockCLR);
+            verify(mockPool);
+        } finally {
+            _folder.delete();
+        }
+    }
+
+    @Test
+    public void testCallWithContainerPoolBrokenContainer() throws Exception {
+        File tempDir = _folder.newFolder();
+        try {
+            CommunityDetectionRequest cdr = new CommunityDetectionRequest();
+            cdr.setAlgorithm("somealgo");
+            cdr.setData(new TextNode("blah"));
+            
+            String workingDir = tempDir.getAbsolutePath() 
+                    + File.separator + "task";
+            DockerCommunityDetectionRunner runner = new DockerCommunityDetectionRunner("someid", cdr,
+                    0, workingDir, "docker", "hello-world", null, 1,
+                    TimeUnit.SECONDS, ":ro");
+            
+            String wDir = workingDir + File.separator + "someid";
+            File inputFile = runner.getInputFile();
+            File stdOutFile = runner.getStandardOutFile();
+            File stdErrFile = runner.getStandardErrorFile();
+            try (BufferedWriter bw = new BufferedWriter(new FileWriter(stdOutFile))){
+                bw.write("hello");
+                bw.flush();
+            } 
+            DockerContainerPool.PooledContainer broken = new DockerContainerPool.PooledContainer("cid");
+            DockerContainerPool.PooledContainer container = new DockerContainerPool.PooledContainer("cid2");
+            DockerContainerPool mockPool = mock(DockerContainerPool.class);
+            File stagedDir = new File(tempDir, "staged");
+            File stagedInput = new File(stagedDir, DockerCommunityDetectionRunner.INPUT_FILE);
+            expect(mockPool.acquire(1, TimeUnit.SECONDS)).andReturn(broken);
+            expect(mockPool.acquire(1, TimeUnit.SECONDS)).andReturn(container);
+            expect(mockPool.stageInput("someid", inputFile)).andReturn(stagedDir).times(2);
+            expect(mockPool.getExecCommand(broken, stagedDir.getAbsolutePath(),
+                    Arrays.asList(stagedInput.getAbsolutePath())))
+                    .andReturn(Arrays.asList("docker", "exec", "cid",
+                            stagedInput.getAbsolutePath()));
+            expect(mockPool.getExecCommand(container, stagedDir.getAbsolutePath(),
+                    Arrays.asList(stagedInput.getAbsolutePath())))
+                    .andReturn(Arrays.asList("docker", "exec", "cid2",
+                            stagedInput.getAbsolutePath()));
+            mockPool.unstage("someid");
+            expectLastCall().times(2);
+            
+            // broken container is discarded and task is run in another
+            mockPool.release(broken, true);
+            mockPool.release(container, false);
+            
+            CommandLineRunner mockCLR = mock(CommandLineRunner.class);
+            mockCLR.setWorkingDirectory(wDir);
+            expect(mockCLR.runCommandLineProcess(1, TimeUnit.SECONDS, stdOutFile, stdErrFile,
+                    "docker", "exec", "cid", stagedInput.getAbsolutePath()))
+                    .andReturn(DockerContainerPool.EXEC_DOCKER_ERROR_EXIT_CODE);
+            expect(mockCLR.runCommandLineProcess(1, TimeUnit.SECONDS, stdOutFile, stdErrFile,
+                    "docker", "exec", "cid2", stagedInput.getAbsolutePath())).andReturn(0);
+            expect(mockCLR.getLastCommand()).andReturn("lastcommand");
+            runner.setAlternateCommandLineRunner(mockCLR);
+            runner.setContainerPool(mockPool);
+            replay(mockCLR);
+            replay(mockPool);
+            CommunityDetectionResult res = runner.call();
+            assertEquals(CommunityDetectionResult.COMPLETE_STATUS, res.getStatus());
+            assertEquals("hello\n", res.getResult().asText());
+            verify(mockCLR);
+            verify(mockPool);
+        } finally {
+            _folder.delete();
+        }
+    }
+
+    @Test
+    public void testParseProgress(){
+        assertEquals(42, DockerCommunityDetectionRunner.parseProgress("@@PROGRESS 42"));
+        assertEquals(42, DockerCommunityDetectionRunner.parseProgress("  @@PROGRESS 42.7 clustering\r"));
+        assertEquals(100, DockerCommunityDetectionRunner.parseProgress("@@PROGRESS 250"));
+        assertEquals(0, DockerCommunityDetectionRunner.parseProgress("@@PROGRESS -5"));
+        assertEquals(-1, DockerCommunityDetectionRunner.parseProgress("@@PROGRESS"));
+        assertEquals(-1, DockerCommunityDetectionRunner.parseProgress("@@PROGRESS abc"));
+        assertEquals(-1, DockerCommunityDetectionRunner.parseProgress("progress 42"));
+        assertEquals(-1, DockerCommunityDetectionRunner.parseProgress(null));
+    }
+    
+    @Test
+    public void testCallReportsProgressFromStandardError() throws Exception {
+        File tempDir = _folder.newFolder();
+        try {
+            CommunityDetectionRequest cdr = new CommunityDetectionRequest();
+            cdr.setAlgorithm("somealgo");
+            cdr.setData(new TextNode("data"));
+            String workingDir = tempDir.getAbsolutePath() 
+                    + File.separator + "task";
+            DockerCommunityDetectionRunner runner = new DockerCommunityDetectionRunner("someid", cdr,
+                    0, workingDir, "docker", "hello-world", null, 1,
+                    TimeUnit.SECONDS, ":ro");
+            List<Integer> progress = new ArrayList<>();
+            runner.setProgressListener((p) -> progress.add(p));
+            
+            CommandLineRunner mockCLR = mock(CommandLineRunner.class);
+            String wDir = workingDir + File.separator + "someid";
+            mockCLR.setWorkingDirectory(wDir);
+            Capture<Consumer<String>> listenerCap = Capture.newInstance();
+            mockCLR.setStandardErrorListener(capture(listenerCap));
+            File stdOutFile = runner.getStandardOutFile();
+            try (BufferedWriter bw = new BufferedWriter(new FileWriter(stdOutFile))){
+                bw.write("hello");
+            } 
+            File inputFile = runner.getInputFile();
+            File stdErrFile = runner.getStandardErrorFile();
+            expect(mockCLR.runCommandLineProcess(1, TimeUnit.SECONDS, stdOutFile, stdErrFile,
+                    "docker", "run", "--rm", "-v", wDir + ":" + wDir + ":ro", "hello-world",
+                    inputFile.getAbsolutePath())).andAnswer(() -> {
+                        listenerCap.getValue().accept("loading");
+                        listenerCap.getValue().accept("@@PROGRESS 10");
+                        listenerCap.getValue().accept("@@PROGRESS 55");
+                        return 0;
+                    });
+            expect(mockCLR.getLastCommand()).andReturn("lastcommand");
+            runner.setAlternateCommandLineRunner(mockCLR);
+            replay(mockCLR);
+            CommunityDetectionResult res = runner.call();
+            assertEquals(CommunityDetectionResult.COMPLETE_STATUS, res.getStatus());
+            assertEquals(100, res.getProgress());
+            assertEquals(Arrays.asList(10, 55), progress);
+            verify(mockCLR);
+        } finally {
+            _folder.delete();
+        }
+    }
+    
+    @Test
+    public void testCallViaDockerEngine() throws Exception {
+        File tempDir = _folder.newFolder();
+        try {
+            CommunityDetectionRequest cdr = new CommunityDetectionRequest();
+            cdr.setAlgorithm("somealgo");
+            cdr.setData(new TextNode("data"));
+            String workingDir = tempDir.getAbsolutePath() 
+                    + File.separator + "task";
+            DockerCommunityDetectionRunner runner = new DockerCommunityDetectionRunner("someid", cdr,
+                    0, workingDir, "docker", "hello-world", null, 1,
+                    TimeUnit.SECONDS, ":ro");
+            
+            CommandLineRunner mockCLR = mock(CommandLineRunner.class);
+            String wDir = workingDir + File.separator + "someid";
+            mockCLR.setWorkingDirectory(wDir);
+            File stdOutFile = runner.getStandardOutFile();
+            try (BufferedWriter bw = new BufferedWriter(new FileWriter(stdOutFile))){
+                bw.write("hello");
+            } 
+            File inputFile = runner.getInputFile();
+            File stdErrFile = runner.getStandardErrorFile();
+            DockerEngineClient mockClient = mock(DockerEngineClient.class);
+            expect(mockClient.runContainer(eq("hello-world"),
+                    eq(Arrays.asList(wDir + ":" + wDir + ":ro")),
+                    eq(Arrays.asList(inputFile.getAbsolutePath())), isNull(), eq(1L),
+                    eq(TimeUnit.SECONDS), eq(stdOutFile), eq(stdErrFile),
+                    isNull(), isNull())).andReturn(0);
+            runner.setAlternateCommandLineRunner(mockCLR);
+            runner.setDockerEngineClient(mockClient);
+            replay(mockCLR);
+            replay(mockClient);
+            CommunityDetectionResult res = runner.call();
+            assertEquals(CommunityDetectionResult.COMPLETE_STATUS, res.getStatus());
+            assertEquals("hello\n", res.getResult().asText());
+            assertEquals("docker run --rm -v " + wDir + ":" + wDir + ":ro hello-world "
+                    + inputFile.getAbsolutePath(),
+                    FileUtils.readFileToString(runner.getCommandRunFile(), "UTF-8"));
+            verify(mockCLR);
+            verify(mockClient);
+        } finally {
+            _folder.delete();
+        }
+    }
+    
+    @Test
+    public void testCallDockerEngineUnavailableFallsBackToCommandLine() throws Exception {
+        File tempDir = _folder.newFolder();
+        try {
+            CommunityDetectionRequest cdr = new CommunityDetectionRequest();
+            cdr.setAlgorithm("somealgo");
+            cdr.setData(new TextNode("data"));
+            String workingDir = tempDir.getAbsolutePath() 
+                    + File.separator + "task";
+            DockerCommunityDetectionRunner runner = new DockerCommunityDetectionRunner("someid", cdr,
+                    0, workingDir, "docker", "hello-world", null, 1,
+                    TimeUnit.SECONDS, ":ro");
+            
+            CommandLineRunner mockCLR = mock(CommandLineRunner.class);
+            String wDir = workingDir + File.separator + "someid";
+            mockCLR.setWorkingDirectory(wDir);
+            File stdOutFile = runner.getStandardOutFile();
+            try (BufferedWriter bw = new BufferedWriter(new FileWriter(stdOutFile))){
+                bw.write("hello");
+            } 
+            File inputFile = runner.getInputFile();
+            File stdErrFile = runner.getStandardErrorFile();
+            DockerEngineClient mockClient = mock(DockerEngineClient.class);
+            expect(mockClient.runContainer(eq("hello-world"), anyObject(), anyObject(),
+                    isNull(), eq(1L), eq(TimeUnit.SECONDS), eq(stdOutFile), eq(stdErrFile),
+                    isNull(), isNull())).andThrow(new DockerEngineClient.UnavailableException("no daemon"));
+            expect(mockCLR.runCommandLineProcess(1, TimeUnit.SECONDS, stdOutFile, stdErrFile,
+                    "docker", "run", "--rm", "-v", wDir + ":" + wDir + ":ro", "hello-world",
+                    inputFile.getAbsolutePath())).andReturn(0);
+            expect(mockCLR.getLastCommand()).andReturn("lastcommand");
+            runner.setAlternateCommandLineRunner(mockCLR);
+            runner.setDockerEngineClient(mockClient);
+            replay(mockCLR);
+            replay(mockClient);
+            CommunityDetectionResult res = runner.call();
+            assertEquals(CommunityDetectionResult.COMPLETE_STATUS, res.getStatus());
+            assertEquals("lastcommand",
+                    FileUtils.readFileToString(runner.getCommandRunFile(), "UTF-8"));
+            verify(mockCLR);
+            verify(mockClient);
+        } finally {
+            _folder.delete();
+        }
+    }
+    
+    @Test
+    public void testCallStreamInput() throws Exception {
+        File tempDir = _folder.newFolder();
+        try {
+            CommunityDetectionRequest cdr = new CommunityDetectionRequest();
+            cdr.setAlgorithm("somealgo");
+            cdr.setData(new TextNode("data"));
+            String workingDir = tempDir.getAbsolutePath() 
+                    + File.separator + "task";
+            DockerCommunityDetectionRunner runner = new DockerCommunityDetectionRunner("someid", cdr,
+                    0, workingDir, "docker", "hello-world", null, 1,
+                    TimeUnit.SECONDS, ":ro", true);
+            assertFalse(runner.getInputFile().exists());
+            
+            CommandLineRunner mockCLR = mock(CommandLineRunner.class);
+            String wDir = workingDir + File.separator + "someid";
+            mockCLR.setWorkingDirectory(wDir);
+            Capture<InputStream> stdInCap = Capture.newInstance();
+            mockCLR.setStandardInput(capture(stdInCap));
+            File stdOutFile = runner.getStandardOutFile();
+            try (BufferedWriter bw = new BufferedWriter(new FileWriter(stdOutFile))){
+                bw.write("hello");
+            } 
+            File stdErrFile = runner.getStandardErrorFile();
+            expect(mockCLR.runCommandLineProcess(1, TimeUnit.SECONDS, stdOutFile, stdErrFile,
+                    "docker", "run", "--rm", "-i", "hello-world",
+                    DockerCommunityDetectionRunner.STDIN_ARGUMENT)).andReturn(0);
+            expect(mockCLR.getLastCommand()).andReturn("lastcommand");
+            runner.setAlternateCommandLineRunner(mockCLR);
+            replay(mockCLR);
+            CommunityDetectionResult res = runner.call();
+            assertEquals(CommunityDetectionResult.COMPLETE_STATUS, res.getStatus());
+            assertEquals("data", IOUtils.toString(stdInCap.getValue(), "UTF-8"));
+            assertFalse(runner.getInputFile().exists());
+            verify(mockCLR);
+        } finally {
+            _folder.delete();
+        }
+    }
+    
+    @Test
+    public void testOpenStandardInput() throws Exception {
+        File tempDir = _folder.newFolder();
+        try {
+            CommunityDetectionRequest cdr = new CommunityDetectionRequest();
+            cdr.setAlgorithm("somealgo");
+            ObjectMapper mapper = new ObjectMapper();
+            cdr.setData(mapper.readTree("{\"blah\": \"data\"}"));
+            DockerCommunityDetectionRunner runner = new DockerCommunityDetectionRunner("someid", cdr,
+                    0, tempDir.getAbsolutePath(), "docker", "hello-world", null, 1,
+                    TimeUnit.SECONDS, ":ro", true);
+            try (InputStream in = runner.openStandardInput()){
+                assertEquals("{\"blah\":\"data\"}", IOUtils.toString(in, "UTF-8"));
+            }
+            
+            // text larger than the pipe is streamed whole
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < DockerCommunityDetectionRunner.STDIN_PIPE_BYTES / 2; i++){
+                sb.append("1\t2\n");
+            }
+            cdr.setData(new TextNode(sb.toString()));
+            runner = new DockerCommunityDetectionRunner("someid", cdr,
+                    0, tempDir.getAbsolutePath(), "docker", "hello-world", null, 1,
+                    TimeUnit.SECONDS, ":ro", true);
+            try (InputStream in = runner.openStandardInput()){
+                assertEquals(sb.toString(), IOUtils.toString(in, "UTF-8"));
+            }
+            
+            // closing before input is read stops writer
+            InputStream unread = runner.openStandardInput();
+            unread.close();
+            
+            // uploaded input already in task directory is read as is
+            File taskDir = new File(tempDir, "otherid");
+            assertTrue(taskDir.mkdirs());
+            File inputFile = new File(taskDir, DockerCommunityDetectionRunner.INPUT_FILE);
+            FileUtils.writeStringToFile(inputFile, "1\t2\n", "UTF-8");
+            InputFileCommunityDetectionRequest ifcdr = new InputFileCommunityDetectionRequest(inputFile, true);
+            ifcdr.setAlgorithm("somealgo");
+            runner = new DockerCommunityDetectionRunner("otherid", ifcdr,
+                    0, tempDir.getAbsolutePath(), "docker", "hello-world", null, 1,
+                    TimeUnit.SECONDS, ":ro", true);
+            try (InputStream in = runner.openStandardInput()){
+                assertEquals("1\t2\n", IOUtils.toString(in, "UTF-8"));
+            }
+            
+            assertTrue(inputFile.delete());
+            try {
+                runner.openStandardInput();
+                fail("Expected CommunityDetectionException");
+            } catch(CommunityDetectionException cde){
+                assertEquals("Input file not found: " + inputFile.getAbsolutePath(),
+                        cde.getMessage());
+            }
+        } finally {
+            _folder.delete();
+        }
+    }
+    
+    @Test
+    public void testCallWithContainerLimitsAndCpuset() throws Exception {
+        File tempDir = _folder.newFolder();
+        try {
+            CommunityDetectionRequest cdr = new CommunityDetectionRequest();
+            cdr.setAlgorithm("somealgo");
+            cdr.setData(new TextNode("data"));
+            String workingDir = tempDir.getAbsolutePath() 
+                    + File.separator + "task";
+            DockerCommunityDetectionRunner runner = new DockerCommunityDetectionRunner("someid", cdr,
+                    0, workingDir, "docker", "hello-world", null, 1,
+                    TimeUnit.SECONDS, ":ro");
+            runner.setContainerLimits(new ContainerLimits(1.5, 1024L * 1024L, 64));
+            CpusetAllocator allocator = new CpusetAllocator(Arrays.asList(0, 1, 2));
+            runner.setCpusetAllocator(allocator);
+            
+            CommandLineRunner mockCLR = mock(CommandLineRunner.class);
+            String wDir = workingDir + File.separator + "someid";
+            mockCLR.setWorkingDirectory(wDir);
+            File stdOutFile = runner.getStandardOutFile();
+            try (BufferedWriter bw = new BufferedWriter(new FileWriter(stdOutFile))){
+                bw.write("hello");
+            } 
+            File inputFile = runner.getInputFile();
+            File stdErrFile = runner.getStandardErrorFile();
+            expect(mockCLR.runCommandLineProcess(1, TimeUnit.SECONDS, stdOutFile, stdErrFile,
+                    "docker", "run", "--rm", "--cpus", "1.5", "--cpuset-cpus", "0-1",
+                    "--memory", "1048576b", "--pids-limit", "64",
+                    "-v", wDir + ":" + wDir + ":ro", "hello-world",
+                    inputFile.getAbsolutePath())).andAnswer(() -> {
+                        // cpus are held while algorithm runs
+                        assertEquals(1, allocator.getNumberFreeCpus());
+                        return 0;
+                    });
+            expect(mockCLR.getLastCommand()).andReturn("lastcommand");
+            runner.setAlternateCommandLineRunner(mockCLR);
+            replay(mockCLR);
+            CommunityDetectionResult res = runner.call();
+            assertEquals(CommunityDetectionResult.COMPLETE_STATUS, res.getStatus());
+            assertEquals(3, allocator.getNumberFreeCpus());
+            verify(mockCLR);
+        } finally {
+            _folder.delete();
+        }
+    }
+    
 }
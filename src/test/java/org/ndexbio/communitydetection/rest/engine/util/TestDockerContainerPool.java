@@ -0,0 +1,237 @@
+package org.ndexbio.communitydetection.rest.engine.util;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.ndexbio.communitydetection.rest.model.exceptions.CommunityDetectionException;
+
+/**
+ *
+ * @author churas
+ */
+public class TestDockerContainerPool {
+
+    @Rule
+    public TemporaryFolder _folder = new TemporaryFolder();
+
+    /**
+     * Fake docker that records commands run and writes
+     * canned output for run and inspect of image entrypoint
+     */
+    static class FakeDockerRunner implements CommandLineRunner {
+
+        List<String> commands = new ArrayList<>();
+        int containerCounter = 0;
+        String lastCommand;
+
+        @Override
+        public void setWorkingDirectory(String workingDir) {
+        }
+
+        @Override
+        public void setEnvironmentVariables(Map<String, String> envVars) {
+        }
+
+        @Override
+        public void setStandardErrorListener(Consumer<String> listener) {
+        }
+
+        @Override
+        public void setStandardInput(InputStream stdIn) {
+        }
+
+        @Override
+        public String getLastCommand() {
+            return lastCommand;
+        }
+
+        @Override
+        public int runCommandLineProcess(long timeOut, TimeUnit unit, File stdOutFile,
+                File stdErrFile, String... command) throws Exception {
+            lastCommand = String.join(" ", command);
+            commands.add(lastCommand);
+            String out = "";
+            if (command[1].equals("run")){
+                containerCounter++;
+                out = "cid" + Integer.toString(containerCounter) + "\n";
+            } else if (command[1].equals("inspect") && command[3].contains("Entrypoint")){
+                out = "[\"/run.py\",\"--mode\"]\n";
+            }
+            try (FileWriter fw = new FileWriter(stdOutFile)){
+                fw.write(out);
+            }
+            return 0;
+        }
+    }
+
+    @Test
+    public void testStartAcquireAndRelease() throws Exception {
+        File tempDir = _folder.newFolder();
+        try {
+            FakeDockerRunner fake = new FakeDockerRunner();
+            DockerContainerPool pool = new DockerContainerPool("docker", "image",
+                    tempDir.getAbsolutePath(), ":ro", 2, 2, () -> fake);
+            pool.start();
+            assertEquals(2, pool.getNumberContainers());
+            assertEquals(2, pool.getNumberIdleContainers());
+            // only staging directory of pool is mounted
+            File stagingDir = pool.getStagingDirectory();
+            assertTrue(stagingDir.isDirectory());
+            assertEquals(new File(tempDir, DockerContainerPool.POOL_DIR), stagingDir.getParentFile());
+            assertTrue(stagingDir.getName().startsWith(DockerContainerPool.STAGING_DIR_PREFIX));
+            assertEquals("docker run -d --rm --entrypoint tail -v "
+                    + stagingDir.getAbsolutePath() + ":" + stagingDir.getAbsolutePath()
+                    + ":ro image -f /dev/null", fake.commands.get(0));
+
+            DockerContainerPool.PooledContainer c = pool.acquire(1, TimeUnit.SECONDS);
+            assertEquals("cid1", c.getContainerId());
+            assertEquals(1, pool.getNumberIdleContainers());
+            assertEquals(Arrays.asList("docker", "exec", "-w", "/work", "cid1",
+                    "/run.py", "--mode", "input.txt"),
+                    pool.getExecCommand(c, "/work", Arrays.asList("input.txt")));
+
+            // first release returns it to pool, second hits recycle limit
+            pool.release(c, false);
+            assertEquals(2, pool.getNumberIdleContainers());
+            c = pool.acquire(1, TimeUnit.SECONDS);
+            assertEquals("cid2", c.getContainerId());
+            pool.release(c, false);
+            c = pool.acquire(1, TimeUnit.SECONDS);
+            assertEquals("cid1", c.getContainerId());
+            pool.release(c, false);
+            assertEquals(1, pool.getNumberContainers());
+            assertTrue(fake.commands.contains("docker rm -f cid1"));
+
+            // pool starts a replacement when it has room
+            DockerContainerPool.PooledContainer c2 = pool.acquire(1, TimeUnit.SECONDS);
+            DockerContainerPool.PooledContainer c3 = pool.acquire(1, TimeUnit.SECONDS);
+            assertEquals("cid2", c2.getContainerId());
+            assertEquals("cid3", c3.getContainerId());
+            try {
+                pool.acquire(10, TimeUnit.MILLISECONDS);
+                fail("Expected CommunityDetectionException");
+            } catch(CommunityDetectionException cde){
+                assertTrue(cde.getMessage().contains("Timed out waiting"));
+            }
+
+            // discard on timeout
+            pool.release(c3, true);
+            assertTrue(fake.commands.contains("docker rm -f cid3"));
+            pool.release(c2, false);
+            pool.shutdown();
+            assertEquals(0, pool.getNumberContainers());
+            assertFalse(stagingDir.exists());
+            try {
+                pool.acquire(10, TimeUnit.MILLISECONDS);
+                fail("Expected CommunityDetectionException");
+            } catch(CommunityDetectionException cde){
+                assertTrue(cde.getMessage().contains("is shutdown"));
+            }
+        } finally {
+            _folder.delete();
+        }
+    }
+
+    @Test
+    public void testAcquireRunsNoDockerCommands() throws Exception {
+        File tempDir = _folder.newFolder();
+        try {
+            FakeDockerRunner fake = new FakeDockerRunner();
+            DockerContainerPool pool = new DockerContainerPool("docker", "image",
+                    tempDir.getAbsolutePath(), ":ro", 1, 10, () -> fake);
+            pool.start();
+            int numCommands = fake.commands.size();
+            DockerContainerPool.PooledContainer c = pool.acquire(10, TimeUnit.MILLISECONDS);
+            assertEquals("cid1", c.getContainerId());
+            pool.release(c, false);
+            c = pool.acquire(10, TimeUnit.MILLISECONDS);
+            assertEquals("cid1", c.getContainerId());
+            assertEquals(numCommands, fake.commands.size());
+
+            // broken container is replaced by a newly started one
+            pool.release(c, true);
+            assertTrue(fake.commands.contains("docker rm -f cid1"));
+            c = pool.acquire(10, TimeUnit.MILLISECONDS);
+            assertEquals("cid2", c.getContainerId());
+            assertEquals(1, pool.getNumberContainers());
+            pool.release(c, false);
+            pool.shutdown();
+        } finally {
+            _folder.delete();
+        }
+    }
+
+    @Test
+    public void testIsContainerFailure(){
+        assertFalse(DockerContainerPool.isContainerFailure(0));
+        assertFalse(DockerContainerPool.isContainerFailure(1));
+        assertFalse(DockerContainerPool.isContainerFailure(500));
+        assertTrue(DockerContainerPool.isContainerFailure(125));
+        assertTrue(DockerContainerPool.isContainerFailure(126));
+    }
+
+    @Test
+    public void testStartWithContainerLimits() throws Exception {
+        File tempDir = _folder.newFolder();
+        try {
+            FakeDockerRunner fake = new FakeDockerRunner();
+            DockerContainerPool pool = new DockerContainerPool("docker", "image",
+                    tempDir.getAbsolutePath(), ":ro", 1, 2, () -> fake);
+            // pool containers are shared so cpuset is dropped
+            pool.setContainerLimits(new ContainerLimits(2, 0, 100, "0-1"));
+            pool.start();
+            assertEquals("docker run -d --rm --cpus 2 --pids-limit 100 --entrypoint tail -v "
+                    + pool.getStagingDirectory().getAbsolutePath() + ":"
+                    + pool.getStagingDirectory().getAbsolutePath()
+                    + ":ro image -f /dev/null", fake.commands.get(0));
+            pool.shutdown();
+        } finally {
+            _folder.delete();
+        }
+    }
+
+    @Test
+    public void testStageInput() throws Exception {
+        File tempDir = _folder.newFolder();
+        try {
+            FakeDockerRunner fake = new FakeDockerRunner();
+            DockerContainerPool pool = new DockerContainerPool("docker", "image",
+                    tempDir.getAbsolutePath(), ":ro", 1, 2, () -> fake);
+            pool.start();
+            File taskDir = new File(tempDir, "task1");
+            assertTrue(taskDir.mkdirs());
+            File inputFile = new File(taskDir, "input.txt");
+            try (FileWriter fw = new FileWriter(inputFile)){
+                fw.write("1\t2\n");
+            }
+            File stagedDir = pool.stageInput("task1", inputFile);
+            assertEquals(new File(pool.getStagingDirectory(), "task1"), stagedDir);
+            File stagedInput = new File(stagedDir, "input.txt");
+            assertEquals("1\t2\n", new String(Files.readAllBytes(stagedInput.toPath()), "UTF-8"));
+
+            // staging again, as when a task is retried, replaces input
+            assertEquals(stagedDir, pool.stageInput("task1", inputFile));
+
+            pool.unstage("task1");
+            assertFalse(stagedDir.exists());
+            assertTrue(inputFile.isFile());
+            pool.shutdown();
+        } finally {
+            _folder.delete();
+        }
+    }
+}
@@ -0,0 +1,414 @@
+package org.ndexbio.communitydetection.rest.engine.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.io.FileUtils;
+import static org.junit.Assert.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author churas
+ */
+public class TestDockerEngineClient {
+
+    @Rule
+    public TemporaryFolder _folder = new TemporaryFolder();
+
+    /**
+     * Serves a few Docker Engine API calls over TCP recording each request
+     */
+    private static class FakeDaemon implements AutoCloseable {
+        private final ServerSocket _server;
+        private final List<String> _requests = Collections.synchronizedList(new ArrayList<>());
+        private final List<byte[]> _bodies = Collections.synchronizedList(new ArrayList<>());
+        private final AtomicInteger _connections = new AtomicInteger(0);
+        private final CountDownLatch _killed = new CountDownLatch(1);
+        private final CountDownLatch _stdInClosed = new CountDownLatch(1);
+        private final ByteArrayOutputStream _stdIn = new ByteArrayOutputStream();
+        private boolean _imageMissing = false;
+        private boolean _waitUntilKilled = false;
+        private boolean _closeAfterResponse = false;
+
+        FakeDaemon() throws IOException {
+            _server = new ServerSocket(0, 10, InetAddress.getLoopbackAddress());
+            Thread t = new Thread(() -> {
+                while (_server.isClosed() == false){
+                    try {
+                        Socket socket = _server.accept();
+                        _connections.incrementAndGet();
+                        Thread handler = new Thread(() -> handle(socket));
+                        handler.setDaemon(true);
+                        handler.start();
+                    } catch(IOException io){
+                        return;
+                    }
+                }
+            });
+            t.setDaemon(true);
+            t.start();
+        }
+
+        DockerEngineClient getClient(){
+            return new DockerEngineClient("unused") {
+                @Override
+                protected Connection openConnection() throws IOException {
+                    Socket socket = new Socket(InetAddress.getLoopbackAddress(),
+                            _server.getLocalPort());
+                    return new Connection(socket.getInputStream(),
+                            socket.getOutputStream(), socket);
+                }
+            };
+        }
+
+        private void handle(Socket socket){
+            try (Socket s = socket){
+                InputStream in = new BufferedInputStream(s.getInputStream());
+                OutputStream out = s.getOutputStream();
+                String requestLine;
+                while ((requestLine = readLine(in)) != null){
+                    int length = 0;
+                    String line;
+                    while ((line = readLine(in)) != null && line.isEmpty() == false){
+                        if (line.toLowerCase().startsWith("content-length:")){
+                            length = Integer.parseInt(line.substring(15).trim());
+                        }
+                    }
+                    byte[] body = new byte[length];
+                    int read = 0;
+                    while (read < length){
+                        read += in.read(body, read, length - read);
+                    }
+                    String[] split = requestLine.split(" ");
+                    String request = split[0] + " " + split[1];
+                    _requests.add(request);
+                    _bodies.add(body);
+                    if (request.startsWith("POST /containers/abc/attach")){
+                        // connection becomes raw standard input of container
+                        out.write(("HTTP/1.1 101 UPGRADED\r\nContent-Type: application/vnd.docker.raw-stream\r\n"
+                                + "Connection: Upgrade\r\nUpgrade: tcp\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+                        out.flush();
+                        int c;
+                        while ((c = in.read()) != -1){
+                            _stdIn.write(c);
+                        }
+                        _stdInClosed.countDown();
+                        return;
+                    }
+                    respond(request, out);
+                    if (_closeAfterResponse){
+                        // as if idle connection timed out
+                        return;
+                    }
+                }
+            } catch(Exception ex){
+                // connection closed
+            }
+        }
+
+        private void respond(final String request, final OutputStream out) throws Exception {
+            if (request.equals("POST /containers/create")){
+                if (_imageMissing){
+                    writeResponse(out, 404, "{\"message\":\"No such image\"}");
+                } else {
+                    writeResponse(out, 201, "{\"Id\":\"abc\",\"Warnings\":[]}");
+                }
+            } else if (request.startsWith("POST /images/create")){
+                _imageMissing = false;
+                out.write(("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n")
+                        .getBytes(StandardCharsets.US_ASCII));
+                writeChunk(out, "{\"status\":\"Pulling\"}\r\n".getBytes(StandardCharsets.UTF_8));
+                writeChunk(out, "{\"status\":\"Done\"}\r\n".getBytes(StandardCharsets.UTF_8));
+                out.write("0\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+            } else if (request.equals("POST /containers/abc/start")){
+                writeResponse(out, 204, null);
+            } else if (request.startsWith("GET /containers/abc/logs")){
+                out.write(("HTTP/1.1 200 OK\r\nContent-Type: application/vnd.docker.raw-stream\r\n"
+                        + "Transfer-Encoding: chunked\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+                writeChunk(out, frame(DockerEngineClient.STDOUT_STREAM, "hello\n"));
+                ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                bos.write(frame(DockerEngineClient.STDERR_STREAM, "@@PROGRESS 50\nerr"));
+                bos.write(frame(DockerEngineClient.STDOUT_STREAM, "world\n"));
+                writeChunk(out, bos.toByteArray());
+                writeChunk(out, frame(DockerEngineClient.STDERR_STREAM, "or\n"));
+                out.write("0\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+            } else if (request.equals("POST /containers/abc/wait")){
+                if (_waitUntilKilled){
+                    _killed.await(10, TimeUnit.SECONDS);
+                    writeResponse(out, 200, "{\"StatusCode\":137}");
+                } else {
+                    writeResponse(out, 200, "{\"StatusCode\":3}");
+                }
+            } else if (request.equals("POST /containers/abc/kill")){
+                _killed.countDown();
+                writeResponse(out, 204, null);
+            } else if (request.startsWith("DELETE /containers/abc")){
+                writeResponse(out, 204, null);
+            } else {
+                writeResponse(out, 404, "{\"message\":\"page not found\"}");
+            }
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            _server.close();
+        }
+    }
+
+    private static byte[] frame(int stream, final String data) throws IOException {
+        byte[] payload = data.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        bos.write(new byte[]{(byte)stream, 0, 0, 0, 0, 0, 0, (byte)payload.length});
+        bos.write(payload);
+        return bos.toByteArray();
+    }
+
+    private static void writeChunk(final OutputStream out, final byte[] data) throws IOException {
+        out.write((Integer.toHexString(data.length) + "\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.write(data);
+        out.write("\r\n".getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static void writeResponse(final OutputStream out, int code,
+            final String body) throws IOException {
+        byte[] data = body == null ? new byte[0] : body.getBytes(StandardCharsets.UTF_8);
+        StringBuilder sb = new StringBuilder();
+        sb.append("HTTP/1.1 ").append(code).append(" X\r\n");
+        sb.append("Content-Length: ").append(data.length).append("\r\n\r\n");
+        out.write(sb.toString().getBytes(StandardCharsets.US_ASCII));
+        out.write(data);
+    }
+
+    private static String readLine(final InputStream in) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int c;
+        while ((c = in.read()) != -1){
+            if (c == '\n'){
+                return sb.toString().replaceAll("\r$", "");
+            }
+            sb.append((char)c);
+        }
+        return null;
+    }
+
+    @Test
+    public void testRunContainer() throws Exception {
+        File tempDir = _folder.newFolder();
+        try (FakeDaemon daemon = new FakeDaemon()){
+            DockerEngineClient client = daemon.getClient();
+            File stdOutFile = new File(tempDir, "stdout.txt");
+            File stdErrFile = new File(tempDir, "stderr.txt");
+            List<String> lines = Collections.synchronizedList(new ArrayList<>());
+            int exitCode = client.runContainer("hello-world",
+                    Arrays.asList("/tmp:/tmp:ro"), Arrays.asList("--foo", "/tmp/input.txt"),
+                    new ContainerLimits(0.5, 1024, 10, "2-3"), 1, TimeUnit.MINUTES, stdOutFile, stdErrFile, (line) -> lines.add(line), null);
+            assertEquals(3, exitCode);
+            assertEquals("hello\nworld\n", FileUtils.readFileToString(stdOutFile, "UTF-8"));
+            assertEquals("@@PROGRESS 50\nerror\n", FileUtils.readFileToString(stdErrFile, "UTF-8"));
+            assertEquals(Arrays.asList("@@PROGRESS 50", "error"), lines);
+
+            // logs are followed while waiting so their order is not fixed
+            assertEquals(5, daemon._requests.size());
+            assertEquals("POST /containers/create", daemon._requests.get(0));
+            assertEquals("POST /containers/abc/start", daemon._requests.get(1));
+            assertTrue(daemon._requests.contains("GET /containers/abc/logs?follow=true&stdout=true&stderr=true"));
+            assertTrue(daemon._requests.contains("POST /containers/abc/wait"));
+            assertEquals("DELETE /containers/abc?force=true&v=true", daemon._requests.get(4));
+            JsonNode body = new ObjectMapper().readTree(daemon._bodies.get(0));
+            assertEquals("hello-world", body.get("Image").asText());
+            assertEquals("--foo", body.get("Cmd").get(0).asText());
+            assertEquals("/tmp/input.txt", body.get("Cmd").get(1).asText());
+            JsonNode hostConfig = body.get("HostConfig");
+            assertEquals("/tmp:/tmp:ro", hostConfig.get("Binds").get(0).asText());
+            assertEquals(500000000L, hostConfig.get("NanoCpus").asLong());
+            assertEquals("2-3", hostConfig.get("CpusetCpus").asText());
+            assertEquals(1024L, hostConfig.get("Memory").asLong());
+            assertEquals(10L, hostConfig.get("PidsLimit").asLong());
+
+            // logs are followed on their own connection, the rest share one
+            assertEquals(2, daemon._connections.get());
+            client.close();
+        } finally {
+            _folder.delete();
+        }
+    }
+
+    @Test
+    public void testReusedConnectionOnlyRetriedIfIdempotent() throws Exception {
+        try (FakeDaemon daemon = new FakeDaemon()){
+            daemon._closeAfterResponse = true;
+            DockerEngineClient client = daemon.getClient();
+            assertEquals(204, client.execute("DELETE", "/containers/abc", null).getStatusCode());
+            // daemon may have acted on request so it is not sent again
+            try {
+                client.execute("POST", "/containers/abc/kill", null);
+                fail("Expected IOException");
+            } catch(IOException io){
+                // expected
+            }
+            assertEquals(1, daemon._connections.get());
+
+            assertEquals(204, client.execute("DELETE", "/containers/abc", null).getStatusCode());
+            assertEquals(404, client.execute("GET", "/containers/abc/json", null).getStatusCode());
+            assertEquals(3, daemon._connections.get());
+            assertEquals("GET /containers/abc/json", daemon._requests.get(daemon._requests.size() - 1));
+        }
+    }
+
+    @Test
+    public void testRunContainerPullsMissingImage() throws Exception {
+        File tempDir = _folder.newFolder();
+        try (FakeDaemon daemon = new FakeDaemon()){
+            daemon._imageMissing = true;
+            DockerEngineClient client = daemon.getClient();
+            int exitCode = client.runContainer("foo/bar:1.0", new ArrayList<>(),
+                    new ArrayList<>(), null, 1, TimeUnit.MINUTES, new File(tempDir, "out"),
+                    new File(tempDir, "err"), null, null);
+            assertEquals(3, exitCode);
+            assertEquals("POST /containers/create", daemon._requests.get(0));
+            assertEquals("POST /images/create?fromImage=foo%2Fbar&tag=1.0",
+                    daemon._requests.get(1));
+            assertEquals("POST /containers/create", daemon._requests.get(2));
+            assertEquals("@@PROGRESS 50\nerror\n",
+                    FileUtils.readFileToString(new File(tempDir, "err"), "UTF-8"));
+        } finally {
+            _folder.delete();
+        }
+    }
+
+    @Test
+    public void testRunContainerWithStandardInput() throws Exception {
+        File tempDir = _folder.newFolder();
+        try (FakeDaemon daemon = new FakeDaemon()){
+            DockerEngineClient client = daemon.getClient();
+            int exitCode = client.runContainer("hello-world", new ArrayList<>(),
+                    Arrays.asList("-"), null, 1, TimeUnit.MINUTES, new File(tempDir, "out"),
+                    new File(tempDir, "err"), null,
+                    new ByteArrayInputStream("1\t2\n".getBytes(StandardCharsets.UTF_8)));
+            assertEquals(3, exitCode);
+            assertTrue(daemon._stdInClosed.await(10, TimeUnit.SECONDS));
+            assertEquals("1\t2\n", new String(daemon._stdIn.toByteArray(), StandardCharsets.UTF_8));
+            
+            // attached before container is started
+            assertEquals("POST /containers/create", daemon._requests.get(0));
+            assertEquals("POST /containers/abc/attach?stream=true&stdin=true",
+                    daemon._requests.get(1));
+            assertEquals("POST /containers/abc/start", daemon._requests.get(2));
+            JsonNode body = new ObjectMapper().readTree(daemon._bodies.get(0));
+            assertTrue(body.get("OpenStdin").asBoolean());
+            assertTrue(body.get("StdinOnce").asBoolean());
+            assertEquals(0, body.get("HostConfig").get("Binds").size());
+            assertFalse(body.get("HostConfig").has("NanoCpus"));
+        } finally {
+            _folder.delete();
+        }
+    }
+
+    @Test
+    public void testRunContainerTimeout() throws Exception {
+        File tempDir = _folder.newFolder();
+        try (FakeDaemon daemon = new FakeDaemon()){
+            daemon._waitUntilKilled = true;
+            DockerEngineClient client = daemon.getClient();
+            int exitCode = client.runContainer("hello-world", new ArrayList<>(),
+                    new ArrayList<>(), null, 100, TimeUnit.MILLISECONDS, new File(tempDir, "out"),
+                    new File(tempDir, "err"), null, null);
+            assertEquals(500, exitCode);
+            assertTrue(daemon._requests.contains("POST /containers/abc/kill"));
+            assertEquals("DELETE /containers/abc?force=true&v=true",
+                    daemon._requests.get(daemon._requests.size() - 1));
+        } finally {
+            _folder.delete();
+        }
+    }
+
+    @Test
+    public void testErrorFromDaemon() throws Exception {
+        try (FakeDaemon daemon = new FakeDaemon()){
+            DockerEngineClient client = daemon.getClient();
+            try {
+                client.startContainer("doesnotexist");
+                fail("Expected IOException");
+            } catch(IOException io){
+                assertEquals("Unable to start container doesnotexist (404): page not found",
+                        io.getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void testDaemonUnavailableAfterContainerCreated() throws Exception {
+        File tempDir = _folder.newFolder();
+        try (FakeDaemon daemon = new FakeDaemon()){
+            DockerEngineClient client = new DockerEngineClient("unused") {
+                @Override
+                protected Connection openConnection() throws IOException {
+                    Socket socket = new Socket(InetAddress.getLoopbackAddress(),
+                            daemon._server.getLocalPort());
+                    return new Connection(socket.getInputStream(),
+                            socket.getOutputStream(), socket);
+                }
+
+                @Override
+                public void startContainer(final String id) throws IOException {
+                    throw new DockerEngineClient.UnavailableException("daemon restarting");
+                }
+            };
+            try {
+                client.runContainer("hello-world", Arrays.asList("/tmp:/tmp:ro"),
+                        Arrays.asList("--foo"), null, 1, TimeUnit.MINUTES,
+                        new File(tempDir, "stdout.txt"), new File(tempDir, "stderr.txt"),
+                        null, null);
+                fail("Expected IOException");
+            } catch(DockerEngineClient.UnavailableException ue){
+                fail("Container was created so caller must not fall back: " + ue.getMessage());
+            } catch(IOException io){
+                assertTrue(io.getMessage().startsWith("Lost connection to docker daemon"));
+                assertTrue(io.getCause() instanceof DockerEngineClient.UnavailableException);
+            }
+            assertEquals("POST /containers/create", daemon._requests.get(0));
+            assertEquals("DELETE /containers/abc?force=true&v=true", daemon._requests.get(1));
+            client.close();
+        } finally {
+            _folder.delete();
+        }
+    }
+
+    @Test
+    public void testDaemonUnavailable() throws Exception {
+        File tempDir = _folder.newFolder();
+        try {
+            DockerEngineClient client = new DockerEngineClient(new File(tempDir,
+                    "docker.sock").getAbsolutePath());
+            try {
+                client.startContainer("abc");
+                fail("Expected UnavailableException");
+            } catch(DockerEngineClient.UnavailableException ue){
+                assertNotNull(ue.getMessage());
+            }
+        } finally {
+            _folder.delete();
+        }
+    }
+}
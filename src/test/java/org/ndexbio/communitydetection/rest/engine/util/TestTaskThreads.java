@@ -0,0 +1,58 @@
+package org.ndexbio.communitydetection.rest.engine.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author churas
+ */
+public class TestTaskThreads {
+
+    private static boolean isVirtualThreadFactoryPresent(){
+        try {
+            Class.forName(TaskThreads.VIRTUAL_THREAD_FACTORY);
+            return true;
+        } catch(ClassNotFoundException | LinkageError ex){
+            return false;
+        }
+    }
+
+    @Test
+    public void testNewThread() throws Exception {
+        assertEquals(isVirtualThreadFactoryPresent(), TaskThreads.isVirtual());
+        final String[] name = new String[1];
+        Thread t = TaskThreads.newThread("pump", () -> {
+            name[0] = Thread.currentThread().getName();
+        });
+        assertTrue(t.isDaemon());
+        t.start();
+        t.join(10000);
+        if (TaskThreads.isVirtual()){
+            assertEquals("pump-0", name[0]);
+        } else {
+            assertEquals("pump", name[0]);
+        }
+    }
+
+    @Test
+    public void testNewExecutor() throws Exception {
+        ExecutorService es = TaskThreads.newExecutor("writer");
+        try {
+            if (TaskThreads.isVirtual()){
+                assertTrue(es instanceof ThreadPerTaskExecutor);
+                assertEquals(0, ((ThreadPerTaskExecutor)es).getMaxConcurrency());
+            } else {
+                assertTrue(es instanceof ThreadPoolExecutor);
+            }
+            Future<String> res = es.submit(() -> Thread.currentThread().getName());
+            assertTrue(res.get(10, TimeUnit.SECONDS).startsWith("writer"));
+        } finally {
+            es.shutdownNow();
+        }
+    }
+}
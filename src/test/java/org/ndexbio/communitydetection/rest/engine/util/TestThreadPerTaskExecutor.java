@@ -0,0 +1,125 @@
+package org.ndexbio.communitydetection.rest.engine.util;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author churas
+ */
+public class TestThreadPerTaskExecutor {
+
+    private static void waitFor(final java.util.function.BooleanSupplier condition) throws Exception {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (condition.getAsBoolean() == false){
+            if (System.currentTimeMillis() > deadline){
+                fail("Timed out waiting for condition");
+            }
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    public void testUnbounded() throws Exception {
+        ThreadPerTaskExecutor executor = new ThreadPerTaskExecutor(
+                TaskThreads.newThreadFactory("test"), 0);
+        try {
+            assertEquals(0, executor.getMaxConcurrency());
+            CountDownLatch release = new CountDownLatch(1);
+            for (int i = 0; i < 5; i++){
+                executor.execute(() -> {
+                    try {
+                        release.await();
+                    } catch(InterruptedException ie){
+                        // shut down
+                    }
+                });
+            }
+            waitFor(() -> executor.getActiveCount() == 5);
+            assertEquals(0, executor.getWaitingCount());
+            // ignored without a limit
+            executor.setMaxConcurrency(1);
+            assertEquals(0, executor.getMaxConcurrency());
+            release.countDown();
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+            assertEquals(0, executor.getActiveCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testBoundedAndResize() throws Exception {
+        ThreadPerTaskExecutor executor = new ThreadPerTaskExecutor(
+                TaskThreads.newThreadFactory("test"), 2);
+        try {
+            CountDownLatch release = new CountDownLatch(1);
+            AtomicInteger finished = new AtomicInteger(0);
+            for (int i = 0; i < 5; i++){
+                executor.execute(() -> {
+                    try {
+                        release.await();
+                        finished.incrementAndGet();
+                    } catch(InterruptedException ie){
+                        // shut down
+                    }
+                });
+            }
+            waitFor(() -> executor.getActiveCount() == 2 && executor.getWaitingCount() == 3);
+
+            executor.setMaxConcurrency(4);
+            assertEquals(4, executor.getMaxConcurrency());
+            waitFor(() -> executor.getActiveCount() == 4 && executor.getWaitingCount() == 1);
+
+            // running tasks keep their permits
+            executor.setMaxConcurrency(0);
+            assertEquals(1, executor.getMaxConcurrency());
+            assertEquals(4, executor.getActiveCount());
+
+            release.countDown();
+            waitFor(() -> finished.get() == 5);
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+            assertTrue(executor.isTerminated());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testShutdownNow() throws Exception {
+        ThreadPerTaskExecutor executor = new ThreadPerTaskExecutor(
+                TaskThreads.newThreadFactory("test"), 1);
+        AtomicInteger interrupted = new AtomicInteger(0);
+        AtomicInteger ran = new AtomicInteger(0);
+        for (int i = 0; i < 3; i++){
+            executor.execute(() -> {
+                ran.incrementAndGet();
+                try {
+                    Thread.sleep(60000);
+                } catch(InterruptedException ie){
+                    interrupted.incrementAndGet();
+                }
+            });
+        }
+        waitFor(() -> executor.getWaitingCount() == 2);
+        assertFalse(executor.awaitTermination(1, TimeUnit.MILLISECONDS));
+        assertTrue(executor.shutdownNow().isEmpty());
+        assertTrue(executor.isShutdown());
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        // tasks waiting for a permit never ran
+        assertEquals(1, ran.get());
+        assertEquals(1, interrupted.get());
+        try {
+            executor.execute(() -> {});
+            fail("Expected RejectedExecutionException");
+        } catch(RejectedExecutionException ree){
+            assertEquals("Executor is shut down", ree.getMessage());
+        }
+    }
+}
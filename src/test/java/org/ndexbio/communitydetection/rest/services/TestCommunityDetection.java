@@ -5,10 +5,17 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.net.URI;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
+import org.easymock.Capture;
+import static org.easymock.EasyMock.capture;
 import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.eq;
 import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.isNull;
 import static org.easymock.EasyMock.notNull;
 import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.verify;
@@ -18,10 +25,17 @@ import org.jboss.resteasy.mock.MockHttpRequest;
 import org.jboss.resteasy.mock.MockHttpResponse;
 import org.junit.After;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import org.ndexbio.communitydetection.rest.engine.CommunityDetectionEngine;
+import org.ndexbio.communitydetection.rest.engine.CommunityDetectionOverloadedException;
+import org.ndexbio.communitydetection.rest.engine.CommunityDetectionTaskListener;
+import org.ndexbio.communitydetection.rest.engine.StoredResult;
 import org.ndexbio.communitydetection.rest.model.CommunityDetectionAlgorithms;
 import org.ndexbio.communitydetection.rest.model.CommunityDetectionRequest;
 import org.ndexbio.communitydetection.rest.model.CommunityDetectionResultStatus;
@@ -78,6 +92,13 @@ public class TestCommunityDetection {
 		return confFile;
 	}
 	
+	private void appendToConfigurationFile(File confFile, final String line) throws IOException {
+		FileWriter fw = new FileWriter(confFile, true);
+		fw.write(line + "\n");
+		fw.flush();
+		fw.close();
+	}
+	
     @Test
     public void testRequestCommunityDetectionWhereEngineNotLoaded() throws Exception {
         try {
@@ -129,7 +150,7 @@ public class TestCommunityDetection {
             
             // create mock enrichment engine that returns null
             CommunityDetectionEngine mockEngine = createMock(CommunityDetectionEngine.class);
-            expect(mockEngine.request(notNull())).andThrow(new CommunityDetectionException("some error"));
+            expect(mockEngine.request(notNull(), isNull(), eq(0))).andThrow(new CommunityDetectionException("some error"));
             replay(mockEngine);
             Configuration.getInstance().setCommunityDetectionEngine(mockEngine);
             
@@ -167,7 +188,7 @@ public class TestCommunityDetection {
             
             // create mock enrichment engine that returns null
             CommunityDetectionEngine mockEngine = createMock(CommunityDetectionEngine.class);
-            expect(mockEngine.request(notNull())).andThrow(new CommunityDetectionBadRequestException("some error"));
+            expect(mockEngine.request(notNull(), isNull(), eq(0))).andThrow(new CommunityDetectionBadRequestException("some error"));
             replay(mockEngine);
             Configuration.getInstance().setCommunityDetectionEngine(mockEngine);
             
@@ -207,7 +228,7 @@ public class TestCommunityDetection {
             CommunityDetectionEngine mockEngine = createMock(CommunityDetectionEngine.class);
             ErrorResponse xer = new ErrorResponse();
             xer.setMessage("hello");
-            expect(mockEngine.request(notNull())).andThrow(new CommunityDetectionBadRequestException("some error", xer));
+            expect(mockEngine.request(notNull(), isNull(), eq(0))).andThrow(new CommunityDetectionBadRequestException("some error", xer));
             replay(mockEngine);
             Configuration.getInstance().setCommunityDetectionEngine(mockEngine);
             
@@ -245,7 +266,7 @@ public class TestCommunityDetection {
             
             // create mock enrichment engine that returns null
             CommunityDetectionEngine mockEngine = createMock(CommunityDetectionEngine.class);
-            expect(mockEngine.request(notNull())).andReturn(null);
+            expect(mockEngine.request(notNull(), isNull(), eq(0))).andReturn(null);
             replay(mockEngine);
             Configuration.getInstance().setCommunityDetectionEngine(mockEngine);
             
@@ -283,7 +304,7 @@ public class TestCommunityDetection {
             
             // create mock enrichment engine that returns null
             CommunityDetectionEngine mockEngine = createMock(CommunityDetectionEngine.class);
-            expect(mockEngine.request(notNull())).andReturn("12345");
+            expect(mockEngine.request(notNull(), isNull(), eq(0))).andReturn("12345");
             replay(mockEngine);
             Configuration.getInstance().setCommunityDetectionEngine(mockEngine);
             
@@ -303,6 +324,219 @@ public class TestCommunityDetection {
         }
     }
     
+    @Test
+    public void testRequestWithClientIdAndPriority() throws Exception {
+        try {
+            File tempDir = _folder.newFolder();
+            File confFile = createBasicConfigurationFile(tempDir);
+            appendToConfigurationFile(confFile, Configuration.CLIENT_MAX_PRIORITY + " = 10");
+            Dispatcher dispatcher = getDispatcher();
+
+            MockHttpRequest request = MockHttpRequest.post(Configuration.V_ONE_PATH);
+            request.contentType(MediaType.APPLICATION_JSON);
+            request.header(CommunityDetection.CLIENT_ID_HEADER, "cytoscape");
+            request.content("{\"algorithm\": \"foo\", \"priority\": 5}".getBytes());
+
+            MockHttpResponse response = new MockHttpResponse();
+            Configuration.setAlternateConfigurationFile(confFile.getAbsolutePath());
+            
+            CommunityDetectionEngine mockEngine = createMock(CommunityDetectionEngine.class);
+            expect(mockEngine.request(notNull(), eq("cytoscape"), eq(5))).andReturn("12345");
+            replay(mockEngine);
+            Configuration.getInstance().setCommunityDetectionEngine(mockEngine);
+            
+            dispatcher.invoke(request, response);
+            assertEquals(202, response.getStatus());
+            verify(mockEngine);
+        } finally {
+            _folder.delete();
+        }
+    }
+    
+    @Test
+    public void testRequestWithPriorityAboveClientMaximum() throws Exception {
+        try {
+            File tempDir = _folder.newFolder();
+            File confFile = createBasicConfigurationFile(tempDir);
+            Dispatcher dispatcher = getDispatcher();
+
+            MockHttpRequest request = MockHttpRequest.post(Configuration.V_ONE_PATH + "/batch");
+            request.contentType(MediaType.APPLICATION_JSON);
+            request.header(CommunityDetection.CLIENT_ID_HEADER, "cytoscape");
+            request.content(("[{\"algorithm\": \"foo\", \"priority\": 5},"
+                    + "{\"algorithm\": \"foo\", \"priority\": -3}]").getBytes());
+
+            MockHttpResponse response = new MockHttpResponse();
+            Configuration.setAlternateConfigurationFile(confFile.getAbsolutePath());
+            
+            // by default priority is lowered to 0, lower priorities are kept
+            CommunityDetectionEngine mockEngine = createMock(CommunityDetectionEngine.class);
+            expect(mockEngine.request(notNull(), eq("cytoscape"), eq(0))).andReturn("12345");
+            expect(mockEngine.request(notNull(), eq("cytoscape"), eq(-3))).andReturn("6789");
+            replay(mockEngine);
+            Configuration.getInstance().setCommunityDetectionEngine(mockEngine);
+            
+            dispatcher.invoke(request, response);
+            assertEquals(202, response.getStatus());
+            verify(mockEngine);
+        } finally {
+            _folder.delete();
+        }
+    }
+    
+    @Test
+    public void testRequestWhereServerOverloaded() throws Exception {
+        try {
+            File tempDir = _folder.newFolder();
+            File confFile = createBasicConfigurationFile(tempDir);
+            Dispatcher dispatcher = getDispatcher();
+
+            MockHttpRequest request = MockHttpRequest.post(Configuration.V_ONE_PATH);
+            request.contentType(MediaType.APPLICATION_JSON);
+            request.content("{\"algorithm\": \"foo\"}".getBytes());
+
+            MockHttpResponse response = new MockHttpResponse();
+            Configuration.setAlternateConfigurationFile(confFile.getAbsolutePath());
+            
+            CommunityDetectionEngine mockEngine = createMock(CommunityDetectionEngine.class);
+            expect(mockEngine.request(notNull(), isNull(), eq(0))).andThrow(
+                    new CommunityDetectionOverloadedException("Queue is full",
+                            CommunityDetectionOverloadedException.TOO_MANY_REQUESTS_STATUS, 42));
+            replay(mockEngine);
+            Configuration.getInstance().setCommunityDetectionEngine(mockEngine);
+            
+            dispatcher.invoke(request, response);
+            assertEquals(429, response.getStatus());
+            assertEquals("42", response.getOutputHeaders().getFirst(CommunityDetection.RETRY_AFTER_HEADER).toString());
+            ObjectMapper mapper = new ObjectMapper();
+            ErrorResponse er = mapper.readValue(response.getOutput(), ErrorResponse.class);
+            assertEquals("Server is overloaded", er.getMessage());
+            assertEquals("Queue is full", er.getDescription());
+            verify(mockEngine);
+        } finally {
+            _folder.delete();
+        }
+    }
+    
+    @Test
+    public void testRequestBatchWithPerItemErrors() throws Exception {
+        try {
+            File tempDir = _folder.newFolder();
+            File confFile = createBasicConfigurationFile(tempDir);
+            appendToConfigurationFile(confFile, Configuration.CLIENT_MAX_PRIORITY + " = 10");
+            Dispatcher dispatcher = getDispatcher();
+
+            MockHttpRequest request = MockHttpRequest.post(Configuration.V_ONE_PATH + "/batch");
+            request.contentType(MediaType.APPLICATION_JSON);
+            request.header(CommunityDetection.CLIENT_ID_HEADER, "cytoscape");
+            request.content(("[{\"algorithm\": \"foo\", \"priority\": 5},"
+                    + "{\"algorithm\": \"bad\"}, {\"algorithm\": \"foo\"}]").getBytes());
+
+            MockHttpResponse response = new MockHttpResponse();
+            Configuration.setAlternateConfigurationFile(confFile.getAbsolutePath());
+            
+            CommunityDetectionEngine mockEngine = createMock(CommunityDetectionEngine.class);
+            expect(mockEngine.request(notNull(), eq("cytoscape"), eq(5))).andReturn("12345");
+            expect(mockEngine.request(notNull(), eq("cytoscape"), eq(0)))
+                    .andThrow(new CommunityDetectionBadRequestException("unknown algorithm"));
+            expect(mockEngine.request(notNull(), eq("cytoscape"), eq(0)))
+                    .andThrow(new CommunityDetectionOverloadedException("full",
+                            CommunityDetectionOverloadedException.TOO_MANY_REQUESTS_STATUS, 5));
+            replay(mockEngine);
+            Configuration.getInstance().setCommunityDetectionEngine(mockEngine);
+            
+            dispatcher.invoke(request, response);
+            assertEquals(202, response.getStatus());
+            ObjectMapper mapper = new ObjectMapper();
+            BulkTaskResult[] res = mapper.readValue(response.getOutput(), BulkTaskResult[].class);
+            assertEquals(3, res.length);
+            assertEquals("12345", res[0].getId());
+            assertEquals(202, res[0].getStatusCode());
+            assertEquals(Configuration.V_ONE_PATH + "/12345", res[0].getLocation());
+            assertNull(res[0].getError());
+            assertNull(res[1].getId());
+            assertEquals(400, res[1].getStatusCode());
+            assertEquals("unknown algorithm", res[1].getError().getDescription());
+            assertEquals(CommunityDetectionOverloadedException.TOO_MANY_REQUESTS_STATUS,
+                    res[2].getStatusCode());
+            assertEquals("Server is overloaded", res[2].getError().getMessage());
+            verify(mockEngine);
+        } finally {
+            _folder.delete();
+        }
+    }
+    
+    @Test
+    public void testRequestBatchInvalidJson() throws Exception {
+        try {
+            File tempDir = _folder.newFolder();
+            File confFile = createBasicConfigurationFile(tempDir);
+            Dispatcher dispatcher = getDispatcher();
+
+            MockHttpRequest request = MockHttpRequest.post(Configuration.V_ONE_PATH + "/batch");
+            request.contentType(MediaType.APPLICATION_JSON);
+            request.content("{\"algorithm\": \"foo\"}".getBytes());
+
+            MockHttpResponse response = new MockHttpResponse();
+            Configuration.setAlternateConfigurationFile(confFile.getAbsolutePath());
+            
+            CommunityDetectionEngine mockEngine = createMock(CommunityDetectionEngine.class);
+            replay(mockEngine);
+            Configuration.getInstance().setCommunityDetectionEngine(mockEngine);
+            
+            dispatcher.invoke(request, response);
+            assertEquals(400, response.getStatus());
+            ObjectMapper mapper = new ObjectMapper();
+            ErrorResponse er = mapper.readValue(response.getOutput(),
+                    ErrorResponse.class);
+            assertEquals("Unable to parse request", er.getMessage());
+            assertTrue(er.getDescription().startsWith("Unable to parse request: Expected ["));
+            verify(mockEngine);
+        } finally {
+            _folder.delete();
+        }
+    }
+    
+    @Test
+    public void testRequestWithMalformedData() throws Exception {
+        try {
+            File tempDir = _folder.newFolder();
+            File confFile = createBasicConfigurationFile(tempDir);
+            Dispatcher dispatcher = getDispatcher();
+
+            MockHttpRequest request = MockHttpRequest.post(Configuration.V_ONE_PATH);
+            request.contentType(MediaType.APPLICATION_JSON);
+            request.content("{\"algorithm\": \"foo\", \"data\": [1, tru]}".getBytes());
+
+            MockHttpResponse response = new MockHttpResponse();
+            Configuration.setAlternateConfigurationFile(confFile.getAbsolutePath());
+            
+            // engine should never see the request
+            CommunityDetectionEngine mockEngine = createMock(CommunityDetectionEngine.class);
+            replay(mockEngine);
+            Configuration.getInstance().setCommunityDetectionEngine(mockEngine);
+            
+            dispatcher.invoke(request, response);
+            assertEquals(400, response.getStatus());
+            ObjectMapper mapper = new ObjectMapper();
+            ErrorResponse er = mapper.readValue(response.getOutput(),
+                    ErrorResponse.class);
+            assertEquals("Unable to parse request", er.getMessage());
+            assertTrue(er.getDescription().startsWith("Unable to parse request: Invalid literal"));
+            verify(mockEngine);
+        } finally {
+            _folder.delete();
+        }
+    }
+    
+    @Test
+    public void testGetClientId(){
+        assertNull(CommunityDetection.getClientId(null, null));
+        assertNull(CommunityDetection.getClientId(" ", ""));
+        assertEquals("foo", CommunityDetection.getClientId(" foo ", "1.2.3.4"));
+        assertEquals("1.2.3.4", CommunityDetection.getClientId(null, "1.2.3.4, 5.6.7.8"));
+    }
+    
         @Test
     public void testRequestWhereQuerySuccessAndHostURLSet() throws Exception {
         try {
@@ -327,7 +561,7 @@ public class TestCommunityDetection {
             
             // create mock enrichment engine that returns null
             CommunityDetectionEngine mockEngine = createMock(CommunityDetectionEngine.class);
-            expect(mockEngine.request(notNull())).andReturn("12345");
+            expect(mockEngine.request(notNull(), isNull(), eq(0))).andReturn("12345");
             replay(mockEngine);
             Configuration.getInstance().setCommunityDetectionEngine(mockEngine);
             
@@ -387,6 +621,7 @@ public class TestCommunityDetection {
             
             // create mock enrichment engine that returns null
             CommunityDetectionEngine mockEngine = createMock(CommunityDetectionEngine.class);
+            expect(mockEngine.openResult("12345")).andReturn(null);
             expect(mockEngine.getResult("12345")).andReturn(null);
             replay(mockEngine);
             Configuration.getInstance().setCommunityDetectionEngine(mockEngine);
@@ -417,6 +652,7 @@ public class TestCommunityDetection {
             CommunityDetectionEngine mockEngine = createMock(CommunityDetectionEngine.class);
             CommunityDetectionResult eqr = new CommunityDetectionResult();
             eqr.setMessage("hi");
+            expect(mockEngine.openResult("12345")).andReturn(null);
             expect(mockEngine.getResult("12345")).andReturn(eqr);
             replay(mockEngine);
             Configuration.getInstance().setCommunityDetectionEngine(mockEngine);
@@ -433,6 +669,82 @@ public class TestCommunityDetection {
         }
     }
     
+    @Test
+    public void testGetWhereResultFileExists() throws Exception {
+
+        try {
+            File tempDir = _folder.newFolder();
+            File confFile = createBasicConfigurationFile(tempDir);
+            Dispatcher dispatcher = getDispatcher();
+
+            MockHttpRequest request = MockHttpRequest.get(Configuration.V_ONE_PATH + "/12345");
+
+            MockHttpResponse response = new MockHttpResponse();
+            Configuration.setAlternateConfigurationFile(confFile.getAbsolutePath());
+            
+            CommunityDetectionResult eqr = new CommunityDetectionResult();
+            eqr.setMessage("from file");
+            eqr.setStatus(CommunityDetectionResult.COMPLETE_STATUS);
+            File resultFile = new File(tempDir, "cdresult.json");
+            ObjectMapper mapper = new ObjectMapper();
+            mapper.writeValue(resultFile, eqr);
+            
+            // engine should not be asked to parse the result
+            CommunityDetectionEngine mockEngine = createMock(CommunityDetectionEngine.class);
+            expect(mockEngine.openResult("12345")).andReturn(new StoredResult(
+                    FileChannel.open(resultFile.toPath(), StandardOpenOption.READ),
+                    0, resultFile.length()));
+            replay(mockEngine);
+            Configuration.getInstance().setCommunityDetectionEngine(mockEngine);
+            
+            dispatcher.invoke(request, response);
+            assertEquals(200, response.getStatus());
+            assertEquals(new String(java.nio.file.Files.readAllBytes(resultFile.toPath()), "UTF-8"),
+                    response.getContentAsString());
+            CommunityDetectionResult res = mapper.readValue(response.getOutput(),
+                    CommunityDetectionResult.class);
+            assertEquals("from file", res.getMessage());
+            verify(mockEngine);
+        } finally {
+            _folder.delete();
+        }
+    }
+    
+    @Test
+    public void testGetWhereStoredResultIsPartOfFile() throws Exception {
+
+        try {
+            File tempDir = _folder.newFolder();
+            File confFile = createBasicConfigurationFile(tempDir);
+            Dispatcher dispatcher = getDispatcher();
+
+            MockHttpRequest request = MockHttpRequest.get(Configuration.V_ONE_PATH + "/12345");
+
+            MockHttpResponse response = new MockHttpResponse();
+            Configuration.setAlternateConfigurationFile(confFile.getAbsolutePath());
+            
+            // result is in the middle of a log shared with other tasks
+            String json = "{\"message\":\"from log\"}";
+            File logFile = new File(tempDir, "cdtasks.log");
+            try (FileWriter fw = new FileWriter(logFile)){
+                fw.write("before" + json + "after");
+            }
+            CommunityDetectionEngine mockEngine = createMock(CommunityDetectionEngine.class);
+            expect(mockEngine.openResult("12345")).andReturn(new StoredResult(
+                    FileChannel.open(logFile.toPath(), StandardOpenOption.READ),
+                    6, json.length()));
+            replay(mockEngine);
+            Configuration.getInstance().setCommunityDetectionEngine(mockEngine);
+            
+            dispatcher.invoke(request, response);
+            assertEquals(200, response.getStatus());
+            assertEquals(json, response.getContentAsString());
+            verify(mockEngine);
+        } finally {
+            _folder.delete();
+        }
+    }
+    
     @Test
     public void testGetAlgorithmsWhereCommunityDetectionEngineNotLoaded() throws Exception {
 
@@ -531,7 +843,7 @@ public class TestCommunityDetection {
             Configuration.setAlternateConfigurationFile(confFile.getAbsolutePath());
             Configuration.getInstance().setCommunityDetectionEngine(null);
 
-            dispatcher.invoke(request, response);
+            TestDiffusion.invoke(dispatcher, request, response);
             assertEquals(500, response.getStatus());
             ObjectMapper mapper = new ObjectMapper();
             ErrorResponse er = mapper.readValue(response.getOutput(),
@@ -562,7 +874,7 @@ public class TestCommunityDetection {
             replay(mockEngine);
             Configuration.getInstance().setCommunityDetectionEngine(mockEngine);
             
-            dispatcher.invoke(request, response);
+            TestDiffusion.invoke(dispatcher, request, response);
             assertEquals(410, response.getStatus());
             verify(mockEngine);
         } finally {
@@ -592,7 +904,7 @@ public class TestCommunityDetection {
             replay(mockEngine);
             Configuration.getInstance().setCommunityDetectionEngine(mockEngine);
             
-            dispatcher.invoke(request, response);
+            TestDiffusion.invoke(dispatcher, request, response);
             assertEquals(200, response.getStatus());
             ObjectMapper mapper = new ObjectMapper();
             CommunityDetectionResultStatus res = mapper.readValue(response.getOutput(),
@@ -604,6 +916,343 @@ public class TestCommunityDetection {
         }
     }
     
+    @Test
+    public void testGetStatusWithInvalidWait() throws Exception {
+
+        try {
+            File tempDir = _folder.newFolder();
+            File confFile = createBasicConfigurationFile(tempDir);
+            Dispatcher dispatcher = getDispatcher();
+
+            MockHttpRequest request = MockHttpRequest.get(Configuration.V_ONE_PATH +
+                                                          "/12345/status?wait=soon");
+
+            MockHttpResponse response = new MockHttpResponse();
+            Configuration.setAlternateConfigurationFile(confFile.getAbsolutePath());
+            CommunityDetectionEngine mockEngine = createMock(CommunityDetectionEngine.class);
+            replay(mockEngine);
+            Configuration.getInstance().setCommunityDetectionEngine(mockEngine);
+            
+            TestDiffusion.invoke(dispatcher, request, response);
+            assertEquals(400, response.getStatus());
+            ObjectMapper mapper = new ObjectMapper();
+            ErrorResponse er = mapper.readValue(response.getOutput(),
+                    ErrorResponse.class);
+            assertEquals("Invalid value for wait: soon", er.getDescription());
+            verify(mockEngine);
+        } finally {
+            _folder.delete();
+        }
+    }
+    
+    @Test
+    public void testGetStatusWithWaitWhereTaskFinished() throws Exception {
+
+        try {
+            File tempDir = _folder.newFolder();
+            File confFile = createBasicConfigurationFile(tempDir);
+            Dispatcher dispatcher = getDispatcher();
+
+            MockHttpRequest request = MockHttpRequest.get(Configuration.V_ONE_PATH +
+                                                          "/12345/status?wait=30s");
+
+            MockHttpResponse response = new MockHttpResponse();
+            Configuration.setAlternateConfigurationFile(confFile.getAbsolutePath());
+            
+            CommunityDetectionEngine mockEngine = createMock(CommunityDetectionEngine.class);
+            CommunityDetectionResultStatus eqs = new CommunityDetectionResultStatus();
+            eqs.setStatus(CommunityDetectionResult.COMPLETE_STATUS);
+            eqs.setProgress(100);
+            expect(mockEngine.getStatus("12345")).andReturn(eqs);
+            replay(mockEngine);
+            Configuration.getInstance().setCommunityDetectionEngine(mockEngine);
+            
+            TestDiffusion.invoke(dispatcher, request, response);
+            assertEquals(200, response.getStatus());
+            ObjectMapper mapper = new ObjectMapper();
+            CommunityDetectionResultStatus res = mapper.readValue(response.getOutput(),
+                    CommunityDetectionResultStatus.class);
+            assertEquals(CommunityDetectionResult.COMPLETE_STATUS, res.getStatus());
+            verify(mockEngine);
+        } finally {
+            _folder.delete();
+        }
+    }
+    
+    @Test
+    public void testGetStatusWithWaitResumedOnStatusChange() throws Exception {
+
+        try {
+            File tempDir = _folder.newFolder();
+            File confFile = createBasicConfigurationFile(tempDir);
+            Dispatcher dispatcher = getDispatcher();
+
+            MockHttpRequest request = MockHttpRequest.get(Configuration.V_ONE_PATH +
+                                                          "/12345/status?wait=30");
+
+            MockHttpResponse response = new MockHttpResponse();
+            Configuration.setAlternateConfigurationFile(confFile.getAbsolutePath());
+            
+            CommunityDetectionEngine mockEngine = createMock(CommunityDetectionEngine.class);
+            CommunityDetectionResultStatus eqs = new CommunityDetectionResultStatus();
+            eqs.setStatus(CommunityDetectionResult.PROCESSING_STATUS);
+            eqs.setProgress(10);
+            expect(mockEngine.getStatus("12345")).andReturn(eqs).times(2);
+            CommunityDetectionResultStatus changed = new CommunityDetectionResultStatus();
+            changed.setStatus(CommunityDetectionResult.PROCESSING_STATUS);
+            changed.setProgress(50);
+            Capture<CommunityDetectionTaskListener> listenerCap = Capture.newInstance();
+            mockEngine.addTaskListener(eq("12345"), capture(listenerCap));
+            expectLastCall().andAnswer(() -> {
+                listenerCap.getValue().statusChanged(changed);
+                return null;
+            });
+            mockEngine.removeTaskListener(eq("12345"), notNull());
+            replay(mockEngine);
+            Configuration.getInstance().setCommunityDetectionEngine(mockEngine);
+            
+            TestDiffusion.invoke(dispatcher, request, response);
+            assertEquals(200, response.getStatus());
+            ObjectMapper mapper = new ObjectMapper();
+            CommunityDetectionResultStatus res = mapper.readValue(response.getOutput(),
+                    CommunityDetectionResultStatus.class);
+            assertEquals(50, res.getProgress());
+            verify(mockEngine);
+        } finally {
+            _folder.delete();
+        }
+    }
+    
+    @Test
+    public void testParseWait() throws Exception {
+        assertEquals(0, CommunityDetection.parseWait(null));
+        assertEquals(0, CommunityDetection.parseWait(" "));
+        assertEquals(30000, CommunityDetection.parseWait("30"));
+        assertEquals(30000, CommunityDetection.parseWait("30s"));
+        assertEquals(1500, CommunityDetection.parseWait("1.5s"));
+        assertEquals(250, CommunityDetection.parseWait("250ms"));
+        assertEquals(CommunityDetection.MAX_WAIT_SECONDS * 1000,
+                CommunityDetection.parseWait("100000"));
+        try {
+            CommunityDetection.parseWait("-1");
+            fail("Expected CommunityDetectionBadRequestException");
+        } catch(CommunityDetectionBadRequestException breq){
+            assertEquals("Invalid value for wait: -1", breq.getMessage());
+        }
+    }
+    
+    @Test
+    public void testGetEventsWhereIdDoesNotExist() throws Exception {
+
+        try {
+            File tempDir = _folder.newFolder();
+            File confFile = createBasicConfigurationFile(tempDir);
+            Dispatcher dispatcher = getDispatcher();
+
+            MockHttpRequest request = MockHttpRequest.get(Configuration.V_ONE_PATH + "/12345/events");
+
+            MockHttpResponse response = new MockHttpResponse();
+            Configuration.setAlternateConfigurationFile(confFile.getAbsolutePath());
+            
+            CommunityDetectionEngine mockEngine = createMock(CommunityDetectionEngine.class);
+            expect(mockEngine.getStatus("12345")).andReturn(null);
+            replay(mockEngine);
+            Configuration.getInstance().setCommunityDetectionEngine(mockEngine);
+            
+            TestDiffusion.invoke(dispatcher, request, response);
+            assertEquals(410, response.getStatus());
+            verify(mockEngine);
+        } finally {
+            _folder.delete();
+        }
+    }
+    
+    @Test
+    public void testGetEventsStreamsUntilTaskFinishes() throws Exception {
+
+        try {
+            File tempDir = _folder.newFolder();
+            File confFile = createBasicConfigurationFile(tempDir);
+            Dispatcher dispatcher = getDispatcher();
+
+            MockHttpRequest request = MockHttpRequest.get(Configuration.V_ONE_PATH + "/12345/events");
+
+            MockHttpResponse response = new MockHttpResponse();
+            Configuration.setAlternateConfigurationFile(confFile.getAbsolutePath());
+            
+            CommunityDetectionEngine mockEngine = createMock(CommunityDetectionEngine.class);
+            CommunityDetectionResultStatus eqs = new CommunityDetectionResultStatus();
+            eqs.setStatus(CommunityDetectionResult.SUBMITTED_STATUS);
+            expect(mockEngine.getStatus("12345")).andReturn(eqs);
+            CommunityDetectionResultStatus changed = new CommunityDetectionResultStatus();
+            changed.setStatus(CommunityDetectionResult.PROCESSING_STATUS);
+            changed.setProgress(50);
+            CommunityDetectionResult finished = new CommunityDetectionResult();
+            finished.setStatus(CommunityDetectionResult.COMPLETE_STATUS);
+            finished.setProgress(100);
+            Capture<CommunityDetectionTaskListener> listenerCap = Capture.newInstance();
+            mockEngine.addTaskListener(eq("12345"), capture(listenerCap));
+            expectLastCall().andAnswer(() -> {
+                listenerCap.getValue().statusChanged(changed);
+                listenerCap.getValue().taskCompleted(finished);
+                return null;
+            });
+            mockEngine.removeTaskListener(eq("12345"), notNull());
+            replay(mockEngine);
+            Configuration.getInstance().setCommunityDetectionEngine(mockEngine);
+            
+            TestDiffusion.invoke(dispatcher, request, response);
+            assertEquals(200, response.getStatus());
+            assertEquals("no-cache", response.getOutputHeaders()
+                    .getFirst(CommunityDetection.CACHE_CONTROL_HEADER));
+            String[] events = response.getContentAsString().split("\n\n");
+            assertEquals(3, events.length);
+            ObjectMapper mapper = new ObjectMapper();
+            String[] expectedStatus = {CommunityDetectionResult.SUBMITTED_STATUS,
+                CommunityDetectionResult.PROCESSING_STATUS,
+                CommunityDetectionResult.COMPLETE_STATUS};
+            for (int i = 0; i < events.length; i++){
+                String[] lines = events[i].split("\n");
+                assertEquals("event: status", lines[0]);
+                assertTrue(lines[1].startsWith("data: "));
+                CommunityDetectionResultStatus res = mapper.readValue(lines[1].substring(6),
+                        CommunityDetectionResultStatus.class);
+                assertEquals(expectedStatus[i], res.getStatus());
+            }
+            verify(mockEngine);
+        } finally {
+            _folder.delete();
+        }
+    }
+    
+    @Test
+    public void testGetEventsWhereTooManyStreamsOpen() throws Exception {
+
+        StatusEventStream held = null;
+        try {
+            File tempDir = _folder.newFolder();
+            File confFile = createBasicConfigurationFile(tempDir);
+            appendToConfigurationFile(confFile, Configuration.EVENTS_MAX_STREAMS + " = "
+                    + Integer.toString(StatusEventStream.getOpenStreams() + 1));
+            Dispatcher dispatcher = getDispatcher();
+
+            MockHttpRequest request = MockHttpRequest.get(Configuration.V_ONE_PATH + "/12345/events");
+
+            MockHttpResponse response = new MockHttpResponse();
+            Configuration.setAlternateConfigurationFile(confFile.getAbsolutePath());
+            
+            CommunityDetectionResultStatus eqs = new CommunityDetectionResultStatus();
+            eqs.setStatus(CommunityDetectionResult.SUBMITTED_STATUS);
+            CommunityDetectionEngine mockEngine = createMock(CommunityDetectionEngine.class);
+            expect(mockEngine.getStatus("12345")).andReturn(eqs);
+            // held stream is closed at end of test
+            mockEngine.removeTaskListener(eq("99"), notNull());
+            replay(mockEngine);
+            Configuration.getInstance().setCommunityDetectionEngine(mockEngine);
+            
+            // use up the one free slot
+            held = StatusEventStream.open(mockEngine, "99", eqs, 1000L,
+                    Configuration.getInstance().getEventsMaxStreams());
+            assertNotNull(held);
+            
+            TestDiffusion.invoke(dispatcher, request, response);
+            assertEquals(CommunityDetectionOverloadedException.TOO_MANY_REQUESTS_STATUS,
+                    response.getStatus());
+            assertEquals("15", response.getOutputHeaders()
+                    .getFirst(CommunityDetection.RETRY_AFTER_HEADER).toString());
+            ObjectMapper mapper = new ObjectMapper();
+            ErrorResponse er = mapper.readValue(response.getOutput(),
+                    ErrorResponse.class);
+            assertEquals("Too many event streams are open", er.getDescription());
+            
+            int open = StatusEventStream.getOpenStreams();
+            held.close();
+            held.close();
+            assertEquals(open - 1, StatusEventStream.getOpenStreams());
+            held = null;
+            verify(mockEngine);
+        } finally {
+            if (held != null){
+                held.close();
+            }
+            _folder.delete();
+        }
+    }
+    
+    @Test
+    public void testGetBulkStatus() throws Exception {
+
+        try {
+            File tempDir = _folder.newFolder();
+            File confFile = createBasicConfigurationFile(tempDir);
+            Dispatcher dispatcher = getDispatcher();
+
+            MockHttpRequest request = MockHttpRequest.post(Configuration.V_ONE_PATH + "/status/bulk");
+            request.contentType(MediaType.APPLICATION_JSON);
+            request.content("[\"1\", \"2\", \"3\"]".getBytes());
+
+            MockHttpResponse response = new MockHttpResponse();
+            Configuration.setAlternateConfigurationFile(confFile.getAbsolutePath());
+            
+            CommunityDetectionEngine mockEngine = createMock(CommunityDetectionEngine.class);
+            CommunityDetectionResultStatus eqs = new CommunityDetectionResultStatus();
+            eqs.setId("1");
+            eqs.setProgress(55);
+            expect(mockEngine.getStatus("1")).andReturn(eqs);
+            expect(mockEngine.getStatus("2")).andReturn(null);
+            expect(mockEngine.getStatus("3")).andThrow(new CommunityDetectionException("uhoh"));
+            replay(mockEngine);
+            Configuration.getInstance().setCommunityDetectionEngine(mockEngine);
+            
+            dispatcher.invoke(request, response);
+            assertEquals(200, response.getStatus());
+            ObjectMapper mapper = new ObjectMapper();
+            BulkTaskResult[] res = mapper.readValue(response.getOutput(), BulkTaskResult[].class);
+            assertEquals(3, res.length);
+            assertEquals(200, res[0].getStatusCode());
+            assertEquals(55, res[0].getStatus().getProgress());
+            assertEquals("2", res[1].getId());
+            assertEquals(410, res[1].getStatusCode());
+            assertNull(res[1].getStatus());
+            assertEquals(500, res[2].getStatusCode());
+            assertEquals("uhoh", res[2].getError().getDescription());
+            verify(mockEngine);
+        } finally {
+            _folder.delete();
+        }
+    }
+    
+    @Test
+    public void testGetBulkStatusInvalidRequests() throws Exception {
+
+        try {
+            File tempDir = _folder.newFolder();
+            File confFile = createBasicConfigurationFile(tempDir);
+            Configuration.setAlternateConfigurationFile(confFile.getAbsolutePath());
+            CommunityDetectionEngine mockEngine = createMock(CommunityDetectionEngine.class);
+            replay(mockEngine);
+            Configuration.getInstance().setCommunityDetectionEngine(mockEngine);
+            StringBuilder tooMany = new StringBuilder("[");
+            for (int i = 0; i <= CommunityDetection.MAX_BULK_STATUS_IDS; i++){
+                tooMany.append(i == 0 ? "" : ",").append("\"").append(i).append("\"");
+            }
+            tooMany.append("]");
+            String[] badRequests = {"{\"id\": \"1\"}", "", tooMany.toString()};
+            for (String badRequest : badRequests){
+                Dispatcher dispatcher = getDispatcher();
+                MockHttpRequest request = MockHttpRequest.post(Configuration.V_ONE_PATH + "/status/bulk");
+                request.contentType(MediaType.APPLICATION_JSON);
+                request.content(badRequest.getBytes());
+                MockHttpResponse response = new MockHttpResponse();
+                dispatcher.invoke(request, response);
+                assertEquals(400, response.getStatus());
+            }
+            verify(mockEngine);
+        } finally {
+            _folder.delete();
+        }
+    }
+    
     @Test
     public void testDeleteWhereEnrichmentEngineNotLoaded() throws Exception {
 
@@ -5,16 +5,21 @@ import com.fasterxml.jackson.databind.node.TextNode;
 import java.io.File;
 import java.io.FileWriter;
 import java.util.LinkedHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import javax.ws.rs.core.MediaType;
 import org.easymock.Capture;
 import static org.easymock.EasyMock.capture;
 import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.eq;
 import static org.easymock.EasyMock.expect;
 import static org.easymock.EasyMock.expectLastCall;
 import static org.easymock.EasyMock.notNull;
 import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.verify;
 import org.jboss.resteasy.core.Dispatcher;
+import org.jboss.resteasy.core.SynchronousDispatcher;
+import org.jboss.resteasy.core.SynchronousExecutionContext;
 import org.jboss.resteasy.mock.MockDispatcherFactory;
 import org.jboss.resteasy.mock.MockHttpRequest;
 import org.jboss.resteasy.mock.MockHttpResponse;
@@ -25,6 +30,7 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import org.ndexbio.communitydetection.rest.engine.CommunityDetectionEngine;
+import org.ndexbio.communitydetection.rest.engine.CommunityDetectionTaskListener;
 import org.ndexbio.communitydetection.rest.model.CXMateResult;
 import org.ndexbio.communitydetection.rest.model.CommunityDetectionAlgorithm;
 import org.ndexbio.communitydetection.rest.model.CommunityDetectionAlgorithms;
@@ -63,6 +69,17 @@ public class TestDiffusion {
         return dispatcher;
     }
 	
+    /**
+     * Invokes {@code request} with a synchronous execution context so
+     * suspended requests complete before this method returns
+     */
+    public static void invoke(Dispatcher dispatcher, MockHttpRequest request,
+            MockHttpResponse response){
+        request.setAsynchronousContext(new SynchronousExecutionContext(
+                (SynchronousDispatcher)dispatcher, request, response));
+        dispatcher.invoke(request, response);
+    }
+	
     public static String writeConfigurationForDiffusion(final String tempDir){
         CommunityDetectionAlgorithms cdAlgos = new CommunityDetectionAlgorithms();
         CommunityDetectionAlgorithm someAlgo = new CommunityDetectionAlgorithm();
@@ -97,7 +114,7 @@ public class TestDiffusion {
         MockHttpRequest request = MockHttpRequest.delete(Configuration.LEGACY_DIFFUSION_PATH);
 
         MockHttpResponse response = new MockHttpResponse();            
-        dispatcher.invoke(request, response);
+        invoke(dispatcher, request, response);
         assertEquals(405, response.getStatus());
         assertEquals(TestDiffusion.YOUMUSTUSEPOST,
                         response.getContentAsString().replaceAll("\\s+", ""));
@@ -110,7 +127,7 @@ public class TestDiffusion {
         MockHttpRequest request = MockHttpRequest.get(Configuration.LEGACY_DIFFUSION_PATH);
 
         MockHttpResponse response = new MockHttpResponse();            
-        dispatcher.invoke(request, response);
+        invoke(dispatcher, request, response);
         assertEquals(405, response.getStatus());
         assertEquals(TestDiffusion.YOUMUSTUSEPOST,
                         response.getContentAsString().replaceAll("\\s+", ""));
@@ -123,7 +140,7 @@ public class TestDiffusion {
         MockHttpRequest request = MockHttpRequest.put(Configuration.LEGACY_DIFFUSION_PATH);
 
         MockHttpResponse response = new MockHttpResponse();            
-        dispatcher.invoke(request, response);
+        invoke(dispatcher, request, response);
         assertEquals(405, response.getStatus());
         assertEquals(TestDiffusion.YOUMUSTUSEPOST,
                         response.getContentAsString().replaceAll("\\s+", ""));
@@ -152,7 +169,7 @@ public class TestDiffusion {
             MockHttpResponse response = new MockHttpResponse();
             Configuration.setAlternateConfigurationFile(confFile.getAbsolutePath());
             Configuration.getInstance().setCommunityDetectionEngine(null);
-            dispatcher.invoke(request, response);
+            invoke(dispatcher, request, response);
             assertEquals(500, response.getStatus());
             ObjectMapper mapper = new ObjectMapper();
             CXMateResult cxRes = mapper.readValue(response.getOutput(),
@@ -189,7 +206,7 @@ public class TestDiffusion {
             MockHttpResponse response = new MockHttpResponse();
             Configuration.setAlternateConfigurationFile(confFile.getAbsolutePath());
             Configuration.getInstance().setCommunityDetectionEngine(null);
-            dispatcher.invoke(request, response);
+            invoke(dispatcher, request, response);
             assertEquals(500, response.getStatus());
             ObjectMapper mapper = new ObjectMapper();
             CXMateResult cxRes = mapper.readValue(response.getOutput(),
@@ -230,7 +247,7 @@ public class TestDiffusion {
             replay(mockEngine);
 			
             Configuration.getInstance().setCommunityDetectionEngine(mockEngine);
-            dispatcher.invoke(request, response);
+            invoke(dispatcher, request, response);
             assertEquals(500, response.getStatus());
             ObjectMapper mapper = new ObjectMapper();
             CXMateResult cxRes = mapper.readValue(response.getOutput(),
@@ -264,8 +281,6 @@ public class TestDiffusion {
             
             request.content(omappy.writeValueAsBytes(TextNode.valueOf("hi")));
 
-            CommunityDetectionResult inCompleteTask = new CommunityDetectionResult();
-            inCompleteTask.setProgress(99);
             CommunityDetectionResult completeTask = new CommunityDetectionResult();
             completeTask.setProgress(100);
             completeTask.setStatus(CommunityDetectionResult.FAILED_STATUS);
@@ -274,11 +289,16 @@ public class TestDiffusion {
             Configuration.setAlternateConfigurationFile(confFile.getAbsolutePath());
             CommunityDetectionEngine mockEngine = createMock(CommunityDetectionEngine.class);
             expect(mockEngine.request(notNull())).andReturn("12345");
-            expect(mockEngine.getResult("12345")).andReturn(inCompleteTask).andReturn(completeTask);
+            Capture<CommunityDetectionTaskListener> listenerCap = Capture.newInstance();
+            mockEngine.addTaskListener(eq("12345"), capture(listenerCap));
+            expectLastCall().andAnswer(() -> {
+                listenerCap.getValue().taskCompleted(completeTask);
+                return null;
+            });
             replay(mockEngine);
 			
             Configuration.getInstance().setCommunityDetectionEngine(mockEngine);
-            dispatcher.invoke(request, response);
+            invoke(dispatcher, request, response);
             assertEquals(500, response.getStatus());
             ObjectMapper mapper = new ObjectMapper();
             CXMateResult cxRes = mapper.readValue(response.getOutput(),
@@ -323,7 +343,7 @@ public class TestDiffusion {
 	    CommunityDetectionEngine mockEngine = createMock(CommunityDetectionEngine.class);			
 
             Configuration.getInstance().setCommunityDetectionEngine(mockEngine);
-            dispatcher.invoke(request, response);
+            invoke(dispatcher, request, response);
             assertEquals(500, response.getStatus());
             ObjectMapper mapper = new ObjectMapper();
             CXMateResult cxRes = mapper.readValue(response.getOutput(),
@@ -369,7 +389,7 @@ public class TestDiffusion {
             replay(mockEngine);
 			
             Configuration.getInstance().setCommunityDetectionEngine(mockEngine);
-            dispatcher.invoke(request, response);
+            invoke(dispatcher, request, response);
             assertEquals(500, response.getStatus());
             ObjectMapper mapper = new ObjectMapper();
             CXMateResult cxRes = mapper.readValue(response.getOutput(),
@@ -415,21 +435,30 @@ public class TestDiffusion {
             MockHttpResponse response = new MockHttpResponse();
             Configuration.setAlternateConfigurationFile(confFile.getAbsolutePath());
             CommunityDetectionEngine mockEngine = createMock(CommunityDetectionEngine.class);
-            
-            //First check will raise an exception
-            expect(mockEngine.getResult("12345")).andThrow(new CommunityDetectionException("some error"));
-
-            //Second check will succeed 
-            expect(mockEngine.getResult("12345")).andReturn(completeTask);
 
             Capture<CommunityDetectionRequest> cappy = Capture.newInstance();
             expect(mockEngine.request(capture(cappy))).andReturn("12345");
+            
+            // task completes later on another thread
+            Capture<CommunityDetectionTaskListener> listenerCap = Capture.newInstance();
+            mockEngine.addTaskListener(eq("12345"), capture(listenerCap));
+            expectLastCall().andAnswer(() -> {
+                Thread t = new Thread(() -> listenerCap.getValue().taskCompleted(completeTask));
+                t.start();
+                return null;
+            });
+            final CountDownLatch deleteLatch = new CountDownLatch(1);
             mockEngine.delete("12345");
+            expectLastCall().andAnswer(() -> {
+                deleteLatch.countDown();
+                return null;
+            });
             replay(mockEngine);
 			
             Configuration.getInstance().setCommunityDetectionEngine(mockEngine);
-            dispatcher.invoke(request, response);
+            invoke(dispatcher, request, response);
             assertEquals(200, response.getStatus());
+            assertTrue(deleteLatch.await(10, TimeUnit.SECONDS));
             ObjectMapper mapper = new ObjectMapper();
             CXMateResult cxRes = mapper.readValue(response.getOutput(),
                     CXMateResult.class);
@@ -474,17 +503,27 @@ public class TestDiffusion {
             MockHttpResponse response = new MockHttpResponse();
             Configuration.setAlternateConfigurationFile(confFile.getAbsolutePath());
             CommunityDetectionEngine mockEngine = createMock(CommunityDetectionEngine.class);
-            expect(mockEngine.getResult("12345")).andReturn(completeTask);
 
             Capture<CommunityDetectionRequest> cappy = Capture.newInstance();
             expect(mockEngine.request(capture(cappy))).andReturn("12345");
+            Capture<CommunityDetectionTaskListener> listenerCap = Capture.newInstance();
+            mockEngine.addTaskListener(eq("12345"), capture(listenerCap));
+            expectLastCall().andAnswer(() -> {
+                listenerCap.getValue().taskCompleted(completeTask);
+                return null;
+            });
+            final CountDownLatch deleteLatch = new CountDownLatch(1);
             mockEngine.delete("12345");
-            expectLastCall().andThrow(new CommunityDetectionException("delete error"));
+            expectLastCall().andAnswer(() -> {
+                deleteLatch.countDown();
+                throw new CommunityDetectionException("delete error");
+            });
             replay(mockEngine);
 			
             Configuration.getInstance().setCommunityDetectionEngine(mockEngine);
-            dispatcher.invoke(request, response);
+            invoke(dispatcher, request, response);
             assertEquals(200, response.getStatus());
+            assertTrue(deleteLatch.await(10, TimeUnit.SECONDS));
             ObjectMapper mapper = new ObjectMapper();
             CXMateResult cxRes = mapper.readValue(response.getOutput(),
                     CXMateResult.class);